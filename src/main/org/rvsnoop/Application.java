@@ -3,6 +3,9 @@
 
 package org.rvsnoop;
 
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
 import org.jdesktop.application.AbstractBean;
 import org.jdesktop.application.ApplicationContext;
 import org.rvsnoop.actions.RvSnoopAction;
@@ -87,6 +90,8 @@ public interface Application {
     
     public static final class Impl extends AbstractBean implements Application {
 
+        private static final Logger logger = Logger.getLogger();
+
         private final ApplicationContext context;
 
         private Actions actionFactory;
@@ -141,12 +146,27 @@ public interface Application {
         }
 
         public synchronized RecordLedger getLedger() {
-            if (ledger == null) {
-                ledger = new InMemoryLedger(context, types);
-            }
+            if (ledger == null) { ledger = createLedger(UserPreferences.getInstance()); }
             return ledger;
         }
 
+        private RecordLedger createLedger(UserPreferences preferences) {
+            if (preferences.isLedgerMapped()) {
+                try {
+                    return new MappedLedger(context, types);
+                } catch (IOException e) {
+                    logger.error(e, "Could not create a mapped ledger, records will be held in memory.");
+                }
+            }
+            final int maxRecords = preferences.getLedgerMaxRecords();
+            final long maxBytes = preferences.getLedgerMaxMegabytes() * 1024L * 1024L;
+            final long maxAge = TimeUnit.MINUTES.toMillis(preferences.getLedgerMaxAgeMinutes());
+            if (maxRecords > 0 || maxBytes > 0 || maxAge > 0) {
+                return new BoundedLedger(context, types, maxRecords, maxBytes, maxAge);
+            }
+            return new InMemoryLedger(context, types);
+        }
+
         public RecordLedgerTable getLedgerTable() {
             return getFrame().getRecordLedger();
         }
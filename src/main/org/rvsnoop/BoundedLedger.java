@@ -0,0 +1,110 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop;
+
+import java.util.List;
+
+import ca.odell.glazedlists.util.concurrent.Lock;
+import org.bushe.swing.event.EventBus;
+import org.bushe.swing.event.annotation.AnnotationProcessor;
+import org.bushe.swing.event.annotation.EventSubscriber;
+import org.jdesktop.application.ApplicationContext;
+import org.rvsnoop.event.MessageReceivedEvent;
+import org.rvsnoop.event.MessagesReceivedEvent;
+import org.rvsnoop.event.ProjectClosingEvent;
+import org.rvsnoop.event.RecordsEvictedEvent;
+import rvsnoop.Record;
+import rvsnoop.RecordTypes;
+
+/**
+ * An in-memory ledger which only keeps the most recent records.
+ * <p>
+ * The ledger may be limited by the number of records, by their total size, or
+ * by the length of history which it holds. When a limit is exceeded the oldest
+ * records are evicted, and a {@link RecordsEvictedEvent} is published so that
+ * the subject counts can be kept in step with the ledger.
+ */
+public final class BoundedLedger extends RecordLedger {
+
+    private final RecordRingBuffer buffer;
+
+    /**
+     * Create a new bounded ledger instance.
+     *
+     * @param maxRecords The maximum number of records to hold, or 0 for no limit.
+     * @param maxBytes The maximum total size of the records, or 0 for no limit.
+     * @param maxAgeMillis The maximum age of the oldest record relative to the
+     *     newest, or 0 for no limit.
+     */
+    public BoundedLedger(ApplicationContext context, RecordTypes recordTypes,
+            int maxRecords, long maxBytes, long maxAgeMillis) {
+        this(context, recordTypes, new RecordRingBuffer(maxRecords, maxBytes, maxAgeMillis));
+    }
+
+    private BoundedLedger(ApplicationContext context, RecordTypes recordTypes, RecordRingBuffer buffer) {
+        super(context, buffer, recordTypes);
+        this.buffer = buffer;
+        AnnotationProcessor.process(this);
+    }
+
+    /**
+     * The number of records that have been evicted from this ledger.
+     *
+     * @return The number of records evicted.
+     */
+    public long getNumEvicted() {
+        final Lock lock = buffer.getReadWriteLock().readLock();
+        lock.lock();
+        try {
+            return buffer.getNumEvicted();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The total size of the records in this ledger.
+     *
+     * @return The size, in bytes.
+     */
+    public long getSizeInBytes() {
+        final Lock lock = buffer.getReadWriteLock().readLock();
+        lock.lock();
+        try {
+            return buffer.getSizeInBytes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void publishEvicted() {
+        final List<Record> evicted;
+        final Lock lock = buffer.getReadWriteLock().writeLock();
+        lock.lock();
+        try {
+            evicted = buffer.drainEvicted();
+        } finally {
+            lock.unlock();
+        }
+        if (!evicted.isEmpty()) { EventBus.publish(new RecordsEvictedEvent(evicted)); }
+    }
+
+    @EventSubscriber
+    public void onMessageReceived(MessageReceivedEvent event) {
+        add(event.getSource());
+        publishEvicted();
+    }
+
+    @EventSubscriber
+    public void onMessagesReceived(MessagesReceivedEvent event) {
+        addAll(event.getSource());
+        publishEvicted();
+    }
+
+    @EventSubscriber
+    public void onProjectClosing(ProjectClosingEvent event) {
+        this.clear();
+    }
+
+}
@@ -0,0 +1,113 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop;
+
+import java.io.File;
+
+import ca.odell.glazedlists.BasicEventList;
+import ca.odell.glazedlists.swing.EventTableModel;
+import org.rvsnoop.io.MappedRecordBundle;
+import org.rvsnoop.ui.RecordLedgerFormat;
+import rvsnoop.Record;
+
+/**
+ * A read-only ledger which shows the records in a record bundle file.
+ * <p>
+ * The records are read directly from the file as they are needed, see
+ * {@link MappedRecordBundle}, so bundles much larger than the heap can be
+ * browsed and searched. Any attempt to modify the ledger will throw an
+ * {@link UnsupportedOperationException}.
+ */
+public final class BundleLedger extends RecordLedger {
+
+    /**
+     * A table model which reads the rows straight from the bundle.
+     * <p>
+     * A normal event table model copies its source so that it can be read on
+     * the event dispatch thread, which would decode every block in the bundle.
+     * A bundle never changes, so this model is given an empty source and
+     * the bundle is read directly instead.
+     */
+    private static final class BundleTableModel extends EventTableModel<Record> {
+        private static final long serialVersionUID = 4326371096428129461L;
+        private final MappedRecordBundle bundle;
+        BundleTableModel(MappedRecordBundle bundle, RecordLedgerFormat format) {
+            super(new BasicEventList<Record>(), format);
+            this.bundle = bundle;
+        }
+        @Override
+        public Record getElementAt(int index) {
+            return bundle.get(index);
+        }
+        @Override
+        public int getRowCount() {
+            return bundle.size();
+        }
+        @Override
+        public Object getValueAt(int row, int column) {
+            return getTableFormat().getColumnValue(bundle.get(row), column);
+        }
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    }
+
+    private final MappedRecordBundle bundle;
+
+    /**
+     * Create a new bundle ledger.
+     *
+     * @param parent The application ledger, the new ledger uses the same
+     *     context and record types.
+     * @param bundle The bundle to show.
+     */
+    public BundleLedger(RecordLedger parent, MappedRecordBundle bundle) {
+        super(parent.context, bundle, parent.recordTypes);
+        this.bundle = bundle;
+    }
+
+    /**
+     * Close the bundle.
+     */
+    public void close() {
+        bundle.close();
+    }
+
+    /**
+     * Find the first record at or after a given time.
+     *
+     * @param timestamp The time to search for.
+     * @return The position of the record, or the size of the ledger if all of
+     *     the records are earlier.
+     * @see MappedRecordBundle#findFirstAtOrAfter(long)
+     */
+    public int findFirstAtOrAfter(long timestamp) {
+        return bundle.findFirstAtOrAfter(timestamp);
+    }
+
+    /**
+     * The bundle file.
+     *
+     * @return The file.
+     */
+    public File getFile() {
+        return bundle.getFile();
+    }
+
+    /**
+     * The bundle only keeps the timestamps of each block of records, so an
+     * index would have to decode the whole file.
+     */
+    @Override
+    protected boolean isIndexed() {
+        return false;
+    }
+
+    @Override
+    protected EventTableModel<Record> newTableModel(RecordLedgerFormat format, int refreshRate) {
+        return new BundleTableModel(bundle, format);
+    }
+
+}
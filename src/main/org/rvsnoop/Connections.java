@@ -150,6 +150,36 @@ public final class Connections {
         }
     }
 
+    /**
+     * Get an existing connection, or create and add a new one.
+     * <p>
+     * The lookup and the add are made under the list's write lock, so
+     * concurrent callers asking for the same connection all get the same
+     * instance. New connections listen to all subjects.
+     *
+     * @param description The description to give a new connection.
+     * @param service The Rendezvous service parameter.
+     * @param network The Rendezvous network parameter.
+     * @param daemon The Rendezvous daemon parameter.
+     * @return The existing or new connection, never <code>null</code>.
+     */
+    public RvConnection getOrCreate(String description, String service, String network, String daemon) {
+        final Lock lock = list.getReadWriteLock().writeLock();
+        lock.lock();
+        try {
+            RvConnection connection = get(service, network, daemon);
+            if (connection == null) {
+                connection = new RvConnection(service, network, daemon);
+                connection.setDescription(description);
+                connection.addSubject(">");
+                add(connection);
+            }
+            return connection;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * @param connection The connection to remove.
      * @return <code>true</code> if a connection was removed,
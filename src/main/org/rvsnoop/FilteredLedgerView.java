@@ -3,20 +3,29 @@
 
 package org.rvsnoop;
 
-import org.jdesktop.application.ApplicationContext;
+import rvsnoop.Record;
 import rvsnoop.RecordTypes;
 import rvsnoop.SubjectHierarchy;
 import ca.odell.glazedlists.EventList;
 import ca.odell.glazedlists.FilterList;
 import ca.odell.glazedlists.FreezableList;
+import ca.odell.glazedlists.matchers.AbstractMatcherEditor;
 import ca.odell.glazedlists.matchers.CompositeMatcherEditor;
 import ca.odell.glazedlists.matchers.Matcher;
 import ca.odell.glazedlists.matchers.MatcherEditor;
+import ca.odell.glazedlists.swing.EventTableModel;
 import ca.odell.glazedlists.util.concurrent.Lock;
+import org.rvsnoop.ui.RecordLedgerFormat;
 
 /**
  * A decorator for record ledgers that supports selectively filtering the
  * contents of the ledger.
+ * <p>
+ * Filters which only depend on the subject, type or tracking id of a record
+ * are answered using the index of the ledger being filtered, so that only one
+ * record with each key has to be tested. Table models are created by the
+ * ledger being filtered, so a ledger which does not keep its records on the
+ * heap can show the view without copying it.
  *
  * @author <a href="mailto:ianp@ianp.org">Ian Phillips</a>
  * @version $Revision$, $Date$
@@ -24,6 +33,53 @@ import ca.odell.glazedlists.util.concurrent.Lock;
  */
 public class FilteredLedgerView extends RecordLedger {
 
+    /** All of the filters, each converted using the source ledger's index. */
+    private final class IndexedMatcherEditor extends AbstractMatcherEditor<Record>
+            implements MatcherEditor.Listener<Record> {
+        IndexedMatcherEditor() {
+            filters.addMatcherEditorListener(this);
+        }
+        public void changedMatcher(MatcherEditor.Event<Record> event) {
+            switch (event.getType()) {
+            case MatcherEditor.Event.MATCH_ALL: fireMatchAll(); break;
+            case MatcherEditor.Event.MATCH_NONE: fireMatchNone(); break;
+            case MatcherEditor.Event.CONSTRAINED: fireConstrained(createMatcher()); break;
+            case MatcherEditor.Event.RELAXED: fireRelaxed(createMatcher()); break;
+            default: fireChanged(createMatcher());
+            }
+        }
+        @SuppressWarnings("unchecked")
+        private Matcher<Record> createMatcher() {
+            final EventList editors = filters.getMatcherEditors();
+            final Lock lock = editors.getReadWriteLock().readLock();
+            lock.lock();
+            try {
+                final Matcher<Record>[] matchers = new Matcher[editors.size()];
+                for (int i = 0; i < matchers.length; ++i) {
+                    final MatcherEditor<Record> editor = (MatcherEditor<Record>) editors.get(i);
+                    matchers[i] = source.createKeyMatcher(editor.getMatcher());
+                }
+                return new AndMatcher(matchers);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** Matches records which match all of a group of matchers. */
+    static final class AndMatcher implements Matcher<Record> {
+        private final Matcher<Record>[] matchers;
+        AndMatcher(Matcher<Record>[] matchers) {
+            this.matchers = matchers;
+        }
+        public boolean matches(Record record) {
+            for (Matcher<Record> matcher : matchers) {
+                if (!matcher.matches(record)) { return false; }
+            }
+            return true;
+        }
+    }
+
     private final class MatcherHider implements Matcher {
         public boolean matches(Object item) {
             if (subjectFilter != null && subjectFilter.equals(item)) {
@@ -41,11 +97,11 @@ public class FilteredLedgerView extends RecordLedger {
         if (freezable) {
             final FreezableList freezableList = new FreezableList(ledger.getEventList());
             final FilterList filter = new FilterList(freezableList);
-            final FilteredLedgerView view = new FilteredLedgerView(ledger.context, filter, types);
+            final FilteredLedgerView view = new FilteredLedgerView(ledger, filter, types);
             view.freezableList = freezableList;
             return view;
         } else {
-            return new FilteredLedgerView(ledger.context, new FilterList(ledger.getEventList()), types);
+            return new FilteredLedgerView(ledger, new FilterList(ledger.getEventList()), types);
         }
     }
 
@@ -53,14 +109,18 @@ public class FilteredLedgerView extends RecordLedger {
 
     private FreezableList freezableList;
 
+    /** The ledger being filtered. */
+    private final RecordLedger source;
+
     private MatcherEditor subjectFilter;
 
     private MatcherEditor typeFilter;
 
     /** Create a new <code>FilteredLedgerView</code>. */
-    protected FilteredLedgerView(ApplicationContext context, FilterList list, RecordTypes recordTypes) {
-        super(context, list, recordTypes);
-        list.setMatcherEditor(filters);
+    protected FilteredLedgerView(RecordLedger source, FilterList list, RecordTypes recordTypes) {
+        super(source.context, list, recordTypes);
+        this.source = source;
+        list.setMatcherEditor(new IndexedMatcherEditor());
         filters.setMode(CompositeMatcherEditor.AND);
         setFilteringOnSubject(true);
         setFilteringOnType(true);
@@ -133,6 +193,20 @@ public class FilteredLedgerView extends RecordLedger {
         return freezableList != null && freezableList.isFrozen();
     }
 
+    /**
+     * The table model is created by the ledger being filtered, see
+     * {@link RecordLedger#newTableModel(EventList, RecordLedgerFormat, int)}.
+     */
+    @Override
+    protected EventTableModel<Record> newTableModel(RecordLedgerFormat format, int refreshRate) {
+        return source.newTableModel(getEventList(), format, refreshRate);
+    }
+
+    @Override
+    protected EventTableModel<Record> newTableModel(EventList<Record> rows, RecordLedgerFormat format, int refreshRate) {
+        return source.newTableModel(rows, format, refreshRate);
+    }
+
     /**
      * Remove an arbitraty filter from this view.
      *
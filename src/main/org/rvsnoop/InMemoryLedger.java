@@ -8,6 +8,7 @@ import org.bushe.swing.event.annotation.AnnotationProcessor;
 import org.bushe.swing.event.annotation.EventSubscriber;
 import org.jdesktop.application.ApplicationContext;
 import org.rvsnoop.event.MessageReceivedEvent;
+import org.rvsnoop.event.MessagesReceivedEvent;
 import org.rvsnoop.event.ProjectClosingEvent;
 import rvsnoop.Record;
 
@@ -32,6 +33,11 @@ public final class InMemoryLedger extends RecordLedger {
         add(event.getSource());
     }
 
+    @EventSubscriber
+    public void onMessagesReceived(MessagesReceivedEvent event) {
+        addAll(event.getSource());
+    }
+
     @EventSubscriber
     public void onProjectClosing(ProjectClosingEvent event) {
         this.clear();
@@ -0,0 +1,298 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.odell.glazedlists.matchers.Matcher;
+import rvsnoop.Record;
+
+/**
+ * A search of a ledger which runs on several threads.
+ * <p>
+ * The records which were in the ledger when the search started are split into
+ * chunks which are searched in parallel. Each chunk is the range of sequence
+ * numbers between two records noted when the search started, and it is
+ * copied out of the ledger with
+ * {@link RecordLedger#getRangeAfter(long, long, int, Record[])}, so the ledger
+ * is only locked while a chunk is read and only the matching records are kept
+ * once a chunk has been searched. Records removed from the ledger during the
+ * search shift the positions of the rest, but not their sequence numbers, so
+ * every record which is still in the ledger when its chunk is read is
+ * searched exactly once. Records added after the search started are skipped.
+ * <p>
+ * Each chunk is reported to a {@link Listener} as soon as it has been
+ * searched so that partial results may be displayed, and the full result is
+ * available from {@link #get()} with the indices in ascending order. The
+ * indices are the positions of the records in the ledger when the search
+ * started, or if records have since been removed from their chunk, just
+ * their order in the ledger. Use {@link #getRecord(int)} to get the record
+ * found at an index.
+ * <p>
+ * The matcher is called from several threads at once so it must not have any
+ * unsynchronised mutable state.
+ */
+public final class LedgerSearch implements Future<int[]> {
+
+    /**
+     * Callback interface used to report the progress of a search.
+     * <p>
+     * This is called from the search threads, implementations which update
+     * the user interface should do so on the event dispatch thread.
+     */
+    public interface Listener {
+
+        /**
+         * Called each time that a chunk has been searched, the chunks are not
+         * necessarily reported in order.
+         *
+         * @param search The search which found the records.
+         * @param hits The indices of the matching records in the chunk, in
+         *     ascending order. This may be empty.
+         */
+        void chunkSearched(LedgerSearch search, int[] hits);
+
+    }
+
+    private final class Chunk implements Callable<int[]> {
+        private final int start;
+        private final int end;
+        private final long after;
+        private final long last;
+        Chunk(int start, int end, long after, long last) {
+            this.start = start;
+            this.end = end;
+            this.after = after;
+            this.last = last;
+        }
+        public int[] call() {
+            try {
+                if (cancelled) { throw new CancellationException(); }
+                final Record[] records = new Record[end - start];
+                final int read = ledger.getRangeAfter(after, last, start, records);
+                final int[] temp = new int[read];
+                int count = 0;
+                for (int i = 0; i < read; ++i) {
+                    if ((i & CANCEL_CHECK_MASK) == 0 && cancelled) { throw new CancellationException(); }
+                    final Record record = records[i];
+                    if (criteria.matches(record)) {
+                        found.put(Integer.valueOf(start + i), record);
+                        temp[count++] = start + i;
+                    }
+                }
+                final int[] hits = new int[count];
+                System.arraycopy(temp, 0, hits, 0, count);
+                searched.addAndGet(end - start);
+                if (listener != null && !cancelled) { listener.chunkSearched(LedgerSearch.this, hits); }
+                return hits;
+            } finally {
+                remaining.countDown();
+            }
+        }
+    }
+
+    /** How often, in records, the search threads check for cancellation. */
+    private static final int CANCEL_CHECK_MASK = 0xFF;
+
+    /** The default number of records in each chunk. */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new NamedDaemonThreadFactory("ledgerSearch"));
+
+    private volatile boolean cancelled;
+
+    private final int chunkSize;
+
+    private final Matcher<Record> criteria;
+
+    private final List<Future<int[]>> futures = new ArrayList<Future<int[]>>();
+
+    private final Listener listener;
+
+    private final CountDownLatch remaining;
+
+    /** The matching records, keyed by index. */
+    private final ConcurrentHashMap<Integer, Record> found = new ConcurrentHashMap<Integer, Record>();
+
+    /** The sequence number of the last record in each chunk. */
+    private final long[] bounds;
+
+    private final RecordLedger ledger;
+
+    private final int numRecords;
+
+    private int[] result;
+
+    private final AtomicInteger searched = new AtomicInteger();
+
+    /**
+     * Create a new search.
+     *
+     * @param ledger The ledger to search.
+     * @param numRecords The number of records in the ledger when the search
+     *     started.
+     * @param bounds The sequence number of the last record in each chunk when
+     *     the search started, records with higher numbers are skipped.
+     * @param criteria How to match records.
+     * @param chunkSize The number of records to search in each task.
+     * @param listener The listener to notify as chunks finish, may be
+     *     <code>null</code>.
+     */
+    LedgerSearch(RecordLedger ledger, int numRecords, long[] bounds,
+            Matcher<Record> criteria, int chunkSize, Listener listener) {
+        this.ledger = ledger;
+        this.numRecords = numRecords;
+        this.bounds = bounds;
+        this.criteria = criteria;
+        this.chunkSize = chunkSize;
+        this.listener = listener;
+        this.remaining = new CountDownLatch((numRecords + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * Create a search which has already finished.
+     * <p>
+     * This is used when the results can be found without a scan, for example
+     * from a {@link RecordIndex}.
+     *
+     * @param records The matching records, in the same order as the indices.
+     */
+    static LedgerSearch completed(RecordLedger ledger, int numRecords, long[] bounds,
+            int[] indices, Record[] records, Listener listener) {
+        final LedgerSearch search = new LedgerSearch(ledger, numRecords, bounds,
+                null, Math.max(1, numRecords), null);
+        for (int i = 0; i < indices.length; ++i) {
+            search.found.put(Integer.valueOf(indices[i]), records[i]);
+        }
+        search.result = indices;
+        search.searched.set(numRecords);
+        while (search.remaining.getCount() > 0) { search.remaining.countDown(); }
+        if (listener != null) { listener.chunkSearched(search, indices); }
+        return search;
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (isDone()) { return false; }
+        cancelled = true;
+        synchronized (futures) {
+            for (Future<int[]> future : futures) { future.cancel(mayInterruptIfRunning); }
+        }
+        return true;
+    }
+
+    public int[] get() throws InterruptedException, ExecutionException {
+        if (cancelled) { throw new CancellationException(); }
+        remaining.await();
+        return merge();
+    }
+
+    public int[] get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (cancelled) { throw new CancellationException(); }
+        if (!remaining.await(timeout, unit)) { throw new TimeoutException(); }
+        return merge();
+    }
+
+    /**
+     * The number of records searched so far.
+     *
+     * @return The number of records.
+     */
+    public int getNumSearched() {
+        return searched.get();
+    }
+
+    /**
+     * The total number of records to search.
+     *
+     * @return The size of the ledger when the search started.
+     */
+    public int getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * The sequence number of the last record in the ledger when the search
+     * started.
+     *
+     * @return The sequence number, or {@link Long#MIN_VALUE} if the ledger
+     *     was empty.
+     */
+    public long getLastSequenceNumber() {
+        return bounds.length > 0 ? bounds[bounds.length - 1] : Long.MIN_VALUE;
+    }
+
+    /**
+     * Get a record found by this search.
+     *
+     * @param index An index reported by this search.
+     * @return The record, or <code>null</code> if the index was not reported
+     *     by this search.
+     */
+    public Record getRecord(int index) {
+        return found.get(Integer.valueOf(index));
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return cancelled || remaining.getCount() == 0;
+    }
+
+    private synchronized int[] merge() throws ExecutionException {
+        if (cancelled) { throw new CancellationException(); }
+        if (result != null) { return result; }
+        final List<int[]> parts = new ArrayList<int[]>(futures.size());
+        int total = 0;
+        synchronized (futures) {
+            for (Future<int[]> future : futures) {
+                try {
+                    final int[] part = future.get();
+                    parts.add(part);
+                    total += part.length;
+                } catch (InterruptedException e) {
+                    // Cannot happen, all of the chunks have finished.
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException();
+                }
+            }
+        }
+        // The chunks are in ledger order so just concatenate them.
+        final int[] indices = new int[total];
+        int pos = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, indices, pos, part.length);
+            pos += part.length;
+        }
+        result = indices;
+        return indices;
+    }
+
+    /**
+     * Submit the chunks to the search threads.
+     */
+    void start() {
+        synchronized (futures) {
+            for (int i = 0, start = 0; start < numRecords; ++i, start += chunkSize) {
+                futures.add(executor.submit(new Chunk(start, Math.min(start + chunkSize, numRecords),
+                        i > 0 ? bounds[i - 1] : Long.MIN_VALUE, bounds[i])));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,225 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import ca.odell.glazedlists.BasicEventList;
+import ca.odell.glazedlists.EventList;
+import ca.odell.glazedlists.event.ListEvent;
+import ca.odell.glazedlists.event.ListEventListener;
+import ca.odell.glazedlists.swing.EventTableModel;
+import ca.odell.glazedlists.util.concurrent.Lock;
+import org.bushe.swing.event.annotation.AnnotationProcessor;
+import org.bushe.swing.event.annotation.EventSubscriber;
+import org.jdesktop.application.ApplicationContext;
+import org.rvsnoop.event.MessageReceivedEvent;
+import org.rvsnoop.event.MessagesReceivedEvent;
+import org.rvsnoop.event.ProjectClosingEvent;
+import org.rvsnoop.ui.RecordLedgerFormat;
+import rvsnoop.Record;
+import rvsnoop.RecordTypes;
+
+/**
+ * A ledger that keeps records in memory mapped files rather than on the heap.
+ * <p>
+ * This allows much larger captures than the {@link InMemoryLedger}, at the
+ * cost of decoding each record when it is read. The segment files are
+ * temporary, they are deleted when the ledger is cleared or the application
+ * exits.
+ *
+ * @see MappedRecordList
+ */
+public final class MappedLedger extends RecordLedger {
+
+    /**
+     * A table model which reads the rows straight from the mapped list, or
+     * from a view of it.
+     * <p>
+     * A normal event table model keeps a copy of its source on the heap so
+     * that it can be read on the event dispatch thread, which would hold on to
+     * every record in the ledger. This model only keeps a row count: changes
+     * to the rows are collected and the new row count is published on the
+     * event dispatch thread, at most a given number of times per second. Rows
+     * are read from the list, and so decoded, only when they are shown.
+     */
+    private static final class MappedTableModel extends EventTableModel<Record> {
+        private static final long serialVersionUID = -2093746381935621347L;
+        private final ListEventListener<Record> listener = new ListEventListener<Record>() {
+            public void listChanged(ListEvent<Record> event) {
+                boolean appended = true;
+                while (event.nextBlock()) {
+                    appended &= event.getType() == ListEvent.INSERT
+                        && event.getBlockEndIndex() == event.getSourceList().size() - 1;
+                }
+                schedule(appended);
+            }
+        };
+        private final EventList<Record> records;
+        private int rowCount;
+        private final Timer timer;
+        // Both guarded by this model.
+        private boolean appendsOnly = true;
+        private boolean pending;
+        MappedTableModel(EventList<Record> records, RecordLedgerFormat format, int refreshRate) {
+            super(new BasicEventList<Record>(), format);
+            this.records = records;
+            final ActionListener publisher = new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    publish();
+                }
+            };
+            this.timer = new Timer(refreshRate > 0 ? 1000 / refreshRate : 0, publisher);
+            this.timer.setRepeats(false);
+            final Lock lock = records.getReadWriteLock().readLock();
+            lock.lock();
+            try {
+                this.rowCount = records.size();
+                records.addListEventListener(listener);
+            } finally {
+                lock.unlock();
+            }
+        }
+        @Override
+        public void dispose() {
+            records.removeListEventListener(listener);
+            timer.stop();
+            super.dispose();
+        }
+        @Override
+        public Record getElementAt(int index) {
+            final Lock lock = records.getReadWriteLock().readLock();
+            lock.lock();
+            try {
+                // The list may have shrunk since the row count was published.
+                return index < records.size() ? records.get(index) : null;
+            } finally {
+                lock.unlock();
+            }
+        }
+        @Override
+        public int getRowCount() {
+            return rowCount;
+        }
+        @Override
+        public Object getValueAt(int row, int column) {
+            final Record record = getElementAt(row);
+            return record != null ? getTableFormat().getColumnValue(record, column) : null;
+        }
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+        void publish() {
+            final boolean appended;
+            synchronized (this) {
+                appended = appendsOnly;
+                appendsOnly = true;
+                pending = false;
+            }
+            final int oldCount = rowCount;
+            final Lock lock = records.getReadWriteLock().readLock();
+            lock.lock();
+            try {
+                rowCount = records.size();
+            } finally {
+                lock.unlock();
+            }
+            if (appended && rowCount > oldCount) {
+                fireTableRowsInserted(oldCount, rowCount - 1);
+            } else if (!appended || rowCount != oldCount) {
+                fireTableDataChanged();
+            }
+        }
+        synchronized void schedule(boolean appended) {
+            appendsOnly &= appended;
+            if (pending) { return; }
+            pending = true;
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    timer.start();
+                }
+            });
+        }
+    }
+
+    private static File createTempDirectory() throws IOException {
+        final File directory = File.createTempFile("rvsnoop-ledger", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Could not create ledger directory " + directory);
+        }
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    private final MappedRecordList list;
+
+    /**
+     * Create a new mapped ledger instance using a temporary directory and the
+     * default segment size.
+     *
+     * @throws IOException If the temporary directory could not be created.
+     */
+    public MappedLedger(ApplicationContext context, RecordTypes recordTypes) throws IOException {
+        this(context, recordTypes, createTempDirectory(), MappedRecordList.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Create a new mapped ledger instance.
+     *
+     * @param directory The directory to hold the segment files.
+     * @param segmentSize The size of each segment file, in bytes.
+     */
+    public MappedLedger(ApplicationContext context, RecordTypes recordTypes, File directory, int segmentSize) {
+        this(context, recordTypes, new MappedRecordList(directory, segmentSize, recordTypes));
+    }
+
+    private MappedLedger(ApplicationContext context, RecordTypes recordTypes, MappedRecordList list) {
+        super(context, list, recordTypes);
+        this.list = list;
+        AnnotationProcessor.process(this);
+    }
+
+    /**
+     * The total size of the segment files used by this ledger.
+     *
+     * @return The size, in bytes.
+     */
+    public long getStoreSize() {
+        final Lock lock = list.getReadWriteLock().readLock();
+        lock.lock();
+        try {
+            return list.getStoreSize();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected EventTableModel<Record> newTableModel(EventList<Record> rows, RecordLedgerFormat format, int refreshRate) {
+        return new MappedTableModel(rows, format, refreshRate);
+    }
+
+    @EventSubscriber
+    public void onMessageReceived(MessageReceivedEvent event) {
+        add(event.getSource());
+    }
+
+    @EventSubscriber
+    public void onMessagesReceived(MessagesReceivedEvent event) {
+        addAll(event.getSource());
+    }
+
+    @EventSubscriber
+    public void onProjectClosing(ProjectClosingEvent event) {
+        this.clear();
+    }
+
+}
@@ -0,0 +1,529 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.odell.glazedlists.AbstractEventList;
+import ca.odell.glazedlists.util.concurrent.LockFactory;
+import rvsnoop.Record;
+import rvsnoop.RecordSelection;
+import rvsnoop.RecordType;
+import rvsnoop.RecordTypes;
+import rvsnoop.RvConnection;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.io.Closeables.closeQuietly;
+
+/**
+ * An event list which keeps records in memory mapped files instead of on the
+ * heap.
+ * <p>
+ * Each record is written to the end of a segment file using the same framing
+ * as {@link RecordSelection#write(Record, java.io.DataOutput)}, when a segment
+ * is full a new one is started. The only per-record data held on the heap is
+ * a compact index of primitive arrays: the location and length of the entry,
+ * the timestamp, the sequence number, and ids for the subject, type and
+ * connection. Records are decoded from the segment when {@link #get(int)} is
+ * called. A small cache of recently added or decoded records is kept, so that
+ * a table which repaints the same rows does not decode them again.
+ * <p>
+ * Removing records only removes them from the index, the space in the segment
+ * files is reclaimed when the list is cleared.
+ * <p>
+ * The list provides the subjects and timestamps to a {@link RecordIndex}, so
+ * it can be indexed without decoding the records.
+ */
+final class MappedRecordList extends AbstractEventList<Record> implements RecordIndex.Metadata {
+
+    /** The default size of each segment file, 64MB. */
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /** The number of records to cache. */
+    private static final int DECODED_CACHE_SIZE = 1024;
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final Logger logger = Logger.getLogger();
+
+    /** Recently decoded records, keyed by sequence number. */
+    private final Map<Long, Record> decoded = new LinkedHashMap<Long, Record>(DECODED_CACHE_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = 6001497616466437342L;
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Record> eldest) {
+            return size() > DECODED_CACHE_SIZE;
+        }
+    };
+
+    /** The number of records decoded from the segments, guarded by the cache. */
+    private int decodeCount;
+
+    private final File directory;
+
+    private final ByteArrayOutputStream encodeBuffer = new ByteArrayOutputStream(4096);
+
+    private final DataOutputStream encoder = new DataOutputStream(encodeBuffer);
+
+    private final RecordTypes recordTypes;
+
+    private final int segmentSize;
+
+    private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+
+    private final List<File> segmentFiles = new ArrayList<File>();
+
+    // Dictionaries for the ids held in the index.
+    private final List<RvConnection> connections = new ArrayList<RvConnection>();
+    private final Map<RvConnection, Integer> connectionIds = new IdentityHashMap<RvConnection, Integer>();
+    private final List<String> subjects = new ArrayList<String>();
+    private final Map<String, Integer> subjectIds = new HashMap<String, Integer>();
+    private final List<RecordType> types = new ArrayList<RecordType>();
+    private final Map<RecordType, Integer> typeIds = new IdentityHashMap<RecordType, Integer>();
+
+    // The index, split in to chunks so that growing it never copies it all.
+    private long[][] locations = new long[0][];
+    private int[][] lengths = new int[0][];
+    private long[][] timestamps = new long[0][];
+    private long[][] sequenceNumbers = new long[0][];
+    private int[][] subjectIndex = new int[0][];
+    private short[][] typeIndex = new short[0][];
+    private short[][] connectionIndex = new short[0][];
+
+    private int size;
+
+    /** The write position in the last segment. */
+    private int writePosition;
+
+    /**
+     * Create a new list.
+     *
+     * @param directory The directory to create the segment files in.
+     * @param segmentSize The size of each segment file, in bytes.
+     * @param recordTypes Used to classify records as they are added.
+     */
+    MappedRecordList(File directory, int segmentSize, RecordTypes recordTypes) {
+        super(null);
+        checkArgument(directory.isDirectory(), "%s is not a directory.", directory);
+        checkArgument(segmentSize > 0, "Segment size must be positive.");
+        this.readWriteLock = LockFactory.DEFAULT.createReadWriteLock();
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.recordTypes = recordTypes;
+    }
+
+    @Override
+    public void add(int index, Record record) {
+        addAll(index, Collections.singletonList(record));
+    }
+
+    @Override
+    public boolean add(Record record) {
+        add(size, record);
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Record> records) {
+        return addAll(size, records);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends Record> records) {
+        if (index < 0 || index > size) { throw new IndexOutOfBoundsException(index + " out of 0.." + size); }
+        if (records.isEmpty()) { return false; }
+        final int oldSize = size;
+        for (Record record : records) {
+            try {
+                append(record);
+            } catch (IOException e) {
+                logger.error(e, "Could not write record %s to the ledger.", record);
+            }
+        }
+        final int added = size - oldSize;
+        if (added == 0) { return false; }
+        if (index != oldSize) {
+            // Rotate the new entries in to place, this is not expected to be common.
+            for (int i = 0; i < added; ++i) {
+                for (int j = oldSize + i; j > index + i; --j) { swap(j, j - 1); }
+            }
+        }
+        updates.beginEvent();
+        updates.addInsert(index, index + added - 1);
+        updates.commitEvent();
+        return true;
+    }
+
+    private void append(Record record) throws IOException {
+        encodeBuffer.reset();
+        RecordSelection.write(record, encoder);
+        encoder.flush();
+        final int length = encodeBuffer.size();
+        if (segments.isEmpty() || writePosition + length > segments.get(segments.size() - 1).capacity()) {
+            createSegment(Math.max(segmentSize, length));
+        }
+        final int segment = segments.size() - 1;
+        final ByteBuffer buffer = segments.get(segment).duplicate();
+        buffer.position(writePosition);
+        buffer.put(encodeBuffer.toByteArray(), 0, length);
+        ensureCapacity(size + 1);
+        final int chunk = size >>> CHUNK_BITS, offset = size & CHUNK_MASK;
+        locations[chunk][offset] = ((long) segment << 32) | writePosition;
+        lengths[chunk][offset] = length;
+        timestamps[chunk][offset] = record.getTimestamp();
+        sequenceNumbers[chunk][offset] = record.getSequenceNumber();
+        final String subject = record.getRawSendSubject();
+        subjectIndex[chunk][offset] = subject != null ? idOf(subject, subjects, subjectIds) : -1;
+        typeIndex[chunk][offset] = (short) idOf(recordTypes.getFirstMatchingType(record), types, typeIds);
+        connectionIndex[chunk][offset] = (short) idOf(record.getConnection(), connections, connectionIds);
+        writePosition += length;
+        ++size;
+        synchronized (decoded) { decoded.put(Long.valueOf(record.getSequenceNumber()), record); }
+    }
+
+    @Override
+    public void clear() {
+        if (size == 0 && segments.isEmpty()) { return; }
+        final int oldSize = size;
+        deleteSegments();
+        locations = new long[0][];
+        lengths = new int[0][];
+        timestamps = new long[0][];
+        sequenceNumbers = new long[0][];
+        subjectIndex = new int[0][];
+        typeIndex = new short[0][];
+        connectionIndex = new short[0][];
+        connections.clear();
+        connectionIds.clear();
+        subjects.clear();
+        subjectIds.clear();
+        types.clear();
+        typeIds.clear();
+        size = 0;
+        if (oldSize == 0) { return; }
+        updates.beginEvent();
+        updates.addDelete(0, oldSize - 1);
+        updates.commitEvent();
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return indexOf(object) != -1;
+    }
+
+    private void createSegment(int capacity) throws IOException {
+        final File file = new File(directory, String.format("segment-%05d.dat", segmentFiles.size()));
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            final FileChannel channel = raf.getChannel();
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+            segmentFiles.add(file);
+            file.deleteOnExit();
+            writePosition = 0;
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    private Record decode(int index) throws IOException {
+        final int chunk = index >>> CHUNK_BITS, offset = index & CHUNK_MASK;
+        final long location = locations[chunk][offset];
+        final ByteBuffer buffer = segments.get((int) (location >>> 32)).duplicate();
+        buffer.position((int) location);
+        final byte[] bytes = new byte[lengths[chunk][offset]];
+        buffer.get(bytes);
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+        final int connection = connectionIndex[chunk][offset];
+        return RecordSelection.readRecord(input, connection >= 0 ? connections.get(connection) : null,
+                sequenceNumbers[chunk][offset]);
+    }
+
+    /**
+     * Delete the segment files, the mappings themselves are released when the
+     * buffers are garbage collected.
+     */
+    private void deleteSegments() {
+        synchronized (decoded) { decoded.clear(); }
+        segments.clear();
+        for (File file : segmentFiles) {
+            if (!file.delete()) {
+                logger.debug("Could not delete segment file %s, it will be deleted on exit.", file);
+            }
+        }
+        segmentFiles.clear();
+        writePosition = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        final int chunks = (capacity + CHUNK_MASK) >>> CHUNK_BITS;
+        if (chunks <= locations.length) { return; }
+        locations = grow(locations, chunks);
+        lengths = grow(lengths, chunks);
+        timestamps = grow(timestamps, chunks);
+        sequenceNumbers = grow(sequenceNumbers, chunks);
+        subjectIndex = grow(subjectIndex, chunks);
+        typeIndex = grow(typeIndex, chunks);
+        connectionIndex = grow(connectionIndex, chunks);
+        for (int i = chunks - 1; i >= 0 && locations[i] == null; --i) {
+            locations[i] = new long[CHUNK_SIZE];
+            lengths[i] = new int[CHUNK_SIZE];
+            timestamps[i] = new long[CHUNK_SIZE];
+            sequenceNumbers[i] = new long[CHUNK_SIZE];
+            subjectIndex[i] = new int[CHUNK_SIZE];
+            typeIndex[i] = new short[CHUNK_SIZE];
+            connectionIndex[i] = new short[CHUNK_SIZE];
+        }
+    }
+
+    @Override
+    public Record get(int index) {
+        if (index < 0 || index >= size) { throw new IndexOutOfBoundsException(index + " out of 0.." + size); }
+        final Long key = Long.valueOf(getSequenceNumber(index));
+        synchronized (decoded) {
+            final Record cached = decoded.get(key);
+            if (cached != null) { return cached; }
+        }
+        try {
+            final Record record = decode(index);
+            synchronized (decoded) {
+                decoded.put(key, record);
+                ++decodeCount;
+            }
+            return record;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not decode record " + index + " from the ledger.", e);
+        }
+    }
+
+    /**
+     * The number of times that a record has been decoded from the segments.
+     *
+     * @return The number of records decoded.
+     */
+    int getDecodeCount() {
+        synchronized (decoded) { return decodeCount; }
+    }
+
+    /**
+     * Get the sequence number of the record at a given position without
+     * decoding it.
+     *
+     * @param index The position of the record.
+     * @return The sequence number.
+     */
+    long getSequenceNumber(int index) {
+        return sequenceNumbers[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    /**
+     * Get the send subject of the record at a given position without decoding
+     * it.
+     *
+     * @param index The position of the record.
+     * @return The send subject, may be <code>null</code>.
+     */
+    public String getSendSubject(int index) {
+        final int id = subjectIndex[index >>> CHUNK_BITS][index & CHUNK_MASK];
+        return id >= 0 ? subjects.get(id) : null;
+    }
+
+    /**
+     * Get the total size of all the segment files.
+     *
+     * @return The size, in bytes.
+     */
+    long getStoreSize() {
+        long total = 0;
+        for (MappedByteBuffer segment : segments) { total += segment.capacity(); }
+        return total;
+    }
+
+    /**
+     * Get the timestamp of the record at a given position without decoding it.
+     *
+     * @param index The position of the record.
+     * @return The timestamp.
+     */
+    public long getTimestamp(int index) {
+        return timestamps[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    /**
+     * Get the type that the record at a given position had when it was added.
+     *
+     * @param index The position of the record.
+     * @return The record type, may be <code>null</code>.
+     */
+    RecordType getType(int index) {
+        final int id = typeIndex[index >>> CHUNK_BITS][index & CHUNK_MASK];
+        return id >= 0 ? types.get(id) : null;
+    }
+
+    private static long[][] grow(long[][] array, int chunks) {
+        final long[][] grown = new long[chunks][];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    private static int[][] grow(int[][] array, int chunks) {
+        final int[][] grown = new int[chunks][];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    private static short[][] grow(short[][] array, int chunks) {
+        final short[][] grown = new short[chunks][];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+
+    private static <T> int idOf(T value, List<T> values, Map<T, Integer> ids) {
+        if (value == null) { return -1; }
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = Integer.valueOf(values.size());
+            values.add(value);
+            ids.put(value, id);
+        }
+        return id.intValue();
+    }
+
+    @Override
+    public int indexOf(Object object) {
+        if (!(object instanceof Record)) { return -1; }
+        final long sequenceNumber = ((Record) object).getSequenceNumber();
+        for (int i = 0; i < size; ++i) {
+            if (getSequenceNumber(i) == sequenceNumber) { return i; }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object object) {
+        if (!(object instanceof Record)) { return -1; }
+        final long sequenceNumber = ((Record) object).getSequenceNumber();
+        for (int i = size - 1; i >= 0; --i) {
+            if (getSequenceNumber(i) == sequenceNumber) { return i; }
+        }
+        return -1;
+    }
+
+    /**
+     * Copy an index entry from one position to another.
+     */
+    private void move(int from, int to) {
+        final int fromChunk = from >>> CHUNK_BITS, fromOffset = from & CHUNK_MASK;
+        final int toChunk = to >>> CHUNK_BITS, toOffset = to & CHUNK_MASK;
+        locations[toChunk][toOffset] = locations[fromChunk][fromOffset];
+        lengths[toChunk][toOffset] = lengths[fromChunk][fromOffset];
+        timestamps[toChunk][toOffset] = timestamps[fromChunk][fromOffset];
+        sequenceNumbers[toChunk][toOffset] = sequenceNumbers[fromChunk][fromOffset];
+        subjectIndex[toChunk][toOffset] = subjectIndex[fromChunk][fromOffset];
+        typeIndex[toChunk][toOffset] = typeIndex[fromChunk][fromOffset];
+        connectionIndex[toChunk][toOffset] = connectionIndex[fromChunk][fromOffset];
+    }
+
+    @Override
+    public Record remove(int index) {
+        final Record removed = get(index);
+        updates.beginEvent();
+        updates.addDelete(index);
+        for (int i = index + 1; i < size; ++i) { move(i, i - 1); }
+        --size;
+        updates.commitEvent();
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        final int index = indexOf(object);
+        if (index == -1) { return false; }
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> collection) {
+        return removeMatching(collection, true);
+    }
+
+    private boolean removeMatching(Collection<?> collection, boolean remove) {
+        final Set<Long> lookup = new HashSet<Long>();
+        for (Object object : collection) {
+            if (object instanceof Record) { lookup.add(Long.valueOf(((Record) object).getSequenceNumber())); }
+        }
+        updates.beginEvent();
+        int kept = 0;
+        for (int i = 0; i < size; ++i) {
+            if (lookup.contains(Long.valueOf(getSequenceNumber(i))) == remove) {
+                updates.addDelete(kept);
+            } else {
+                if (kept != i) { move(i, kept); }
+                ++kept;
+            }
+        }
+        final boolean changed = kept != size;
+        size = kept;
+        updates.commitEvent();
+        return changed;
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> collection) {
+        return removeMatching(collection, false);
+    }
+
+    /**
+     * Replacing a record appends the new version to the store and points the
+     * index entry at it.
+     */
+    @Override
+    public Record set(int index, Record record) {
+        final Record previous = get(index);
+        try {
+            append(record);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write record " + record + " to the ledger.", e);
+        }
+        updates.beginEvent();
+        updates.addUpdate(index);
+        move(--size, index);
+        synchronized (decoded) { decoded.remove(Long.valueOf(previous.getSequenceNumber())); }
+        updates.commitEvent();
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private void swap(int i, int j) {
+        ensureCapacity(size + 1);
+        move(i, size);
+        move(j, i);
+        move(size, j);
+    }
+
+}
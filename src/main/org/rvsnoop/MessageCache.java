@@ -0,0 +1,174 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop;
+
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.tibco.tibrv.TibrvMsg;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A cache of decoded messages for records which only hold their wire bytes.
+ * <p>
+ * The cache is a least recently used map limited by both the number of
+ * entries and the total wire size of the cached messages. The messages are
+ * also held through soft references so that the garbage collector may reclaim
+ * them before the cache is full if memory is short.
+ */
+public final class MessageCache {
+
+    private static final class Entry {
+        final SoftReference<TibrvMsg> message;
+        final int size;
+        Entry(TibrvMsg message, int size) {
+            this.message = new SoftReference<TibrvMsg>(message);
+            this.size = size;
+        }
+    }
+
+    /** The default maximum number of cached messages. */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /** The default maximum total size of cached messages, 32MB. */
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024L * 1024L;
+
+    private static final MessageCache instance = new MessageCache(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+
+    /**
+     * Get the cache shared by all records.
+     *
+     * @return The shared cache.
+     */
+    public static MessageCache getInstance() {
+        return instance;
+    }
+
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<Long, Entry>(1024, 0.75f, true);
+
+    private long hits;
+
+    private int maxEntries;
+
+    private long maxBytes;
+
+    private long misses;
+
+    private long totalBytes;
+
+    /**
+     * Create a new cache.
+     *
+     * @param maxEntries The maximum number of messages to cache.
+     * @param maxBytes The maximum total wire size of the cached messages.
+     */
+    public MessageCache(int maxEntries, long maxBytes) {
+        setLimits(maxEntries, maxBytes);
+    }
+
+    /**
+     * Remove all messages from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    /**
+     * Get a cached message.
+     *
+     * @param sequenceNumber The sequence number of the record which owns the message.
+     * @return The message, or <code>null</code> if it is not in the cache.
+     */
+    public synchronized TibrvMsg get(long sequenceNumber) {
+        final Entry entry = entries.get(Long.valueOf(sequenceNumber));
+        final TibrvMsg message = entry != null ? entry.message.get() : null;
+        if (message != null) {
+            ++hits;
+        } else {
+            ++misses;
+            if (entry != null) { remove(sequenceNumber); }
+        }
+        return message;
+    }
+
+    /**
+     * The number of lookups which found a message.
+     *
+     * @return The number of cache hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * The number of lookups which did not find a message.
+     *
+     * @return The number of cache misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Add a message to the cache, evicting the least recently used messages
+     * if necessary.
+     *
+     * @param sequenceNumber The sequence number of the record which owns the message.
+     * @param message The decoded message.
+     * @param size The wire size of the message.
+     */
+    public synchronized void put(long sequenceNumber, TibrvMsg message, int size) {
+        final Entry previous = entries.put(Long.valueOf(sequenceNumber), new Entry(message, size));
+        if (previous != null) { totalBytes -= previous.size; }
+        totalBytes += size;
+        trim();
+    }
+
+    /**
+     * Remove a message from the cache.
+     *
+     * @param sequenceNumber The sequence number of the record which owns the message.
+     */
+    public synchronized void remove(long sequenceNumber) {
+        final Entry entry = entries.remove(Long.valueOf(sequenceNumber));
+        if (entry != null) { totalBytes -= entry.size; }
+    }
+
+    /**
+     * Set the limits for this cache.
+     *
+     * @param maxEntries The maximum number of messages to cache.
+     * @param maxBytes The maximum total wire size of the cached messages.
+     */
+    public synchronized void setLimits(int maxEntries, long maxBytes) {
+        checkArgument(maxEntries >= 0, "Maximum number of entries cannot be negative.");
+        checkArgument(maxBytes >= 0, "Maximum size cannot be negative.");
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    /**
+     * The number of messages in the cache, including any that have been
+     * reclaimed by the garbage collector but not yet removed.
+     *
+     * @return The number of cached messages.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void trim() {
+        final Iterator<Map.Entry<Long, Entry>> i = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalBytes > maxBytes) && i.hasNext()) {
+            totalBytes -= i.next().getValue().size;
+            i.remove();
+        }
+    }
+
+}
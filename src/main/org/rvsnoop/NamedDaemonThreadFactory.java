@@ -0,0 +1,37 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates numbered daemon threads for background work pools.
+ * <p>
+ * The threads run just below normal priority so that they do not hold up the
+ * user interface or the listener threads, and being daemons they do not stop
+ * the application from exiting.
+ */
+public final class NamedDaemonThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    private final String prefix;
+
+    /**
+     * @param prefix The prefix for the thread names, each thread is named with
+     *     this, a dash and its number.
+     */
+    public NamedDaemonThreadFactory(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public Thread newThread(Runnable runnable) {
+        final Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    }
+
+}
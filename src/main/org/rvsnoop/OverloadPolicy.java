@@ -0,0 +1,57 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop;
+
+import com.tibco.tibrv.TibrvQueue;
+
+/**
+ * What to do with incoming messages when RvSnoop cannot keep up with them.
+ * <p>
+ * The capture pipeline is considered to be overloaded when the ingest buffer
+ * is full or the heap is nearly exhausted.
+ *
+ * @see RecordIngester
+ */
+public enum OverloadPolicy {
+
+    /**
+     * Block the Rendezvous dispatcher threads until there is space, this pushes
+     * the back log on to the Rendezvous queues and so on to the heap.
+     */
+    BLOCK(TibrvQueue.DISCARD_NONE),
+
+    /** Discard the oldest messages which have not yet been published. */
+    DROP_OLDEST(TibrvQueue.DISCARD_FIRST),
+
+    /** Discard new messages until there is space for them again. */
+    DROP_NEWEST(TibrvQueue.DISCARD_NEW),
+
+    /** Keep only one in every <i>n</i> messages on each subject. */
+    SAMPLE(TibrvQueue.DISCARD_NONE),
+
+    /**
+     * Write messages to a temporary file and ingest them from there once the
+     * load has dropped.
+     */
+    SPILL_TO_DISK(TibrvQueue.DISCARD_NONE);
+
+    private final int limitPolicy;
+
+    private OverloadPolicy(int limitPolicy) {
+        this.limitPolicy = limitPolicy;
+    }
+
+    /**
+     * Get the Rendezvous queue limit policy which matches this policy.
+     * <p>
+     * Policies which need to see every message (sampling and spilling) return
+     * {@link TibrvQueue#DISCARD_NONE} since they are applied by the ingester.
+     *
+     * @return One of the <code>TibrvQueue.DISCARD_*</code> constants.
+     */
+    public int getLimitPolicy() {
+        return limitPolicy;
+    }
+
+}
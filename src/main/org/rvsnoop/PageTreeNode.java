@@ -0,0 +1,105 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.tree.TreeNode;
+
+/**
+ * A {@link TreeNode} that groups a range of the children of another node.
+ * <p>
+ * Nodes with very many children, such as large arrays, are shown as a list of
+ * pages so that expanding them only creates the nodes for one page at a time.
+ * If there are more pages than will fit on one page then the pages themselves
+ * are grouped, and so on.
+ */
+public final class PageTreeNode extends LazyTreeNode {
+
+    /**
+     * Creates the children which are being paged.
+     */
+    public interface ChildFactory {
+
+        /**
+         * Create a child node.
+         *
+         * @param parent The parent to give the new node.
+         * @param index The index of the child to create.
+         * @return The new node, or <code>null</code> if it could not be created.
+         */
+        TreeNode createChild(TreeNode parent, int index);
+
+    }
+
+    /** The maximum number of children to show below any one node. */
+    public static final int PAGE_SIZE = 1000;
+
+    static String TEXT;
+
+    static { NLSUtils.internationalize(PageTreeNode.class); }
+
+    /**
+     * Create the children for a node, split into pages if necessary.
+     *
+     * @param parent The node to create the children for.
+     * @param factory Used to create each child.
+     * @param count The total number of children.
+     * @return The children, or pages of children.
+     */
+    public static List<TreeNode> createChildren(TreeNode parent, ChildFactory factory, int count) {
+        return createChildren(parent, factory, 0, count);
+    }
+
+    private static List<TreeNode> createChildren(TreeNode parent, ChildFactory factory, int start, int end) {
+        final int count = end - start;
+        if (count <= PAGE_SIZE) {
+            final ArrayList<TreeNode> children = new ArrayList<TreeNode>(count);
+            for (int i = start; i < end; ++i) {
+                final TreeNode child = factory.createChild(parent, i);
+                if (child != null) { children.add(child); }
+            }
+            children.trimToSize();
+            return children;
+        }
+        // Use the smallest page size which needs no more than PAGE_SIZE pages.
+        long span = PAGE_SIZE;
+        while ((count + span - 1) / span > PAGE_SIZE) { span *= PAGE_SIZE; }
+        final List<TreeNode> pages = new ArrayList<TreeNode>((int) ((count + span - 1) / span));
+        for (long i = start; i < end; i += span) {
+            pages.add(new PageTreeNode(parent, factory, (int) i, (int) Math.min(end, i + span)));
+        }
+        return pages;
+    }
+
+    private final int end;
+
+    private final ChildFactory factory;
+
+    private final int start;
+
+    private PageTreeNode(TreeNode parent, ChildFactory factory, int start, int end) {
+        super(parent);
+        this.factory = factory;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    protected List<TreeNode> createChildren() {
+        return createChildren(this, factory, start, end);
+    }
+
+    @Override
+    public boolean getAllowsChildren() {
+        return true;
+    }
+
+    @Override
+    protected String getText() {
+        return MessageFormat.format(TEXT, start, end - 1);
+    }
+
+}
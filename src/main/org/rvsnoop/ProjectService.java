@@ -16,8 +16,10 @@ import org.bushe.swing.event.annotation.EventSubscriber;
 import org.rvsnoop.event.ConnectionCreatedEvent;
 import org.rvsnoop.event.ConnectionDestroyedEvent;
 import org.rvsnoop.event.MessageReceivedEvent;
+import org.rvsnoop.event.MessagesReceivedEvent;
 import org.rvsnoop.event.ProjectClosingEvent;
 import org.rvsnoop.event.ProjectOpenedEvent;
+import rvsnoop.Record;
 import rvsnoop.RecordType;
 import rvsnoop.RvConnection;
 
@@ -153,4 +155,16 @@ public final class ProjectService {
         });
     }
 
+    @EventSubscriber
+    public void onMessagesReceived(final MessagesReceivedEvent event) {
+        if (db == null) { return; }
+        executorService.submit(new Runnable() {
+            public void run() {
+                for (Record record : event.getSource()) {
+                    db.store(record);
+                }
+            }
+        });
+    }
+
 }
@@ -0,0 +1,502 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import ca.odell.glazedlists.EventList;
+import ca.odell.glazedlists.event.ListEvent;
+import ca.odell.glazedlists.event.ListEventListener;
+import ca.odell.glazedlists.matchers.Matcher;
+import rvsnoop.Record;
+import rvsnoop.RecordTypes;
+import rvsnoop.SubjectHierarchy;
+
+/**
+ * Secondary indexes over the records in a ledger.
+ * <p>
+ * Each record in the list is given a row id when it is added, row ids only
+ * ever increase so the ids of the records in the list are always sorted and
+ * the position of a row can be found with a binary search. The index keeps
+ * lists of row ids by subject element and by send subject, and the timestamps
+ * of the records in list order. Lists by tracking id and record type are only built once a query
+ * asks for them.
+ * <p>
+ * If the list implements {@link Metadata} then the subjects and timestamps
+ * are read from it, so that the index can be built without decoding the
+ * records.
+ * <p>
+ * The index is kept up to date by listening to the list, appends and removals
+ * are handled incrementally. Removed rows are left in the key lists and are
+ * skipped when the index is read, they are purged once they make up a large
+ * part of the index. Any other change, such as an insert in the middle of the
+ * list, causes the index to be rebuilt the next time that it is used.
+ * <p>
+ * Matchers which only depend on one of the indexed keys implement
+ * {@link KeyedMatcher}, the index can then answer them by testing one record
+ * for each distinct key instead of testing every record.
+ * <p>
+ * Callers must hold at least a read lock on the list while using the index.
+ */
+public final class RecordIndex implements ListEventListener<Record> {
+
+    /**
+     * The keys which records are indexed by.
+     */
+    public enum Key {
+        /**
+         * The subject element of the record. Records with folded subjects
+         * share a wildcard element, so this is only for matchers which depend
+         * on the element rather than on the subject itself.
+         */
+        SUBJECT,
+        /** The send subject of the record, the empty string if there is none. */
+        SEND_SUBJECT,
+        /** The tracking id of the record, the empty string if there is none. */
+        TRACKING_ID,
+        /** The first record type which matches the record. */
+        TYPE
+    }
+
+    /**
+     * A matcher whose result depends only on one of the indexed keys.
+     * <p>
+     * That is, if two records have the same key then the matcher must give
+     * the same result for both of them.
+     */
+    public interface KeyedMatcher {
+
+        /**
+         * Get the key which this matcher depends on.
+         *
+         * @return The key, or <code>null</code> if the matcher can not be
+         *     answered by an index.
+         */
+        Key getIndexKey();
+
+    }
+
+    /**
+     * Implemented by lists which keep the subject and timestamp of each record
+     * outside of the record itself.
+     */
+    interface Metadata {
+
+        /**
+         * Get the send subject of a record without reading the record.
+         *
+         * @param index The position of the record.
+         * @return The send subject, or <code>null</code> if there is none.
+         */
+        String getSendSubject(int index);
+
+        /**
+         * Get the timestamp of a record without reading the record.
+         *
+         * @param index The position of the record.
+         * @return The timestamp.
+         */
+        long getTimestamp(int index);
+
+    }
+
+    /**
+     * A matcher which tests each distinct key once, see
+     * {@link RecordIndex#createKeyMatcher(Matcher)}.
+     */
+    private final class KeyMatcher implements Matcher<Record> {
+        private final Matcher<Record> delegate;
+        private final Key key;
+        private final Map<Object, Boolean> results;
+        KeyMatcher(Key key, Matcher<Record> delegate, Map<Object, Boolean> results) {
+            this.key = key;
+            this.delegate = delegate;
+            this.results = results;
+        }
+        public boolean matches(Record record) {
+            final Object value = getKey(key, record);
+            synchronized (results) {
+                final Boolean result = results.get(value);
+                if (result != null) { return result.booleanValue(); }
+            }
+            // A key which was not in the index when the matcher was created.
+            final boolean matched = delegate.matches(record);
+            synchronized (results) { results.put(value, Boolean.valueOf(matched)); }
+            return matched;
+        }
+    }
+
+    private static final class LongList {
+        long[] values = new long[4];
+        int size;
+        LongList() {
+            super();
+        }
+        void add(long value) {
+            if (size == values.length) { values = Arrays.copyOf(values, size * 2); }
+            values[size++] = value;
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The number of stale row ids to allow before they are purged. */
+    private static final int MIN_STALE_TO_PURGE = 4096;
+
+    private final EventList<Record> source;
+
+    /** The source list if it keeps subjects and timestamps, otherwise <code>null</code>. */
+    private final Metadata metadata;
+
+    private final RecordTypes recordTypes;
+
+    private boolean dirty = true;
+
+    /** The position of the first row in the row id and timestamp arrays. */
+    private int first;
+
+    private long nextRowId;
+
+    /** The row ids of the records in list order. */
+    private long[] rowIds = new long[INITIAL_CAPACITY];
+
+    private int size;
+
+    /** The number of removed row ids still held in the key lists. */
+    private long stale;
+
+    private final Map<Object, LongList> subjects = new HashMap<Object, LongList>();
+
+    private final Map<Object, LongList> sendSubjects = new HashMap<Object, LongList>();
+
+    /** The timestamps of the records in list order. */
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+
+    private boolean timestampsSorted = true;
+
+    /** The tracking id index is only built once a query needs it. */
+    private Map<Object, LongList> trackingIds;
+
+    /** The type index is only built once a query needs it. */
+    private Map<Object, LongList> types;
+
+    /** The generation of the record types that the type index was built with. */
+    private int typesGeneration;
+
+    /**
+     * Create a new index.
+     * <p>
+     * The index is built lazily the first time that it is used.
+     *
+     * @param source The list to index.
+     * @param recordTypes The record types, used to build the type index. May
+     *     be <code>null</code>, in which case matchers which depend on the type
+     *     can not be answered.
+     */
+    RecordIndex(EventList<Record> source, RecordTypes recordTypes) {
+        this.source = source;
+        this.metadata = source instanceof Metadata ? (Metadata) source : null;
+        this.recordTypes = recordTypes;
+        source.addListEventListener(this);
+    }
+
+    private static void addTo(Map<Object, LongList> map, Object key, long rowId) {
+        LongList rows = map.get(key);
+        if (rows == null) {
+            rows = new LongList();
+            map.put(key, rows);
+        }
+        rows.add(rowId);
+    }
+
+    private void append(int index) {
+        if (first + size == rowIds.length) {
+            if (first > size) {
+                // Mostly removed from the front, so just shift down.
+                System.arraycopy(rowIds, first, rowIds, 0, size);
+                System.arraycopy(timestamps, first, timestamps, 0, size);
+            } else {
+                final int capacity = Math.max(INITIAL_CAPACITY, size * 2);
+                rowIds = copyRange(rowIds, first, size, capacity);
+                timestamps = copyRange(timestamps, first, size, capacity);
+            }
+            first = 0;
+        }
+        final long rowId = nextRowId++;
+        final Record record = metadata == null ? source.get(index) : null;
+        final long timestamp = record != null ? record.getTimestamp() : metadata.getTimestamp(index);
+        if (size > 0 && timestamp < timestamps[first + size - 1]) { timestampsSorted = false; }
+        rowIds[first + size] = rowId;
+        timestamps[first + size] = timestamp;
+        ++size;
+        final String sendSubject = record != null ? record.getSendSubject() : metadata.getSendSubject(index);
+        addTo(subjects, record != null ? record.getSubject()
+                : SubjectHierarchy.INSTANCE.getSubjectElement(sendSubject), rowId);
+        addTo(sendSubjects, getSendSubjectKey(sendSubject), rowId);
+        // These need the record, so are only kept once they have been built.
+        if (trackingIds != null) { addTo(trackingIds, getKey(Key.TRACKING_ID, getRecord(record, index)), rowId); }
+        if (types != null) { addTo(types, getKey(Key.TYPE, getRecord(record, index)), rowId); }
+    }
+
+    private Map<Object, LongList> buildBuckets(Key key) {
+        final Map<Object, LongList> buckets = new HashMap<Object, LongList>();
+        for (int i = 0; i < size; ++i) {
+            addTo(buckets, getKey(key, source.get(i)), rowIds[first + i]);
+        }
+        return buckets;
+    }
+
+    private static long[] copyRange(long[] array, int from, int length, int capacity) {
+        final long[] copy = new long[capacity];
+        System.arraycopy(array, from, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * Create a matcher which gives the same results as a keyed matcher, but
+     * which only tests one record for each distinct key.
+     * <p>
+     * The keys already in the index are tested when the matcher is created,
+     * any other keys are tested the first time they are seen. This does not
+     * build the tracking id or type lists if they have not been built yet.
+     * This is used by filtered views, which have to test every record in the
+     * list.
+     *
+     * @param matcher The matcher.
+     * @return The new matcher, or <code>null</code> if the matcher can not be
+     *     answered by an index.
+     */
+    public synchronized Matcher<Record> createKeyMatcher(Matcher<Record> matcher) {
+        final Key key = getKey(matcher);
+        if (key == null || (key == Key.TYPE && recordTypes == null)) { return null; }
+        ensureBuilt();
+        final Map<Object, LongList> buckets;
+        switch (key) {
+        case SUBJECT: buckets = subjects; break;
+        case SEND_SUBJECT: buckets = sendSubjects; break;
+        case TRACKING_ID: buckets = trackingIds; break;
+        default: buckets = typesGeneration == recordTypes.getGeneration() ? types : null;
+        }
+        final Map<Object, Boolean> results = new HashMap<Object, Boolean>();
+        if (buckets == null) { return new KeyMatcher(key, matcher, results); }
+        for (Entry<Object, LongList> entry : buckets.entrySet()) {
+            final int position = firstPosition(entry.getValue());
+            if (position < 0) { continue; }
+            results.put(entry.getKey(), Boolean.valueOf(matcher.matches(source.get(position))));
+        }
+        return new KeyMatcher(key, matcher, results);
+    }
+
+    private void ensureBuilt() {
+        if (!dirty) { return; }
+        reset();
+        for (int i = 0, imax = source.size(); i < imax; ++i) {
+            append(i);
+        }
+        dirty = false;
+    }
+
+    /** The position of the first record in a bucket which is still in the list, or -1. */
+    private int firstPosition(LongList rows) {
+        for (int i = 0; i < rows.size; ++i) {
+            final int position = positionOf(rows.values[i]);
+            if (position >= 0) { return position; }
+        }
+        return -1;
+    }
+
+    private Map<Object, LongList> getBuckets(Key key) {
+        switch (key) {
+        case SUBJECT: return subjects;
+        case SEND_SUBJECT: return sendSubjects;
+        case TRACKING_ID:
+            if (trackingIds == null) { trackingIds = buildBuckets(key); }
+            return trackingIds;
+        case TYPE:
+            if (recordTypes == null) { return null; }
+            final int generation = recordTypes.getGeneration();
+            if (types == null || generation != typesGeneration) {
+                typesGeneration = generation;
+                types = buildBuckets(key);
+            }
+            return types;
+        default: throw new IllegalArgumentException(String.valueOf(key));
+        }
+    }
+
+    private static Key getKey(Matcher<Record> matcher) {
+        return matcher instanceof KeyedMatcher ? ((KeyedMatcher) matcher).getIndexKey() : null;
+    }
+
+    private Object getKey(Key key, Record record) {
+        switch (key) {
+        case SUBJECT: return record.getSubject();
+        case SEND_SUBJECT: return getSendSubjectKey(record.getSendSubject());
+        case TRACKING_ID: return record.getTrackingId();
+        case TYPE: return recordTypes.getFirstMatchingType(record);
+        default: throw new IllegalArgumentException(String.valueOf(key));
+        }
+    }
+
+    /** Records without a subject may have a null, empty or placeholder send subject. */
+    private static String getSendSubjectKey(String sendSubject) {
+        return sendSubject == null || SubjectHierarchy.NO_SUBJECT_LABEL.equals(sendSubject) ? "" : sendSubject;
+    }
+
+    private Record getRecord(Record record, int index) {
+        return record != null ? record : source.get(index);
+    }
+
+    /**
+     * Find the positions of the records with timestamps in a given range.
+     *
+     * @param from The earliest timestamp to include.
+     * @param to The latest timestamp to include.
+     * @return The positions of the records, in ascending order.
+     */
+    public synchronized int[] findBetween(long from, long to) {
+        ensureBuilt();
+        if (timestampsSorted) {
+            final int start = lowerBound(from);
+            final int end = lowerBound(to == Long.MAX_VALUE ? to : to + 1);
+            final int[] positions = new int[Math.max(0, end - start)];
+            for (int i = 0; i < positions.length; ++i) { positions[i] = start + i; }
+            return positions;
+        }
+        final int[] temp = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; ++i) {
+            final long timestamp = timestamps[first + i];
+            if (timestamp >= from && timestamp <= to) { temp[count++] = i; }
+        }
+        return Arrays.copyOf(temp, count);
+    }
+
+    /**
+     * Answer a matcher using the indexes.
+     *
+     * @param matcher The matcher.
+     * @return The positions of all matching records in ascending order, or
+     *     <code>null</code> if the matcher can not be answered by an index.
+     */
+    public synchronized int[] findAll(Matcher<Record> matcher) {
+        final Key key = getKey(matcher);
+        if (key == null) { return null; }
+        ensureBuilt();
+        final Map<Object, LongList> buckets = getBuckets(key);
+        if (buckets == null) { return null; }
+        int[] positions = new int[64];
+        int count = 0;
+        for (LongList rows : buckets.values()) {
+            // Test the first live record in the bucket.
+            final int head = firstPosition(rows);
+            if (head < 0 || !matcher.matches(source.get(head))) { continue; }
+            for (int i = 0; i < rows.size; ++i) {
+                final int position = positionOf(rows.values[i]);
+                if (position < 0) { continue; }
+                if (count == positions.length) { positions = Arrays.copyOf(positions, count * 2); }
+                positions[count++] = position;
+            }
+        }
+        positions = Arrays.copyOf(positions, count);
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    public synchronized void listChanged(ListEvent<Record> changes) {
+        if (dirty) { return; }
+        while (changes.next()) {
+            final int index = changes.getIndex();
+            final int type = changes.getType();
+            if (type == ListEvent.INSERT && index == size) {
+                append(index);
+            } else if (type == ListEvent.DELETE) {
+                remove(index);
+            } else {
+                // Inserts in the middle and updates are rare, just rebuild.
+                dirty = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Find the first position with a timestamp which is not less than the
+     * given one. Only valid when the timestamps are sorted.
+     */
+    private int lowerBound(long timestamp) {
+        int low = first, high = first + size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - first;
+    }
+
+    private int positionOf(long rowId) {
+        if (size == 0) { return -1; }
+        final long base = rowIds[first];
+        if (rowIds[first + size - 1] - base == size - 1) {
+            // No gaps, which is the usual case when records are only
+            // appended and evicted from the head.
+            final long position = rowId - base;
+            return position >= 0 && position < size ? (int) position : -1;
+        }
+        final int found = Arrays.binarySearch(rowIds, first, first + size, rowId);
+        return found >= 0 ? found - first : -1;
+    }
+
+    private void purge(Map<Object, LongList> buckets) {
+        for (Iterator<LongList> i = buckets.values().iterator(); i.hasNext();) {
+            final LongList rows = i.next();
+            int kept = 0;
+            for (int j = 0; j < rows.size; ++j) {
+                if (positionOf(rows.values[j]) >= 0) { rows.values[kept++] = rows.values[j]; }
+            }
+            rows.size = kept;
+            if (kept == 0) { i.remove(); }
+        }
+    }
+
+    private void remove(int index) {
+        if (index == 0) {
+            ++first;
+        } else {
+            final int from = first + index + 1;
+            System.arraycopy(rowIds, from, rowIds, from - 1, size - index - 1);
+            System.arraycopy(timestamps, from, timestamps, from - 1, size - index - 1);
+        }
+        --size;
+        ++stale;
+        if (size == 0) {
+            reset();
+        } else if (stale > MIN_STALE_TO_PURGE && stale > size) {
+            purge(subjects);
+            purge(sendSubjects);
+            if (trackingIds != null) { purge(trackingIds); }
+            if (types != null) { purge(types); }
+            stale = 0;
+        }
+    }
+
+    private void reset() {
+        first = 0;
+        size = 0;
+        stale = 0;
+        timestampsSorted = true;
+        subjects.clear();
+        sendSubjects.clear();
+        if (trackingIds != null) { trackingIds.clear(); }
+        if (types != null) { types.clear(); }
+    }
+
+}
@@ -0,0 +1,410 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+import org.bushe.swing.event.EventBus;
+import org.rvsnoop.event.MessagesReceivedEvent;
+import rvsnoop.Record;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The ingest stage that sits between the Rendezvous dispatcher threads and the
+ * rest of the application.
+ * <p>
+ * Records are placed into a bounded ring buffer by the dispatcher threads and
+ * are drained by a single daemon thread which publishes them in batches as
+ * {@link MessagesReceivedEvent}s. This means that the ledger, subject
+ * hierarchy and so on only need to lock and fire list events once per batch
+ * instead of once per message.
+ * <p>
+ * A batch is published as soon as it is full or when the oldest record in it
+ * has been waiting for longer than the maximum latency, whichever comes first.
+ * Before a batch is published each record in it is {@linkplain Record#compact()
+ * compacted} and {@linkplain Record#resolve() resolved} on the ingest thread.
+ * The ingest thread waits for each batch to be handled on the event dispatch
+ * thread before taking the next one, so when the user interface falls behind
+ * the buffer fills up and the overload policy takes effect.
+ * <p>
+ * The ingester is overloaded when the buffer is full or when the heap is
+ * nearly exhausted. What happens then depends on the {@link OverloadPolicy}: by
+ * default {@link #offer(Record)} will block the caller, this pushes back on to
+ * the Rendezvous queue rather than dropping messages. The other policies drop,
+ * sample or spill records to disk, and a count of dropped records is kept.
+ */
+public final class RecordIngester {
+
+    /** The default capacity of the ring buffer, in records. */
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    /** The default maximum number of records to publish in a single batch. */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 4096;
+
+    /** The default maximum time a record will wait before being published. */
+    public static final long DEFAULT_MAX_LATENCY_MILLIS = 50;
+
+    /** The default fraction of the maximum heap size above which the ingester is overloaded. */
+    public static final double DEFAULT_MAX_HEAP_FRACTION = 0.9;
+
+    /** The default sampling rate used by {@link OverloadPolicy#SAMPLE}. */
+    public static final int DEFAULT_SAMPLE_RATE = 10;
+
+    /** How long the ingest thread waits for new records when there is nothing to do. */
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private static final Logger logger = Logger.getLogger();
+
+    private static RecordIngester instance;
+
+    /**
+     * Get the shared ingester, starting it if necessary.
+     *
+     * @return The shared ingester.
+     */
+    public static synchronized RecordIngester getInstance() {
+        if (instance == null) {
+            instance = new RecordIngester(DEFAULT_CAPACITY, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_LATENCY_MILLIS);
+            instance.start();
+        }
+        return instance;
+    }
+
+    private final BlockingQueue<Record> buffer;
+
+    private final int maxBatchSize;
+
+    private final long maxLatencyNanos;
+
+    /** Above this depth the buffer is close enough to full to start sampling. */
+    private final int highWaterMark;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final AtomicLong spilledCount = new AtomicLong();
+
+    private final ConcurrentMap<String, AtomicInteger> sampleCounters = new ConcurrentHashMap<String, AtomicInteger>();
+
+    private final SpillFile spillFile = new SpillFile();
+
+    private Thread drainer;
+
+    private volatile boolean heapLow;
+
+    private volatile double maxHeapFraction = DEFAULT_MAX_HEAP_FRACTION;
+
+    private volatile OverloadPolicy overloadPolicy = OverloadPolicy.BLOCK;
+
+    private volatile int sampleRate = DEFAULT_SAMPLE_RATE;
+
+    /** Set while records are going to the spill file, guarded by the spill file. */
+    private volatile boolean spilling;
+
+    /**
+     * Create a new ingester.
+     *
+     * @param capacity The maximum number of records to buffer.
+     * @param maxBatchSize The maximum number of records to publish in a single event.
+     * @param maxLatencyMillis The maximum time to wait for a batch to fill.
+     */
+    public RecordIngester(int capacity, int maxBatchSize, long maxLatencyMillis) {
+        checkArgument(capacity > 0, "Capacity must be positive.");
+        checkArgument(maxBatchSize > 0, "Maximum batch size must be positive.");
+        checkArgument(maxLatencyMillis >= 0, "Maximum latency must not be negative.");
+        this.buffer = new ArrayBlockingQueue<Record>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        this.highWaterMark = Math.max(1, capacity - capacity / 4);
+    }
+
+    /**
+     * Check whether the heap is close to being exhausted.
+     *
+     * @return <code>true</code> if more than the maximum fraction of the heap is in use.
+     */
+    private boolean checkHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        final long used = runtime.totalMemory() - runtime.freeMemory();
+        return used > runtime.maxMemory() * maxHeapFraction;
+    }
+
+    /**
+     * The number of records which have been discarded because the ingester
+     * was overloaded.
+     *
+     * @return The number of records dropped since the ingester was started.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Get the current overload policy.
+     *
+     * @return The overload policy.
+     */
+    public OverloadPolicy getOverloadPolicy() {
+        return overloadPolicy;
+    }
+
+    /**
+     * Get the sampling rate used by the {@link OverloadPolicy#SAMPLE} policy.
+     *
+     * @return One in every this many records on each subject will be kept.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * The number of records which have been written to the spill file.
+     *
+     * @return The number of records spilled since the ingester was started.
+     */
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    /**
+     * Is the ingester currently overloaded?
+     *
+     * @return <code>true</code> if records are being dropped, sampled or spilled.
+     */
+    public boolean isOverloaded() {
+        return heapLow || spilling || buffer.remainingCapacity() == 0;
+    }
+
+    /**
+     * Wait for the next batch of records.
+     * <p>
+     * This blocks until at least one record is available, it then continues to
+     * collect records until the batch is full or the latency limit is reached.
+     * Records in the spill file are returned as soon as the buffer has been
+     * emptied, a full batch at a time, until the spill file is empty.
+     *
+     * @return The next batch, never empty.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    List<Record> nextBatch() throws InterruptedException {
+        Record first = buffer.poll();
+        while (first == null) {
+            // New records go to the spill file while it is in use, so the
+            // buffer only empties once all records which arrived before
+            // spilling started have been published.
+            if (spilling) {
+                heapLow = checkHeap();
+                if (!heapLow) {
+                    final List<Record> spilled = readSpilled();
+                    if (!spilled.isEmpty()) { return spilled; }
+                }
+            }
+            first = buffer.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (first == null) { heapLow = checkHeap(); }
+        }
+        final List<Record> batch = new ArrayList<Record>(Math.min(maxBatchSize, buffer.size() + 1));
+        batch.add(first);
+        final long deadline = System.nanoTime() + maxLatencyNanos;
+        while (batch.size() < maxBatchSize) {
+            if (buffer.drainTo(batch, maxBatchSize - batch.size()) > 0) { continue; }
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) { break; }
+            final Record next = buffer.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) { break; }
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    /**
+     * Add a record to the ingest buffer.
+     * <p>
+     * If the ingester is overloaded then the record will be handled according
+     * to the current {@link OverloadPolicy}.
+     *
+     * @param record The record to add.
+     */
+    public void offer(Record record) {
+        switch (overloadPolicy) {
+        case DROP_NEWEST:
+            if (heapLow || !buffer.offer(record)) { droppedCount.incrementAndGet(); }
+            break;
+        case DROP_OLDEST:
+            if (heapLow && buffer.poll() != null) { droppedCount.incrementAndGet(); }
+            while (!buffer.offer(record)) {
+                if (buffer.poll() != null) { droppedCount.incrementAndGet(); }
+            }
+            break;
+        case SAMPLE:
+            if ((heapLow || buffer.size() >= highWaterMark) && !isSampled(record)
+                    || !buffer.offer(record)) {
+                droppedCount.incrementAndGet();
+            }
+            break;
+        case SPILL_TO_DISK:
+            if (spilling || heapLow || !buffer.offer(record)) { spill(record); }
+            break;
+        default:
+            put(record);
+        }
+    }
+
+    private boolean isSampled(Record record) {
+        final String subject = record.getMessage().getSendSubject();
+        final String key = subject != null ? subject : "";
+        AtomicInteger counter = sampleCounters.get(key);
+        if (counter == null) {
+            final AtomicInteger existing = sampleCounters.putIfAbsent(key, counter = new AtomicInteger());
+            if (existing != null) { counter = existing; }
+        }
+        return counter.getAndIncrement() % sampleRate == 0;
+    }
+
+    private void put(Record record) {
+        try {
+            buffer.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn(e, "Interrupted while queueing record %s.", record);
+        }
+    }
+
+    private List<Record> readSpilled() {
+        synchronized (spillFile) {
+            final List<Record> records = spillFile.read(maxBatchSize);
+            if (spillFile.isEmpty()) {
+                spilling = false;
+                logger.info("Finished reading records back from the spill file.");
+            }
+            return records;
+        }
+    }
+
+    /**
+     * Set the fraction of the maximum heap size above which the ingester is
+     * considered to be overloaded.
+     *
+     * @param fraction A value between 0 and 1.
+     */
+    public void setMaxHeapFraction(double fraction) {
+        checkArgument(fraction > 0 && fraction <= 1, "Heap fraction must be between 0 and 1.");
+        this.maxHeapFraction = fraction;
+    }
+
+    /**
+     * Set the policy to apply when the ingester is overloaded.
+     *
+     * @param policy The overload policy.
+     * @param sampleRate The sampling rate to use with {@link OverloadPolicy#SAMPLE},
+     *     ignored by the other policies.
+     */
+    public void setOverloadPolicy(OverloadPolicy policy, int sampleRate) {
+        checkNotNull(policy, "Overload policy cannot be null.");
+        checkArgument(sampleRate > 0, "Sample rate must be positive.");
+        this.sampleRate = sampleRate;
+        this.overloadPolicy = policy;
+    }
+
+    private void spill(Record record) {
+        synchronized (spillFile) {
+            // The drainer may have emptied the spill file since we checked.
+            if (!spilling && !heapLow && buffer.offer(record)) { return; }
+            if (!spilling) { logger.warn("Ingest buffer is full, spilling records to disk."); }
+            spilling = true;
+            if (spillFile.write(record)) {
+                spilledCount.incrementAndGet();
+            } else {
+                droppedCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * The number of records currently waiting to be published.
+     *
+     * @return The number of records buffered.
+     */
+    public int size() {
+        return buffer.size();
+    }
+
+    /**
+     * Start the thread that publishes batches.
+     */
+    public synchronized void start() {
+        if (drainer != null) { return; }
+        drainer = new Thread(new Drainer(), "RvSnoop-Ingest");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Stop the thread that publishes batches.
+     * <p>
+     * Any records still in the buffer or spill file are discarded.
+     */
+    public synchronized void stop() {
+        if (drainer == null) { return; }
+        drainer.interrupt();
+        drainer = null;
+        buffer.clear();
+        synchronized (spillFile) {
+            spillFile.clear();
+            spilling = false;
+        }
+        sampleCounters.clear();
+    }
+
+    private final class Drainer implements Runnable {
+        Drainer() {
+            super();
+        }
+        /**
+         * Publish on the event dispatch thread and wait for the subscribers,
+         * so that back pressure from the user interface reaches the buffer.
+         */
+        private void publish(final MessagesReceivedEvent event) throws InterruptedException, InvocationTargetException {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    EventBus.publish(event);
+                }
+            });
+        }
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    final List<Record> batch = nextBatch();
+                    heapLow = checkHeap();
+                    try {
+                        for (int i = 0, imax = batch.size(); i < imax; ++i) {
+                            final Record record = batch.get(i);
+                            record.compact();
+                            record.resolve();
+                        }
+                        publish(new MessagesReceivedEvent(batch));
+                    } catch (InvocationTargetException e) {
+                        logger.error(e.getCause(), "Could not publish a batch of %d records.", batch.size());
+                    } catch (RuntimeException e) {
+                        logger.error(e, "Could not publish a batch of %d records.", batch.size());
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Stopped, just exit.
+            }
+        }
+    }
+
+}
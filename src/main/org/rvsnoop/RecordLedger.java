@@ -10,11 +10,15 @@ import ca.odell.glazedlists.swing.EventTableModel;
 import ca.odell.glazedlists.util.concurrent.Lock;
 import org.jdesktop.application.ApplicationContext;
 import org.rvsnoop.ui.RecordLedgerFormat;
+import org.rvsnoop.ui.ThrottledEventList;
 import rvsnoop.Record;
 import rvsnoop.RecordTypes;
 
+import java.util.Arrays;
 import java.util.Collection;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 /**
  * The record ledger is the central record store in RvSnoop.
  * <p>
@@ -23,6 +27,12 @@ import java.util.Collection;
  * the list, different list implementations in subclasses are used to handle the
  * different storage mechanisms that are supported.
  * <p>
+ * The find methods use a {@link RecordIndex} to answer matchers which only
+ * depend on the subject, type or tracking id of a record, other matchers are
+ * answered by scanning the ledger. The index is created the first time that
+ * it is needed, subclasses whose records can not be indexed cheaply may turn
+ * it off by overriding {@link #isIndexed()}.
+ * <p>
  * For more detailed information on how the various record ledger
  * implementations are structured and used see the ‘Record Ledger’ chapter in
  * the developers guide.
@@ -42,6 +52,8 @@ public abstract class RecordLedger {
 
     protected final RecordTypes recordTypes;
 
+    private RecordIndex index;
+
     /**
      * Create a new record ledger.
      *
@@ -147,8 +159,29 @@ public abstract class RecordLedger {
      * @return A new table model.
      */
     public final EventTableModel<Record> createTableModel() {
+        return createTableModel(0);
+    }
+
+    /**
+     * Create and returns a new table model that shows the contents of this
+     * ledger, and which is updated at most a given number of times per second.
+     * <p>
+     * The changes to the ledger between updates are collected and published to
+     * the table as a single event on the event dispatch thread, so a ledger
+     * which receives many records per second does not flood the table with
+     * events. The rows in the model may lag the ledger by up to one refresh
+     * period.
+     * <p>
+     * This method does not lock the underlying list.
+     *
+     * @param refreshRate The maximum number of updates per second, or 0 to
+     *     update the table as soon as the ledger changes.
+     * @return A new table model.
+     */
+    public final EventTableModel<Record> createTableModel(int refreshRate) {
+        checkArgument(refreshRate >= 0, "The refresh rate cannot be negative.");
         final RecordLedgerFormat format = new RecordLedgerFormat(context, recordTypes, null);
-        final EventTableModel<Record> model = new EventTableModel<Record>(list, format);
+        final EventTableModel<Record> model = newTableModel(format, refreshRate);
         format.setModel(model);
         return model;
     }
@@ -167,6 +200,11 @@ public abstract class RecordLedger {
         final Lock lock = list.getReadWriteLock().readLock();
         lock.lock();
         try {
+            final int[] indices = findAllInIndex(criteria);
+            if (indices != null) {
+                final int found = pickIndex(indices, startIndex);
+                return found >= 0 ? list.get(found) : null;
+            }
             for (int i = startIndex, imax = list.size(); i < imax; ++i) {
                 final Record record = list.get(i);
                 if (criteria.matches(record)) return record;
@@ -192,8 +230,10 @@ public abstract class RecordLedger {
     public final int[] findAllIndices(Matcher<Record> criteria) {
         final Lock lock = list.getReadWriteLock().readLock();
         lock.lock();
-        final int[] temp = new int[list.size()];
         try {
+            final int[] found = findAllInIndex(criteria);
+            if (found != null) { return found; }
+            final int[] temp = new int[list.size()];
             int pos = 0;
             for (int i = 0, imax = list.size(); i < imax; ++i) {
                 final Record record = list.get(i);
@@ -207,6 +247,81 @@ public abstract class RecordLedger {
         }
     }
 
+    /**
+     * Start a search for all records matching a given criterion which runs on
+     * several threads.
+     * <p>
+     * This method acquires a read lock on the underlying list while it notes
+     * the sequence numbers of the records at the chunk boundaries, the search
+     * itself reads the ledger a chunk at a time with
+     * {@link #getRangeAfter(long, long, int, Record[])}. If the criterion can
+     * be answered by the index then the search returned will already have
+     * finished.
+     *
+     * @param criteria How to match records, this must be safe to call from
+     *     several threads at once.
+     * @param listener Notified as parts of the ledger are searched, may be
+     *     <code>null</code>.
+     * @return The running search.
+     */
+    public final LedgerSearch findAllIndicesInParallel(Matcher<Record> criteria, LedgerSearch.Listener listener) {
+        return findAllIndicesInParallel(criteria, LedgerSearch.DEFAULT_CHUNK_SIZE, listener);
+    }
+
+    final LedgerSearch findAllIndicesInParallel(Matcher<Record> criteria, int chunkSize, LedgerSearch.Listener listener) {
+        final int size;
+        final long[] bounds;
+        final int[] found;
+        final Record[] records;
+        final Lock lock = list.getReadWriteLock().readLock();
+        lock.lock();
+        try {
+            size = list.size();
+            bounds = new long[(size + chunkSize - 1) / chunkSize];
+            for (int i = 0; i < bounds.length; ++i) {
+                bounds[i] = list.get(Math.min((i + 1) * chunkSize, size) - 1).getSequenceNumber();
+            }
+            found = findAllInIndex(criteria);
+            records = found != null ? new Record[found.length] : null;
+            for (int i = 0; records != null && i < found.length; ++i) {
+                records[i] = list.get(found[i]);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (found != null) { return LedgerSearch.completed(this, size, bounds, found, records, listener); }
+        final LedgerSearch search = new LedgerSearch(this, size, bounds, criteria, chunkSize, listener);
+        search.start();
+        return search;
+    }
+
+    /**
+     * Find the positions of all records with timestamps in a given range.
+     * <p>
+     * This method acquires a read lock on the underlying list.
+     *
+     * @param from The earliest timestamp to include.
+     * @param to The latest timestamp to include.
+     * @return The indices of the matching records, in ascending order.
+     */
+    public final int[] findAllIndicesBetween(long from, long to) {
+        final Lock lock = list.getReadWriteLock().readLock();
+        lock.lock();
+        try {
+            final RecordIndex recordIndex = getIndex();
+            if (recordIndex != null) { return recordIndex.findBetween(from, to); }
+            final int[] temp = new int[list.size()];
+            int pos = 0;
+            for (int i = 0, imax = list.size(); i < imax; ++i) {
+                final long timestamp = list.get(i).getTimestamp();
+                if (timestamp >= from && timestamp <= to) { temp[pos++] = i; }
+            }
+            return Arrays.copyOf(temp, pos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Find a specific record's position in the ledger.
      * <p>
@@ -221,6 +336,8 @@ public abstract class RecordLedger {
         final Lock lock = list.getReadWriteLock().readLock();
         lock.lock();
         try {
+            final int[] indices = findAllInIndex(criteria);
+            if (indices != null) { return pickIndex(indices, startIndex); }
             for (int i = startIndex, imax = list.size(); i < imax; ++i) {
                 final Record record = list.get(i);
                 if (criteria.matches(record)) return i;
@@ -275,6 +392,137 @@ public abstract class RecordLedger {
         return records;
     }
 
+    /**
+     * Copy a range of records from the ledger.
+     * <p>
+     * This method acquires a read lock on the underlying list for the copy
+     * only, so a large ledger can be read in chunks without holding up
+     * writers for long.
+     *
+     * @param start The index of the first record to copy.
+     * @param buffer The array to copy the records into.
+     * @return The number of records copied, this is less than the length of
+     *     the buffer if the end of the ledger or <code>last</code> was
+     *     reached.
+     */
+    public final int getRange(int start, Record[] buffer) {
+        final Lock lock = list.getReadWriteLock().readLock();
+        lock.lock();
+        try {
+            final int count = Math.max(0, Math.min(buffer.length, list.size() - start));
+            for (int i = 0; i < count; ++i) {
+                buffer[i] = list.get(start + i);
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copy the records which follow a given record from the ledger.
+     * <p>
+     * This is used to read a ledger in chunks while it is changing: records
+     * which are removed from the ledger between chunks shift the positions of
+     * the rest, so each chunk starts after the sequence number of the last
+     * record read instead of at a fixed position. The hint is where that
+     * record was expected to be, so a ledger which has not changed is not
+     * searched. Records are kept in the order that they arrived in, so when
+     * the record is not at the hint the first record which came after it is
+     * found with a binary search. The copy stops at the first record which
+     * came after <code>last</code>.
+     * <p>
+     * This method acquires a read lock on the underlying list for the copy
+     * only.
+     *
+     * @param after The sequence number of the last record read, or
+     *     {@link Long#MIN_VALUE} to start at the beginning of the ledger.
+     * @param last The sequence number of the last record to copy.
+     * @param hint The position of the record after the last one read, if
+     *     the ledger has not changed.
+     * @param buffer The array to copy the records into.
+     * @return The number of records copied, this is less than the length of
+     *     the buffer if the end of the ledger or <code>last</code> was
+     *     reached.
+     * @see #getLastSequenceNumber()
+     */
+    public final int getRangeAfter(long after, long last, int hint, Record[] buffer) {
+        final Lock lock = list.getReadWriteLock().readLock();
+        lock.lock();
+        try {
+            final int size = list.size();
+            int position = Math.max(0, Math.min(hint, size));
+            if (after != Long.MIN_VALUE
+                    && (position == 0 || list.get(position - 1).getSequenceNumber() != after)) {
+                int low = 0, high = size;
+                while (low < high) {
+                    final int mid = (low + high) >>> 1;
+                    if (list.get(mid).getSequenceNumber() <= after) { low = mid + 1; } else { high = mid; }
+                }
+                position = low;
+            }
+            int count = 0;
+            for (; position < size && count < buffer.length; ++position) {
+                final Record record = list.get(position);
+                if (record.getSequenceNumber() > last) { break; }
+                buffer[count++] = record;
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the sequence number of the last record in the ledger.
+     * <p>
+     * This method acquires a read lock on the underlying list.
+     *
+     * @return The sequence number, or {@link Long#MIN_VALUE} if the ledger is
+     *     empty.
+     */
+    public final long getLastSequenceNumber() {
+        final Lock lock = list.getReadWriteLock().readLock();
+        lock.lock();
+        try {
+            final int size = list.size();
+            return size > 0 ? list.get(size - 1).getSequenceNumber() : Long.MIN_VALUE;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Create a matcher which gives the same results as another, but which uses
+     * the index to avoid testing more than one record with the same key.
+     * <p>
+     * This is used by the {@link FilteredLedgerView}, which has to test every
+     * record in the ledger each time that a filter changes.
+     * <p>
+     * This method acquires a read lock on the underlying list.
+     *
+     * @param criteria How to match records.
+     * @return The new matcher, or the original one if the index can not help.
+     * @see RecordIndex#createKeyMatcher(Matcher)
+     */
+    Matcher<Record> createKeyMatcher(Matcher<Record> criteria) {
+        final Lock lock = list.getReadWriteLock().readLock();
+        lock.lock();
+        try {
+            final RecordIndex recordIndex = getIndex();
+            final Matcher<Record> matcher = recordIndex != null ? recordIndex.createKeyMatcher(criteria) : null;
+            return matcher != null ? matcher : criteria;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The caller must hold a lock on the underlying list. */
+    private int[] findAllInIndex(Matcher<Record> criteria) {
+        final RecordIndex recordIndex = getIndex();
+        return recordIndex != null ? recordIndex.findAll(criteria) : null;
+    }
+
     /**
      * Get the underlying event list used by this ledger.
      * <p>
@@ -287,6 +535,85 @@ public abstract class RecordLedger {
         return list;
     }
 
+    /**
+     * Get the record types used by this ledger.
+     *
+     * @return The record types.
+     */
+    public final RecordTypes getRecordTypes() {
+        return recordTypes;
+    }
+
+    /**
+     * Get the index for this ledger, creating it if needed.
+     * <p>
+     * The caller must hold a lock on the underlying list.
+     *
+     * @return The index, or <code>null</code> if this ledger is not indexed.
+     */
+    private synchronized RecordIndex getIndex() {
+        if (index == null && isIndexed()) { index = new RecordIndex(list, recordTypes); }
+        return index;
+    }
+
+    /**
+     * Should the find methods use an index?
+     * <p>
+     * An index is built by reading every record in the ledger, subclasses
+     * which would have to decode their records to do this, and do not keep
+     * the subject and timestamp of each record elsewhere, should return
+     * <code>false</code>.
+     *
+     * @return <code>true</code> by default.
+     */
+    protected boolean isIndexed() {
+        return true;
+    }
+
+    /**
+     * Create the table model for {@link #createTableModel(int)}.
+     *
+     * @param format The format for the new model.
+     * @param refreshRate The maximum number of updates per second, or 0 to
+     *     update the table as soon as the ledger changes.
+     * @return A new table model.
+     */
+    protected EventTableModel<Record> newTableModel(RecordLedgerFormat format, int refreshRate) {
+        return newTableModel(list, format, refreshRate);
+    }
+
+    /**
+     * Create a table model which shows the rows of a list that is either the
+     * list underlying this ledger or a view of it, such as the filter used by
+     * a {@link FilteredLedgerView}.
+     * <p>
+     * The model keeps a copy of the rows so that it can be safely read on the
+     * event dispatch thread, subclasses which do not keep their records on the
+     * heap should override this to read the rows directly.
+     *
+     * @param rows The rows to show, this shares the lock of the list
+     *     underlying this ledger.
+     * @param format The format for the new model.
+     * @param refreshRate The maximum number of updates per second, or 0 to
+     *     update the table as soon as the rows change.
+     * @return A new table model.
+     */
+    protected EventTableModel<Record> newTableModel(EventList<Record> rows, RecordLedgerFormat format, int refreshRate) {
+        final EventList<Record> source = refreshRate > 0 ? new ThrottledEventList<Record>(rows, refreshRate) : rows;
+        return new EventTableModel<Record>(source, format);
+    }
+
+    /**
+     * Choose the first of a sorted set of indices which is not before a
+     * starting point, wrapping around to the beginning if there is none.
+     */
+    private static int pickIndex(int[] indices, int startIndex) {
+        if (indices.length == 0) { return -1; }
+        final int found = Arrays.binarySearch(indices, startIndex);
+        final int pos = found >= 0 ? found : -found - 1;
+        return pos < indices.length ? indices[pos] : indices[0];
+    }
+
     public final boolean isEmpty() {
         Lock lock = list.getReadWriteLock().readLock();
         lock.lock();
@@ -0,0 +1,335 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import ca.odell.glazedlists.AbstractEventList;
+import ca.odell.glazedlists.util.concurrent.LockFactory;
+import rvsnoop.Record;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An event list of records held in a circular array which discards the oldest
+ * records once it reaches a limit.
+ * <p>
+ * The list may be limited by the number of records, by their total size in
+ * bytes, or by age. Records are evicted from the head of the list as part of
+ * the same list event that adds new records, so listeners always see a list
+ * which is within its limits. Adding to the tail and evicting from the head
+ * are amortised O(1) operations.
+ * <p>
+ * The age limit is measured back from the timestamp of the newest record, not
+ * from the current time, so that imported records are not evicted as soon as
+ * they are added.
+ */
+final class RecordRingBuffer extends AbstractEventList<Record> {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The backing array, the length of this is always a power of two. */
+    private Record[] elements = new Record[INITIAL_CAPACITY];
+
+    /** Records evicted but not yet drained. */
+    private List<Record> evicted = new ArrayList<Record>();
+
+    /** The position of the first record in the backing array. */
+    private int head;
+
+    private final long maxAgeMillis;
+
+    private final long maxBytes;
+
+    private final int maxRecords;
+
+    private long numEvicted;
+
+    private int size;
+
+    private long sizeInBytes;
+
+    /**
+     * Create a new ring buffer.
+     *
+     * @param maxRecords The maximum number of records to hold, or 0 for no limit.
+     * @param maxBytes The maximum total size of the records, or 0 for no limit.
+     * @param maxAgeMillis The maximum age of the oldest record relative to the
+     *     newest, or 0 for no limit.
+     */
+    RecordRingBuffer(int maxRecords, long maxBytes, long maxAgeMillis) {
+        super(null);
+        checkArgument(maxRecords >= 0, "Maximum number of records cannot be negative.");
+        checkArgument(maxBytes >= 0, "Maximum size cannot be negative.");
+        checkArgument(maxAgeMillis >= 0, "Maximum age cannot be negative.");
+        this.readWriteLock = LockFactory.DEFAULT.createReadWriteLock();
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    @Override
+    public void add(int index, Record record) {
+        addAll(index, Collections.singletonList(record));
+    }
+
+    @Override
+    public boolean add(Record record) {
+        add(size, record);
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Record> records) {
+        return addAll(size, records);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends Record> records) {
+        if (index < 0 || index > size) { throw new IndexOutOfBoundsException(index + " out of 0.." + size); }
+        if (records.isEmpty()) { return false; }
+        final int oldSize = size;
+        final int added = records.size();
+        ensureCapacity(size + added);
+        int i = index;
+        for (Record record : records) {
+            insert(i++, record);
+        }
+        if (index != oldSize) {
+            // Not an append, so report the insert and any evictions separately.
+            updates.beginEvent();
+            updates.addInsert(index, index + added - 1);
+            updates.commitEvent();
+            evict();
+            return true;
+        }
+        // Records which are added and evicted at once are never reported,
+        // Glazed Lists does not allow an event to delete its own inserts.
+        final int count = countEvictable();
+        final int deletedOld = Math.min(count, oldSize);
+        final int keptNew = added - Math.max(0, count - oldSize);
+        updates.beginEvent();
+        if (deletedOld > 0) { updates.addDelete(0, deletedOld - 1); }
+        if (keptNew > 0) { updates.addInsert(oldSize - deletedOld, oldSize - deletedOld + keptNew - 1); }
+        evictHead(count);
+        updates.commitEvent();
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        if (size == 0) { return; }
+        updates.beginEvent();
+        updates.addDelete(0, size - 1);
+        elements = new Record[INITIAL_CAPACITY];
+        head = 0;
+        size = 0;
+        sizeInBytes = 0;
+        updates.commitEvent();
+    }
+
+    /**
+     * Get the records which have been evicted since this was last called.
+     *
+     * @return The evicted records, oldest first.
+     */
+    List<Record> drainEvicted() {
+        if (evicted.isEmpty()) { return Collections.emptyList(); }
+        final List<Record> drained = evicted;
+        evicted = new ArrayList<Record>();
+        return drained;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= elements.length) { return; }
+        int newLength = elements.length;
+        while (newLength < capacity) { newLength <<= 1; }
+        final Record[] newElements = new Record[newLength];
+        for (int i = 0; i < size; ++i) {
+            newElements[i] = elements[slot(i)];
+        }
+        elements = newElements;
+        head = 0;
+    }
+
+    /**
+     * Work out how many records must be removed from the head of the list for
+     * it to be within its limits.
+     *
+     * @return The number of records to evict, at least one record is always kept.
+     */
+    private int countEvictable() {
+        int count = 0;
+        if (maxRecords > 0 && size > maxRecords) {
+            count = size - maxRecords;
+        }
+        if (maxBytes > 0) {
+            long bytes = sizeInBytes;
+            for (int i = 0; i < count; ++i) { bytes -= elements[slot(i)].getSizeInBytes(); }
+            while (bytes > maxBytes && count < size - 1) {
+                bytes -= elements[slot(count++)].getSizeInBytes();
+            }
+        }
+        if (maxAgeMillis > 0 && size > 0) {
+            final long oldest = elements[slot(size - 1)].getTimestamp() - maxAgeMillis;
+            while (count < size - 1 && elements[slot(count)].getTimestamp() < oldest) { ++count; }
+        }
+        return count;
+    }
+
+    /**
+     * Remove records from the head of the list until it is within its limits,
+     * firing a single event.
+     */
+    private void evict() {
+        final int count = countEvictable();
+        if (count == 0) { return; }
+        updates.beginEvent();
+        updates.addDelete(0, count - 1);
+        evictHead(count);
+        updates.commitEvent();
+    }
+
+    private void evictHead(int count) {
+        for (int i = 0; i < count; ++i) { evicted.add(elements[slot(i)]); }
+        removeHead(count);
+        numEvicted += count;
+    }
+
+    @Override
+    public Record get(int index) {
+        if (index < 0 || index >= size) { throw new IndexOutOfBoundsException(index + " out of 0.." + size); }
+        return elements[slot(index)];
+    }
+
+    /**
+     * The number of records that have been evicted since this list was created.
+     *
+     * @return The number of records evicted.
+     */
+    long getNumEvicted() {
+        return numEvicted;
+    }
+
+    /**
+     * The total size of all records in the list.
+     *
+     * @return The size, in bytes.
+     */
+    long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    private void insert(int index, Record record) {
+        ensureCapacity(size + 1);
+        final int mask = elements.length - 1;
+        if (index == 0 && size > 0) {
+            head = (head - 1) & mask;
+        } else {
+            // Shift everything after the insertion point up by one.
+            for (int i = size; i > index; --i) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+        }
+        elements[slot(index)] = record;
+        ++size;
+        sizeInBytes += record.getSizeInBytes();
+    }
+
+    @Override
+    public Record remove(int index) {
+        final Record removed = get(index);
+        updates.beginEvent();
+        updates.addDelete(index);
+        if (index == 0) {
+            removeHead(1);
+        } else {
+            for (int i = index; i < size - 1; ++i) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+            elements[slot(size - 1)] = null;
+            --size;
+            sizeInBytes -= removed.getSizeInBytes();
+        }
+        updates.commitEvent();
+        return removed;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> collection) {
+        return removeMatching(collection, true);
+    }
+
+    private void removeHead(int count) {
+        final int mask = elements.length - 1;
+        for (int i = 0; i < count; ++i) {
+            sizeInBytes -= elements[head].getSizeInBytes();
+            elements[head] = null;
+            head = (head + 1) & mask;
+        }
+        size -= count;
+    }
+
+    /**
+     * Remove records in a single pass, compacting the remainder.
+     *
+     * @param collection The records to test against.
+     * @param remove If <code>true</code> the records in the collection are
+     *     removed, otherwise all other records are removed.
+     * @return <code>true</code> if any records were removed.
+     */
+    private boolean removeMatching(Collection<?> collection, boolean remove) {
+        final Collection<?> lookup = collection instanceof HashSet ? collection : new HashSet<Object>(collection);
+        final List<Record> removed = new ArrayList<Record>();
+        updates.beginEvent();
+        int kept = 0;
+        for (int i = 0; i < size; ++i) {
+            final Record record = elements[slot(i)];
+            if (lookup.contains(record) == remove) {
+                updates.addDelete(kept);
+                removed.add(record);
+            } else {
+                elements[slot(kept++)] = record;
+            }
+        }
+        for (int i = kept; i < size; ++i) {
+            elements[slot(i)] = null;
+        }
+        size = kept;
+        for (Record record : removed) { sizeInBytes -= record.getSizeInBytes(); }
+        updates.commitEvent();
+        return !removed.isEmpty();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> collection) {
+        return removeMatching(collection, false);
+    }
+
+    @Override
+    public Record set(int index, Record record) {
+        final Record previous = get(index);
+        updates.beginEvent();
+        updates.addUpdate(index);
+        elements[slot(index)] = record;
+        sizeInBytes += record.getSizeInBytes() - previous.getSizeInBytes();
+        updates.commitEvent();
+        evict();
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private int slot(int index) {
+        return (head + index) & (elements.length - 1);
+    }
+
+}
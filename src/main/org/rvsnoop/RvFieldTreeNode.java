@@ -2,18 +2,9 @@
 // License:   Apache Software License (Version 2.0)
 package org.rvsnoop;
 
-import static com.google.common.collect.Lists.newArrayList;
-import static com.google.common.io.Closeables.closeQuietly;
-
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.io.StringReader;
 import java.lang.reflect.Array;
 import java.text.MessageFormat;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -21,11 +12,6 @@ import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.tree.TreeNode;
 
-import nu.xom.Builder;
-import nu.xom.Document;
-import nu.xom.ParsingException;
-
-import com.tibco.tibrv.TibrvException;
 import com.tibco.tibrv.TibrvIPAddr;
 import com.tibco.tibrv.TibrvIPPort;
 import com.tibco.tibrv.TibrvMsg;
@@ -37,6 +23,43 @@ import com.tibco.tibrv.TibrvXml;
  */
 public final class RvFieldTreeNode extends LazyTreeNode {
 
+    /**
+     * A leaf node for one element of an array field.
+     */
+    private static final class ArrayElementTreeNode extends LazyTreeNode {
+        private final String text;
+        ArrayElementTreeNode(TreeNode parent, String text) {
+            super(parent);
+            this.text = text;
+        }
+        @Override
+        protected List<TreeNode> createChildren() {
+            return Collections.emptyList();
+        }
+        @Override
+        public boolean getAllowsChildren() {
+            return false;
+        }
+        @Override
+        protected String getText() {
+            return text;
+        }
+    }
+
+    /**
+     * Creates the element nodes for an array field.
+     */
+    private static final class ArrayElementFactory implements PageTreeNode.ChildFactory {
+        private final Object array;
+        ArrayElementFactory(Object array) {
+            this.array = array;
+        }
+        public TreeNode createChild(TreeNode parent, int index) {
+            return new ArrayElementTreeNode(parent,
+                    FD_ARRAY_ELEMENT.format(new Object[] {index, String.valueOf(Array.get(array, index))}));
+        }
+    }
+
     private static final Icon defaultIcon = new ImageIcon("/resources/icons/rvField.png");
     private static final Icon messageIcon = new ImageIcon("/resources/icons/rvMessage.png");
 
@@ -44,7 +67,7 @@ public final class RvFieldTreeNode extends LazyTreeNode {
     static String U8ARRAY, U16ARRAY, U32ARRAY, U64ARRAY, IPADDR32, IPPORT16;
     static String F32, F64, I8, I16, I32, I64, U8, U16, U32, U64, MSG, OPAQUE;
     static String BOOL, DATETIME, XML, STRING, STRING_LONG, STRING_XML, USER;
-    static String ERROR_FIELD, ERROR_XML_IO, ERROR_XML_PARSE;
+    static String ARRAY_ELEMENT, ERROR_XML_IO, ERROR_XML_PARSE;
 
     static { NLSUtils.internationalize(RvFieldTreeNode.class); }
 
@@ -121,6 +144,18 @@ public final class RvFieldTreeNode extends LazyTreeNode {
     private static final MessageFormat FD_STRING_LONG = new MessageFormat(STRING_LONG);
     private static final MessageFormat FD_STRING_XML = new MessageFormat(STRING_XML);
     private static final MessageFormat FD_USER = new MessageFormat(USER);
+    private static final MessageFormat FD_ARRAY_ELEMENT = new MessageFormat(ARRAY_ELEMENT);
+
+    private static boolean isNumericArray(short type) {
+        switch (type) {
+            case TibrvMsg.F32ARRAY: case TibrvMsg.F64ARRAY:
+            case TibrvMsg.I8ARRAY: case TibrvMsg.I16ARRAY: case TibrvMsg.I32ARRAY: case TibrvMsg.I64ARRAY:
+            case TibrvMsg.U8ARRAY: case TibrvMsg.U16ARRAY: case TibrvMsg.U32ARRAY: case TibrvMsg.U64ARRAY:
+                return true;
+            default:
+                return false;
+        }
+    }
 
     private final boolean allowsChildren;
 
@@ -145,7 +180,7 @@ public final class RvFieldTreeNode extends LazyTreeNode {
         if (field.type == TibrvMsg.MSG) {
             allowsChildren = true;
             this.icon = icon != null ? icon : messageIcon;
-        } else if (field.type == TibrvMsg.XML) {
+        } else if (field.type == TibrvMsg.XML || isNumericArray(field.type)) {
             allowsChildren = true;
             this.icon = icon != null ? icon : defaultIcon;
         } else {
@@ -164,48 +199,24 @@ public final class RvFieldTreeNode extends LazyTreeNode {
 
     @Override
     protected List<TreeNode> createChildren() {
-        if (field.type == TibrvMsg.XML) {
-            final InputStream stream = new ByteArrayInputStream(((TibrvXml) field.data).getBytes());
-            return createChildrenFromXML(new InputStreamReader(stream));
-        } else if (field.type == TibrvMsg.STRING && ((String) field.data).startsWith("<?xml ")) {
-            return createChildrenFromXML(new StringReader((String) field.data));
-        } else if (field.type == TibrvMsg.MSG) {
-            final TibrvMsg msg = (TibrvMsg) field.data;
-            final int numChildren = msg.getNumFields();
-            ArrayList<TreeNode> children = newArrayList();
+        if (field.type == TibrvMsg.XML
+                || (field.type == TibrvMsg.STRING && ((String) field.data).startsWith("<?xml "))) {
             try {
-                for (int i = 0; i < numChildren; ++i) {
-                    children.add(new RvFieldTreeNode(this, msg.getFieldByIndex(i)));
-                }
-            } catch (TibrvException e) {
-                logger.error(e, MessageFormat.format(ERROR_FIELD, e.error));
+                final XMLSource source = XMLSource.forField(field.data);
+                return XMLTreeNode.createChildren(this, source, source.getDocument());
+            } catch (IOException e) {
+                logger.error(e, ERROR_XML_IO);
+                return Collections.emptyList();
             }
-            children.trimToSize();
-            return children;
+        } else if (field.type == TibrvMsg.MSG) {
+            final TibrvMsg msg = (TibrvMsg) field.data;
+            return PageTreeNode.createChildren(this, new RvMessageTreeNode.FieldFactory(msg), msg.getNumFields());
+        } else if (isNumericArray(field.type)) {
+            return PageTreeNode.createChildren(this, new ArrayElementFactory(field.data), Array.getLength(field.data));
         }
         return Collections.emptyList();
     }
 
-    private List<TreeNode> createChildrenFromXML(final Reader reader) {
-        final ArrayList<TreeNode> children = newArrayList();
-        final Builder builder = new Builder(false, new InterningTrimmingNodeFactory());
-        try {
-            final Document doc = builder.build(reader).getDocument();
-            final int numChildren = doc.getChildCount();
-            for (int i = 0; i < numChildren; ++i) {
-                children.add(new XMLTreeNode(this, doc.getChild(i)));
-            }
-        } catch (ParsingException e) {
-            logger.error(e, MessageFormat.format(ERROR_XML_PARSE, e.getLineNumber(), e.getColumnNumber()));
-        } catch (IOException e) {
-            logger.error(e, ERROR_XML_IO);
-        } finally {
-            closeQuietly(reader);
-        }
-        children.trimToSize();
-        return children;
-    }
-
     @Override
     public boolean getAllowsChildren() {
         return allowsChildren;
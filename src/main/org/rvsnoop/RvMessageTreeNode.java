@@ -2,10 +2,6 @@
 // License:   Apache Software License (Version 2.0)
 package org.rvsnoop;
 
-import static com.google.common.collect.Lists.newArrayList;
-
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import javax.swing.Icon;
@@ -40,21 +36,27 @@ public final class RvMessageTreeNode extends LazyTreeNode {
         this.message = message;
     }
 
-    @Override
-    protected List<TreeNode> createChildren() {
-        final int numFields = message.getNumFields();
-        if (numFields == 0) { return Collections.emptyList(); }
-        final ArrayList<TreeNode> children = newArrayList();
-        for (int i = 0; i < numFields; ++i) {
+    /**
+     * Creates the field nodes for a message.
+     */
+    static final class FieldFactory implements PageTreeNode.ChildFactory {
+        private final TibrvMsg message;
+        FieldFactory(TibrvMsg message) {
+            this.message = message;
+        }
+        public TreeNode createChild(TreeNode parent, int index) {
             try {
-                children.add(new RvFieldTreeNode(this, message.getFieldByIndex(i)));
+                return new RvFieldTreeNode(parent, message.getFieldByIndex(index));
             } catch (TibrvException e) {
                 logger.error(e, ERROR_FIELD, e.error);
-                break;
+                return null;
             }
         }
-        children.trimToSize();
-        return children;
+    }
+
+    @Override
+    protected List<TreeNode> createChildren() {
+        return PageTreeNode.createChildren(this, new FieldFactory(message), message.getNumFields());
     }
 
     @Override
@@ -0,0 +1,190 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.odell.glazedlists.BasicEventList;
+import ca.odell.glazedlists.EventList;
+import ca.odell.glazedlists.event.ListEvent;
+import ca.odell.glazedlists.event.ListEventListener;
+import ca.odell.glazedlists.matchers.Matcher;
+import ca.odell.glazedlists.matchers.MatcherEditor;
+import ca.odell.glazedlists.util.concurrent.Lock;
+import rvsnoop.Record;
+
+/**
+ * A ledger which holds the results of a search of another ledger.
+ * <p>
+ * The search runs in the background using
+ * {@link RecordLedger#findAllIndicesInParallel(Matcher, LedgerSearch.Listener)},
+ * so the source ledger is only locked while each part of it is read. Matching
+ * records are added to this ledger as each part of the source is searched,
+ * in the same order as they are in the source.
+ * <p>
+ * Records added to the source once the search has started are tested as they
+ * arrive and added to the end of the results. While the results are frozen
+ * these records are held back, they are added when the results are thawed.
+ */
+public final class SearchResultsLedger extends RecordLedger
+        implements LedgerSearch.Listener, ListEventListener<Record> {
+
+    private final Matcher<Record> criteria;
+
+    private boolean frozen;
+
+    /** Matching records which arrived while the results were frozen. */
+    private final List<Record> held = new ArrayList<Record>();
+
+    /** The search indices of the hits added so far, in ascending order. */
+    private int[] hits = new int[16];
+
+    private int numHits;
+
+    /** Matching records which arrived before the search started. */
+    private List<Record> pending = new ArrayList<Record>();
+
+    private LedgerSearch search;
+
+    private final RecordLedger source;
+
+    /**
+     * Create a new results ledger, the search is not started until
+     * {@link #start()} is called.
+     *
+     * @param source The ledger to search.
+     * @param editors The criteria to search for, a record must match all of
+     *     them.
+     */
+    @SuppressWarnings("unchecked")
+    public SearchResultsLedger(RecordLedger source, List<MatcherEditor<Record>> editors) {
+        super(source.context, new BasicEventList<Record>(), source.recordTypes);
+        this.source = source;
+        final Matcher<Record>[] matchers = new Matcher[editors.size()];
+        for (int i = 0; i < matchers.length; ++i) {
+            matchers[i] = editors.get(i).getMatcher();
+        }
+        // A single matcher may be answered by the index of the source.
+        this.criteria = matchers.length == 1 ? matchers[0] : new FilteredLedgerView.AndMatcher(matchers);
+    }
+
+    private void append(List<Record> records) {
+        if (records.isEmpty()) { return; }
+        final EventList<Record> list = getEventList();
+        final Lock lock = list.getReadWriteLock().writeLock();
+        lock.lock();
+        try {
+            list.addAll(records);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop the search, any results found so far are kept.
+     */
+    public void cancel() {
+        final LedgerSearch running = getSearch();
+        if (running != null) { running.cancel(true); }
+    }
+
+    public synchronized void chunkSearched(LedgerSearch search, int[] found) {
+        if (found.length == 0) { return; }
+        // The hits in a chunk are contiguous in the search order.
+        final int found0 = Arrays.binarySearch(hits, 0, numHits, found[0]);
+        final int position = found0 >= 0 ? found0 : -found0 - 1;
+        if (numHits + found.length > hits.length) {
+            hits = Arrays.copyOf(hits, Math.max(2 * hits.length, numHits + found.length));
+        }
+        System.arraycopy(hits, position, hits, position + found.length, numHits - position);
+        System.arraycopy(found, 0, hits, position, found.length);
+        numHits += found.length;
+        final List<Record> records = new ArrayList<Record>(found.length);
+        for (int index : found) { records.add(search.getRecord(index)); }
+        final EventList<Record> list = getEventList();
+        final Lock lock = list.getReadWriteLock().writeLock();
+        lock.lock();
+        try {
+            list.addAll(position, records);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop the search and stop tracking changes to the source ledger.
+     */
+    public void dispose() {
+        cancel();
+        source.removeListEventListener(this);
+    }
+
+    /**
+     * Get the running search.
+     *
+     * @return The search, or <code>null</code> if it has not been started.
+     */
+    public synchronized LedgerSearch getSearch() {
+        return search;
+    }
+
+    public synchronized boolean isFrozen() {
+        return frozen;
+    }
+
+    public void listChanged(ListEvent<Record> event) {
+        final EventList<Record> list = event.getSourceList();
+        final List<Record> matched = new ArrayList<Record>();
+        while (event.next()) {
+            if (event.getType() != ListEvent.INSERT) { continue; }
+            final Record record = list.get(event.getIndex());
+            if (criteria.matches(record)) { matched.add(record); }
+        }
+        if (matched.isEmpty()) { return; }
+        synchronized (this) {
+            if (pending != null) {
+                pending.addAll(matched);
+            } else if (frozen) {
+                held.addAll(matched);
+            } else {
+                append(matched);
+            }
+        }
+    }
+
+    /**
+     * Freeze or thaw the results.
+     *
+     * @param frozen Whether to hold back records added to the source.
+     */
+    public synchronized void setFrozen(boolean frozen) {
+        this.frozen = frozen;
+        if (!frozen) {
+            append(held);
+            held.clear();
+        }
+    }
+
+    /**
+     * Start the search.
+     */
+    public void start() {
+        source.addListEventListener(this);
+        final LedgerSearch started = source.findAllIndicesInParallel(criteria, this);
+        synchronized (this) {
+            search = started;
+            // Records which arrived before the search started are searched by it.
+            final long last = started.getLastSequenceNumber();
+            final List<Record> later = new ArrayList<Record>(pending.size());
+            for (Record record : pending) {
+                if (record.getSequenceNumber() > last) { later.add(record); }
+            }
+            pending = null;
+            if (frozen) { held.addAll(later); } else { append(later); }
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import rvsnoop.Record;
+import rvsnoop.RvConnection;
+
+import com.tibco.tibrv.TibrvException;
+import com.tibco.tibrv.TibrvMsg;
+
+import static com.google.common.io.Closeables.closeQuietly;
+
+/**
+ * A temporary, append only, file of records used when the ingester is
+ * overloaded.
+ * <p>
+ * Records are read back in the order that they were written, with their
+ * original sequence numbers. Only the raw message bytes, subjects, timestamp
+ * and sequence number are written; connections are held in memory since they
+ * cannot outlive the process anyway. Records are read back compacted, the
+ * messages are not decoded until they are needed. Once every record has
+ * been read back the file is deleted, a new one will be created if needed.
+ */
+final class SpillFile {
+
+    private static final Logger logger = Logger.getLogger();
+
+    private final List<RvConnection> connections = new ArrayList<RvConnection>();
+
+    private final Map<RvConnection, Integer> connectionIndices = new IdentityHashMap<RvConnection, Integer>();
+
+    private File file;
+
+    private DataInputStream in;
+
+    private DataOutputStream out;
+
+    private int pending;
+
+    SpillFile() {
+        super();
+    }
+
+    /**
+     * Delete the file and discard any records in it.
+     */
+    synchronized void clear() {
+        closeQuietly(out);
+        closeQuietly(in);
+        out = null;
+        in = null;
+        if (file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+        file = null;
+        pending = 0;
+        connections.clear();
+        connectionIndices.clear();
+    }
+
+    private int indexOf(RvConnection connection) {
+        if (connection == null) { return -1; }
+        Integer index = connectionIndices.get(connection);
+        if (index == null) {
+            index = Integer.valueOf(connections.size());
+            connections.add(connection);
+            connectionIndices.put(connection, index);
+        }
+        return index.intValue();
+    }
+
+    /**
+     * Is the file currently empty?
+     *
+     * @return <code>true</code> if there are no records waiting to be read.
+     */
+    synchronized boolean isEmpty() {
+        return pending == 0;
+    }
+
+    /**
+     * Read records from the file.
+     *
+     * @param maxRecords The maximum number of records to read.
+     * @return The records, this may be empty if none could be read.
+     */
+    synchronized List<Record> read(int maxRecords) {
+        final int count = Math.min(maxRecords, pending);
+        final List<Record> records = new ArrayList<Record>(count);
+        if (count == 0) { return records; }
+        try {
+            out.flush();
+            if (in == null) {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            }
+            for (int i = 0; i < count; ++i) {
+                final int index = in.readInt();
+                final long sequenceNumber = in.readLong();
+                final long timestamp = in.readLong();
+                final String send = readSubject(in);
+                final String reply = readSubject(in);
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                --pending;
+                final RvConnection connection = index >= 0 ? connections.get(index) : null;
+                records.add(new Record(connection, bytes, send, reply, timestamp, sequenceNumber));
+            }
+        } catch (IOException e) {
+            logger.error(e, "Could not read from the spill file, %d records have been lost.", pending);
+            clear();
+            return records;
+        }
+        if (pending == 0) { clear(); }
+        return records;
+    }
+
+    /**
+     * Append a record to the file.
+     *
+     * @param record The record to write.
+     * @return <code>true</code> if the record was written.
+     */
+    synchronized boolean write(Record record) {
+        try {
+            final TibrvMsg message = record.getMessage();
+            final byte[] bytes = message.getAsBytes();
+            if (out == null) {
+                file = File.createTempFile("rvsnoop-spill", ".dat");
+                file.deleteOnExit();
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            }
+            out.writeInt(indexOf(record.getConnection()));
+            out.writeLong(record.getSequenceNumber());
+            out.writeLong(record.getTimestamp());
+            writeSubject(out, message.getSendSubject());
+            writeSubject(out, message.getReplySubject());
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            ++pending;
+            return true;
+        } catch (TibrvException e) {
+            logger.warn(e, "Could not extract bytes from message to spill.");
+            return false;
+        } catch (IOException e) {
+            logger.error(e, "Could not write to the spill file.");
+            return false;
+        }
+    }
+
+    private static String readSubject(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeSubject(DataOutputStream out, String subject) throws IOException {
+        out.writeBoolean(subject != null);
+        if (subject != null) { out.writeUTF(subject); }
+    }
+
+}
@@ -70,7 +70,8 @@ final class DepthFirstFieldIterator implements Iterator<TibrvMsgField> {
                 position = 0;
                 numFields = message.getNumFields();
             }
-            if (position == numFields) {
+            // Several nested messages may end at the same field.
+            while (position == numFields) {
                 if (stack.size() > 0) {
                     StackElement elt = stack.remove(stack.size() - 1);
                     message = elt.message;
@@ -78,6 +79,7 @@ final class DepthFirstFieldIterator implements Iterator<TibrvMsgField> {
                     numFields = message.getNumFields();
                 } else {
                     hasNext = false;
+                    break;
                 }
             }
             return next;
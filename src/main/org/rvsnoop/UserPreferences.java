@@ -19,7 +19,9 @@ import org.bushe.swing.event.EventSubscriber;
 import org.jdesktop.application.utils.AppHelper;
 import org.jdesktop.application.utils.PlatformType;
 import org.rvsnoop.event.ConnectionCreatedEvent;
+import rvsnoop.QueueMode;
 import rvsnoop.RvConnection;
+import rvsnoop.SubjectHierarchy;
 
 import static com.google.common.io.Closeables.closeQuietly;
 
@@ -33,13 +35,30 @@ public final class UserPreferences {
 
     private static final Logger logger = Logger.getLogger();
 
+    /** The default number of times per second to update the ledger table. */
+    public static final int DEFAULT_LEDGER_REFRESH_RATE = 10;
+
     private static UserPreferences instance;
 
     static String ERROR_CREATING_DIR, ERROR_STORING_CONNECTIONS;
 
     private static final String KEY_LAST_EXPORT_LOCATION = "LASTExportLocation";
+    private static final String KEY_LEDGER_MAX_AGE_MINUTES = "ledgerMaxAgeMinutes";
+    private static final String KEY_LEDGER_MAX_MEGABYTES = "ledgerMaxMegabytes";
+    private static final String KEY_LEDGER_MAX_RECORDS = "ledgerMaxRecords";
+    private static final String KEY_LEDGER_MAPPED = "ledgerMapped";
+    private static final String KEY_LEDGER_REFRESH_RATE = "ledgerRefreshRate";
+    private static final String KEY_MESSAGE_CACHE_ENTRIES = "messageCacheEntries";
+    private static final String KEY_MESSAGE_CACHE_MEGABYTES = "messageCacheMegabytes";
     private static final String KEY_NUM_RECENT_CONNECTIONS = "numberOfRecentConnections";
     private static final String KEY_NUM_RECENT_PROJECTS = "numberOfRecentProjects";
+    private static final String KEY_NUM_POOLED_DISPATCHERS = "numberOfPooledDispatchers";
+    private static final String KEY_QUEUE_MODE = "queueMode";
+    private static final String KEY_OVERLOAD_POLICY = "overloadPolicy";
+    private static final String KEY_QUEUE_LIMIT = "queueLimit";
+    private static final String KEY_SAMPLE_RATE = "sampleRate";
+    private static final String KEY_SUBJECT_MAX_CHILDREN = "subjectMaxChildren";
+    private static final String KEY_SUBJECT_TREE_UPDATE_RATE = "subjectTreeUpdateRate";
 
     static { NLSUtils.internationalize(UserPreferences.class); }
 
@@ -93,6 +112,71 @@ public final class UserPreferences {
         return preferences.get(KEY_LAST_EXPORT_LOCATION, System.getProperty("user.dir"));
     }
 
+    /**
+     * The maximum length of history that the ledger will hold.
+     *
+     * @return The age limit in minutes, or 0 for no limit.
+     */
+    public int getLedgerMaxAgeMinutes() {
+        return Math.max(0, preferences.getInt(KEY_LEDGER_MAX_AGE_MINUTES, 0));
+    }
+
+    /**
+     * The maximum total size of the records that the ledger will hold.
+     *
+     * @return The size limit in megabytes, or 0 for no limit.
+     */
+    public int getLedgerMaxMegabytes() {
+        return Math.max(0, preferences.getInt(KEY_LEDGER_MAX_MEGABYTES, 0));
+    }
+
+    /**
+     * The maximum number of records that the ledger will hold.
+     *
+     * @return The record limit, or 0 for no limit.
+     */
+    public int getLedgerMaxRecords() {
+        return Math.max(0, preferences.getInt(KEY_LEDGER_MAX_RECORDS, 0));
+    }
+
+    /**
+     * The maximum number of times per second that the ledger table is updated.
+     *
+     * @return The refresh rate, or 0 to update the table on every change.
+     */
+    public int getLedgerRefreshRate() {
+        return Math.max(0, preferences.getInt(KEY_LEDGER_REFRESH_RATE, DEFAULT_LEDGER_REFRESH_RATE));
+    }
+
+    /**
+     * Should the ledger keep records in memory mapped files instead of on the
+     * heap?
+     *
+     * @return <code>true</code> to use a {@link MappedLedger}.
+     */
+    public boolean isLedgerMapped() {
+        return preferences.getBoolean(KEY_LEDGER_MAPPED, false);
+    }
+
+    /**
+     * The maximum number of decoded messages to keep in the {@link MessageCache}.
+     *
+     * @return The number of messages.
+     */
+    public int getMessageCacheEntries() {
+        return Math.max(0, preferences.getInt(KEY_MESSAGE_CACHE_ENTRIES, MessageCache.DEFAULT_MAX_ENTRIES));
+    }
+
+    /**
+     * The maximum total size of the decoded messages in the {@link MessageCache}.
+     *
+     * @return The size, in megabytes.
+     */
+    public int getMessageCacheMegabytes() {
+        return Math.max(0, preferences.getInt(KEY_MESSAGE_CACHE_MEGABYTES,
+                (int) (MessageCache.DEFAULT_MAX_BYTES / (1024 * 1024))));
+    }
+
     public RvConnection getMostRecentConnection() {
         try {
             return recentConnections.get(0);
@@ -109,10 +193,57 @@ public final class UserPreferences {
         return preferences.getInt(KEY_NUM_RECENT_PROJECTS, 10);
     }
 
+    public OverloadPolicy getOverloadPolicy() {
+        try {
+            return OverloadPolicy.valueOf(preferences.get(KEY_OVERLOAD_POLICY, OverloadPolicy.BLOCK.name()));
+        } catch (IllegalArgumentException e) {
+            return OverloadPolicy.BLOCK;
+        }
+    }
+
+    public int getNumberOfPooledDispatchers() {
+        return Math.max(1, preferences.getInt(KEY_NUM_POOLED_DISPATCHERS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public QueueMode getQueueMode() {
+        try {
+            return QueueMode.valueOf(preferences.get(KEY_QUEUE_MODE, QueueMode.SHARED.name()));
+        } catch (IllegalArgumentException e) {
+            return QueueMode.SHARED;
+        }
+    }
+
+    public int getQueueLimit() {
+        return Math.max(0, preferences.getInt(KEY_QUEUE_LIMIT, 0));
+    }
+
     public List<RvConnection> getRecentConnections() {
         return Collections.unmodifiableList(recentConnections);
     }
 
+    public int getSampleRate() {
+        return Math.max(1, preferences.getInt(KEY_SAMPLE_RATE, RecordIngester.DEFAULT_SAMPLE_RATE));
+    }
+
+    /**
+     * The number of children an element in the subject tree may have before
+     * new ones are folded into a wildcard element.
+     *
+     * @return The maximum number of children, or 0 for no limit.
+     */
+    public int getSubjectMaxChildren() {
+        return Math.max(0, preferences.getInt(KEY_SUBJECT_MAX_CHILDREN, SubjectHierarchy.DEFAULT_MAX_CHILDREN));
+    }
+
+    /**
+     * The maximum number of times per second that the subject tree is updated.
+     *
+     * @return The update rate, in Hertz.
+     */
+    public int getSubjectTreeUpdateRate() {
+        return Math.max(1, preferences.getInt(KEY_SUBJECT_TREE_UPDATE_RATE, SubjectHierarchy.DEFAULT_UPDATE_RATE));
+    }
+
     /**
      * @param pcl
      * @see java.util.prefs.Preferences#removePreferenceChangeListener(java.util.prefs.PreferenceChangeListener)
@@ -125,10 +256,66 @@ public final class UserPreferences {
         preferences.put(KEY_LAST_EXPORT_LOCATION, path);
     }
 
+    public void setLedgerMapped(boolean mapped) {
+        preferences.putBoolean(KEY_LEDGER_MAPPED, mapped);
+    }
+
+    public void setLedgerMaxAgeMinutes(int minutes) {
+        preferences.putInt(KEY_LEDGER_MAX_AGE_MINUTES, minutes);
+    }
+
+    public void setLedgerMaxMegabytes(int megabytes) {
+        preferences.putInt(KEY_LEDGER_MAX_MEGABYTES, megabytes);
+    }
+
+    public void setLedgerMaxRecords(int records) {
+        preferences.putInt(KEY_LEDGER_MAX_RECORDS, records);
+    }
+
+    public void setLedgerRefreshRate(int rate) {
+        preferences.putInt(KEY_LEDGER_REFRESH_RATE, rate);
+    }
+
+    public void setMessageCacheEntries(int entries) {
+        preferences.putInt(KEY_MESSAGE_CACHE_ENTRIES, entries);
+    }
+
+    public void setMessageCacheMegabytes(int megabytes) {
+        preferences.putInt(KEY_MESSAGE_CACHE_MEGABYTES, megabytes);
+    }
+
     public void setNumberOfRecentConnections(int number) {
         preferences.putInt(KEY_NUM_RECENT_CONNECTIONS, number);
     }
 
+    public void setNumberOfPooledDispatchers(int number) {
+        preferences.putInt(KEY_NUM_POOLED_DISPATCHERS, number);
+    }
+
+    public void setOverloadPolicy(OverloadPolicy policy) {
+        preferences.put(KEY_OVERLOAD_POLICY, policy.name());
+    }
+
+    public void setQueueLimit(int limit) {
+        preferences.putInt(KEY_QUEUE_LIMIT, limit);
+    }
+
+    public void setQueueMode(QueueMode mode) {
+        preferences.put(KEY_QUEUE_MODE, mode.name());
+    }
+
+    public void setSampleRate(int rate) {
+        preferences.putInt(KEY_SAMPLE_RATE, rate);
+    }
+
+    public void setSubjectMaxChildren(int max) {
+        preferences.putInt(KEY_SUBJECT_MAX_CHILDREN, max);
+    }
+
+    public void setSubjectTreeUpdateRate(int rate) {
+        preferences.putInt(KEY_SUBJECT_TREE_UPDATE_RATE, rate);
+    }
+
     public void store() {
         if (recentConnectionsFile == null) { return; }
         FileOutputStream stream = null;
@@ -0,0 +1,411 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.tibco.tibrv.TibrvXml;
+
+/**
+ * An XML document which is parsed one level at a time.
+ * <p>
+ * Instead of building a document object model this keeps the text of the
+ * document and, when the children of an element are needed, streams over just
+ * that element with StAX. The character range of each child element is
+ * recorded so that its own children can be found later by parsing only that
+ * range. The most recently parsed child lists are cached.
+ * <p>
+ * The ranges are found by scanning the text alongside the parser rather than
+ * from the parser's locations, because the character offsets reported by some
+ * StAX implementations drift after CDATA sections and comments.
+ * <p>
+ * The elements are parsed without namespace processing, so their names include
+ * any prefix, because a prefix may be declared outside the range being parsed.
+ */
+final class XMLSource {
+
+    /** The kinds of item in an XML document. */
+    enum Kind { DOCUMENT, ELEMENT, ATTRIBUTE, TEXT, COMMENT, DOCTYPE, PROCESSING_INSTRUCTION }
+
+    /**
+     * One item in the document.
+     */
+    static final class Item {
+        final Kind kind;
+        final String text;
+        /** The character range of an element, or -1 for other items. */
+        final int start, end;
+        final boolean hasChildren;
+        Item(Kind kind, String text, int start, int end, boolean hasChildren) {
+            this.kind = kind;
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.hasChildren = hasChildren;
+        }
+    }
+
+    /** Used to look up recent sources by the identity of their field data. */
+    private static final class IdentityKey {
+        private final Object object;
+        IdentityKey(Object object) {
+            this.object = object;
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof IdentityKey && ((IdentityKey) obj).object == object;
+        }
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(object);
+        }
+    }
+
+    /** A reader over part of a string which does not copy it. */
+    private static final class RangeReader extends Reader {
+        private final String string;
+        private int position;
+        private final int end;
+        RangeReader(String string, int start, int end) {
+            this.string = string;
+            this.position = start;
+            this.end = end;
+        }
+        @Override
+        public void close() {
+            position = end;
+        }
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position >= end) { return -1; }
+            final int count = Math.min(length, end - position);
+            string.getChars(position, position + count, buffer, offset);
+            position += count;
+            return count;
+        }
+    }
+
+    private static final int MAX_CACHED_CHILD_LISTS = 64;
+
+    private static final int MAX_RECENT_SOURCES = 4;
+
+    private static final XMLInputFactory factory = XMLInputFactory.newInstance();
+
+    private static final Map<IdentityKey, XMLSource> recentSources =
+        new LinkedHashMap<IdentityKey, XMLSource>(MAX_RECENT_SOURCES * 2, 0.75f, true) {
+            private static final long serialVersionUID = -7312046734618822455L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<IdentityKey, XMLSource> eldest) {
+                return size() > MAX_RECENT_SOURCES;
+            }
+        };
+
+    static {
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    /**
+     * Get the source for the data in an XML field.
+     * <p>
+     * Sources for the last few fields are kept, so that selecting a recently
+     * viewed message again does not need its XML to be parsed again.
+     *
+     * @param data The field data, either a {@link TibrvXml} or a string.
+     * @return The source.
+     * @throws IOException If the XML could not be decoded.
+     */
+    static XMLSource forField(Object data) throws IOException {
+        final IdentityKey key = new IdentityKey(data);
+        synchronized (recentSources) {
+            final XMLSource recent = recentSources.get(key);
+            if (recent != null) { return recent; }
+        }
+        final XMLSource source = new XMLSource(data instanceof TibrvXml
+                ? decode(((TibrvXml) data).getBytes()) : (String) data);
+        synchronized (recentSources) {
+            recentSources.put(key, source);
+        }
+        return source;
+    }
+
+    private static String decode(byte[] bytes) throws IOException {
+        // Let the parser detect the encoding from the XML declaration.
+        String encoding = null;
+        try {
+            final XMLStreamReader reader = createReader(new ByteArrayInputStream(bytes));
+            encoding = reader.getEncoding();
+            reader.close();
+        } catch (XMLStreamException e) {
+            // Fall back to the default for XML.
+        }
+        return new String(bytes, encoding != null ? encoding : "UTF-8");
+    }
+
+    private static XMLStreamReader createReader(ByteArrayInputStream stream) throws XMLStreamException {
+        synchronized (factory) {
+            return factory.createXMLStreamReader(stream);
+        }
+    }
+
+    private static XMLStreamReader createReader(Reader reader) throws XMLStreamException {
+        synchronized (factory) {
+            return factory.createXMLStreamReader(reader);
+        }
+    }
+
+    private static String getDocTypeName(String declaration) {
+        int start = declaration.startsWith("<!DOCTYPE") ? 9 : 0;
+        while (start < declaration.length() && Character.isWhitespace(declaration.charAt(start))) { ++start; }
+        int end = start;
+        while (end < declaration.length() && " \t\r\n[>".indexOf(declaration.charAt(end)) < 0) { ++end; }
+        return declaration.substring(start, end);
+    }
+
+    private final Map<Integer, List<Item>> childLists =
+        new LinkedHashMap<Integer, List<Item>>(MAX_CACHED_CHILD_LISTS * 2, 0.75f, true) {
+            private static final long serialVersionUID = 4014409577404862383L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Item>> eldest) {
+                return size() > MAX_CACHED_CHILD_LISTS;
+            }
+        };
+
+    private final Item document;
+
+    private final String xml;
+
+    /**
+     * Create a new source.
+     *
+     * @param xml The text of the document.
+     */
+    XMLSource(String xml) {
+        this.xml = xml;
+        this.document = new Item(Kind.DOCUMENT, "", 0, xml.length(), true);
+    }
+
+    /**
+     * Get the children of an item.
+     * <p>
+     * The children of an element are its attributes, then its content. Text
+     * is trimmed and text which is only whitespace is ignored.
+     *
+     * @param parent The item, either the document or an element.
+     * @return The children.
+     * @throws XMLStreamException If the range of the item could not be parsed.
+     */
+    List<Item> getChildren(Item parent) throws XMLStreamException {
+        if (!parent.hasChildren) { return Collections.emptyList(); }
+        final Integer key = Integer.valueOf(parent.kind == Kind.DOCUMENT ? -1 : parent.start);
+        synchronized (childLists) {
+            final List<Item> cached = childLists.get(key);
+            if (cached != null) { return cached; }
+        }
+        final List<Item> children = parseChildren(parent);
+        synchronized (childLists) {
+            childLists.put(key, children);
+        }
+        return children;
+    }
+
+    /**
+     * Get the item which represents the whole document.
+     *
+     * @return The document item.
+     */
+    Item getDocument() {
+        return document;
+    }
+
+    private List<Item> parseChildren(Item parent) throws XMLStreamException {
+        final ArrayList<Item> children = new ArrayList<Item>();
+        final XMLStreamReader reader = createReader(new RangeReader(xml, parent.start, parent.end));
+        // The depth of the children of the parent within the parsed range.
+        final int target = parent.kind == Kind.DOCUMENT ? 0 : 1;
+        int depth = 0;
+        // Where to look for the next child element in the text.
+        int position = parent.kind == Kind.DOCUMENT ? 0 : findTagEnd(parent.start);
+        try {
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    ++depth;
+                    if (depth == target) {
+                        for (int i = 0, imax = reader.getAttributeCount(); i < imax; ++i) {
+                            final String prefix = reader.getAttributePrefix(i);
+                            final String name = prefix != null && prefix.length() > 0
+                                ? prefix + ":" + reader.getAttributeLocalName(i) : reader.getAttributeLocalName(i);
+                            final String text = name + "=\"" + reader.getAttributeValue(i) + "\"";
+                            children.add(new Item(Kind.ATTRIBUTE, text, -1, -1, false));
+                        }
+                    } else if (depth == target + 1) {
+                        final Item child = skipElement(reader, findElementStart(position));
+                        children.add(child);
+                        position = child.end;
+                        --depth;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    --depth;
+                } else if (depth == target) {
+                    final Item item = createItem(reader, event);
+                    if (item != null) { children.add(item); }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        children.trimToSize();
+        return children;
+    }
+
+    private static Item createItem(XMLStreamReader reader, int event) {
+        switch (event) {
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+            final String text = reader.getText().trim();
+            return text.length() > 0 ? new Item(Kind.TEXT, text, -1, -1, false) : null;
+        case XMLStreamConstants.COMMENT:
+            return new Item(Kind.COMMENT, "<!-- " + reader.getText(), -1, -1, false); //$NON-NLS-1$
+        case XMLStreamConstants.DTD:
+            return new Item(Kind.DOCTYPE, "<!DocType " + getDocTypeName(reader.getText()), -1, -1, false); //$NON-NLS-1$
+        case XMLStreamConstants.PROCESSING_INSTRUCTION:
+            return new Item(Kind.PROCESSING_INSTRUCTION, "<? " + reader.getPITarget(), -1, -1, false); //$NON-NLS-1$
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Find the end of a comment, CDATA section, processing instruction or
+     * document type declaration.
+     *
+     * @param start The offset of the opening '&lt;'.
+     * @return The offset just past the closing '&gt;'.
+     */
+    private int findDeclarationEnd(int start) {
+        if (xml.startsWith("<!--", start)) { return xml.indexOf("-->", start + 4) + 3; }
+        if (xml.startsWith("<![CDATA[", start)) { return xml.indexOf("]]>", start + 9) + 3; }
+        if (xml.startsWith("<?", start)) { return xml.indexOf("?>", start + 2) + 2; }
+        // A document type declaration, which may have an internal subset.
+        char quote = 0;
+        int brackets = 0;
+        for (int i = start + 2; ; ++i) {
+            final char c = xml.charAt(i);
+            if (quote != 0) {
+                if (c == quote) { quote = 0; }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '<' && xml.startsWith("<!--", i)) {
+                i = xml.indexOf("-->", i + 4) + 2;
+            } else if (c == '[') {
+                ++brackets;
+            } else if (c == ']') {
+                --brackets;
+            } else if (c == '>' && brackets == 0) {
+                return i + 1;
+            }
+        }
+    }
+
+    /**
+     * Find the start of the next element, skipping any text, comments, CDATA
+     * sections and processing instructions before it.
+     *
+     * @param from The offset to search from, outside of any markup.
+     * @return The offset of the element's opening '&lt;'.
+     */
+    private int findElementStart(int from) {
+        int start = xml.indexOf('<', from);
+        while (xml.charAt(start + 1) == '!' || xml.charAt(start + 1) == '?') {
+            start = xml.indexOf('<', findDeclarationEnd(start));
+        }
+        return start;
+    }
+
+    /**
+     * Find the end of a start or end tag.
+     *
+     * @param start The offset of the tag's opening '&lt;'.
+     * @return The offset just past the closing '&gt;'.
+     */
+    private int findTagEnd(int start) {
+        char quote = 0;
+        for (int i = start + 1; ; ++i) {
+            final char c = xml.charAt(i);
+            if (quote != 0) {
+                if (c == quote) { quote = 0; }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i + 1;
+            }
+        }
+    }
+
+    /**
+     * Find the end of an element.
+     *
+     * @param start The offset of the element's opening '&lt;'.
+     * @return The offset just past the closing '&gt;' of its end tag.
+     */
+    private int findElementEnd(int start) {
+        int depth = 0;
+        int i = start;
+        while (true) {
+            i = xml.indexOf('<', i);
+            final char c = xml.charAt(i + 1);
+            if (c == '!' || c == '?') {
+                i = findDeclarationEnd(i);
+            } else if (c == '/') {
+                i = findTagEnd(i);
+                if (--depth == 0) { return i; }
+            } else {
+                i = findTagEnd(i);
+                if (xml.charAt(i - 2) != '/') {
+                    ++depth;
+                } else if (depth == 0) {
+                    return i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Skip over an element which has just been started, recording its range.
+     *
+     * @param reader The reader, positioned at the element's start tag.
+     * @param start The offset of the element's opening '&lt;'.
+     */
+    private Item skipElement(XMLStreamReader reader, int start) throws XMLStreamException {
+        final String name = reader.getLocalName().intern();
+        boolean hasChildren = reader.getAttributeCount() > 0;
+        int depth = 0;
+        while (true) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                ++depth;
+                hasChildren = true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth-- == 0) { break; }
+            } else if (!hasChildren && depth == 0) {
+                hasChildren = createItem(reader, event) != null;
+            }
+        }
+        return new Item(Kind.ELEMENT, name, start, findElementEnd(start), hasChildren);
+    }
+
+}
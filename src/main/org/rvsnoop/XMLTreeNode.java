@@ -7,8 +7,7 @@
  */
 package org.rvsnoop;
 
-import static com.google.common.collect.Lists.newArrayList;
-
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -16,19 +15,14 @@ import java.util.List;
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.tree.TreeNode;
-
-import nu.xom.Attribute;
-import nu.xom.Comment;
-import nu.xom.DocType;
-import nu.xom.Document;
-import nu.xom.Element;
-import nu.xom.Node;
-import nu.xom.ParentNode;
-import nu.xom.ProcessingInstruction;
-import nu.xom.Text;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamException;
 
 /**
- * A {@link TreeNode} that wraps XOM node objects to allow for visual display.
+ * A {@link TreeNode} that wraps an item from an {@link XMLSource} to allow for
+ * visual display.
+ * <p>
+ * The children of an element are only parsed when it is expanded.
  *
  * @author <a href="mailto:ianp@ianp.org">Ian Phillips</a>
  * @version $Revision$, $Date$
@@ -39,24 +33,48 @@ final class XMLTreeNode extends LazyTreeNode {
     public static final Icon XML_ATTRIBUTE = new ImageIcon("/resources/icons/xml_attribute.png");
     public static final Icon XML_ELEMENT = new ImageIcon("/resources/icons/xml_element.png");
 
-    private final Node node;
+    private static final Logger logger = Logger.getLogger();
+
+    /**
+     * Create the nodes for the children of an item.
+     *
+     * @param parent The node to use as the parent of the new nodes.
+     * @param source The source containing the item.
+     * @param item The item.
+     * @return The new nodes, empty if the item could not be parsed.
+     */
+    static List<TreeNode> createChildren(TreeNode parent, XMLSource source, XMLSource.Item item) {
+        final List<XMLSource.Item> items;
+        try {
+            items = source.getChildren(item);
+        } catch (XMLStreamException e) {
+            final Location location = e.getLocation();
+            logger.error(e, MessageFormat.format(RvFieldTreeNode.ERROR_XML_PARSE,
+                    location != null ? location.getLineNumber() : -1,
+                    location != null ? location.getColumnNumber() : -1));
+            return Collections.emptyList();
+        }
+        if (items.isEmpty()) { return Collections.emptyList(); }
+        final ArrayList<TreeNode> children = new ArrayList<TreeNode>(items.size());
+        for (XMLSource.Item child : items) {
+            children.add(new XMLTreeNode(parent, source, child));
+        }
+        return children;
+    }
+
+    private final XMLSource.Item item;
 
-    public XMLTreeNode(TreeNode parent, Node node) {
+    private final XMLSource source;
+
+    public XMLTreeNode(TreeNode parent, XMLSource source, XMLSource.Item item) {
         super(parent);
-        this.node = node;
+        this.source = source;
+        this.item = item;
     }
 
     @Override
     protected List<TreeNode> createChildren() {
-        final ParentNode pn = (ParentNode) node;
-        final int numChildren = pn.getChildCount();
-        if (numChildren == 0) { return Collections.emptyList(); }
-        final ArrayList<TreeNode> children = newArrayList();
-        for (int i = 0; i < numChildren; ++i) {
-            children.add(new XMLTreeNode(this, pn.getChild(i)));
-        }
-        children.trimToSize();
-        return children;
+        return createChildren(this, source, item);
     }
 
     /* (non-Javadoc)
@@ -64,7 +82,7 @@ final class XMLTreeNode extends LazyTreeNode {
      */
     @Override
     public boolean getAllowsChildren() {
-        return node instanceof ParentNode;
+        return item.hasChildren;
     }
 
     /* (non-Javadoc)
@@ -72,11 +90,11 @@ final class XMLTreeNode extends LazyTreeNode {
      */
     @Override
     public Icon getIcon() {
-        if (node instanceof Attribute)
+        if (item.kind == XMLSource.Kind.ATTRIBUTE)
             return XML_ATTRIBUTE;
-        if (node instanceof Element)
+        if (item.kind == XMLSource.Kind.ELEMENT)
             return XML_ELEMENT;
-        // Comment, Document, DocType, ProcessingInstruction, Text
+        // Comment, DocType, ProcessingInstruction, Text
         return null;
     }
 
@@ -85,21 +103,7 @@ final class XMLTreeNode extends LazyTreeNode {
      */
     @Override
     public String getText() {
-        if (node instanceof Attribute)
-            return ((Attribute) node).getLocalName();
-        if (node instanceof Element)
-            return ((Element) node).getLocalName();
-        if (node instanceof Comment)
-            return "<!-- " + node.getValue(); //$NON-NLS-1$
-        if (node instanceof Document)
-            return "XML Document"; //$NON-NLS-1$
-        if (node instanceof DocType)
-            return "<!DocType " + ((DocType) node).getRootElementName(); //$NON-NLS-1$
-        if (node instanceof ProcessingInstruction)
-            return "<? " + ((ProcessingInstruction) node).getTarget();
-        if (node instanceof Text)
-            return node.getValue(); //$NON-NLS-1$
-        return "[Unsupported node type!]"; //$NON-NLS-1$
+        return item.text;
     }
 
 }
@@ -16,10 +16,12 @@ import javax.swing.*;
 import org.rvsnoop.Application;
 import org.rvsnoop.FilteredLedgerView;
 import org.rvsnoop.RecordLedger;
+import org.rvsnoop.SearchResultsLedger;
 import org.rvsnoop.matchers.DataAccessorFactory;
 import org.rvsnoop.matchers.PredicateFactory;
 import org.rvsnoop.matchers.RvSnoopMatcherEditor;
 import org.rvsnoop.ui.MatcherEditorListDialog;
+import org.rvsnoop.ui.SearchResultsDialog;
 
 import rvsnoop.Record;
 
@@ -57,7 +59,19 @@ public abstract class AbstractSearchAction extends RvSnoopAction {
         dialog.setVisible(true);
         final EventList<MatcherEditor> newMatchers = dialog.getCopyOfEditors();
         if (newMatchers == null) { return; } // User cancelled dialog.
+        applyMatchers(oldMatchers, newMatchers);
+    }
 
+    /**
+     * Apply the matchers chosen by the user.
+     * <p>
+     * By default this updates the filters on {@link #getLedger()} and then
+     * calls {@link #displayResults(RecordLedger)}.
+     *
+     * @param oldMatchers The matchers which were shown to the user.
+     * @param newMatchers The matchers which the user chose.
+     */
+    protected void applyMatchers(List<MatcherEditor> oldMatchers, List<MatcherEditor> newMatchers) {
         final List<MatcherEditor> added = new ArrayList<MatcherEditor>(newMatchers);
         added.removeAll(oldMatchers);
         final List<MatcherEditor> removed = new ArrayList<MatcherEditor>(oldMatchers);
@@ -181,11 +195,34 @@ public abstract class AbstractSearchAction extends RvSnoopAction {
 
     protected abstract ImageIcon getIcon();
 
-    protected abstract FilteredLedgerView getLedger();
+    /**
+     * Get the ledger to apply the filters to.
+     *
+     * @return The application's filtered ledger, by default.
+     */
+    protected FilteredLedgerView getLedger() {
+        return application.getFilteredLedger();
+    }
 
     protected EventList<MatcherEditor> getMatcherEditors() {
         return new BasicEventList<MatcherEditor>();
     }
 
     protected abstract String getTitle();
+
+    /**
+     * Search a ledger in the background and show the results as they are
+     * found.
+     *
+     * @param source The ledger to search.
+     * @param editors The criteria to search for, a record must match all of
+     *     them.
+     */
+    protected final void search(RecordLedger source, List<MatcherEditor<Record>> editors) {
+        final SearchResultsLedger results = new SearchResultsLedger(source, editors);
+        results.start();
+        new SearchResultsDialog(application.getFrame(), results,
+                application.getConnections(), results.getRecordTypes()).setVisible(true);
+    }
+
 }
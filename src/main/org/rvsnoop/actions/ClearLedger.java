@@ -7,10 +7,9 @@ import java.awt.event.ActionEvent;
 import javax.swing.Action;
 
 import org.rvsnoop.Application;
+import org.rvsnoop.MessageCache;
 import org.rvsnoop.NLSUtils;
 
-import rvsnoop.Record;
-
 /**
  * Clear the contents of the record ledger.
  */
@@ -35,7 +34,8 @@ public final class ClearLedger extends RvSnoopAction {
     public final void actionPerformed(ActionEvent event) {
         application.getLedger().clear();
         application.getSubjectHierarchy().reset();
-        Record.resetSequence();
+        // Sequence numbers are not reset, they identify records in the cache.
+        MessageCache.getInstance().clear();
         // FIXME this should be replaced with a listener on the ledger.
         application.getFrame().clearDetails();
     }
@@ -3,119 +3,200 @@
 package org.rvsnoop.actions;
 
 import java.awt.event.ActionEvent;
-import java.io.BufferedOutputStream;
+import java.awt.event.ActionListener;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.Action;
 import javax.swing.JFileChooser;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.filechooser.FileFilter;
 
 import org.rvsnoop.Application;
 import org.rvsnoop.Logger;
+import org.rvsnoop.RecordLedger;
 import org.rvsnoop.event.RecordLedgerSelectionEvent;
 import org.rvsnoop.event.RecordLedgerSelectionListener;
+import org.rvsnoop.io.ExportFormat;
+import org.rvsnoop.io.RecordExporter;
+import org.rvsnoop.ui.RecordLedgerTable;
 
 import rvsnoop.Record;
 
-import static com.google.common.io.Closeables.closeQuietly;
-
 /**
- * An abstract class that handles the basics of exporting messages from the ledger.
+ * Export the current ledger selection using an {@link ExportFormat}.
+ * <p>
+ * One of these actions is created for each of the available export formats.
+ * Exports run in the background while a progress monitor is shown, the work
+ * is done by a {@link RecordExporter}. When every row in the ledger is
+ * selected the records are read from the ledger a chunk at a time rather than
+ * being copied out of the selection first.
  */
-public abstract class ExportToFile extends RvSnoopAction implements RecordLedgerSelectionListener {
-
-    private static final int BUFFER_SIZE = 64 * 1024;
+public final class ExportToFile extends RvSnoopAction implements RecordLedgerSelectionListener {
+
+    private final class Exporter extends SwingWorker<Void, Void> implements ActionListener {
+        private final RecordExporter exporter;
+        private final ProgressMonitor monitor;
+        private final long started = System.nanoTime();
+        private final Timer timer = new Timer(PROGRESS_UPDATE_MILLIS, this);
+        Exporter(RecordExporter exporter) {
+            this.exporter = exporter;
+            this.monitor = new ProgressMonitor(application.getFrame(),
+                    "Exporting to " + exporter.getFileOrDirectory().getName(),
+                    null, 0, Math.max(1, exporter.getNumRecords()));
+            monitor.setMillisToDecideToPopup(PROGRESS_UPDATE_MILLIS);
+        }
+        public void actionPerformed(ActionEvent e) {
+            if (monitor.isCanceled()) {
+                exporter.cancel();
+                cancel(false);
+            } else {
+                monitor.setProgress(exporter.getNumExported());
+            }
+        }
+        @Override
+        protected Void doInBackground() throws IOException {
+            exporter.run();
+            return null;
+        }
+        @Override
+        protected void done() {
+            timer.stop();
+            monitor.close();
+            setExporting(false);
+            final String path = exporter.getFileOrDirectory().getPath();
+            try {
+                get();
+                final double seconds = Math.max(1, System.nanoTime() - started) / 1e9;
+                final double megabytes = exporter.getBytesWritten() / (1024.0 * 1024.0);
+                logger.info("Exported %s records (%.1f MB) to %s in %.1f seconds, %.1f MB/s.",
+                        exporter.getNumExported(), megabytes, path, seconds, megabytes / seconds);
+            } catch (CancellationException e) {
+                logger.info("Cancelled the export to %s.", path);
+            } catch (InterruptedException e) {
+                // Cannot happen, the export has finished.
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.error(e.getCause(), "There was a problem exporting the selected records.");
+            }
+        }
+        void start() {
+            setExporting(true);
+            timer.start();
+            execute();
+        }
+    }
 
     private static final Logger logger = Logger.getLogger();
 
-    private transient Record[] currentSelection;
+    private static final int PROGRESS_UPDATE_MILLIS = 250;
 
-    private final FileFilter filter;
+    private static final long serialVersionUID = -6011254539497932867L;
 
-    protected OutputStream stream;
+    /**
+     * Get the action command used for the export action of a format.
+     *
+     * @param format The format.
+     * @return The action command.
+     */
+    public static String getCommand(ExportFormat format) {
+        return "exportTo" + format.getClass().getSimpleName();
+    }
+
+    private transient RecordLedgerSelectionEvent currentSelection;
 
-    protected ExportToFile(Application application, String command, String name, FileFilter filter) {
-        super(name, application);
-        putValue(Action.ACTION_COMMAND_KEY, command);
-        this.filter = filter;
+    /** Set while an export is running, only used on the event dispatch thread. */
+    private boolean exporting;
+
+    private final String formatName;
+
+    public ExportToFile(Application application, ExportFormat format) {
+        super(format.getDisplayName(), application);
+        putValue(Action.ACTION_COMMAND_KEY, getCommand(format));
+        putValue(Action.SHORT_DESCRIPTION, "Export the selected records to a " + format.getDisplayName());
+        this.formatName = format.getDisplayName();
     }
 
     /* (non-Javadoc)
      * @see java.awt.event.ActionListener#actionPerformed(java.awt.event.ActionEvent)
      */
     @Override
-    public final void actionPerformed(ActionEvent event) {
-        actionPerformed(currentSelection);
+    public void actionPerformed(ActionEvent event) {
+        final RecordLedgerSelectionEvent selection = currentSelection;
+        if (selection == null || selection.isSelectionEmpty()) { return; }
+        final ExportFormat format = newFormat();
+        final File file = chooseFile(format);
+        if (file == null) { return; }
+        final RecordLedgerTable table = (RecordLedgerTable) selection.getSource();
+        final RecordExporter exporter = table.getSelectedRowCount() == table.getRowCount()
+            ? new RecordExporter(format, file, table.getRecordLedger())
+            : new RecordExporter(format, file, selection.getSelectedRecords());
+        exporter.setMetadata(table.getTableFormat());
+        new Exporter(exporter).start();
     }
 
-    /* (non-Javadoc)
-     * @see rvsnoop.actions.LedgerSelectionAction#actionPerformed(java.util.List)
-     */
-    protected final void actionPerformed(Record[] records) {
+    private File chooseFile(ExportFormat format) {
         final JFileChooser chooser = new JFileChooser();
-        if (filter != null) chooser.setFileFilter(filter);
+        if (format.isSingleFileExport()) {
+            final FileFilter filter = format.getFileFilter();
+            if (filter != null) chooser.setFileFilter(filter);
+        } else {
+            chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        }
         if (JFileChooser.APPROVE_OPTION != chooser.showSaveDialog(application.getFrame()))
-            return;
-        final File file = chooser.getSelectedFile();
-        exportRecords(records, file);
+            return null;
+        return chooser.getSelectedFile();
     }
 
     /**
      * Export a group of records to a file.
+     * <p>
+     * This returns at once, the records are written in the background. This
+     * must be called on the event dispatch thread.
      *
      * @param records The records to export.
      * @param file The file to export to.
      */
-    public void exportRecords(Record[] records, final File file) {
-        try {
-            stream = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
-            logger.info("Exporting %s records to %s.", records.length, file.getPath());
-            writeHeader(records.length);
-            for (int i = 0, imax = records.length; i < imax; ++i) {
-                writeRecord(records[i], i);
-            }
-            writeFooter();
-            logger.info("Exported %s records to %s.", records.length, file.getPath());
-        } catch (IOException e) {
-            logger.error(e, "There was a problem exporting the selected records.");
-        } finally {
-            closeQuietly(stream);
-        }
-    }
-
-    /* (non-Javadoc)
-     * @see org.rvsnoop.event.RecordLedgerSelectionListener#valueChanged(org.rvsnoop.event.RecordLedgerSelectionEvent)
-     */
-    public void valueChanged(RecordLedgerSelectionEvent event) {
-        currentSelection = event.getSelectedRecords();
-        setEnabled(currentSelection.length > 0);
+    public void exportRecords(Record[] records, File file) {
+        new Exporter(new RecordExporter(newFormat(), file, records)).start();
     }
 
     /**
-     * Write a record to the output stream. Called once per record.
+     * Export the contents of a ledger to a file.
+     * <p>
+     * This returns at once, the records are read from the ledger a chunk at a
+     * time and written in the background. This must be called on the event
+     * dispatch thread.
      *
-     * @param record The record to write.
-     * @param index The index of the record being written.
+     * @param ledger The ledger to export, this may be a filtered view.
+     * @param file The file to export to.
      */
-    protected abstract void writeRecord(Record record, int index) throws IOException;
+    public void exportRecords(RecordLedger ledger, File file) {
+        new Exporter(new RecordExporter(newFormat(), file, ledger)).start();
+    }
 
-    /**
-     * Called once, before the first record is written.
-     *
-     * @param numberOfRecords The number of records that will be exported.
-     */
-    protected void writeHeader(int numberOfRecords) throws IOException {
-        // Hook for subclasses.
+    /** Formats keep the state of an export, so each export needs a new one. */
+    private ExportFormat newFormat() {
+        return ExportFormat.getExportFormat(formatName);
     }
 
-    /**
-     * Called once, after the last record is written.
+    private void setExporting(boolean exporting) {
+        this.exporting = exporting;
+        final RecordLedgerSelectionEvent selection = currentSelection;
+        setEnabled(!exporting && selection != null && !selection.isSelectionEmpty());
+    }
+
+    /* (non-Javadoc)
+     * @see org.rvsnoop.event.RecordLedgerSelectionListener#valueChanged(org.rvsnoop.event.RecordLedgerSelectionEvent)
      */
-    protected void writeFooter() throws IOException {
-        // Hook for subclasses.
+    public void valueChanged(RecordLedgerSelectionEvent event) {
+        // The selected records are only copied out if they are exported.
+        currentSelection = event;
+        setEnabled(!exporting && !event.isSelectionEmpty());
     }
 
 }
@@ -10,6 +10,7 @@ import java.awt.datatransfer.Transferable;
 import java.awt.datatransfer.UnsupportedFlavorException;
 import java.awt.event.ActionEvent;
 import java.io.IOException;
+import java.util.Arrays;
 
 import javax.swing.Action;
 import javax.swing.SwingUtilities;
@@ -19,7 +20,7 @@ import org.rvsnoop.Application;
 import org.rvsnoop.Logger;
 import org.rvsnoop.NLSUtils;
 
-import org.rvsnoop.event.MessageReceivedEvent;
+import org.rvsnoop.event.MessagesReceivedEvent;
 import rvsnoop.Record;
 import rvsnoop.RecordSelection;
 
@@ -63,9 +64,7 @@ public final class Paste extends RvSnoopAction {
         }
         try {
             final Record[] records = RecordSelection.read(clipboardData, application.getConnections());
-            for (int i = 0, imax = records.length; i < imax; ++i) {
-                EventBus.publish(new MessageReceivedEvent(records[i]));
-            }
+            EventBus.publish(new MessagesReceivedEvent(Arrays.asList(records)));
         } catch (TibrvException e) {
             logger.error(e, ERROR_RV, e.error);
         } catch (IOException e) {
@@ -4,17 +4,23 @@ package org.rvsnoop.actions;
 
 import ca.odell.glazedlists.BasicEventList;
 import ca.odell.glazedlists.EventList;
+import ca.odell.glazedlists.matchers.MatcherEditor;
 import org.rvsnoop.Application;
-import org.rvsnoop.FilteredLedgerView;
 import org.rvsnoop.NLSUtils;
 import org.rvsnoop.RecordLedger;
-import org.rvsnoop.ui.SearchResultsDialog;
+import rvsnoop.Record;
+import rvsnoop.SubjectHierarchy;
 
 import javax.swing.Action;
 import javax.swing.ImageIcon;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Start a new live search in the ledger contents.
+ * <p>
+ * The whole ledger is searched, only the subject and type filters are applied
+ * to the results.
  */
 public final class Search extends AbstractSearchAction {
 
@@ -36,9 +42,14 @@ public final class Search extends AbstractSearchAction {
     }
 
     @Override
-    protected void displayResults(RecordLedger ledger) {
-        new SearchResultsDialog(application.getFrame(), ledger,
-                application.getConnections(), application.getRecordTypes()).setVisible(true);
+    @SuppressWarnings("unchecked")
+    protected void applyMatchers(List<MatcherEditor> oldMatchers, List<MatcherEditor> newMatchers) {
+        final List<MatcherEditor<Record>> editors = new ArrayList<MatcherEditor<Record>>();
+        editors.add(SubjectHierarchy.INSTANCE.getMatcherEditor());
+        final RecordLedger ledger = application.getLedger();
+        editors.add(ledger.getRecordTypes().getMatcherEditor());
+        for (MatcherEditor editor : newMatchers) { editors.add(editor); }
+        search(ledger, editors);
     }
 
     /* (non-Javadoc)
@@ -54,11 +65,6 @@ public final class Search extends AbstractSearchAction {
         return new ImageIcon("/resources/banners/search.png");
     }
 
-    @Override
-    protected FilteredLedgerView getLedger() {
-        return FilteredLedgerView.newInstance(application.getLedger(), application.getRecordTypes(), true);
-    }
-
     @Override
     protected EventList getMatcherEditors() {
         return new BasicEventList();
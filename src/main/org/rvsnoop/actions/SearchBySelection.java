@@ -4,20 +4,22 @@ package org.rvsnoop.actions;
 
 import ca.odell.glazedlists.BasicEventList;
 import ca.odell.glazedlists.EventList;
+import ca.odell.glazedlists.matchers.MatcherEditor;
 import org.rvsnoop.Application;
-import org.rvsnoop.FilteredLedgerView;
 import org.rvsnoop.NLSUtils;
-import org.rvsnoop.RecordLedger;
 import org.rvsnoop.event.RecordLedgerSelectionEvent;
 import org.rvsnoop.event.RecordLedgerSelectionListener;
-import org.rvsnoop.ui.SearchResultsDialog;
 import rvsnoop.Record;
 
 import javax.swing.Action;
 import javax.swing.ImageIcon;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Start a new live search based on the current selection.
+ * <p>
+ * The filtered ledger is searched, the filters on it are not changed.
  */
 public final class SearchBySelection extends AbstractSearchAction implements RecordLedgerSelectionListener {
 
@@ -38,9 +40,11 @@ public final class SearchBySelection extends AbstractSearchAction implements Rec
     }
 
     @Override
-    protected void displayResults(RecordLedger ledger) {
-        new SearchResultsDialog(application.getFrame(), ledger,
-                application.getConnections(), application.getRecordTypes()).setVisible(true);
+    @SuppressWarnings("unchecked")
+    protected void applyMatchers(List<MatcherEditor> oldMatchers, List<MatcherEditor> newMatchers) {
+        final List<MatcherEditor<Record>> editors = new ArrayList<MatcherEditor<Record>>();
+        for (MatcherEditor editor : newMatchers) { editors.add(editor); }
+        search(application.getFilteredLedger(), editors);
     }
 
     @Override
@@ -53,11 +57,6 @@ public final class SearchBySelection extends AbstractSearchAction implements Rec
         return new ImageIcon("/resources/banners/searchBySelection.png");
     }
 
-    @Override
-    protected FilteredLedgerView getLedger() {
-        return application.getFilteredLedger();
-    }
-
     @Override
     protected EventList getMatcherEditors() {
         final EventList matchers = new BasicEventList();
@@ -0,0 +1,32 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop.event;
+
+import rvsnoop.Record;
+
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.List;
+
+/**
+ * Event fired when a batch of new messages has been received.
+ * <p>
+ * Subscribers should treat a batch as a single unit of work, that is, take any
+ * locks once for the whole batch rather than once per record.
+ */
+public class MessagesReceivedEvent extends EventObject {
+
+    private static final long serialVersionUID = 1L;
+
+    public MessagesReceivedEvent(List<Record> records) {
+        super(Collections.unmodifiableList(records));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Record> getSource() {
+        return (List<Record>) super.getSource();
+    }
+
+}
@@ -13,7 +13,6 @@ import java.util.EventObject;
 
 import javax.swing.ListSelectionModel;
 
-import org.rvsnoop.RecordLedger;
 import org.rvsnoop.ui.RecordLedgerTable;
 
 import rvsnoop.Record;
@@ -85,7 +84,6 @@ public final class RecordLedgerSelectionEvent extends EventObject {
 
     private void populateRecordsAndIndices() {
         final RecordLedgerTable table = (RecordLedgerTable) source;
-        final RecordLedger ledger = table.getRecordLedger();
         final ListSelectionModel selection = table.getSelectionModel();
         final int min = selection.getMinSelectionIndex();
         final int max = selection.getMaxSelectionIndex();
@@ -94,7 +92,7 @@ public final class RecordLedgerSelectionEvent extends EventObject {
         int count = 0;
         for (int i = min; i < max; ++i) {
             if (!selection.isSelectedIndex(i)) { continue; }
-            records[count] = ledger.get(i);
+            records[count] = table.getRecordAt(i);
             indices[count] = i;
             ++count;
         }
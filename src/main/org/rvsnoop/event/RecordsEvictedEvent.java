@@ -0,0 +1,30 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop.event;
+
+import rvsnoop.Record;
+
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.List;
+
+/**
+ * Event fired when a bounded ledger discards its oldest records to stay
+ * within its limits.
+ */
+public class RecordsEvictedEvent extends EventObject {
+
+    private static final long serialVersionUID = 1L;
+
+    public RecordsEvictedEvent(List<Record> records) {
+        super(Collections.unmodifiableList(records));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Record> getSource() {
+        return (List<Record>) super.getSource();
+    }
+
+}
@@ -0,0 +1,57 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop.io;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Constants and shared types for the CSV format.
+ * <p>
+ * A CSV file is UTF-8 text in the format of RFC 4180, with a header row
+ * followed by one row for each field of each record:
+ * <pre>
+ * record,timestamp,sendSubject,replySubject,field,id,type,value
+ * 0,1262304000000,A.B,,price,0,f64,1.5
+ * 0,1262304000000,A.B,,body,0,msg,1
+ * 0,1262304000000,A.B,,text,0,string,Hi
+ * </pre>
+ * Fields are listed in depth first order. The value of a <code>msg</code>
+ * field is the number of fields in it, those fields follow it. A record
+ * without any fields has a single row with empty field columns. Arrays are
+ * written as JSON arrays and other values as described in {@link FieldCodec}.
+ *
+ * @see CSVExportFormat
+ * @see CSVRecordReader
+ */
+public final class CSV {
+
+    /**
+     * Selects CSV files.
+     */
+    public static final class FileFilter extends javax.swing.filechooser.FileFilter {
+        public FileFilter() {
+            super();
+        }
+        @Override
+        public boolean accept(File f) {
+            return f.isDirectory() || f.getName().toLowerCase(Locale.ENGLISH).endsWith(".csv");
+        }
+        @Override
+        public String getDescription() {
+            return "CSV Files";
+        }
+    }
+
+    static final String[] HEADER = {
+        "record", "timestamp", "sendSubject", "replySubject", "field", "id", "type", "value"
+    };
+
+    static final int RECORD = 0, TIMESTAMP = 1, SEND_SUBJECT = 2, REPLY_SUBJECT = 3;
+
+    static final int FIELD = 4, ID = 5, TYPE = 6, VALUE = 7;
+
+    private CSV() { throw new UnsupportedOperationException(); }
+
+}
@@ -0,0 +1,155 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+
+import javax.swing.filechooser.FileFilter;
+
+import com.tibco.tibrv.TibrvMsg;
+import com.tibco.tibrv.TibrvMsgField;
+
+import org.rvsnoop.TibrvUtils;
+
+import rvsnoop.Record;
+
+/**
+ * Exports records to a CSV file, with one row per field, for use with
+ * spreadsheets and tools like pandas.
+ * <p>
+ * The fields are written straight to the stream as the message is walked, no
+ * string is built for the whole message.
+ *
+ * @see CSV
+ */
+public final class CSVExportFormat extends ExportFormat {
+
+    /** Doubles any quotes written to it, for values inside quotes. */
+    private static final class QuotingWriter extends FilterWriter {
+        QuotingWriter(Writer out) {
+            super(out);
+        }
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            for (int i = off, imax = off + len; i < imax; ++i) { write(cbuf[i]); }
+        }
+        @Override
+        public void write(int c) throws IOException {
+            if (c == '"') { out.write('"'); }
+            out.write(c);
+        }
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            int start = off;
+            for (int i = off, imax = off + len; i < imax; ++i) {
+                if (str.charAt(i) != '"') { continue; }
+                out.write(str, start, i + 1 - start);
+                out.write('"');
+                start = i + 1;
+            }
+            out.write(str, start, off + len - start);
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String LINE_END = "\r\n";
+
+    private Writer quoting;
+
+    private Writer writer;
+
+    @Override
+    public void endExport() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void exportRecord(Record record, int index) throws IOException {
+        final TibrvMsg message = record.getMessage();
+        if (message.getNumFields() == 0) {
+            writeRecordColumns(record, index);
+            writer.write(",,,," + LINE_END);
+            return;
+        }
+        final Iterator<TibrvMsgField> fields = TibrvUtils.depthFirstFieldIterator(message);
+        while (fields.hasNext()) {
+            final TibrvMsgField field = fields.next();
+            writeRecordColumns(record, index);
+            writer.write(',');
+            writeText(field.name);
+            writer.write(',');
+            writer.write(Integer.toString(field.id));
+            writer.write(',');
+            writer.write(FieldCodec.getTypeName(field.type));
+            writer.write(',');
+            if (field.type == TibrvMsg.MSG) {
+                writer.write(Integer.toString(((TibrvMsg) field.data).getNumFields()));
+            } else if (field.type == TibrvMsg.STRING) {
+                writeText((String) field.data);
+            } else if (FieldCodec.isScalar(field.type)) {
+                // None of the other scalar encodings need quoting.
+                FieldCodec.writeScalar(writer, field.type, field.data);
+            } else {
+                writer.write('"');
+                FieldCodec.writeJSONValue(quoting, field.type, field.data);
+                writer.write('"');
+            }
+            writer.write(LINE_END);
+        }
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "CSV";
+    }
+
+    @Override
+    public FileFilter getFileFilter() {
+        return new CSV.FileFilter();
+    }
+
+    @Override
+    public void startExport(OutputStream stream, int numberOfRecords) throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"), BUFFER_SIZE);
+        quoting = new QuotingWriter(writer);
+        for (int i = 0; i < CSV.HEADER.length; ++i) {
+            if (i > 0) { writer.write(','); }
+            writer.write(CSV.HEADER[i]);
+        }
+        writer.write(LINE_END);
+    }
+
+    private void writeRecordColumns(Record record, int index) throws IOException {
+        writer.write(Integer.toString(index));
+        writer.write(',');
+        writer.write(Long.toString(record.getTimestamp()));
+        writer.write(',');
+        final String ss = record.getRawSendSubject();
+        writeText(ss != null ? ss : "");
+        writer.write(',');
+        writeText(record.getReplySubject());
+    }
+
+    /** Write a string, quoting it if it needs to be. */
+    private void writeText(String text) throws IOException {
+        if (text == null) { return; }
+        for (int i = 0, imax = text.length(); i < imax; ++i) {
+            final char c = text.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                writer.write('"');
+                quoting.write(text);
+                writer.write('"');
+                return;
+            }
+        }
+        writer.write(text);
+    }
+
+}
@@ -0,0 +1,181 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.tibco.tibrv.TibrvMsg;
+
+import rvsnoop.Record;
+
+/**
+ * Reads records from a CSV file.
+ * <p>
+ * Only the rows of one record are held in memory at a time. The records are
+ * given new sequence numbers and have no connection.
+ *
+ * @see CSV
+ */
+public final class CSVRecordReader implements RecordReader {
+
+    /** A message which is still having fields added to it. */
+    private static final class Frame {
+        final TibrvMsg message = new TibrvMsg();
+        final String name;
+        final int id;
+        int remaining;
+        Frame(String name, int id, int remaining) {
+            this.name = name;
+            this.id = id;
+            this.remaining = remaining;
+        }
+    }
+
+    private final StringBuilder cell = new StringBuilder();
+
+    private boolean headerRead;
+
+    /** The first row of the next record, read while looking for the end of the last one. */
+    private String[] pending;
+
+    private final BufferedReader reader;
+
+    private final List<String> row = new ArrayList<String>(CSV.HEADER.length);
+
+    private int rowNumber;
+
+    /**
+     * @param stream The stream to read from, this is closed when the reader is.
+     * @throws IOException If the stream cannot be read as UTF-8.
+     */
+    public CSVRecordReader(InputStream stream) throws IOException {
+        this.reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+    }
+
+    private void addField(List<Frame> frames, String[] cells) throws IOException {
+        final String name = cells[CSV.FIELD].length() > 0 ? cells[CSV.FIELD] : null;
+        final int id = cells[CSV.ID].length() > 0 ? Integer.parseInt(cells[CSV.ID]) : 0;
+        final short type = FieldCodec.getType(cells[CSV.TYPE]);
+        final String value = cells[CSV.VALUE];
+        if (type == TibrvMsg.MSG) {
+            final int count = Integer.parseInt(value);
+            if (count > 0) {
+                // The nested fields follow, the message is added once they have been read.
+                frames.add(new Frame(name, id, count));
+                return;
+            }
+            FieldCodec.addField(top(frames).message, name, id, type, new TibrvMsg());
+        } else if (FieldCodec.isScalar(type)) {
+            FieldCodec.addField(top(frames).message, name, id, type, FieldCodec.decodeScalar(type, value));
+        } else {
+            FieldCodec.addField(top(frames).message, name, id, type,
+                    FieldCodec.decodeValue(type, JSONParser.parse(value)));
+        }
+        // Close any nested messages which are now complete.
+        while (frames.size() > 1) {
+            final Frame frame = top(frames);
+            if (--frame.remaining > 0) { return; }
+            frames.remove(frames.size() - 1);
+            FieldCodec.addField(top(frames).message, frame.name, frame.id, TibrvMsg.MSG, frame.message);
+        }
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private IOException error(String message, Throwable cause) {
+        return (IOException) new IOException(message + " on row " + rowNumber + '.').initCause(cause);
+    }
+
+    public Record read() throws IOException {
+        if (!headerRead) {
+            final String[] header = readRow();
+            if (header == null) { return null; }
+            if (header.length < CSV.HEADER.length || !CSV.HEADER[0].equals(header[0])) {
+                throw error("Not a CSV record file, the header is missing", null);
+            }
+            headerRead = true;
+        }
+        String[] cells = pending != null ? pending : readRow();
+        pending = null;
+        if (cells == null) { return null; }
+        try {
+            final String recordId = cells[CSV.RECORD];
+            final List<Frame> frames = new ArrayList<Frame>();
+            frames.add(new Frame(null, 0, Integer.MAX_VALUE));
+            final String send = cells[CSV.SEND_SUBJECT];
+            final String reply = cells[CSV.REPLY_SUBJECT];
+            final long timestamp = Long.parseLong(cells[CSV.TIMESTAMP]);
+            if (cells[CSV.TYPE].length() > 0) {
+                while (true) {
+                    addField(frames, cells);
+                    cells = readRow();
+                    if (cells == null || !recordId.equals(cells[CSV.RECORD])) { break; }
+                }
+                pending = cells;
+            }
+            if (frames.size() > 1) { throw new IOException("The record ends inside a nested message"); }
+            return new Record(null, frames.get(0).message, send, reply, timestamp);
+        } catch (IOException e) {
+            throw error(e.getMessage(), e);
+        } catch (RuntimeException e) {
+            throw error("Invalid record", e);
+        }
+    }
+
+    private String[] readRow() throws IOException {
+        String[] cells;
+        do {
+            cells = readRowOrBlankLine();
+            if (cells == null) { return null; }
+        } while (cells.length == 1 && cells[0].length() == 0);
+        if (cells.length < CSV.HEADER.length) {
+            throw error("Expected " + CSV.HEADER.length + " columns but found " + cells.length, null);
+        }
+        return cells;
+    }
+
+    private String[] readRowOrBlankLine() throws IOException {
+        int c = reader.read();
+        if (c < 0) { return null; }
+        ++rowNumber;
+        row.clear();
+        cell.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) { throw error("Unterminated quoted value", null); }
+                if (c == '"') {
+                    c = reader.read();
+                    if (c != '"') {
+                        quoted = false;
+                        continue;
+                    }
+                }
+                cell.append((char) c);
+            } else if (c == '"' && cell.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                row.add(cell.toString());
+                cell.setLength(0);
+            } else if (c == '\n' || c < 0) {
+                row.add(cell.toString());
+                return row.toArray(new String[row.size()]);
+            } else if (c != '\r') {
+                cell.append((char) c);
+            }
+            c = reader.read();
+        }
+    }
+
+    private static Frame top(List<Frame> frames) {
+        return frames.get(frames.size() - 1);
+    }
+
+}
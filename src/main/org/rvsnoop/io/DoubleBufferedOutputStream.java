@@ -0,0 +1,149 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An output stream which writes to another stream on a thread of its own.
+ * <p>
+ * Two buffers are used: one is filled by the caller while the other is
+ * written by the I/O thread, so producing the data and writing it overlap.
+ * The caller only waits if it fills a buffer before the I/O thread has
+ * finished with the other one.
+ * <p>
+ * If the wrapped stream fails the error is thrown from the next call which
+ * hands over a buffer, or from {@link #close()}.
+ */
+public final class DoubleBufferedOutputStream extends OutputStream {
+
+    private final class Writer implements Runnable {
+        Writer() {
+            super();
+        }
+        public void run() {
+            try {
+                while (true) {
+                    final ByteBuffer buffer = full.take();
+                    if (buffer == END) { return; }
+                    try {
+                        // Once the stream has failed just recycle the buffers.
+                        if (failure == null) { out.write(buffer.array(), 0, buffer.position()); }
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                    buffer.clear();
+                    free.put(buffer);
+                }
+            } catch (InterruptedException e) {
+                failure = new InterruptedIOException("The output thread was interrupted.");
+            }
+        }
+    }
+
+    /** Marks the end of the data. */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private ByteBuffer current;
+
+    private volatile IOException failure;
+
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(2);
+
+    private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<ByteBuffer>(2);
+
+    private final OutputStream out;
+
+    private final Thread thread;
+
+    /**
+     * Create a new stream and start its I/O thread.
+     *
+     * @param out The stream to write to, it is closed when this stream is.
+     * @param bufferSize The size of each of the buffers.
+     * @param threadName The name of the I/O thread.
+     */
+    public DoubleBufferedOutputStream(OutputStream out, int bufferSize, String threadName) {
+        checkArgument(bufferSize > 0, "The buffer size must be positive.");
+        this.out = out;
+        this.current = ByteBuffer.allocate(bufferSize);
+        free.add(ByteBuffer.allocate(bufferSize));
+        thread = new Thread(new Writer(), threadName);
+        thread.start();
+    }
+
+    private void checkFailure() throws IOException {
+        final IOException e = failure;
+        if (e != null) { throw e; }
+    }
+
+    /**
+     * Write any buffered data, wait for the I/O thread to finish and then close
+     * the wrapped stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (current == null) { return; }
+        try {
+            if (current.position() > 0) { full.put(current); }
+            current = null;
+            full.put(END);
+            thread.join();
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            throw new InterruptedIOException("Interrupted while closing the stream.");
+        } finally {
+            current = null;
+            out.close();
+        }
+        checkFailure();
+    }
+
+    /**
+     * Hand the current buffer to the I/O thread.
+     * <p>
+     * This does not wait for the data to be written.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (current == null) { throw new IOException("The stream is closed."); }
+        if (current.position() == 0) { return; }
+        checkFailure();
+        try {
+            full.put(current);
+            current = free.take();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while writing to the stream.");
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (current == null) { throw new IOException("The stream is closed."); }
+            if (!current.hasRemaining()) { flush(); }
+            final int count = Math.min(len, current.remaining());
+            current.put(b, off, count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (current != null && current.hasRemaining()) {
+            current.put((byte) b);
+        } else {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+    }
+
+}
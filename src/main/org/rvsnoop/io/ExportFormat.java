@@ -4,13 +4,18 @@ package org.rvsnoop.io;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 
 import javax.swing.filechooser.FileFilter;
 
+import org.rvsnoop.Logger;
 import org.rvsnoop.ui.RecordLedgerFormat;
 
 import rvsnoop.Record;
@@ -19,74 +24,111 @@ import rvsnoop.Record;
  * Base class for export formats.
  * <p>
  * Export formats are used to describe the different means of exporting records
- * from the ledger.
+ * from the ledger. The formats are found with a {@link ServiceLoader}, so new
+ * formats can be added by listing them in a
+ * <code>META-INF/services/org.rvsnoop.io.ExportFormat</code> file on the
+ * class path, no changes to the user interface are needed.
+ * <p>
+ * Formats do not depend on the user interface, a {@link RecordExporter} can
+ * be used to export records without one. An export is a call to
+ * {@link #startExport(OutputStream, int)}, followed by calls to
+ * {@link #exportRecords(Record[], int, int)} with batches of records, then a
+ * call to {@link #endExport()}. Each export uses a new instance of the format,
+ * so formats may keep the state of the export in fields.
  *
  * @author <a href="mailto:ianp@ianp.org">Ian Phillips</a>
  * @version $Revision$, $Date$
  */
 public abstract class ExportFormat {
 
-    private static final Map formats = new HashMap();
-    
+    private static final Comparator<ExportFormat> BY_DISPLAY_NAME = new Comparator<ExportFormat>() {
+        public int compare(ExportFormat o1, ExportFormat o2) {
+            return o1.getDisplayName().compareTo(o2.getDisplayName());
+        }
+    };
+
+    private static final Logger logger = Logger.getLogger();
+
+    /**
+     * Get a new instance of an export format.
+     *
+     * @param displayName The display name of the format.
+     * @return The format, or <code>null</code> if there is no format with
+     *     that name.
+     */
     public static ExportFormat getExportFormat(String displayName) {
-        return (ExportFormat) formats.get(displayName);
+        for (ExportFormat format : getExportFormats()) {
+            if (format.getDisplayName().equals(displayName)) { return format; }
+        }
+        return null;
     }
-    
+
     /**
-     * Get human readable display names for all of the known export formats.
-     * 
-     * @return The known export formats.
+     * Get new instances of all of the known export formats.
+     *
+     * @return The known export formats, sorted by display name.
      */
-    public static String[] getExportFormats() {
-        if (formats.size() == 0) {
-            final String[] classes = {
-                    "org.rvsnoop.io.HTMLExportFormat",
-                    "org.rvsnoop.io.RecordBundleExportFormat"
-            };
-            for (int i = 0, imax = classes.length; i < imax; ++i) {
-                try {
-                    Class clazz = Class.forName(classes[i]);
-                    final ExportFormat format = (ExportFormat) clazz.newInstance();
-                    formats.put(format.getDisplayName(), format);
-                } catch (Exception e) {
-                    // TODO log as INFO
-                    e.printStackTrace();
-                }
+    public static List<ExportFormat> getExportFormats() {
+        final List<ExportFormat> formats = new ArrayList<ExportFormat>();
+        final Iterator<ExportFormat> i = ServiceLoader.load(ExportFormat.class).iterator();
+        while (i.hasNext()) {
+            try {
+                formats.add(i.next());
+            } catch (ServiceConfigurationError e) {
+                logger.warn(e, "Could not load an export format.");
             }
         }
-        final Set keys = formats.keySet();
-        final String[] names =  (String[]) keys.toArray(new String[keys.size()]);
-        Arrays.sort(names);
-        return names;
+        Collections.sort(formats, BY_DISPLAY_NAME);
+        return formats;
     }
-    
+
     protected File fileOrDirectory;
 
     /**
-     * Called once, after the last record is written.
+     * Called once, after the last record is written or when the export is
+     * cancelled.
      * <p>
      * The stream will be flushed and closed automatically, so there is no need
-     * to do that in this method.
+     * to do that in this method. Formats which write to a directory should
+     * close any files which they have opened.
      */
     public void endExport() throws IOException {
         // Hook for subclasses.
     }
 
     /**
-     * Write a record to the output stream. Called once per record.
+     * Write a record to the output stream. Called once per record by the
+     * default implementation of {@link #exportRecords(Record[], int, int)}.
      *
      * @param record The record to write.
      * @param index The index of the record being written.
      */
     public abstract void exportRecord(Record record, int index) throws IOException;
 
+    /**
+     * Write a batch of records to the output stream.
+     * <p>
+     * Formats which can write a batch more quickly than one record at a time
+     * should override this.
+     *
+     * @param records The records to write, only the first <code>count</code>
+     *     elements are used.
+     * @param count The number of records to write.
+     * @param firstIndex The index of the first record in the batch.
+     */
+    public void exportRecords(Record[] records, int count, int firstIndex) throws IOException {
+        for (int i = 0; i < count; ++i) {
+            exportRecord(records[i], firstIndex + i);
+        }
+    }
+
     public abstract String getDisplayName();
 
     /**
      * Get a file filter suitable for selecting files for this output format.
      * <p>
      * If the format uses a directory then no filter is required.
-     * 
+     *
      * @return The file filter.
      */
     public FileFilter getFileFilter() {
@@ -98,7 +140,7 @@ public abstract class ExportFormat {
      * <p>
      * If this returns false then the format is expected to export only the raw
      * message data.
-     * 
+     *
      * @return <code>true</code> if the record metadata is exported.
      */
     public boolean isMetadataExported() {
@@ -114,24 +156,24 @@ public abstract class ExportFormat {
     public boolean isSingleFileExport() {
         return true;
     }
-    
+
     /**
      * Called before the export starts to set the export location.
      * <p>
      * The export location will already have been created and ensured to be
      * writable, it will be a file or directory based on the results of calling
      * {@link #isSingleFileExport()}.
-     * 
+     *
      * @param fileOrDirectory
      */
     public void setExportLocation(File fileOrDirectory) {
         this.fileOrDirectory = fileOrDirectory;
     }
-    
+
     /**
      * If {@link #isMetadataExported()} is <code>true</code> then this will be
      * called to set the metadata that is to be exported.
-     * 
+     *
      * @param format The format to use.
      */
     public void setMetadata(RecordLedgerFormat format) {
@@ -141,9 +183,13 @@ public abstract class ExportFormat {
     /**
      * Called once, before the first record is written.
      *
-     * @param numberOfRecords The number of records that will be exported.
+     * @param stream The stream to write to, or <code>null</code> if the
+     *     format exports to a directory.
+     * @param numberOfRecords The number of records that will be exported,
+     *     fewer may be exported if records are removed from a ledger while it
+     *     is being exported.
      */
-    public void startExport(int numberOfRecords) throws IOException {
+    public void startExport(OutputStream stream, int numberOfRecords) throws IOException {
         // Hook for subclasses.
     }
 
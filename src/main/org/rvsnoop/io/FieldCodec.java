@@ -0,0 +1,449 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.tibco.tibrv.TibrvDate;
+import com.tibco.tibrv.TibrvException;
+import com.tibco.tibrv.TibrvIPAddr;
+import com.tibco.tibrv.TibrvIPPort;
+import com.tibco.tibrv.TibrvMsg;
+import com.tibco.tibrv.TibrvMsgField;
+import com.tibco.tibrv.TibrvXml;
+
+/**
+ * Encodes Rendezvous message fields as text, and decodes them again.
+ * <p>
+ * This is shared by the {@link JSONLines} and {@link CSV} formats. Each field
+ * is written with the name of its type so that it is decoded to the same type.
+ * Numbers are written in decimal, binary data as hexadecimal, date times as
+ * seconds and nanoseconds since the epoch and arrays as JSON arrays. Nested
+ * messages are written as JSON arrays of field objects, each object has
+ * <code>name</code>, <code>id</code> (if it is not zero), <code>type</code>
+ * and <code>value</code> members.
+ * <p>
+ * Everything is written straight to a {@link Writer}, the only strings created
+ * are for numbers.
+ */
+final class FieldCodec {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final String[] TYPE_NAMES = new String[256];
+
+    private static final Map<String, Short> TYPES = new HashMap<String, Short>();
+
+    private static final String USER_TYPE_PREFIX = "user";
+
+    static {
+        addType(TibrvMsg.MSG, "msg");
+        addType(TibrvMsg.DATETIME, "datetime");
+        addType(TibrvMsg.OPAQUE, "opaque");
+        addType(TibrvMsg.STRING, "string");
+        addType(TibrvMsg.BOOL, "bool");
+        addType(TibrvMsg.I8, "i8");
+        addType(TibrvMsg.U8, "u8");
+        addType(TibrvMsg.I16, "i16");
+        addType(TibrvMsg.U16, "u16");
+        addType(TibrvMsg.I32, "i32");
+        addType(TibrvMsg.U32, "u32");
+        addType(TibrvMsg.I64, "i64");
+        addType(TibrvMsg.U64, "u64");
+        addType(TibrvMsg.F32, "f32");
+        addType(TibrvMsg.F64, "f64");
+        addType(TibrvMsg.IPPORT16, "ipport16");
+        addType(TibrvMsg.IPADDR32, "ipaddr32");
+        addType(TibrvMsg.ENCRYPTED, "encrypted");
+        addType(TibrvMsg.XML, "xml");
+        addType(TibrvMsg.I8ARRAY, "i8array");
+        addType(TibrvMsg.U8ARRAY, "u8array");
+        addType(TibrvMsg.I16ARRAY, "i16array");
+        addType(TibrvMsg.U16ARRAY, "u16array");
+        addType(TibrvMsg.I32ARRAY, "i32array");
+        addType(TibrvMsg.U32ARRAY, "u32array");
+        addType(TibrvMsg.I64ARRAY, "i64array");
+        addType(TibrvMsg.U64ARRAY, "u64array");
+        addType(TibrvMsg.F32ARRAY, "f32array");
+        addType(TibrvMsg.F64ARRAY, "f64array");
+        addType(TibrvMsg.MSGARRAY, "msgarray");
+        addType(TibrvMsg.STRINGARRAY, "stringarray");
+    }
+
+    private static void addType(short type, String name) {
+        TYPE_NAMES[type] = name;
+        TYPES.put(name, type);
+    }
+
+    private static Object decodeArray(short type, List<?> json) throws IOException {
+        final int length = json.size();
+        final Object array;
+        switch (type) {
+        case TibrvMsg.I8ARRAY:     array = new byte[length]; break;
+        case TibrvMsg.U8ARRAY:     // Fall through.
+        case TibrvMsg.I16ARRAY:    array = new short[length]; break;
+        case TibrvMsg.U16ARRAY:    // Fall through.
+        case TibrvMsg.I32ARRAY:    array = new int[length]; break;
+        case TibrvMsg.U32ARRAY:    // Fall through.
+        case TibrvMsg.I64ARRAY:    // Fall through.
+        case TibrvMsg.U64ARRAY:    array = new long[length]; break;
+        case TibrvMsg.F32ARRAY:    array = new float[length]; break;
+        case TibrvMsg.F64ARRAY:    array = new double[length]; break;
+        case TibrvMsg.MSGARRAY:    array = new TibrvMsg[length]; break;
+        case TibrvMsg.STRINGARRAY: array = new String[length]; break;
+        default: throw new IOException("Not an array type: " + getTypeName(type));
+        }
+        final short elementType = getElementType(type);
+        for (int i = 0; i < length; ++i) {
+            Array.set(array, i, decodeValue(elementType, json.get(i)));
+        }
+        return array;
+    }
+
+    /**
+     * Decode a nested message from the JSON array of its fields.
+     *
+     * @param json The fields, as returned by {@link JSONParser}.
+     * @return The message.
+     * @throws IOException If the fields could not be decoded.
+     */
+    static TibrvMsg decodeMessage(List<?> json) throws IOException {
+        final TibrvMsg message = new TibrvMsg();
+        for (Object element : json) {
+            if (!(element instanceof Map)) { throw new IOException("Expected a field object."); }
+            final Map<?, ?> field = (Map<?, ?>) element;
+            final Object id = field.get("id");
+            final Object typeName = field.get("type");
+            if (!(typeName instanceof String)) { throw new IOException("Missing field type."); }
+            final short type = getType((String) typeName);
+            addField(message, (String) field.get("name"), id != null ? parseInt((String) id) : 0,
+                    type, decodeValue(type, field.get("value")));
+        }
+        return message;
+    }
+
+    static void addField(TibrvMsg message, String name, int id, short type, Object data) throws IOException {
+        try {
+            message.add(new TibrvMsgField(name, data, type, id));
+        } catch (TibrvException e) {
+            throw (IOException) new IOException("Could not add the field " + name).initCause(e);
+        }
+    }
+
+    /**
+     * Decode a scalar value from its text.
+     *
+     * @param type The type of the field, {@link #isScalar(short)} must be
+     *     <code>true</code> for it.
+     * @param text The text of the value.
+     * @return The value.
+     * @throws IOException If the text is not valid for the type.
+     */
+    static Object decodeScalar(short type, String text) throws IOException {
+        try {
+            switch (type) {
+            case TibrvMsg.STRING:    return text;
+            case TibrvMsg.BOOL:      return Boolean.valueOf(text);
+            case TibrvMsg.I8:        return Byte.valueOf(text);
+            case TibrvMsg.U8:        // Fall through.
+            case TibrvMsg.I16:       return Short.valueOf(text);
+            case TibrvMsg.U16:       // Fall through.
+            case TibrvMsg.I32:       return Integer.valueOf(text);
+            case TibrvMsg.U32:       // Fall through.
+            case TibrvMsg.I64:       // Fall through.
+            case TibrvMsg.U64:       return Long.valueOf(text);
+            case TibrvMsg.F32:       return Float.valueOf(text);
+            case TibrvMsg.F64:       return Double.valueOf(text);
+            case TibrvMsg.DATETIME:  return parseDate(text);
+            case TibrvMsg.IPADDR32:  return new TibrvIPAddr(text);
+            case TibrvMsg.IPPORT16:  return new TibrvIPPort(parseInt(text));
+            case TibrvMsg.XML:       return new TibrvXml(parseHex(text));
+            default:                 return parseHex(text);
+            }
+        } catch (NumberFormatException e) {
+            throw (IOException) new IOException("Not a valid " + getTypeName(type) + ": " + text).initCause(e);
+        } catch (UnknownHostException e) {
+            throw (IOException) new IOException("Not a valid IP address: " + text).initCause(e);
+        }
+    }
+
+    /**
+     * Decode a value from a JSON value.
+     *
+     * @param type The type of the field.
+     * @param json The value, as returned by {@link JSONParser}.
+     * @return The value.
+     * @throws IOException If the JSON value is not valid for the type.
+     */
+    static Object decodeValue(short type, Object json) throws IOException {
+        if (json instanceof List) {
+            final List<?> list = (List<?>) json;
+            return type == TibrvMsg.MSG ? decodeMessage(list) : decodeArray(type, list);
+        }
+        if (json instanceof Boolean && type == TibrvMsg.BOOL) { return json; }
+        if (json instanceof String && isScalar(type)) { return decodeScalar(type, (String) json); }
+        throw new IOException("Not a valid " + getTypeName(type) + ": " + json);
+    }
+
+    private static short getElementType(short arrayType) {
+        switch (arrayType) {
+        case TibrvMsg.I8ARRAY:     return TibrvMsg.I8;
+        case TibrvMsg.U8ARRAY:     return TibrvMsg.U8;
+        case TibrvMsg.I16ARRAY:    return TibrvMsg.I16;
+        case TibrvMsg.U16ARRAY:    return TibrvMsg.U16;
+        case TibrvMsg.I32ARRAY:    return TibrvMsg.I32;
+        case TibrvMsg.U32ARRAY:    return TibrvMsg.U32;
+        case TibrvMsg.I64ARRAY:    return TibrvMsg.I64;
+        case TibrvMsg.U64ARRAY:    return TibrvMsg.U64;
+        case TibrvMsg.F32ARRAY:    return TibrvMsg.F32;
+        case TibrvMsg.F64ARRAY:    return TibrvMsg.F64;
+        case TibrvMsg.MSGARRAY:    return TibrvMsg.MSG;
+        case TibrvMsg.STRINGARRAY: return TibrvMsg.STRING;
+        default: throw new IllegalArgumentException("Not an array type: " + arrayType);
+        }
+    }
+
+    static short getType(String name) throws IOException {
+        final Short type = TYPES.get(name);
+        if (type != null) { return type.shortValue(); }
+        if (name.startsWith(USER_TYPE_PREFIX)) {
+            try {
+                final int user = Integer.parseInt(name.substring(USER_TYPE_PREFIX.length()));
+                if (user >= TibrvMsg.USER_FIRST && user <= TibrvMsg.USER_LAST) { return (short) user; }
+            } catch (NumberFormatException e) {
+                // Handled below.
+            }
+        }
+        throw new IOException("Unknown field type: " + name);
+    }
+
+    static String getTypeName(short type) {
+        final String name = type >= 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type] : null;
+        return name != null ? name : USER_TYPE_PREFIX + type;
+    }
+
+    /**
+     * Is a type written as a single piece of text, rather than as a JSON array.
+     *
+     * @param type The field type.
+     * @return <code>true</code> if the field can be written with
+     *     {@link #writeScalar(Writer, TibrvMsgField)}.
+     */
+    static boolean isScalar(short type) {
+        switch (type) {
+        case TibrvMsg.MSG:
+        case TibrvMsg.I8ARRAY:
+        case TibrvMsg.U8ARRAY:
+        case TibrvMsg.I16ARRAY:
+        case TibrvMsg.U16ARRAY:
+        case TibrvMsg.I32ARRAY:
+        case TibrvMsg.U32ARRAY:
+        case TibrvMsg.I64ARRAY:
+        case TibrvMsg.U64ARRAY:
+        case TibrvMsg.F32ARRAY:
+        case TibrvMsg.F64ARRAY:
+        case TibrvMsg.MSGARRAY:
+        case TibrvMsg.STRINGARRAY:
+            return false;
+        default:
+            return true;
+        }
+    }
+
+    private static boolean isJSONNumber(Object value) {
+        if (value instanceof Double) { return !((Double) value).isNaN() && !((Double) value).isInfinite(); }
+        if (value instanceof Float) { return !((Float) value).isNaN() && !((Float) value).isInfinite(); }
+        return value instanceof Number;
+    }
+
+    private static TibrvDate parseDate(String text) {
+        final int dot = text.indexOf('.');
+        if (dot < 0) { return new TibrvDate(Long.parseLong(text), 0); }
+        return new TibrvDate(Long.parseLong(text.substring(0, dot)), Integer.parseInt(text.substring(dot + 1)));
+    }
+
+    private static byte[] parseHex(String text) throws IOException {
+        final int length = text.length();
+        if (length % 2 != 0) { throw new IOException("Odd number of hex digits: " + text); }
+        final byte[] bytes = new byte[length / 2];
+        for (int i = 0; i < bytes.length; ++i) {
+            final int hi = Character.digit(text.charAt(2 * i), 16);
+            final int lo = Character.digit(text.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) { throw new IOException("Not a hex string: " + text); }
+            bytes[i] = (byte) ((hi << 4) | lo);
+        }
+        return bytes;
+    }
+
+    private static int parseInt(String text) throws IOException {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw (IOException) new IOException("Not a valid integer: " + text).initCause(e);
+        }
+    }
+
+    private static void writeHex(Writer out, byte[] bytes) throws IOException {
+        for (byte b : bytes) {
+            out.write(HEX_DIGITS[(b >> 4) & 0xF]);
+            out.write(HEX_DIGITS[b & 0xF]);
+        }
+    }
+
+    /**
+     * Write the fields of a message as a JSON array.
+     * <p>
+     * The fields are visited in depth first order, nested messages are written
+     * as arrays in the <code>value</code> member of their field.
+     *
+     * @param out The writer to write to.
+     * @param message The message to write.
+     * @throws IOException If the writer fails.
+     */
+    static void writeJSONFields(final Writer out, TibrvMsg message) throws IOException {
+        out.write('[');
+        new FieldVisitor() {
+            private boolean first = true;
+            private void writeHeader(TibrvMsgField field) throws IOException {
+                if (!first) { out.write(','); }
+                out.write("{\"name\":");
+                writeJSONString(out, field.name);
+                if (field.id != 0) {
+                    out.write(",\"id\":");
+                    out.write(Integer.toString(field.id));
+                }
+                out.write(",\"type\":\"");
+                out.write(getTypeName(field.type));
+                out.write("\",\"value\":");
+            }
+            @Override
+            void startMessage(TibrvMsgField field) throws IOException {
+                writeHeader(field);
+                out.write('[');
+                first = true;
+            }
+            @Override
+            void endMessage(TibrvMsgField field) throws IOException {
+                out.write("]}");
+            }
+            @Override
+            void visitField(TibrvMsgField field) throws IOException {
+                writeHeader(field);
+                writeJSONValue(out, field.type, field.data);
+                out.write('}');
+                first = false;
+            }
+        }.visit(message);
+        out.write(']');
+    }
+
+    static void writeJSONString(Writer out, String s) throws IOException {
+        if (s == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        int start = 0;
+        final int length = s.length();
+        for (int i = 0; i < length; ++i) {
+            final char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') { continue; }
+            out.write(s, start, i - start);
+            start = i + 1;
+            switch (c) {
+            case '"':  out.write("\\\""); break;
+            case '\\': out.write("\\\\"); break;
+            case '\n': out.write("\\n"); break;
+            case '\r': out.write("\\r"); break;
+            case '\t': out.write("\\t"); break;
+            default:
+                out.write("\\u00");
+                out.write(HEX_DIGITS[(c >> 4) & 0xF]);
+                out.write(HEX_DIGITS[c & 0xF]);
+            }
+        }
+        out.write(s, start, length - start);
+        out.write('"');
+    }
+
+    /**
+     * Write a field value as JSON.
+     *
+     * @param out The writer to write to.
+     * @param type The type of the field.
+     * @param data The value of the field.
+     * @throws IOException If the writer fails.
+     */
+    static void writeJSONValue(Writer out, short type, Object data) throws IOException {
+        if (type == TibrvMsg.MSG) {
+            writeJSONFields(out, (TibrvMsg) data);
+        } else if (type == TibrvMsg.STRING) {
+            writeJSONString(out, (String) data);
+        } else if (isScalar(type)) {
+            final boolean quoted = !(data instanceof Boolean || isJSONNumber(data));
+            if (quoted) { out.write('"'); }
+            writeScalar(out, type, data);
+            if (quoted) { out.write('"'); }
+        } else {
+            final short elementType = getElementType(type);
+            out.write('[');
+            for (int i = 0, imax = Array.getLength(data); i < imax; ++i) {
+                if (i > 0) { out.write(','); }
+                writeJSONValue(out, elementType, Array.get(data, i));
+            }
+            out.write(']');
+        }
+    }
+
+    /**
+     * Write a scalar field value as plain text.
+     *
+     * @param out The writer to write to.
+     * @param type The type of the field, {@link #isScalar(short)} must be
+     *     <code>true</code> for it.
+     * @param data The value of the field.
+     * @throws IOException If the writer fails.
+     */
+    static void writeScalar(Writer out, short type, Object data) throws IOException {
+        switch (type) {
+        case TibrvMsg.STRING:
+            out.write((String) data);
+            break;
+        case TibrvMsg.DATETIME:
+            final TibrvDate date = (TibrvDate) data;
+            final String nanos = Integer.toString(date.getTimeNanoseconds());
+            out.write(Long.toString(date.getTimeSeconds()));
+            out.write('.');
+            for (int i = nanos.length(); i < 9; ++i) { out.write('0'); }
+            out.write(nanos);
+            break;
+        case TibrvMsg.IPADDR32:
+            out.write(((TibrvIPAddr) data).getAsString());
+            break;
+        case TibrvMsg.IPPORT16:
+            out.write(Integer.toString(((TibrvIPPort) data).getPort()));
+            break;
+        case TibrvMsg.XML:
+            writeHex(out, ((TibrvXml) data).getBytes());
+            break;
+        default:
+            if (data instanceof byte[]) {
+                writeHex(out, (byte[]) data);
+            } else {
+                // Booleans and numbers.
+                out.write(data.toString());
+            }
+        }
+    }
+
+    private FieldCodec() {
+        throw new UnsupportedOperationException();
+    }
+
+}
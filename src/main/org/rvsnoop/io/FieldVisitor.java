@@ -0,0 +1,86 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.tibco.tibrv.TibrvMsg;
+import com.tibco.tibrv.TibrvMsgField;
+
+import org.rvsnoop.TibrvUtils;
+
+/**
+ * Walks the fields of a message in depth first order, telling subclasses
+ * where each nested message starts and ends.
+ * <p>
+ * This is used by the writers which show the nesting of the fields, so that
+ * the bookkeeping for nested messages which end at the same field is only
+ * done in one place.
+ */
+abstract class FieldVisitor {
+
+    /**
+     * Called for a nested message which has fields, before its fields are
+     * visited.
+     *
+     * @param field The field holding the nested message.
+     * @throws IOException If the field could not be written.
+     */
+    abstract void startMessage(TibrvMsgField field) throws IOException;
+
+    /**
+     * Called after the last field of a nested message has been visited.
+     *
+     * @param field The field holding the nested message.
+     * @throws IOException If the field could not be written.
+     */
+    abstract void endMessage(TibrvMsgField field) throws IOException;
+
+    /**
+     * Called for every other field, including nested messages without any
+     * fields.
+     *
+     * @param field The field.
+     * @throws IOException If the field could not be written.
+     */
+    abstract void visitField(TibrvMsgField field) throws IOException;
+
+    /**
+     * Visit all of the fields in a message.
+     *
+     * @param message The message to visit.
+     * @throws IOException If a field could not be written.
+     */
+    final void visit(TibrvMsg message) throws IOException {
+        final Iterator<TibrvMsgField> fields = TibrvUtils.depthFirstFieldIterator(message);
+        // The open nested messages, and the number of fields left in each.
+        TibrvMsgField[] open = new TibrvMsgField[8];
+        int[] remaining = new int[8];
+        int depth = 0;
+        remaining[0] = message.getNumFields();
+        while (fields.hasNext()) {
+            final TibrvMsgField field = fields.next();
+            final int count = field.type == TibrvMsg.MSG ? ((TibrvMsg) field.data).getNumFields() : 0;
+            if (count > 0) {
+                // The iterator returns the nested fields next.
+                startMessage(field);
+                if (++depth == remaining.length) {
+                    open = Arrays.copyOf(open, 2 * depth);
+                    remaining = Arrays.copyOf(remaining, 2 * depth);
+                }
+                open[depth] = field;
+                remaining[depth] = count;
+                continue;
+            }
+            visitField(field);
+            // Several nested messages may end at the same field.
+            while (--remaining[depth] == 0 && depth > 0) {
+                endMessage(open[depth]);
+                open[depth--] = null;
+            }
+        }
+    }
+
+}
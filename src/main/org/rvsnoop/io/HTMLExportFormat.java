@@ -1,50 +1,152 @@
-/*
- * Class:     HTMLExportFormat
- * Version:   $Revision$
- * Date:      $Date$
- * Copyright: Copyright © 2007-2007 Ian Phillips.
- * License:   Apache Software License (Version 2.0)
- */
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
 package org.rvsnoop.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import javax.swing.filechooser.FileFilter;
+
+import nu.xom.Attribute;
+import nu.xom.DocType;
+import nu.xom.Element;
+import nu.xom.Text;
 
+import rvsnoop.Marshaller;
 import rvsnoop.Record;
+import rvsnoop.Version;
 
 /**
- * TODO write documentation for HTMLExportFormat.
+ * Exports records to a single XHTML file.
  *
  * @author <a href="mailto:ianp@ianp.org">Ian Phillips</a>
  * @version $Revision$, $Date$
  */
 public final class HTMLExportFormat extends ExportFormat {
 
-    /* (non-Javadoc)
-     * @see org.rvsnoop.io.ExportFormat#exportRecord(rvsnoop.Record, int)
-     */
+    private static class HTMLFileFilter extends FileFilter {
+        HTMLFileFilter() {
+            super();
+        }
+        @Override
+        public boolean accept(File f) {
+            return f.isDirectory() || f.getName().toLowerCase(Locale.ENGLISH).endsWith(".html");
+        }
+        @Override
+        public String getDescription() {
+            return "HTML Files";
+        }
+    }
+
+    private static final String NSURI = "http://www.w3.org/1999/xhtml";
+
+    private static final Element HTML_ELT = new Element("html", NSURI);
+    private static final Element HEAD_ELT = new Element("head", NSURI);
+    private static final Element TITLE_ELT = new Element("title", NSURI);
+    private static final Element META_ELT = new Element("meta", NSURI);
+    private static final Element BODY_ELT = new Element("body", NSURI);
+    private static final Element TABLE_ELT = new Element("table", NSURI);
+    private static final Element TR_ELT = new Element("tr", NSURI);
+    private static final Element TH_ELT = new Element("th", NSURI);
+    private static final Element TD_ELT = new Element("td", NSURI);
+    private static final Element PRE_ELT = new Element("pre", NSURI);
+    private static final Element H1_ELT = new Element("h1", NSURI);
+
+    private final SimpleDateFormat dateFormatter = new SimpleDateFormat("HH:mm:ss.SSS");
+
+    private StreamSerializer serializer;
+
+    @Override
+    public void endExport() throws IOException {
+        serializer.writeEndTag(TABLE_ELT);
+        serializer.writeEndTag(BODY_ELT);
+        serializer.writeEndTag(HTML_ELT);
+        serializer.flush();
+    }
+
     @Override
     public void exportRecord(Record record, int index) throws IOException {
-        // TODO Auto-generated method stub
+        serializer.writeStartTag(TR_ELT);
+        writeTagged(TD_ELT, dateFormatter.format(new Date(record.getTimestamp())));
+        writeTagged(TD_ELT, Long.toString(record.getSequenceNumber()));
 
+        // FIXME: add type back in to export
+        //writeTagged(TD_ELT, RecordTypes.getInstance().getFirstMatchingType(record).getName());
+        writeTagged(TD_ELT, "[NOT IMPLEMENTED]");
+
+        writeTagged(TD_ELT, record.getSendSubject());
+        writeTagged(TD_ELT, record.getTrackingId());
+        serializer.writeStartTag(TD_ELT);
+        writeTagged(PRE_ELT, Marshaller.marshal("", record.getMessage()));
+        serializer.writeEndTag(TD_ELT);
+        serializer.writeEndTag(TR_ELT);
     }
 
-    /* (non-Javadoc)
-     * @see org.rvsnoop.io.ExportFormat#getDisplayName()
-     */
     @Override
     public String getDisplayName() {
-        // TODO Auto-generated method stub
-        return null;
+        return "HTML Report";
+    }
+
+    @Override
+    public FileFilter getFileFilter() {
+        return new HTMLFileFilter();
     }
 
-    /* (non-Javadoc)
-     * @see org.rvsnoop.io.ExportFormat#setExportLocation(java.io.File)
-     */
     @Override
-    public void setExportLocation(File fileOrDirectory) {
-        // TODO Auto-generated method stub
+    public void startExport(OutputStream stream, int numberOfRecords) throws IOException {
+        serializer = new StreamSerializer(stream);
+        final String title = Version.getAsStringWithName() + " HTML Report (" + Marshaller.getImplementationName() + " marshaller)";
+        serializer.writeXMLDeclaration();
+        serializer.write(new DocType("html", "-//W3C//DTD XHTML 1.0 Strict//EN", "http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd"));
+        // The namespace is declared by the start tag.
+        serializer.writeStartTag(HTML_ELT);
+        serializer.writeStartTag(HEAD_ELT);
+        writeTagged(TITLE_ELT, title);
+        writeHttpEquiv("Content-Type", "application/xhtml+xml; charset=utf-8");
+        writeHttpEquiv("Content-Language", "en-uk");
+        writeMeta("generator", Version.getAsStringWithName());
+        serializer.writeEndTag(HEAD_ELT);
+        serializer.writeStartTag(BODY_ELT);
+        writeTagged(H1_ELT, title);
+        serializer.writeStartTag(TABLE_ELT);
+        serializer.writeStartTag(TR_ELT);
+        writeTagged(TH_ELT, "Timestamp");
+        writeTagged(TH_ELT, "Sequence Number");
+        writeTagged(TH_ELT, "Type");
+        writeTagged(TH_ELT, "Send Subject");
+        writeTagged(TH_ELT, "Tracking ID");
+        writeTagged(TH_ELT, "Message");
+        serializer.writeEndTag(TR_ELT);
+    }
+
+    private void writeHttpEquiv(String equiv, String content) throws IOException {
+        writeMeta(new Attribute("http-equiv", equiv), content);
+    }
+
+    private void writeMeta(String name, String content) throws IOException {
+        writeMeta(new Attribute("name", name), content);
+    }
+
+    /** The attributes have to be on the element, the serializer writes them when it writes the tag. */
+    private void writeMeta(Attribute attribute, String content) throws IOException {
+        final Element meta = new Element(META_ELT);
+        meta.addAttribute(attribute);
+        meta.addAttribute(new Attribute("content", content));
+        serializer.writeEmptyElementTag(meta);
+    }
 
+    private void writeTagged(Element tag, String pcdata) throws IOException {
+        if (pcdata == null) {
+            serializer.writeEmptyElementTag(tag);
+        } else {
+            serializer.writeStartTag(tag);
+            serializer.write(new Text(pcdata));
+            serializer.writeEndTag(tag);
+        }
     }
 
 }
@@ -0,0 +1,269 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import nu.xom.Attribute;
+import nu.xom.DocType;
+import nu.xom.Element;
+import nu.xom.Text;
+
+import com.tibco.tibrv.TibrvDate;
+import com.tibco.tibrv.TibrvMsg;
+import com.tibco.tibrv.TibrvMsgField;
+import com.tibco.tibrv.TibrvXml;
+
+import rvsnoop.Record;
+import rvsnoop.Version;
+
+/**
+ * Writes the pages of an HTML report, one element at a time.
+ * <p>
+ * Nothing is kept for the records once they have been written, so a report of
+ * any size is written in constant memory. Message bodies are written a field
+ * at a time as collapsible lists, nested messages are collapsible too. Field
+ * values are formatted for reading rather than for importing again: XML is
+ * shown as text and date times as dates.
+ */
+final class HTMLReportWriter {
+
+    private static final String NSURI = "http://www.w3.org/1999/xhtml";
+
+    private static final Element BODY_ELT = new Element("body", NSURI);
+    private static final Element DETAILS_ELT = new Element("details", NSURI);
+    private static final Element H1_ELT = new Element("h1", NSURI);
+    private static final Element HEAD_ELT = new Element("head", NSURI);
+    private static final Element HTML_ELT = new Element("html", NSURI);
+    private static final Element LI_ELT = new Element("li", NSURI);
+    private static final Element P_ELT = new Element("p", NSURI);
+    private static final Element PRE_ELT = new Element("pre", NSURI);
+    private static final Element STYLE_ELT = new Element("style", NSURI);
+    private static final Element SUMMARY_ELT = new Element("summary", NSURI);
+    private static final Element TABLE_ELT = new Element("table", NSURI);
+    private static final Element TD_ELT = new Element("td", NSURI);
+    private static final Element TH_ELT = new Element("th", NSURI);
+    private static final Element TITLE_ELT = new Element("title", NSURI);
+    private static final Element TR_ELT = new Element("tr", NSURI);
+    private static final Element UL_ELT = new Element("ul", NSURI);
+
+    private static final Element META_CHARSET_ELT = element("meta", "charset", "utf-8");
+    private static final Element META_GENERATOR_ELT = element("meta", "name", "generator");
+    private static final Element NAV_ELT = element("p", "class", "nav");
+    private static final Element OPEN_DETAILS_ELT = element("details", "open", "open");
+    private static final Element NAME_SPAN_ELT = element("span", "class", "name");
+    private static final Element TYPE_SPAN_ELT = element("span", "class", "type");
+
+    static {
+        META_GENERATOR_ELT.addAttribute(new Attribute("content", Version.getAsStringWithName()));
+    }
+
+    private static final String STYLESHEET =
+        "body { font-family: sans-serif; font-size: small; }\n"
+        + "table { border-collapse: collapse; width: 100%; }\n"
+        + "th, td { border: 1px solid #ccc; padding: 2px 4px; text-align: left; vertical-align: top; }\n"
+        + "ul { list-style: none; margin: 0; padding-left: 1.5em; }\n"
+        + "summary { cursor: pointer; }\n"
+        + ".name { font-weight: bold; }\n"
+        + ".type { color: #888; }\n"
+        + ".nav a { margin-right: 1em; }\n";
+
+    private static Element element(String name, String attribute, String value) {
+        final Element element = new Element(name, NSURI);
+        element.addAttribute(new Attribute(attribute, value));
+        return element;
+    }
+
+    private final SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+    /** Used to format field values, reused for each field. */
+    private final StringWriter scratch = new StringWriter();
+
+    private final StreamSerializer serializer;
+
+    private final FieldVisitor fieldWriter = new FieldVisitor() {
+        @Override
+        void startMessage(TibrvMsgField field) throws IOException {
+            serializer.writeStartTag(LI_ELT);
+            serializer.writeStartTag(OPEN_DETAILS_ELT);
+            serializer.writeStartTag(SUMMARY_ELT);
+            writeFieldHeading(field);
+            serializer.writeEndTag(SUMMARY_ELT);
+            serializer.writeStartTag(UL_ELT);
+        }
+        @Override
+        void endMessage(TibrvMsgField field) throws IOException {
+            serializer.writeEndTag(UL_ELT);
+            serializer.writeEndTag(OPEN_DETAILS_ELT);
+            serializer.writeEndTag(LI_ELT);
+        }
+        @Override
+        void visitField(TibrvMsgField field) throws IOException {
+            serializer.writeStartTag(LI_ELT);
+            writeFieldHeading(field);
+            serializer.write(new Text(" "));
+            writeFieldValue(field);
+            serializer.writeEndTag(LI_ELT);
+        }
+    };
+
+    HTMLReportWriter(OutputStream stream) throws IOException {
+        this.serializer = new StreamSerializer(stream);
+    }
+
+    void endDocument() throws IOException {
+        serializer.writeEndTag(BODY_ELT);
+        serializer.writeEndTag(HTML_ELT);
+        serializer.flush();
+    }
+
+    void endIndexTable() throws IOException {
+        serializer.writeEndTag(TABLE_ELT);
+    }
+
+    void endNavigation() throws IOException {
+        serializer.writeEndTag(NAV_ELT);
+    }
+
+    void endRecordTable() throws IOException {
+        serializer.writeEndTag(TABLE_ELT);
+    }
+
+    String formatTimestamp(long timestamp) {
+        return dateFormatter.format(new Date(timestamp));
+    }
+
+    void startDocument(String title) throws IOException {
+        serializer.write(new DocType("html"));
+        serializer.writeStartTag(HTML_ELT);
+        serializer.writeStartTag(HEAD_ELT);
+        serializer.writeEmptyElementTag(META_CHARSET_ELT);
+        serializer.writeEmptyElementTag(META_GENERATOR_ELT);
+        writeTagged(TITLE_ELT, title);
+        writeTagged(STYLE_ELT, STYLESHEET);
+        serializer.writeEndTag(HEAD_ELT);
+        serializer.writeStartTag(BODY_ELT);
+        writeTagged(H1_ELT, title);
+    }
+
+    void startIndexTable() throws IOException {
+        serializer.writeStartTag(TABLE_ELT);
+        serializer.writeStartTag(TR_ELT);
+        writeTagged(TH_ELT, "Page");
+        writeTagged(TH_ELT, "Records");
+        writeTagged(TH_ELT, "First Timestamp");
+        writeTagged(TH_ELT, "Last Timestamp");
+        serializer.writeEndTag(TR_ELT);
+    }
+
+    void startNavigation() throws IOException {
+        serializer.writeStartTag(NAV_ELT);
+    }
+
+    void startRecordTable() throws IOException {
+        serializer.writeStartTag(TABLE_ELT);
+        serializer.writeStartTag(TR_ELT);
+        writeTagged(TH_ELT, "Timestamp");
+        writeTagged(TH_ELT, "Sequence Number");
+        writeTagged(TH_ELT, "Send Subject");
+        writeTagged(TH_ELT, "Reply Subject");
+        writeTagged(TH_ELT, "Tracking ID");
+        writeTagged(TH_ELT, "Message");
+        serializer.writeEndTag(TR_ELT);
+    }
+
+    private void writeFieldHeading(TibrvMsgField field) throws IOException {
+        writeTagged(NAME_SPAN_ELT, field.name);
+        serializer.write(new Text(" "));
+        writeTagged(TYPE_SPAN_ELT, FieldCodec.getTypeName(field.type));
+    }
+
+    /**
+     * Write the fields of a message as nested lists.
+     * <p>
+     * The message is walked depth first and each field is written as it is
+     * reached, the message is not marshalled to a string first.
+     */
+    private void writeFields(TibrvMsg message) throws IOException {
+        serializer.writeStartTag(UL_ELT);
+        fieldWriter.visit(message);
+        serializer.writeEndTag(UL_ELT);
+    }
+
+    /**
+     * Write the value of a field for people to read.
+     * <p>
+     * Unlike the text formats this does not need to be decoded again, so XML
+     * is written as text and date times are formatted like the timestamps.
+     */
+    private void writeFieldValue(TibrvMsgField field) throws IOException {
+        switch (field.type) {
+        case TibrvMsg.STRING:
+            serializer.write(new Text(String.valueOf(field.data)));
+            return;
+        case TibrvMsg.XML:
+            writeTagged(PRE_ELT, new String(((TibrvXml) field.data).getBytes(), "UTF-8"));
+            return;
+        case TibrvMsg.DATETIME:
+            serializer.write(new Text(dateFormatter.format(((TibrvDate) field.data).getAsDate())));
+            return;
+        default:
+            scratch.getBuffer().setLength(0);
+            if (FieldCodec.isScalar(field.type)) {
+                FieldCodec.writeScalar(scratch, field.type, field.data);
+            } else {
+                FieldCodec.writeJSONValue(scratch, field.type, field.data);
+            }
+            serializer.write(new Text(scratch.toString()));
+        }
+    }
+
+    void writeIndexRow(String href, int firstRecord, int lastRecord, long firstTimestamp, long lastTimestamp) throws IOException {
+        serializer.writeStartTag(TR_ELT);
+        serializer.writeStartTag(TD_ELT);
+        writeLink(href, href);
+        serializer.writeEndTag(TD_ELT);
+        writeTagged(TD_ELT, firstRecord + "–" + lastRecord);
+        writeTagged(TD_ELT, formatTimestamp(firstTimestamp));
+        writeTagged(TD_ELT, formatTimestamp(lastTimestamp));
+        serializer.writeEndTag(TR_ELT);
+    }
+
+    void writeLink(String href, String text) throws IOException {
+        writeTagged(element("a", "href", href), text);
+    }
+
+    void writeParagraph(String text) throws IOException {
+        writeTagged(P_ELT, text);
+    }
+
+    void writeRecord(Record record) throws IOException {
+        serializer.writeStartTag(TR_ELT);
+        writeTagged(TD_ELT, formatTimestamp(record.getTimestamp()));
+        writeTagged(TD_ELT, Long.toString(record.getSequenceNumber()));
+        writeTagged(TD_ELT, record.getSendSubject());
+        writeTagged(TD_ELT, record.getReplySubject());
+        writeTagged(TD_ELT, record.getTrackingId());
+        serializer.writeStartTag(TD_ELT);
+        final TibrvMsg message = record.getMessage();
+        final int count = message.getNumFields();
+        serializer.writeStartTag(DETAILS_ELT);
+        writeTagged(SUMMARY_ELT, count + (count == 1 ? " field" : " fields"));
+        writeFields(message);
+        serializer.writeEndTag(DETAILS_ELT);
+        serializer.writeEndTag(TD_ELT);
+        serializer.writeEndTag(TR_ELT);
+    }
+
+    /** Writes an element containing some text, never as an empty element tag so that it can be parsed as HTML. */
+    private void writeTagged(Element tag, String pcdata) throws IOException {
+        serializer.writeStartTag(tag);
+        if (pcdata != null) { serializer.write(new Text(pcdata)); }
+        serializer.writeEndTag(tag);
+    }
+
+}
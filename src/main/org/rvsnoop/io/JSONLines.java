@@ -0,0 +1,58 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop.io;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Constants and shared types for the JSON Lines format.
+ * <p>
+ * A JSON Lines file is UTF-8 text with one record per line, each line is a
+ * JSON object like this (shown on several lines for clarity):
+ * <pre>
+ * {"timestamp":1262304000000,"sequenceNumber":42,"sendSubject":"A.B","replySubject":null,
+ *  "fields":[{"name":"price","type":"f64","value":1.5},
+ *            {"name":"body","type":"msg","value":[{"name":"text","type":"string","value":"Hi"}]}]}
+ * </pre>
+ * The encoding of the fields is described in {@link FieldCodec}, every field
+ * keeps its type so that the messages can be imported again.
+ *
+ * @see JSONLinesExportFormat
+ * @see JSONLinesRecordReader
+ */
+public final class JSONLines {
+
+    /**
+     * Selects JSON Lines files.
+     */
+    public static final class FileFilter extends javax.swing.filechooser.FileFilter {
+        public FileFilter() {
+            super();
+        }
+        @Override
+        public boolean accept(File f) {
+            if (f.isDirectory()) return true;
+            final String lower = f.getName().toLowerCase(Locale.ENGLISH);
+            return lower.endsWith(".jsonl") || lower.endsWith(".ndjson");
+        }
+        @Override
+        public String getDescription() {
+            return "JSON Lines Files";
+        }
+    }
+
+    static final String FIELDS = "fields";
+
+    static final String REPLY_SUBJECT = "replySubject";
+
+    static final String SEND_SUBJECT = "sendSubject";
+
+    static final String SEQUENCE_NUMBER = "sequenceNumber";
+
+    static final String TIMESTAMP = "timestamp";
+
+    private JSONLines() { throw new UnsupportedOperationException(); }
+
+}
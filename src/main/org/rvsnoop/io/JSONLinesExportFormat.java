@@ -0,0 +1,64 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.swing.filechooser.FileFilter;
+
+import rvsnoop.Record;
+
+/**
+ * Exports records to a JSON Lines file, for use with tools like jq.
+ * <p>
+ * The fields are written straight to the stream as the message is walked, no
+ * string is built for the whole message.
+ *
+ * @see JSONLines
+ */
+public final class JSONLinesExportFormat extends ExportFormat {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Writer writer;
+
+    @Override
+    public void endExport() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void exportRecord(Record record, int index) throws IOException {
+        writer.write("{\"" + JSONLines.TIMESTAMP + "\":");
+        writer.write(Long.toString(record.getTimestamp()));
+        writer.write(",\"" + JSONLines.SEQUENCE_NUMBER + "\":");
+        writer.write(Long.toString(record.getSequenceNumber()));
+        writer.write(",\"" + JSONLines.SEND_SUBJECT + "\":");
+        FieldCodec.writeJSONString(writer, record.getRawSendSubject());
+        writer.write(",\"" + JSONLines.REPLY_SUBJECT + "\":");
+        FieldCodec.writeJSONString(writer, record.getReplySubject());
+        writer.write(",\"" + JSONLines.FIELDS + "\":");
+        FieldCodec.writeJSONFields(writer, record.getMessage());
+        writer.write("}\n");
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "JSON Lines";
+    }
+
+    @Override
+    public FileFilter getFileFilter() {
+        return new JSONLines.FileFilter();
+    }
+
+    @Override
+    public void startExport(OutputStream stream, int numberOfRecords) throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"), BUFFER_SIZE);
+    }
+
+}
@@ -0,0 +1,69 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Map;
+
+import rvsnoop.Record;
+
+/**
+ * Reads records from a JSON Lines file.
+ * <p>
+ * Only one line is held in memory at a time. Blank lines are skipped. The
+ * records are given new sequence numbers and have no connection.
+ *
+ * @see JSONLines
+ */
+public final class JSONLinesRecordReader implements RecordReader {
+
+    private int lineNumber;
+
+    private final BufferedReader reader;
+
+    /**
+     * @param stream The stream to read from, this is closed when the reader is.
+     * @throws IOException If the stream cannot be read as UTF-8.
+     */
+    public JSONLinesRecordReader(InputStream stream) throws IOException {
+        this.reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private IOException error(String message, Throwable cause) {
+        return (IOException) new IOException(message + " on line " + lineNumber + '.').initCause(cause);
+    }
+
+    public Record read() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) { return null; }
+            ++lineNumber;
+        } while (line.trim().length() == 0);
+        try {
+            final Object json = JSONParser.parse(line);
+            if (!(json instanceof Map)) { throw new IOException("Expected a record object"); }
+            final Map<?, ?> map = (Map<?, ?>) json;
+            final Object timestamp = map.get(JSONLines.TIMESTAMP);
+            final Object fields = map.get(JSONLines.FIELDS);
+            if (!(timestamp instanceof String)) { throw new IOException("Missing timestamp"); }
+            if (!(fields instanceof List)) { throw new IOException("Missing fields"); }
+            return new Record(null, FieldCodec.decodeMessage((List<?>) fields),
+                    (String) map.get(JSONLines.SEND_SUBJECT), (String) map.get(JSONLines.REPLY_SUBJECT),
+                    Long.parseLong((String) timestamp));
+        } catch (IOException e) {
+            throw error(e.getMessage(), e);
+        } catch (RuntimeException e) {
+            throw error("Invalid record", e);
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A small parser for the JSON written by {@link FieldCodec}.
+ * <p>
+ * Objects are returned as maps and arrays as lists. Numbers are returned as
+ * strings, so that they can be parsed to the type of the field they belong to
+ * without losing precision.
+ */
+final class JSONParser {
+
+    /**
+     * Parse a JSON value.
+     *
+     * @param text The text to parse.
+     * @return The value.
+     * @throws IOException If the text is not a single valid JSON value.
+     */
+    static Object parse(CharSequence text) throws IOException {
+        final JSONParser parser = new JSONParser(text);
+        final Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.position != text.length()) { throw parser.error("Unexpected trailing characters"); }
+        return value;
+    }
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    private int position;
+
+    private final CharSequence text;
+
+    private JSONParser(CharSequence text) {
+        this.text = text;
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at column " + (position + 1) + '.');
+    }
+
+    private void expect(char c) throws IOException {
+        skipWhitespace();
+        if (position == text.length() || text.charAt(position) != c) { throw error("Expected '" + c + "'"); }
+        ++position;
+    }
+
+    private void expectWord(String word) throws IOException {
+        for (int i = 0; i < word.length(); ++i, ++position) {
+            if (position == text.length() || text.charAt(position) != word.charAt(i)) {
+                throw error("Expected " + word);
+            }
+        }
+    }
+
+    private char peek() throws IOException {
+        skipWhitespace();
+        if (position == text.length()) { throw error("Unexpected end of input"); }
+        return text.charAt(position);
+    }
+
+    private List<Object> readArray() throws IOException {
+        expect('[');
+        final List<Object> list = new ArrayList<Object>();
+        if (peek() == ']') {
+            ++position;
+            return list;
+        }
+        while (true) {
+            list.add(readValue());
+            if (peek() == ']') {
+                ++position;
+                return list;
+            }
+            expect(',');
+        }
+    }
+
+    private String readNumber() throws IOException {
+        final int start = position;
+        while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+            ++position;
+        }
+        if (start == position) { throw error("Expected a value"); }
+        return text.subSequence(start, position).toString();
+    }
+
+    private Map<String, Object> readObject() throws IOException {
+        expect('{');
+        final Map<String, Object> map = new LinkedHashMap<String, Object>();
+        if (peek() == '}') {
+            ++position;
+            return map;
+        }
+        while (true) {
+            skipWhitespace();
+            final String key = readString();
+            expect(':');
+            map.put(key, readValue());
+            if (peek() == '}') {
+                ++position;
+                return map;
+            }
+            expect(',');
+        }
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        buffer.setLength(0);
+        while (true) {
+            if (position == text.length()) { throw error("Unterminated string"); }
+            final char c = text.charAt(position++);
+            if (c == '"') { return buffer.toString(); }
+            if (c != '\\') {
+                buffer.append(c);
+                continue;
+            }
+            if (position == text.length()) { throw error("Unterminated string"); }
+            final char escaped = text.charAt(position++);
+            switch (escaped) {
+            case 'b': buffer.append('\b'); break;
+            case 'f': buffer.append('\f'); break;
+            case 'n': buffer.append('\n'); break;
+            case 'r': buffer.append('\r'); break;
+            case 't': buffer.append('\t'); break;
+            case 'u':
+                if (position + 4 > text.length()) { throw error("Bad unicode escape"); }
+                try {
+                    buffer.append((char) Integer.parseInt(text.subSequence(position, position + 4).toString(), 16));
+                } catch (NumberFormatException e) {
+                    throw error("Bad unicode escape");
+                }
+                position += 4;
+                break;
+            default: buffer.append(escaped);
+            }
+        }
+    }
+
+    private Object readValue() throws IOException {
+        switch (peek()) {
+        case '{': return readObject();
+        case '[': return readArray();
+        case '"': return readString();
+        case 't': expectWord("true"); return Boolean.TRUE;
+        case 'f': expectWord("false"); return Boolean.FALSE;
+        case 'n': expectWord("null"); return null;
+        default:  return readNumber();
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            ++position;
+        }
+    }
+
+}
@@ -0,0 +1,275 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+
+import ca.odell.glazedlists.AbstractEventList;
+import ca.odell.glazedlists.util.concurrent.LockFactory;
+import org.rvsnoop.Connections;
+import rvsnoop.Record;
+import rvsnoop.RvConnection;
+
+import static com.google.common.io.Closeables.closeQuietly;
+
+/**
+ * A read-only event list over the records in a version 2 record bundle file.
+ * <p>
+ * The file is memory mapped and only the bundle index is read when the list
+ * is opened, so the size of a bundle which can be browsed is not limited by
+ * the heap. A block is inflated when one of its records is first asked for and
+ * the records in it are created in compact form, so their messages are only
+ * decoded when they are displayed or searched. The most recently used blocks
+ * are cached.
+ * <p>
+ * Each position in the list is given a fixed sequence number when the list is
+ * opened, so a record which is created again after its block has left the
+ * cache is equal to the earlier instance.
+ *
+ * @see RecordBundle
+ */
+public final class MappedRecordBundle extends AbstractEventList<Record> implements Closeable {
+
+    /** The number of inflated blocks to cache. */
+    private static final int BLOCK_CACHE_SIZE = 8;
+
+    /** The size of each mapped region of the file, 1GB. */
+    private static final long REGION_SIZE = 1L << 30;
+
+    private final long[] blockOffsets;
+
+    private final long[] blockMaxTimestamps;
+
+    private final long[] blockMinTimestamps;
+
+    /** The position in the list of the first record in each block. */
+    private final int[] blockStarts;
+
+    private final Map<Integer, Record[]> blocks = new LinkedHashMap<Integer, Record[]>(BLOCK_CACHE_SIZE * 2, 0.75f, true) {
+        private static final long serialVersionUID = -1186425227386862618L;
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Record[]> eldest) {
+            return size() > BLOCK_CACHE_SIZE;
+        }
+    };
+
+    private final List<RvConnection> connections = new ArrayList<RvConnection>();
+
+    private final File file;
+
+    private final long firstSequenceNumber;
+
+    /**
+     * The mapped regions of the file. Each one overlaps the next by the size
+     * of the largest block, so every block lies entirely within the region
+     * which contains its start.
+     */
+    private final MappedByteBuffer[] regions;
+
+    private final int size;
+
+    private final List<String> subjects = new ArrayList<String>();
+
+    /**
+     * Open a bundle.
+     *
+     * @param file The bundle file.
+     * @param connections The connections to look up record connections in,
+     *     new connections are added to it. May be <code>null</code>.
+     * @throws IOException If the file is not a version 2 record bundle.
+     */
+    public MappedRecordBundle(File file, Connections connections) throws IOException {
+        super(null);
+        this.readWriteLock = LockFactory.DEFAULT.createReadWriteLock();
+        this.file = file;
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final long length = channel.size();
+            final byte[] header = read(channel, 0, RecordBundle.MAGIC.length);
+            if (!Arrays.equals(RecordBundle.MAGIC, header) || length < RecordBundle.MAGIC.length + 4 + RecordBundle.TRAILER_SIZE) {
+                throw new IOException(file + " is not a version 2 record bundle.");
+            }
+            final DataInputStream trailer = new DataInputStream(new ByteArrayInputStream(
+                    read(channel, length - RecordBundle.TRAILER_SIZE, RecordBundle.TRAILER_SIZE)));
+            final long indexOffset = trailer.readLong();
+            final DataInputStream index = new DataInputStream(new ByteArrayInputStream(
+                    read(channel, indexOffset, (int) (length - RecordBundle.TRAILER_SIZE - indexOffset))));
+            if (index.readInt() != RecordBundle.END_OF_BLOCKS) {
+                throw new IOException(file + " has a corrupt index.");
+            }
+            RecordBundleReader.readDictionary(index, subjects, this.connections, connections);
+            final int numBlocks = index.readInt();
+            blockOffsets = new long[numBlocks];
+            blockMinTimestamps = new long[numBlocks];
+            blockMaxTimestamps = new long[numBlocks];
+            blockStarts = new int[numBlocks];
+            long total = 0, maxBlockLength = 0;
+            for (int i = 0; i < numBlocks; ++i) {
+                blockOffsets[i] = index.readLong();
+                blockMinTimestamps[i] = index.readLong();
+                blockMaxTimestamps[i] = index.readLong();
+                blockStarts[i] = (int) total;
+                total += index.readInt();
+                if (i > 0) { maxBlockLength = Math.max(maxBlockLength, blockOffsets[i] - blockOffsets[i - 1]); }
+            }
+            if (numBlocks > 0) { maxBlockLength = Math.max(maxBlockLength, indexOffset - blockOffsets[numBlocks - 1]); }
+            if (total > Integer.MAX_VALUE) { throw new IOException(file + " contains too many records."); }
+            size = (int) total;
+            regions = new MappedByteBuffer[(int) ((indexOffset + REGION_SIZE - 1) / REGION_SIZE)];
+            for (int i = 0; i < regions.length; ++i) {
+                final long start = i * REGION_SIZE;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(indexOffset, start + REGION_SIZE + maxBlockLength) - start);
+            }
+        } finally {
+            closeQuietly(raf);
+        }
+        firstSequenceNumber = Record.reserveSequenceNumbers(size);
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of record bundle.");
+            }
+        }
+        return buffer.array();
+    }
+
+    private int blockOf(int index) {
+        // Blocks are never empty so the starts are strictly increasing.
+        final int found = Arrays.binarySearch(blockStarts, index);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return indexOf(object) != -1;
+    }
+
+    private Record[] decodeBlock(int block) throws IOException {
+        final long offset = blockOffsets[block];
+        final ByteBuffer buffer = regions[(int) (offset / REGION_SIZE)].duplicate();
+        buffer.position((int) (offset % REGION_SIZE));
+        final int length = buffer.getInt();
+        final int rawLength = buffer.getInt();
+        final int recordCount = buffer.getInt();
+        buffer.position(buffer.position() + 16);
+        final byte[] compressed = new byte[length];
+        buffer.get(compressed);
+        // Each decode has its own inflater so that blocks can be decoded in
+        // parallel, and so a decode which is still running when the list is
+        // closed never uses an inflater that has been ended.
+        final Inflater inflater = new Inflater();
+        final byte[] raw;
+        try {
+            raw = RecordBundleReader.inflate(inflater, compressed, 0, length, rawLength);
+        } finally {
+            inflater.end();
+        }
+        return RecordBundleReader.decodeBlock(new DataInputStream(new ByteArrayInputStream(raw)), recordCount,
+                subjects, connections, false, null, firstSequenceNumber + blockStarts[block]);
+    }
+
+    /**
+     * Release the cached blocks. The mapping of the file is released when the
+     * list is garbage collected.
+     */
+    public void close() {
+        synchronized (blocks) { blocks.clear(); }
+    }
+
+    /**
+     * Find the first record at or after a given time.
+     * <p>
+     * The blocks are found with a binary search of the index so this assumes
+     * that the records are in time order, as they are in a capture.
+     *
+     * @param timestamp The time to search for.
+     * @return The position of the record, or the size of the list if all of
+     *     the records are earlier.
+     */
+    public int findFirstAtOrAfter(long timestamp) {
+        int low = 0, high = blockMaxTimestamps.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (blockMaxTimestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == blockMaxTimestamps.length) { return size; }
+        if (blockMinTimestamps[low] >= timestamp) { return blockStarts[low]; }
+        final Record[] records = getBlock(low);
+        int position = 0;
+        while (position < records.length && records[position].getTimestamp() < timestamp) { ++position; }
+        return blockStarts[low] + position;
+    }
+
+    @Override
+    public Record get(int index) {
+        if (index < 0 || index >= size) { throw new IndexOutOfBoundsException(index + " out of 0.." + size); }
+        final int block = blockOf(index);
+        return getBlock(block)[index - blockStarts[block]];
+    }
+
+    private Record[] getBlock(int block) {
+        final Integer key = Integer.valueOf(block);
+        synchronized (blocks) {
+            final Record[] cached = blocks.get(key);
+            if (cached != null) { return cached; }
+        }
+        try {
+            final Record[] records = decodeBlock(block);
+            synchronized (blocks) { blocks.put(key, records); }
+            return records;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read block " + block + " from " + file + ".", e);
+        }
+    }
+
+    /**
+     * The bundle file.
+     *
+     * @return The file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public int indexOf(Object object) {
+        if (!(object instanceof Record)) { return -1; }
+        final long position = ((Record) object).getSequenceNumber() - firstSequenceNumber;
+        return position >= 0 && position < size ? (int) position : -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object object) {
+        return indexOf(object);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,166 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import rvsnoop.Record;
+import rvsnoop.Version;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Exports records to a directory of HTML pages.
+ * <p>
+ * The directory holds an <code>index.html</code> page which links to pages
+ * of {@link #DEFAULT_RECORDS_PER_PAGE} records each, so the report can be
+ * opened in a browser however many records it holds. The pages and the index
+ * are written as the records arrive and only one page is open at a time, so
+ * the export uses the same amount of memory for any number of records.
+ * <p>
+ * A ledger may hold fewer records by the time they are exported than when
+ * the export started, so the links and totals only use what was written: the
+ * link to the next page is only at the bottom of each page, written once the
+ * next record has arrived, and the totals follow the index table.
+ *
+ * @see HTMLReportWriter
+ */
+public final class PagedHTMLExportFormat extends ExportFormat {
+
+    public static final int DEFAULT_RECORDS_PER_PAGE = 1000;
+
+    static final String INDEX_FILE = "index.html";
+
+    static String getPageFileName(int pageNumber) {
+        return String.format("page-%05d.html", pageNumber);
+    }
+
+    private HTMLReportWriter index;
+
+    private OutputStream indexStream;
+
+    private HTMLReportWriter page;
+
+    private int pageFirstIndex;
+
+    private long pageFirstTimestamp;
+
+    private int pageLastIndex;
+
+    private long pageLastTimestamp;
+
+    private int pageNumber;
+
+    private OutputStream pageStream;
+
+    private int recordsPerPage = DEFAULT_RECORDS_PER_PAGE;
+
+    private int recordsWritten;
+
+    private String title;
+
+    @Override
+    public void endExport() throws IOException {
+        try {
+            endPage(false);
+        } finally {
+            try {
+                index.endIndexTable();
+                index.writeParagraph(String.format("%d records on %d pages of up to %d records.",
+                        recordsWritten, pageNumber, recordsPerPage));
+                index.endDocument();
+            } finally {
+                indexStream.close();
+            }
+        }
+    }
+
+    private void endPage(boolean hasNext) throws IOException {
+        if (page == null) { return; }
+        try {
+            page.endRecordTable();
+            writeNavigation(page, hasNext);
+            page.endDocument();
+        } finally {
+            page = null;
+            pageStream.close();
+        }
+        index.writeIndexRow(getPageFileName(pageNumber), pageFirstIndex + 1, pageLastIndex + 1,
+                pageFirstTimestamp, pageLastTimestamp);
+    }
+
+    @Override
+    public void exportRecord(Record record, int index) throws IOException {
+        if (page == null || index - pageFirstIndex >= recordsPerPage) {
+            endPage(true);
+            startPage(pageNumber + 1, index, record.getTimestamp());
+        }
+        page.writeRecord(record);
+        ++recordsWritten;
+        pageLastIndex = index;
+        pageLastTimestamp = record.getTimestamp();
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "HTML Report (Paged)";
+    }
+
+    public int getRecordsPerPage() {
+        return recordsPerPage;
+    }
+
+    @Override
+    public boolean isSingleFileExport() {
+        return false;
+    }
+
+    private OutputStream open(String name) throws IOException {
+        return new BufferedOutputStream(new FileOutputStream(new File(fileOrDirectory, name)));
+    }
+
+    /**
+     * Set the number of records written to each page.
+     *
+     * @param recordsPerPage The number of records, must be positive.
+     */
+    public void setRecordsPerPage(int recordsPerPage) {
+        checkArgument(recordsPerPage > 0, "The number of records per page must be positive.");
+        this.recordsPerPage = recordsPerPage;
+    }
+
+    @Override
+    public void startExport(OutputStream stream, int numberOfRecords) throws IOException {
+        recordsWritten = 0;
+        pageNumber = 0;
+        title = Version.getAsStringWithName() + " HTML Report";
+        indexStream = open(INDEX_FILE);
+        index = new HTMLReportWriter(indexStream);
+        index.startDocument(title);
+        index.startIndexTable();
+    }
+
+    private void startPage(int number, int firstIndex, long firstTimestamp) throws IOException {
+        pageNumber = number;
+        pageFirstIndex = firstIndex;
+        pageFirstTimestamp = firstTimestamp;
+        pageStream = open(getPageFileName(number));
+        page = new HTMLReportWriter(pageStream);
+        page.startDocument(String.format("%s, Page %d", title, number));
+        writeNavigation(page, false);
+        page.startRecordTable();
+    }
+
+    private void writeNavigation(HTMLReportWriter writer, boolean hasNext) throws IOException {
+        writer.startNavigation();
+        if (pageNumber > 1) { writer.writeLink(getPageFileName(pageNumber - 1), "Previous"); }
+        writer.writeLink(INDEX_FILE, "Index");
+        if (hasNext) { writer.writeLink(getPageFileName(pageNumber + 1), "Next"); }
+        writer.endNavigation();
+    }
+
+}
@@ -0,0 +1,114 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop.io;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.util.Locale;
+
+/**
+ * Constants and shared types for the record bundle file formats.
+ * <p>
+ * A version 1 bundle is a zip file with one entry per record, each entry
+ * holding a record as written by
+ * {@link rvsnoop.RecordSelection#write(rvsnoop.Record, java.io.DataOutput)}.
+ * <p>
+ * A version 2 bundle stores records in deflated blocks of about
+ * {@link #DEFAULT_BLOCK_SIZE} bytes. All numbers are big endian and strings
+ * use the modified UTF-8 of {@link java.io.DataOutput#writeUTF(String)}:
+ * <pre>
+ * BUNDLE  = MAGIC VERSION BLOCK* END_OF_BLOCKS INDEX INDEX_OFFSET MAGIC
+ * BLOCK   = COMPRESSED_LENGTH RAW_LENGTH RECORD_COUNT MIN_TIMESTAMP MAX_TIMESTAMP DEFLATED_DATA
+ * RAW     = SUBJECT_COUNT SUBJECT* CONNECTION_COUNT CONNECTION* RECORD*
+ * RECORD  = SEND_SUBJECT_ID REPLY_SUBJECT_ID CONNECTION_ID TIMESTAMP MESSAGE_LENGTH MESSAGE
+ * INDEX   = SUBJECT_COUNT SUBJECT* CONNECTION_COUNT CONNECTION* BLOCK_COUNT BLOCK_ENTRY*
+ * BLOCK_ENTRY = BLOCK_OFFSET MIN_TIMESTAMP MAX_TIMESTAMP RECORD_COUNT
+ * CONNECTION  = DESCRIPTION SERVICE NETWORK DAEMON
+ * </pre>
+ * Subjects and connections are numbered in the order that they are first
+ * used. Each block starts with the dictionary entries which are first used in
+ * that block so that a bundle can be read as a stream, the index at the end
+ * repeats the whole dictionary so that blocks can also be read at random. A
+ * connection id of -1 means that the record has no connection.
+ * <code>END_OF_BLOCKS</code> is a compressed length of -1 and
+ * <code>INDEX_OFFSET</code> is the position of it in the file.
+ */
+public final class RecordBundle {
+
+    /**
+     * The location and contents of one block in a version 2 bundle.
+     */
+    public static final class BlockInfo {
+        private final long offset;
+        private final long minTimestamp;
+        private final long maxTimestamp;
+        private final int recordCount;
+        BlockInfo(long offset, long minTimestamp, long maxTimestamp, int recordCount) {
+            this.offset = offset;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.recordCount = recordCount;
+        }
+        /** @return The position of the block frame in the file. */
+        public long getOffset() {
+            return offset;
+        }
+        /** @return The earliest timestamp of the records in the block. */
+        public long getMinTimestamp() {
+            return minTimestamp;
+        }
+        /** @return The latest timestamp of the records in the block. */
+        public long getMaxTimestamp() {
+            return maxTimestamp;
+        }
+        /** @return The number of records in the block. */
+        public int getRecordCount() {
+            return recordCount;
+        }
+    }
+
+    /**
+     * Selects record bundle files, of either version.
+     */
+    public static final class FileFilter extends javax.swing.filechooser.FileFilter {
+        public FileFilter() {
+            super();
+        }
+        @Override
+        public boolean accept(File f) {
+            if (f.isDirectory()) return true;
+            final String lower = f.getName().toLowerCase(Locale.ENGLISH);
+            return lower.endsWith(".srb") || lower.endsWith(".rbz");
+        }
+        @Override
+        public String getDescription() {
+            return "Record Bundles";
+        }
+    }
+
+    /** The uncompressed size at which a block is written, 1MB. */
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    /** The compressed length used to mark the end of the blocks. */
+    static final int END_OF_BLOCKS = -1;
+
+    /** The magic number at the start and end of a version 2 bundle. */
+    static final byte[] MAGIC;
+
+    /** The size of the trailing index offset and magic number. */
+    static final int TRAILER_SIZE = 12;
+
+    static final int VERSION = 2;
+
+    static {
+        try {
+            MAGIC = "RSB2".getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private RecordBundle() { throw new UnsupportedOperationException(); }
+
+}
@@ -0,0 +1,52 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.swing.filechooser.FileFilter;
+
+import rvsnoop.Record;
+
+/**
+ * Exports records to a version 2 record bundle.
+ *
+ * @see RecordBundle
+ * @see RecordBundleWriter
+ */
+public final class RecordBundleExportFormat extends ExportFormat {
+
+    private RecordBundleWriter writer;
+
+    @Override
+    public void endExport() throws IOException {
+        writer.close();
+    }
+
+    @Override
+    public void exportRecord(Record record, int index) throws IOException {
+        writer.write(record);
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Record Bundle";
+    }
+
+    @Override
+    public FileFilter getFileFilter() {
+        return new RecordBundle.FileFilter();
+    }
+
+    @Override
+    public boolean isMetadataExported() {
+        return true;
+    }
+
+    @Override
+    public void startExport(OutputStream stream, int numberOfRecords) throws IOException {
+        writer = new RecordBundleWriter(stream);
+    }
+
+}
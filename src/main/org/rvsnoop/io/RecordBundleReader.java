@@ -0,0 +1,405 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipInputStream;
+
+import com.google.common.io.ByteStreams;
+
+import org.rvsnoop.Connections;
+
+import rvsnoop.Record;
+import rvsnoop.RecordSelection;
+import rvsnoop.RvConnection;
+
+/**
+ * Reads records from a {@link RecordBundle} stream.
+ * <p>
+ * Both versions of the format can be read, the version is detected from the
+ * start of the stream. Records are returned a block at a time, for version 1
+ * bundles a block is a fixed number of zip entries.
+ * <p>
+ * Blocks may either be read one at a time with {@link #readBlock()}, or all
+ * at once with {@link #readAll(ExecutorService, int, Handler)} which decodes
+ * several blocks in parallel. The records are returned compacted and
+ * resolved, just as the ingest stage does for received messages.
+ */
+public final class RecordBundleReader implements Closeable {
+
+    /**
+     * Receives the blocks read by {@link RecordBundleReader#readAll}.
+     */
+    public interface Handler {
+
+        /**
+         * Called with each block in turn, in the order that they appear in
+         * the bundle.
+         *
+         * @param records The records in the block.
+         * @throws InterruptedException If the handler was interrupted, this
+         *     stops the read.
+         */
+        void blockRead(Record[] records) throws InterruptedException;
+
+    }
+
+    /**
+     * A block which has been read from the stream but not yet decoded.
+     * <p>
+     * Version 2 blocks may add to the dictionaries, which later blocks then
+     * refer to. The dictionary entries are read in bundle order by waiting
+     * for the previous block to read its entries, the rest of the work is
+     * independent of the other blocks.
+     */
+    private final class PendingBlock implements Callable<Record[]> {
+        private final byte[] data;
+        private final CountDownLatch dictionaryRead = new CountDownLatch(1);
+        private final long firstSequenceNumber;
+        /** Cleared once used, so that decoded blocks are not kept reachable. */
+        private PendingBlock previous;
+        private final int rawLength;
+        private final int recordCount;
+        PendingBlock(byte[] data, int rawLength, int recordCount, PendingBlock previous) {
+            this.data = data;
+            this.rawLength = rawLength;
+            this.recordCount = recordCount;
+            this.previous = previous;
+            this.firstSequenceNumber = recordCount > 0 ? Record.reserveSequenceNumbers(recordCount) : 0;
+        }
+        public Record[] call() throws IOException, InterruptedException {
+            final Record[] records = version == 1 ? decodeV1Block() : decodeV2Block();
+            for (Record record : records) {
+                record.compact();
+                record.resolve();
+            }
+            return records;
+        }
+        private Record[] decodeV1Block() throws IOException {
+            final List<Record> records = new ArrayList<Record>();
+            final DataInputStream entries = new DataInputStream(new ByteArrayInputStream(data));
+            while (entries.available() > 0) {
+                final byte[] entry = new byte[entries.readInt()];
+                entries.readFully(entry);
+                records.addAll(Arrays.asList(RecordSelection.read(
+                        new DataInputStream(new ByteArrayInputStream(entry)), resolver)));
+            }
+            return records.toArray(new Record[records.size()]);
+        }
+        private Record[] decodeV2Block() throws IOException, InterruptedException {
+            try {
+                final Inflater inflater = new Inflater();
+                final byte[] raw;
+                try {
+                    raw = inflate(inflater, data, 0, data.length, rawLength);
+                } finally {
+                    inflater.end();
+                }
+                final DataInputStream block = new DataInputStream(new ByteArrayInputStream(raw));
+                if (previous != null) {
+                    previous.dictionaryRead.await();
+                    previous = null;
+                }
+                final List<String> subjectsSnapshot;
+                final List<RvConnection> connectionsSnapshot;
+                synchronized (subjects) {
+                    readDictionaryEntries(block, subjects, connections, true, resolver);
+                    subjectsSnapshot = Arrays.asList(subjects.toArray(new String[subjects.size()]));
+                    connectionsSnapshot = Arrays.asList(connections.toArray(new RvConnection[connections.size()]));
+                }
+                dictionaryRead.countDown();
+                return decodeRecords(block, recordCount, subjectsSnapshot, connectionsSnapshot, firstSequenceNumber);
+            } finally {
+                // Never leave the following blocks waiting, if this one failed
+                // they will fail too but only the first failure is reported.
+                dictionaryRead.countDown();
+            }
+        }
+    }
+
+    /** The number of records to return per block from a version 1 bundle. */
+    private static final int V1_BLOCK_SIZE = 1024;
+
+    /**
+     * Decode the records in an uncompressed block.
+     *
+     * @param input The block data.
+     * @param recordCount The number of records in the block.
+     * @param subjects The subject dictionary.
+     * @param connections The connection dictionary.
+     * @param extend <code>true</code> to add the dictionary entries in the
+     *     block to the dictionaries, <code>false</code> to skip them because
+     *     the dictionaries are already complete.
+     * @param resolver Used to find the connections for new entries.
+     * @param firstSequenceNumber The sequence number of the first record.
+     * @return The records, which are compact so their messages are only
+     *     decoded when needed.
+     * @throws IOException If the block is not valid.
+     */
+    static Record[] decodeBlock(DataInput input, int recordCount, List<String> subjects,
+            List<RvConnection> connections, boolean extend, Connections resolver,
+            long firstSequenceNumber) throws IOException {
+        readDictionaryEntries(input, subjects, connections, extend, resolver);
+        return decodeRecords(input, recordCount, subjects, connections, firstSequenceNumber);
+    }
+
+    private static Record[] decodeRecords(DataInput input, int recordCount, List<String> subjects,
+            List<RvConnection> connections, long firstSequenceNumber) throws IOException {
+        final Record[] records = new Record[recordCount];
+        for (int i = 0; i < recordCount; ++i) {
+            final String send = subjects.get(input.readInt());
+            final String reply = subjects.get(input.readInt());
+            final int connectionId = input.readInt();
+            final long timestamp = input.readLong();
+            final byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            records[i] = new Record(connectionId >= 0 ? connections.get(connectionId) : null,
+                    bytes, send, reply, timestamp, firstSequenceNumber + i);
+        }
+        return records;
+    }
+
+    private static void readDictionaryEntries(DataInput input, List<String> subjects,
+            List<RvConnection> connections, boolean extend, Connections resolver) throws IOException {
+        final int newSubjects = input.readInt();
+        for (int i = 0; i < newSubjects; ++i) {
+            final String subject = input.readUTF().intern();
+            if (extend) { subjects.add(subject); }
+        }
+        final int newConnections = input.readInt();
+        for (int i = 0; i < newConnections; ++i) {
+            final String description = input.readUTF();
+            final String service = input.readUTF();
+            final String network = input.readUTF();
+            final String daemon = input.readUTF();
+            if (extend) { connections.add(resolveConnection(resolver, description, service, network, daemon)); }
+        }
+    }
+
+    /**
+     * Inflate a block.
+     *
+     * @param inflater The inflater to use, it is reset first.
+     * @param compressed The compressed data.
+     * @param offset The position of the data in the array.
+     * @param length The length of the compressed data.
+     * @param rawLength The length of the uncompressed data.
+     * @return The uncompressed data.
+     * @throws IOException If the data is not valid.
+     */
+    static byte[] inflate(Inflater inflater, byte[] compressed, int offset, int length, int rawLength) throws IOException {
+        final byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(compressed, offset, length);
+        try {
+            int count = 0;
+            while (count < rawLength) {
+                final int inflated = inflater.inflate(raw, count, rawLength - count);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Truncated record bundle block.");
+                }
+                count += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt record bundle block.", e);
+        }
+        return raw;
+    }
+
+    /**
+     * Read the connection and subject dictionaries as written at the start of
+     * the index.
+     */
+    static void readDictionary(DataInput input, List<String> subjects,
+            List<RvConnection> connections, Connections resolver) throws IOException {
+        final int numSubjects = input.readInt();
+        for (int i = 0; i < numSubjects; ++i) {
+            subjects.add(input.readUTF().intern());
+        }
+        final int numConnections = input.readInt();
+        for (int i = 0; i < numConnections; ++i) {
+            connections.add(resolveConnection(resolver,
+                    input.readUTF(), input.readUTF(), input.readUTF(), input.readUTF()));
+        }
+    }
+
+    private static RvConnection resolveConnection(Connections resolver,
+            String description, String service, String network, String daemon) {
+        if (resolver != null) { return resolver.getOrCreate(description, service, network, daemon); }
+        final RvConnection connection = new RvConnection(service, network, daemon);
+        connection.setDescription(description);
+        connection.addSubject(">");
+        return connection;
+    }
+
+    private final List<RvConnection> connections = new ArrayList<RvConnection>();
+
+    private final Connections resolver;
+
+    private final DataInputStream input;
+
+    /** The last block read from a version 2 bundle. */
+    private PendingBlock last;
+
+    private final List<String> subjects = new ArrayList<String>();
+
+    private final int version;
+
+    private ZipInputStream zip;
+
+    /**
+     * Create a new reader.
+     *
+     * @param stream The stream to read from.
+     * @param connections The connections to look up record connections in,
+     *     new connections are added to it. May be <code>null</code>.
+     * @throws IOException If the stream does not contain a record bundle.
+     */
+    public RecordBundleReader(InputStream stream, Connections connections) throws IOException {
+        this.resolver = connections;
+        final InputStream buffered = stream.markSupported() ? stream : new BufferedInputStream(stream);
+        final byte[] magic = new byte[RecordBundle.MAGIC.length];
+        buffered.mark(magic.length);
+        final DataInputStream data = new DataInputStream(buffered);
+        data.readFully(magic);
+        if (Arrays.equals(RecordBundle.MAGIC, magic)) {
+            version = data.readInt();
+            if (version != RecordBundle.VERSION) {
+                throw new IOException("Unsupported record bundle version: " + version);
+            }
+            input = data;
+        } else if (magic[0] == 'P' && magic[1] == 'K') {
+            buffered.reset();
+            version = 1;
+            zip = new ZipInputStream(buffered);
+            input = new DataInputStream(zip);
+        } else {
+            throw new IOException("Input is not a record bundle.");
+        }
+    }
+
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * The version of the bundle being read.
+     *
+     * @return The version, 1 or 2.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Read all of the remaining blocks, decoding them in parallel.
+     * <p>
+     * The blocks are read from the stream on the calling thread and decoded by
+     * the executor, at most twice as many blocks as there are threads are held
+     * in memory at once. The handler is called on the calling thread with each
+     * block in bundle order. If the calling thread is interrupted the blocks
+     * which are being decoded are cancelled.
+     *
+     * @param executor The executor to decode blocks with.
+     * @param threads The number of threads used by the executor.
+     * @param handler The handler to pass the blocks to.
+     * @throws IOException If the bundle could not be read.
+     * @throws InterruptedException If the calling thread was interrupted.
+     */
+    public void readAll(ExecutorService executor, int threads, Handler handler) throws IOException, InterruptedException {
+        final LinkedList<Future<Record[]>> pending = new LinkedList<Future<Record[]>>();
+        try {
+            boolean more = true;
+            while (more || !pending.isEmpty()) {
+                while (more && pending.size() < 2 * threads) {
+                    final PendingBlock block = readPendingBlock();
+                    if (block == null) {
+                        more = false;
+                    } else {
+                        pending.add(executor.submit(block));
+                    }
+                }
+                if (Thread.interrupted()) { throw new InterruptedException(); }
+                if (!pending.isEmpty()) { handler.blockRead(pending.removeFirst().get()); }
+            }
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) { throw (IOException) cause; }
+            if (cause instanceof RuntimeException) { throw (RuntimeException) cause; }
+            throw new IOException("Could not decode a record bundle block.", cause);
+        } finally {
+            for (Future<Record[]> future : pending) { future.cancel(true); }
+        }
+    }
+
+    /**
+     * Read the next block of records.
+     *
+     * @return The records, or <code>null</code> if there are no more.
+     * @throws IOException If the bundle could not be read.
+     */
+    public Record[] readBlock() throws IOException {
+        final PendingBlock block = readPendingBlock();
+        if (block == null) { return null; }
+        try {
+            return block.call();
+        } catch (InterruptedException e) {
+            // Cannot happen, the previous block has already been decoded.
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading a record bundle.");
+        }
+    }
+
+    private PendingBlock readPendingBlock() throws IOException {
+        return version == 1 ? readV1Block() : readV2Block();
+    }
+
+    private PendingBlock readV1Block() throws IOException {
+        // The zip stream can only be inflated in order, so the entries are
+        // just copied here and are parsed by the block.
+        final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(entries);
+        int count = 0;
+        while (count < V1_BLOCK_SIZE && zip.getNextEntry() != null) {
+            final byte[] bytes = ByteStreams.toByteArray(zip);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+            ++count;
+        }
+        return count == 0 ? null : new PendingBlock(entries.toByteArray(), 0, 0, null);
+    }
+
+    private PendingBlock readV2Block() throws IOException {
+        final int length = input.readInt();
+        if (length == RecordBundle.END_OF_BLOCKS) { return null; }
+        final int rawLength = input.readInt();
+        final int recordCount = input.readInt();
+        input.readLong(); // The timestamp range is only needed for random access.
+        input.readLong();
+        final byte[] compressed = new byte[length];
+        input.readFully(compressed);
+        last = new PendingBlock(compressed, rawLength, recordCount, last);
+        return last;
+    }
+
+}
@@ -1,50 +1,75 @@
-/*
- * Class:     RecordBundleV1ExportFormat
- * Version:   $Revision$
- * Date:      $Date$
- * Copyright: Copyright © 2007-2007 Ian Phillips.
- * License:   Apache Software License (Version 2.0)
- */
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
 package org.rvsnoop.io;
 
-import java.io.File;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.swing.filechooser.FileFilter;
 
 import rvsnoop.Record;
+import rvsnoop.RecordSelection;
+import rvsnoop.Version;
 
 /**
- * TODO write documentation for RecordBundleExportFormat.
+ * Exports records to a version 1, zip based, record bundle.
+ * <p>
+ * This is only useful to send records to users of older versions of RvSnoop,
+ * version 2 bundles are smaller, quicker to write and can be browsed without
+ * being imported.
  *
  * @author <a href="mailto:ianp@ianp.org">Ian Phillips</a>
  * @version $Revision$, $Date$
+ * @see RecordBundle
  */
 public final class RecordBundleV1ExportFormat extends ExportFormat {
 
-    /* (non-Javadoc)
-     * @see org.rvsnoop.io.ExportFormat#exportRecord(rvsnoop.Record, int)
-     */
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    private final DataOutput dataBuffer = new DataOutputStream(buffer);
+
+    private ZipOutputStream zip;
+
     @Override
-    public void exportRecord(Record record, int index) throws IOException {
-        // TODO Auto-generated method stub
+    public void endExport() throws IOException {
+        zip.finish();
+    }
 
+    @Override
+    public void exportRecord(Record record, int index) throws IOException {
+        buffer.reset();
+        RecordSelection.write(record, dataBuffer);
+        final ZipEntry entry = new ZipEntry(Integer.toString(index));
+        entry.setSize(buffer.size());
+        zip.putNextEntry(entry);
+        buffer.writeTo(zip);
+        zip.closeEntry();
     }
 
-    /* (non-Javadoc)
-     * @see org.rvsnoop.io.ExportFormat#getDisplayName()
-     */
     @Override
     public String getDisplayName() {
-        // TODO Auto-generated method stub
-        return null;
+        return "Record Bundle (Version 1)";
     }
 
-    /* (non-Javadoc)
-     * @see org.rvsnoop.io.ExportFormat#setExportLocation(java.io.File)
-     */
     @Override
-    public void setExportLocation(File fileOrDirectory) {
-        // TODO Auto-generated method stub
+    public FileFilter getFileFilter() {
+        return new RecordBundle.FileFilter();
+    }
 
+    @Override
+    public boolean isMetadataExported() {
+        return true;
+    }
+
+    @Override
+    public void startExport(OutputStream stream, int numberOfRecords) throws IOException {
+        zip = new ZipOutputStream(stream);
+        zip.setComment(Version.getAsStringWithName() + " Record Bundle");
     }
 
 }
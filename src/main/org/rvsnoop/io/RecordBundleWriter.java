@@ -0,0 +1,234 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import com.tibco.tibrv.TibrvException;
+
+import rvsnoop.Record;
+import rvsnoop.RvConnection;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Writes records to a stream in the version 2 {@link RecordBundle} format.
+ * <p>
+ * Records are gathered into a block in memory, which is compressed and written
+ * once it reaches the block size. Closing the writer writes the last block and
+ * the index.
+ */
+public final class RecordBundleWriter implements Closeable {
+
+    private final ByteArrayOutputStream block;
+
+    private final DataOutputStream blockData;
+
+    private final int blockSize;
+
+    private byte[] compressed = new byte[4096];
+
+    private final Map<RvConnection, Integer> connectionIds = new IdentityHashMap<RvConnection, Integer>();
+
+    private final List<RvConnection> connections = new ArrayList<RvConnection>();
+
+    /** The number of connections written to the stream so far. */
+    private int connectionsWritten;
+
+    private final Deflater deflater = new Deflater();
+
+    private final List<RecordBundle.BlockInfo> index = new ArrayList<RecordBundle.BlockInfo>();
+
+    private long maxTimestamp = Long.MIN_VALUE;
+
+    private long minTimestamp = Long.MAX_VALUE;
+
+    private final DataOutputStream out;
+
+    private long position;
+
+    private int recordCount;
+
+    private final Map<String, Integer> subjectIds = new HashMap<String, Integer>();
+
+    private final List<String> subjects = new ArrayList<String>();
+
+    /** The number of subjects written to the stream so far. */
+    private int subjectsWritten;
+
+    /**
+     * Create a new writer with the default block size.
+     *
+     * @param stream The stream to write to.
+     * @throws IOException If the header could not be written.
+     */
+    public RecordBundleWriter(OutputStream stream) throws IOException {
+        this(stream, RecordBundle.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Create a new writer.
+     *
+     * @param stream The stream to write to.
+     * @param blockSize The uncompressed size at which to write a block.
+     * @throws IOException If the header could not be written.
+     */
+    public RecordBundleWriter(OutputStream stream, int blockSize) throws IOException {
+        checkArgument(blockSize > 0, "The block size must be positive.");
+        this.out = new DataOutputStream(stream);
+        this.blockSize = blockSize;
+        this.block = new ByteArrayOutputStream(Math.min(blockSize, RecordBundle.DEFAULT_BLOCK_SIZE) + 4096);
+        this.blockData = new DataOutputStream(block);
+        out.write(RecordBundle.MAGIC);
+        out.writeInt(RecordBundle.VERSION);
+        position = RecordBundle.MAGIC.length + 4;
+    }
+
+    private static String nullToEmpty(String string) {
+        return string != null ? string : "";
+    }
+
+    /**
+     * Write the last block and the index, then close the stream.
+     *
+     * @throws IOException If the stream could not be written.
+     */
+    public void close() throws IOException {
+        try {
+            flushBlock();
+            final long indexOffset = position;
+            out.writeInt(RecordBundle.END_OF_BLOCKS);
+            writeSubjects(out, 0);
+            writeConnections(out, 0);
+            out.writeInt(index.size());
+            for (RecordBundle.BlockInfo info : index) {
+                out.writeLong(info.getOffset());
+                out.writeLong(info.getMinTimestamp());
+                out.writeLong(info.getMaxTimestamp());
+                out.writeInt(info.getRecordCount());
+            }
+            out.writeLong(indexOffset);
+            out.write(RecordBundle.MAGIC);
+            out.close();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (recordCount == 0) { return; }
+        final ByteArrayOutputStream raw = new ByteArrayOutputStream(block.size() + 1024);
+        final DataOutputStream rawData = new DataOutputStream(raw);
+        subjectsWritten = writeSubjects(rawData, subjectsWritten);
+        connectionsWritten = writeConnections(rawData, connectionsWritten);
+        block.writeTo(rawData);
+        rawData.flush();
+        final byte[] bytes = raw.toByteArray();
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                final byte[] larger = new byte[compressed.length * 2];
+                System.arraycopy(compressed, 0, larger, 0, length);
+                compressed = larger;
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        index.add(new RecordBundle.BlockInfo(position, minTimestamp, maxTimestamp, recordCount));
+        out.writeInt(length);
+        out.writeInt(bytes.length);
+        out.writeInt(recordCount);
+        out.writeLong(minTimestamp);
+        out.writeLong(maxTimestamp);
+        out.write(compressed, 0, length);
+        position += 28 + length;
+        block.reset();
+        recordCount = 0;
+        minTimestamp = Long.MAX_VALUE;
+        maxTimestamp = Long.MIN_VALUE;
+    }
+
+    private int getConnectionId(RvConnection connection) {
+        if (connection == null) { return -1; }
+        Integer id = connectionIds.get(connection);
+        if (id == null) {
+            id = Integer.valueOf(connections.size());
+            connectionIds.put(connection, id);
+            connections.add(connection);
+        }
+        return id.intValue();
+    }
+
+    private int getSubjectId(String subject) {
+        Integer id = subjectIds.get(subject);
+        if (id == null) {
+            id = Integer.valueOf(subjects.size());
+            subjectIds.put(subject, id);
+            subjects.add(subject);
+        }
+        return id.intValue();
+    }
+
+    /**
+     * Write a record.
+     *
+     * @param record The record to write.
+     * @throws IOException If the record could not be written.
+     */
+    public void write(Record record) throws IOException {
+        final byte[] bytes;
+        try {
+            bytes = record.getMessageBytes();
+        } catch (TibrvException e) {
+            throw new IOException("Could not convert record to bytes: " + record, e);
+        }
+        final String ss = record.getRawSendSubject();
+        blockData.writeInt(getSubjectId(ss != null ? ss : ""));
+        blockData.writeInt(getSubjectId(record.getReplySubject()));
+        blockData.writeInt(getConnectionId(record.getConnection()));
+        final long timestamp = record.getTimestamp();
+        blockData.writeLong(timestamp);
+        blockData.writeInt(bytes.length);
+        blockData.write(bytes);
+        if (timestamp < minTimestamp) { minTimestamp = timestamp; }
+        if (timestamp > maxTimestamp) { maxTimestamp = timestamp; }
+        ++recordCount;
+        if (block.size() >= blockSize) { flushBlock(); }
+    }
+
+    private int writeConnections(DataOutputStream output, int from) throws IOException {
+        final int to = connections.size();
+        output.writeInt(to - from);
+        for (int i = from; i < to; ++i) {
+            final RvConnection connection = connections.get(i);
+            output.writeUTF(nullToEmpty(connection.getDescription()));
+            output.writeUTF(nullToEmpty(connection.getService()));
+            output.writeUTF(nullToEmpty(connection.getNetwork()));
+            output.writeUTF(nullToEmpty(connection.getDaemon()));
+        }
+        return to;
+    }
+
+    private int writeSubjects(DataOutputStream output, int from) throws IOException {
+        final int to = subjects.size();
+        output.writeInt(to - from);
+        for (int i = from; i < to; ++i) {
+            output.writeUTF(subjects.get(i));
+        }
+        return to;
+    }
+
+}
@@ -0,0 +1,280 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.google.common.io.CountingOutputStream;
+
+import org.rvsnoop.Logger;
+import org.rvsnoop.RecordLedger;
+import org.rvsnoop.ui.RecordLedgerFormat;
+
+import rvsnoop.Record;
+
+import static com.google.common.io.Closeables.closeQuietly;
+
+/**
+ * Exports records using an {@link ExportFormat}.
+ * <p>
+ * This does not depend on the user interface, so it can be used for batch
+ * exports as well as from the export actions. The records are read a chunk at
+ * a time and handed to the format in batches. Single file formats write to a
+ * {@link DoubleBufferedOutputStream}, so serializing the records and writing
+ * them to disk overlap.
+ * <p>
+ * An exporter may be cancelled from another thread, in which case the partly
+ * written file is deleted.
+ */
+public final class RecordExporter {
+
+    /** The records to export, read a chunk at a time. */
+    public interface Source {
+        /**
+         * Copy the next records in to a chunk.
+         *
+         * @param start The number of records read so far.
+         * @param chunk The array to copy the records in to.
+         * @return The number of records copied.
+         */
+        int read(int start, Record[] chunk);
+        int size();
+    }
+
+    private static final class ArraySource implements Source {
+        private final Record[] records;
+        ArraySource(Record[] records) {
+            this.records = records;
+        }
+        public int read(int start, Record[] chunk) {
+            final int count = Math.max(0, Math.min(chunk.length, records.length - start));
+            System.arraycopy(records, start, chunk, 0, count);
+            return count;
+        }
+        public int size() {
+            return records.length;
+        }
+    }
+
+    /**
+     * Reads a ledger which may change during the export: each chunk starts
+     * after the last record read, so records which are removed from the ledger
+     * do not cause others to be skipped, and records added after the export
+     * started are not read.
+     */
+    private static final class LedgerSource implements Source {
+        private long after = Long.MIN_VALUE;
+        private int hint;
+        private final long last;
+        private final RecordLedger ledger;
+        private final int size;
+        LedgerSource(RecordLedger ledger) {
+            this.ledger = ledger;
+            // Records added between these calls are cut off by the size.
+            this.size = ledger.size();
+            this.last = ledger.getLastSequenceNumber();
+        }
+        public int read(int start, Record[] chunk) {
+            final int count = ledger.getRangeAfter(after, last, hint, chunk);
+            if (count > 0) {
+                after = chunk[count - 1].getSequenceNumber();
+                hint += count;
+            }
+            return count;
+        }
+        public int size() {
+            return size;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /** The number of records to read and export at a time. */
+    private static final int CHUNK_SIZE = 1024;
+
+    private static final Logger logger = Logger.getLogger();
+
+    private volatile long bytesWritten;
+
+    private volatile boolean cancelled;
+
+    private final File fileOrDirectory;
+
+    private final ExportFormat format;
+
+    private RecordLedgerFormat metadata;
+
+    private volatile int numExported;
+
+    private final int numRecords;
+
+    private final Source source;
+
+    /**
+     * Create an exporter for a group of records.
+     *
+     * @param format The format to use, this should be a new instance.
+     * @param fileOrDirectory The file or directory to export to.
+     * @param records The records to export.
+     */
+    public RecordExporter(ExportFormat format, File fileOrDirectory, Record[] records) {
+        this(format, fileOrDirectory, new ArraySource(records));
+    }
+
+    /**
+     * Create an exporter for the contents of a ledger.
+     * <p>
+     * Records added to the ledger once the exporter has been created are not
+     * exported, nor are records which are removed from it before they have
+     * been read.
+     *
+     * @param format The format to use, this should be a new instance.
+     * @param fileOrDirectory The file or directory to export to.
+     * @param ledger The ledger to export, this may be a filtered view.
+     */
+    public RecordExporter(ExportFormat format, File fileOrDirectory, RecordLedger ledger) {
+        this(format, fileOrDirectory, new LedgerSource(ledger));
+    }
+
+    /**
+     * Create an exporter for any source of records.
+     *
+     * @param format The format to use, this should be a new instance.
+     * @param fileOrDirectory The file or directory to export to.
+     * @param source The records to export.
+     */
+    public RecordExporter(ExportFormat format, File fileOrDirectory, Source source) {
+        this.format = format;
+        this.fileOrDirectory = fileOrDirectory;
+        this.source = source;
+        this.numRecords = source.size();
+    }
+
+    /**
+     * Stop the export. This may be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void delete(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) { delete(child); }
+        }
+        file.delete();
+    }
+
+    private void exportAll() throws IOException {
+        final Record[] chunk = new Record[CHUNK_SIZE];
+        try {
+            int index = 0;
+            while (index < numRecords && !cancelled) {
+                final int count = Math.min(source.read(index, chunk), numRecords - index);
+                if (count <= 0) { break; }
+                format.exportRecords(chunk, count, index);
+                index += count;
+                numExported = index;
+            }
+        } finally {
+            Arrays.fill(chunk, null);
+        }
+        // Also called when cancelled, so that formats can close their files.
+        format.endExport();
+    }
+
+    /**
+     * The number of bytes written, only known once a single file export has
+     * finished.
+     *
+     * @return The size of the exported file.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public File getFileOrDirectory() {
+        return fileOrDirectory;
+    }
+
+    public ExportFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * The number of records exported so far. This may be called from any
+     * thread.
+     *
+     * @return The number of records exported.
+     */
+    public int getNumExported() {
+        return numExported;
+    }
+
+    public int getNumRecords() {
+        return numRecords;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Run the export on the calling thread.
+     *
+     * @throws IOException If the records could not be written.
+     */
+    public void run() throws IOException {
+        logger.info("Exporting %s records to %s.", numRecords, fileOrDirectory.getPath());
+        if (format.isMetadataExported() && metadata != null) { format.setMetadata(metadata); }
+        if (format.isSingleFileExport()) {
+            try {
+                runToFile();
+            } finally {
+                if (cancelled) { fileOrDirectory.delete(); }
+            }
+        } else {
+            final boolean created = !fileOrDirectory.isDirectory();
+            if (created && !fileOrDirectory.mkdirs()) {
+                throw new IOException("Could not create the directory " + fileOrDirectory.getPath());
+            }
+            try {
+                format.setExportLocation(fileOrDirectory);
+                format.startExport(null, numRecords);
+                exportAll();
+            } finally {
+                // Only remove a directory if it was created for this export.
+                if (cancelled && created) { delete(fileOrDirectory); }
+            }
+        }
+    }
+
+    private void runToFile() throws IOException {
+        final CountingOutputStream counter = new CountingOutputStream(new FileOutputStream(fileOrDirectory));
+        final DoubleBufferedOutputStream stream = new DoubleBufferedOutputStream(counter, BUFFER_SIZE, "exportWriter");
+        boolean closed = false;
+        try {
+            format.setExportLocation(fileOrDirectory);
+            format.startExport(stream, numRecords);
+            exportAll();
+            stream.close();
+            closed = true;
+            bytesWritten = counter.getCount();
+        } finally {
+            if (!closed) { closeQuietly(stream); }
+        }
+    }
+
+    /**
+     * Set the ledger columns to export, for formats which export metadata.
+     *
+     * @param metadata The columns to export.
+     */
+    public void setMetadata(RecordLedgerFormat metadata) {
+        this.metadata = metadata;
+    }
+
+}
@@ -0,0 +1,24 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import rvsnoop.Record;
+
+/**
+ * Reads records one at a time from a file written by an {@link ExportFormat}.
+ */
+public interface RecordReader extends Closeable {
+
+    /**
+     * Read the next record.
+     *
+     * @return The record, or <code>null</code> if there are no more records.
+     * @throws IOException If the record could not be read or decoded.
+     */
+    Record read() throws IOException;
+
+}
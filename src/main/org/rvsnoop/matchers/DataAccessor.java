@@ -100,32 +100,33 @@ public abstract class DataAccessor<T> {
 
     static final class ReplySubject extends DataAccessor<String> {
         public static final String IDENTIFIER = "replySubject";
-        private final SingleElementIterator<String> iterator = new SingleElementIterator<String>();
         public ReplySubject() {
             super(REPLY_SUBJECT, IDENTIFIER);
         }
         @Override
         public Iterator<String> getDataElement(Record record) {
-            iterator.element = record.getReplySubject();
-            return iterator;
+            return new SingleElementIterator<String>(record.getReplySubject());
         }
     }
 
     static final class SendSubject extends DataAccessor<String> {
         public static final String IDENTIFIER = "sendSubject";
-        private final SingleElementIterator<String> iterator = new SingleElementIterator<String>();
         public SendSubject() {
             super(SEND_SUBJECT, IDENTIFIER);
         }
         @Override
         public Iterator<String> getDataElement(Record record) {
-            iterator.element = record.getSendSubject();
-            return iterator;
+            return new SingleElementIterator<String>(record.getSendSubject());
         }
     }
 
+    // A new one of these is created for each record so that the accessors can
+    // be used by several search threads at once.
     private static final class SingleElementIterator<T> implements Iterator<T> {
-        T element;
+        private T element;
+        SingleElementIterator(T element) {
+            this.element = element;
+        }
         public boolean hasNext() {
             return element != null;
         }
@@ -142,14 +143,12 @@ public abstract class DataAccessor<T> {
 
     static final class TrackingId extends DataAccessor<String> {
         public static final String IDENTIFIER = "trackingId";
-        private final SingleElementIterator<String> iterator = new SingleElementIterator<String>();
         public TrackingId() {
             super(TRACKING_ID, IDENTIFIER);
         }
         @Override
         public Iterator<String> getDataElement(Record record) {
-            iterator.element = record.getTrackingId();
-            return iterator;
+            return new SingleElementIterator<String>(record.getTrackingId());
         }
     }
 
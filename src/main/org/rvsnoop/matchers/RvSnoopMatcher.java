@@ -9,6 +9,8 @@ package org.rvsnoop.matchers;
 
 import java.util.Iterator;
 
+import org.rvsnoop.RecordIndex;
+
 import rvsnoop.Record;
 import ca.odell.glazedlists.matchers.Matcher;
 
@@ -18,7 +20,7 @@ import ca.odell.glazedlists.matchers.Matcher;
  * @author <a href="mailto:ianp@ianp.org">Ian Phillips</a>
  * @version $Revision$, $Date$
  */
-public final class RvSnoopMatcher implements Matcher {
+public final class RvSnoopMatcher implements Matcher, RecordIndex.KeyedMatcher {
 
     private final DataAccessor dataAccessor;
 
@@ -35,6 +37,15 @@ public final class RvSnoopMatcher implements Matcher {
         this.predicate = predicate;
     }
 
+    /* (non-Javadoc)
+     * @see org.rvsnoop.RecordIndex.KeyedMatcher#getIndexKey()
+     */
+    public RecordIndex.Key getIndexKey() {
+        if (dataAccessor instanceof DataAccessor.SendSubject) { return RecordIndex.Key.SEND_SUBJECT; }
+        if (dataAccessor instanceof DataAccessor.TrackingId) { return RecordIndex.Key.TRACKING_ID; }
+        return null;
+    }
+
     /* (non-Javadoc)
      * @see ca.odell.glazedlists.matchers.Matcher#matches(java.lang.Object)
      */
@@ -142,6 +142,10 @@ public final class ConnectionListCellRenderer extends JPanel implements ListCell
         } else {
             builder.append("No subjects subscribed to");
         }
+        final int depth = connection.getQueueDepth();
+        if (depth >= 0) {
+            builder.append('\n').append("Queue depth: ").append(depth);
+        }
         return builder.toString();
     }
 
@@ -48,6 +48,7 @@ import org.rvsnoop.actions.ClearLedger;
 import org.rvsnoop.actions.Copy;
 import org.rvsnoop.actions.Cut;
 import org.rvsnoop.actions.Delete;
+import org.rvsnoop.actions.ExportToFile;
 import org.rvsnoop.actions.Filter;
 import org.rvsnoop.actions.FilterBySelection;
 import org.rvsnoop.actions.NewRvConnection;
@@ -58,15 +59,17 @@ import org.rvsnoop.actions.Search;
 import org.rvsnoop.actions.SearchBySelection;
 import org.rvsnoop.actions.SelectAllRecords;
 import org.rvsnoop.actions.ShowAllColumns;
+import org.rvsnoop.io.ExportFormat;
 
 import rvsnoop.Record;
 import rvsnoop.RecordTypes;
 import rvsnoop.RvConnection;
 import rvsnoop.TreeModelAdapter;
 import rvsnoop.actions.Actions;
-import rvsnoop.actions.ExportToHtml;
-import rvsnoop.actions.ExportToRecordBundle;
+import rvsnoop.actions.ImportFromCSV;
+import rvsnoop.actions.ImportFromJSONLines;
 import rvsnoop.actions.ImportFromRecordBundle;
+import rvsnoop.actions.OpenRecordBundle;
 import rvsnoop.actions.PauseAllConnections;
 import rvsnoop.ui.RvDetailsPanel;
 import rvsnoop.ui.SubjectExplorerEditor;
@@ -217,14 +220,18 @@ public final class MainFrame extends JFrame {
         fileRecent.setIcon(new ImageIcon("/resources/icons/open.png"));
         fileRecent.addMenuListener(new RecentProjectsMenuManager(application, projectService));
         file.add(fileRecent);
+        file.add(application.getAction(OpenRecordBundle.COMMAND));
         file.addSeparator();
         final JMenu fileExport = new JMenu("Export To");
         fileExport.setIcon(new ImageIcon("/resources/icons/exportTo.png"));
-        fileExport.add(application.getAction(ExportToHtml.COMMAND));
-        fileExport.add(application.getAction(ExportToRecordBundle.COMMAND));
+        for (ExportFormat format : ExportFormat.getExportFormats()) {
+            fileExport.add(application.getAction(ExportToFile.getCommand(format)));
+        }
         file.add(fileExport);
         final JMenu fileImport = new JMenu("Import From");
         fileExport.setIcon(new ImageIcon("/resources/icons/import.png"));
+        fileImport.add(application.getAction(ImportFromCSV.COMMAND));
+        fileImport.add(application.getAction(ImportFromJSONLines.COMMAND));
         fileImport.add(application.getAction(ImportFromRecordBundle.COMMAND));
         file.add(fileImport);
         file.addSeparator();
@@ -354,7 +361,7 @@ public final class MainFrame extends JFrame {
     public Record getSelectedRecord() {
         try {
             final int index = messageLedger.getSelectedRow();
-            return index >= 0 ? application.getFilteredLedger().get(index) : null;
+            return index >= 0 ? messageLedger.getRecordAt(index) : null;
         } catch (IndexOutOfBoundsException e) {
             logger.error(e, "Failed to get selected record from ledger.");
             return null;
@@ -0,0 +1,156 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.ui;
+
+import org.rvsnoop.BundleLedger;
+import org.rvsnoop.Connections;
+import org.rvsnoop.NLSUtils;
+import rvsnoop.Record;
+import rvsnoop.RecordTypes;
+import rvsnoop.ui.RvDetailsPanel;
+import rvsnoop.ui.UIUtils;
+
+import javax.swing.AbstractAction;
+import javax.swing.Action;
+import javax.swing.BorderFactory;
+import javax.swing.ImageIcon;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JOptionPane;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.ScrollPaneConstants;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import java.awt.BorderLayout;
+import java.awt.Frame;
+import java.awt.event.ActionEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * A dialog for browsing the records in a record bundle without importing
+ * them to the ledger.
+ */
+public final class RecordBundleDialog extends JDialog {
+
+    private final class CloseAction extends AbstractAction {
+        private static final long serialVersionUID = -4385916204458412378L;
+        CloseAction() {
+            super(BUTTON_CLOSE);
+        }
+        public void actionPerformed(ActionEvent e) {
+            setVisible(false);
+            dispose();
+        }
+    }
+
+    private final class DetailsUpdater implements ListSelectionListener {
+        DetailsUpdater() {
+            super();
+        }
+        public void valueChanged(ListSelectionEvent e) {
+            if (e.getValueIsAdjusting()) { return; }
+            final int row = table.getSelectedRow();
+            if (row >= 0) { details.setMessage(table.getRecordAt(row)); }
+        }
+    }
+
+    private final class GoToTimeAction extends AbstractAction {
+        private static final long serialVersionUID = 5107325290473813960L;
+        GoToTimeAction() {
+            super(BUTTON_GO_TO_TIME);
+        }
+        public void actionPerformed(ActionEvent e) {
+            final DateFormat format = new SimpleDateFormat(TIME_FORMAT);
+            final int selected = table.getSelectedRow();
+            final Record current = table.getRecordAt(selected >= 0 ? selected : 0);
+            final String input = (String) JOptionPane.showInputDialog(RecordBundleDialog.this,
+                    MESSAGE_GO_TO_TIME, TITLE_GO_TO_TIME, JOptionPane.QUESTION_MESSAGE,
+                    null, null, format.format(new Date(current.getTimestamp())));
+            if (input == null) { return; }
+            final long timestamp;
+            try {
+                timestamp = format.parse(input.trim()).getTime();
+            } catch (ParseException ex) {
+                JOptionPane.showMessageDialog(RecordBundleDialog.this,
+                        String.format(ERROR_BAD_TIME, input, TIME_FORMAT),
+                        TITLE_GO_TO_TIME, JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            final int row = Math.min(ledger.findFirstAtOrAfter(timestamp), ledger.size() - 1);
+            table.getSelectionModel().setSelectionInterval(row, row);
+            table.scrollRectToVisible(table.getCellRect(row, 0, true));
+        }
+    }
+
+    static { NLSUtils.internationalize(RecordBundleDialog.class); }
+
+    private static final long serialVersionUID = -1979211012880395836L;
+
+    private static final ImageIcon BANNER = new ImageIcon("/resources/banners/searchResults.png");
+
+    private static final String TIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+    static String BUTTON_CLOSE, BUTTON_GO_TO_TIME, DESCRIPTION, DIALOG_TITLE, ERROR_BAD_TIME;
+    static String MESSAGE_GO_TO_TIME, TITLE, TITLE_GO_TO_TIME, TOOLTIP_VISIBLE_COLUMNS;
+
+    private final JPopupMenu columnsPopup = new JPopupMenu();
+
+    private final RvDetailsPanel details = new RvDetailsPanel();
+
+    private final BundleLedger ledger;
+
+    private final RecordLedgerTable table;
+
+    public RecordBundleDialog(Frame parent, BundleLedger ledger, Connections connections, RecordTypes recordTypes) {
+        super(parent, String.format(DIALOG_TITLE, ledger.getFile().getName()), false); // false == non-modal
+        this.ledger = ledger;
+        table = new RecordLedgerTable(ledger, connections, recordTypes);
+        table.getSelectionModel().addListSelectionListener(new DetailsUpdater());
+        columnsPopup.addPopupMenuListener(new VisibleColumnsMenuManager(table.getTableFormat()));
+        final JScrollPane scrollpane = new JScrollPane(table);
+        scrollpane.setBorder(BorderFactory.createEmptyBorder());
+        scrollpane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
+        final JButton colsButton = UIUtils.createSmallButton(
+                new ImageIcon("/resources/icons/columns_corner_button.png"), TOOLTIP_VISIBLE_COLUMNS, null);
+        colsButton.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                columnsPopup.show(colsButton, e.getX(), e.getY());
+            }
+        });
+        colsButton.setBorderPainted(false);
+        scrollpane.setCorner(ScrollPaneConstants.UPPER_RIGHT_CORNER, colsButton);
+
+        final JSplitPane splitter = new JSplitPane(JSplitPane.VERTICAL_SPLIT, scrollpane, details);
+        splitter.setOneTouchExpandable(true);
+        splitter.setResizeWeight(0.5);
+        splitter.setBorder(BorderFactory.createEmptyBorder());
+
+        final GoToTimeAction goToTime = new GoToTimeAction();
+        goToTime.setEnabled(ledger.size() > 0);
+
+        getContentPane().setLayout(new BorderLayout());
+        getContentPane().add(new HeaderPanel(TITLE, String.format(DESCRIPTION, ledger.size()), BANNER), BorderLayout.NORTH);
+        getContentPane().add(splitter, BorderLayout.CENTER);
+        getContentPane().add(new FooterPanel(new CloseAction(), null, new Action[] { goToTime }), BorderLayout.SOUTH);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                RecordBundleDialog.this.ledger.close();
+            }
+        });
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        pack();
+        setLocationRelativeTo(parent);
+    }
+
+}
@@ -16,12 +16,18 @@ import org.jdesktop.application.ApplicationContext;
 import org.jdesktop.application.ResourceMap;
 import rvsnoop.Record;
 import rvsnoop.RecordTypes;
+import rvsnoop.RvConnection;
 
 import ca.odell.glazedlists.gui.AdvancedTableFormat;
 import ca.odell.glazedlists.swing.EventTableModel;
 
 /**
  * A format that describes the contents of a record ledger.
+ * <p>
+ * The numeric columns (timestamp, sequence and size) are
+ * {@link NumericColumnFormat}s, their cell values are the records themselves
+ * so that neither sorting nor rendering them needs to box the numbers. The
+ * {@link RecordLedgerTable} renders them from the underlying primitive.
  */
 public final class RecordLedgerFormat implements AdvancedTableFormat<Record> {
 
@@ -40,17 +46,18 @@ public final class RecordLedgerFormat implements AdvancedTableFormat<Record> {
         allColumns = ImmutableList.of(
                 new ColumnFormat("connection", resourceMap, String.class) {
                     @Override public Object getValue(Record record) {
-                        return record.getConnection() != null ? record.getConnection().getDescription() : "";
+                        final RvConnection connection = record.getConnection();
+                        return connection != null ? connection.getDescription() : "";
                     }
                 },
-                new ColumnFormat("timestamp", resourceMap, Date.class) {
-                    @Override public Object getValue(Record record) {
-                        return new Date(record.getTimestamp());
+                new NumericColumnFormat("timestamp", resourceMap, Date.class) {
+                    @Override public long getLong(Record record) {
+                        return record.getTimestamp();
                     }
                 },
-                new ColumnFormat("sequence", resourceMap, Long.class) {
-                    @Override public Object getValue(Record record) {
-                        return Long.toString(record.getSequenceNumber());
+                new NumericColumnFormat("sequence", resourceMap, Long.class) {
+                    @Override public long getLong(Record record) {
+                        return record.getSequenceNumber();
                     }
                 },
                 new ColumnFormat("type", resourceMap, String.class) {
@@ -63,8 +70,8 @@ public final class RecordLedgerFormat implements AdvancedTableFormat<Record> {
                         return record.getSendSubject();
                     }
                 },
-                new ColumnFormat("size", resourceMap, Integer.class) {
-                    @Override public Object getValue(Record record) {
+                new NumericColumnFormat("size", resourceMap, Integer.class) {
+                    @Override public long getLong(Record record) {
                         return record.getSizeInBytes();
                     }
                 },
@@ -242,4 +249,38 @@ public final class RecordLedgerFormat implements AdvancedTableFormat<Record> {
         public abstract Object getValue(Record record);
     }
 
+    /**
+     * Format information for a column which shows a number from each record.
+     * <p>
+     * The value of a cell in this column is the record itself, the comparator
+     * compares the numbers directly. The column class describes how the
+     * number should be displayed.
+     */
+    public abstract static class NumericColumnFormat extends ColumnFormat {
+        private final Comparator<Record> comparator = new Comparator<Record>() {
+            public int compare(Record o1, Record o2) {
+                final long l1 = getLong(o1), l2 = getLong(o2);
+                return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+            }
+        };
+        NumericColumnFormat(String id, ResourceMap resourceMap, Class<?> clazz) {
+            super(id, resourceMap, clazz, null);
+        }
+        @Override
+        public Comparator<?> getComparator() {
+            return comparator;
+        }
+        /**
+         * Get the number shown in this column for a record.
+         *
+         * @param record The record.
+         * @return The number.
+         */
+        public abstract long getLong(Record record);
+        @Override
+        public final Object getValue(Record record) {
+            return record;
+        }
+    }
+
 }
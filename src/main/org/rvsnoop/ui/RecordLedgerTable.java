@@ -16,6 +16,7 @@ import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.EventListener;
+import java.util.List;
 
 import javax.swing.BorderFactory;
 import javax.swing.JComponent;
@@ -26,13 +27,17 @@ import javax.swing.event.ListSelectionListener;
 import javax.swing.event.TableColumnModelEvent;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableColumn;
 import javax.swing.table.TableColumnModel;
 
 import org.rvsnoop.Connections;
 import org.rvsnoop.Logger;
 import org.rvsnoop.RecordLedger;
+import org.rvsnoop.UserPreferences;
 import org.rvsnoop.event.RecordLedgerSelectionEvent;
 import org.rvsnoop.event.RecordLedgerSelectionListener;
+import org.rvsnoop.ui.RecordLedgerFormat.ColumnFormat;
+import org.rvsnoop.ui.RecordLedgerFormat.NumericColumnFormat;
 
 import rvsnoop.Record;
 import rvsnoop.RecordSelection;
@@ -48,6 +53,10 @@ import ca.odell.glazedlists.swing.EventTableModel;
  */
 public final class RecordLedgerTable extends JTable {
 
+    /**
+     * Renders a timestamp column, the text for recently drawn timestamps is
+     * cached so that repainting the table does not need to format them again.
+     */
     private static class DateCellRenderer extends DefaultTableCellRenderer {
         private static final Logger logger = Logger.getLogger();
         private static final long serialVersionUID = -6397207684112537883L;
@@ -60,17 +69,31 @@ public final class RecordLedgerTable extends JTable {
             new SimpleDateFormat("HH:mm:ss.S"),
             new SimpleDateFormat("HH:mm:ss"),
             new SimpleDateFormat("HH:mm") };
+        private final TextCache cache = new TextCache();
+        private final NumericColumnFormat column;
         private int currentWidth;
         private Font currentFont;
         private DateFormat currentFormat;
-        DateCellRenderer() {
+        /** Reused for formatting, this is only used on the event thread. */
+        private final Date date = new Date();
+        DateCellRenderer(NumericColumnFormat column) {
             super();
+            this.column = column;
         }
         @Override
         public Component getTableCellRendererComponent(JTable table, Object value,
                 boolean isSelected, boolean hasFocus, int row, int col) {
             final DateFormat format = getFormat(table.getColumnModel().getColumn(col).getWidth(), table);
-            final String displayed = value != null ? format.format((Date) value) : "";
+            String displayed = "";
+            if (value instanceof Record) {
+                final long millis = column.getLong((Record) value);
+                displayed = cache.get(millis);
+                if (displayed == null) {
+                    date.setTime(millis);
+                    displayed = format.format(date);
+                    cache.put(millis, displayed);
+                }
+            }
             return super.getTableCellRendererComponent(table, displayed, isSelected, hasFocus, row, col);
         }
         private DateFormat getFormat(int width, JTable table) {
@@ -78,6 +101,7 @@ public final class RecordLedgerTable extends JTable {
             if (currentWidth != width) currentFormat = null;
             if (currentFont == null || !currentFont.equals(font)) currentFormat = null;
             if (currentFormat == null) {
+                cache.clear();
                 currentWidth = width;
                 currentFont = font;
                 final Date date = new Date();
@@ -99,6 +123,64 @@ public final class RecordLedgerTable extends JTable {
         }
     }
 
+    /**
+     * Renders a numeric column other than a timestamp.
+     */
+    private static class NumberCellRenderer extends DefaultTableCellRenderer {
+        private static final long serialVersionUID = 2183766306958717373L;
+        private final TextCache cache = new TextCache();
+        private final NumericColumnFormat column;
+        NumberCellRenderer(NumericColumnFormat column) {
+            super();
+            this.column = column;
+            setHorizontalAlignment(RIGHT);
+        }
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value,
+                boolean isSelected, boolean hasFocus, int row, int col) {
+            String displayed = "";
+            if (value instanceof Record) {
+                final long number = column.getLong((Record) value);
+                displayed = cache.get(number);
+                if (displayed == null) {
+                    displayed = Long.toString(number);
+                    cache.put(number, displayed);
+                }
+            }
+            return super.getTableCellRendererComponent(table, displayed, isSelected, hasFocus, row, col);
+        }
+    }
+
+    /**
+     * A small direct mapped cache of the text for numeric cells.
+     * <p>
+     * Rows which are next to each other usually have nearby or equal values,
+     * so this holds the text for everything in the viewport and a bit more.
+     */
+    private static final class TextCache {
+        private static final int SIZE = 1024;
+        private final long[] keys = new long[SIZE];
+        private final String[] values = new String[SIZE];
+        TextCache() {
+            super();
+        }
+        void clear() {
+            Arrays.fill(values, null);
+        }
+        String get(long key) {
+            final int slot = slot(key);
+            return keys[slot] == key ? values[slot] : null;
+        }
+        void put(long key, String value) {
+            final int slot = slot(key);
+            keys[slot] = key;
+            values[slot] = value;
+        }
+        private static int slot(long key) {
+            return (int) (key ^ (key >>> 32)) & (SIZE - 1);
+        }
+    }
+
     private class SelectionHandler implements ListSelectionListener {
         SelectionHandler() {
             super();
@@ -141,7 +223,7 @@ public final class RecordLedgerTable extends JTable {
             }
             final Component component = renderer.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, col);
             if (!isSelected) {
-                component.setForeground(types.getFirstMatchingType(ledger.get(row)).getColour());
+                component.setForeground(types.getFirstMatchingType(getRecordAt(row)).getColour());
                 component.setBackground(row % 2 == 0 ? evenRowsColor : oddRowsColor);
             }
             return component;
@@ -178,8 +260,11 @@ public final class RecordLedgerTable extends JTable {
         @Override
         protected Transferable createTransferable(JComponent source) {
             if (!RecordLedgerTable.this.equals(source)) { return null; }
-            final int[] indices = ((JTable) source).getSelectedRows();
-            final Record[] records = getRecordLedger().getAll(indices);
+            final int[] rows = ((JTable) source).getSelectedRows();
+            final Record[] records = new Record[rows.length];
+            for (int i = 0, imax = rows.length; i < imax; ++i) {
+                records[i] = getRecordAt(rows[i]);
+            }
             return new RecordSelection(records);
         }
 
@@ -224,7 +309,7 @@ public final class RecordLedgerTable extends JTable {
     private final RecordTypes types;
 
     public RecordLedgerTable(RecordLedger ledger, Connections connections, RecordTypes types) {
-        super(ledger.createTableModel());
+        super(ledger.createTableModel(UserPreferences.getInstance().getLedgerRefreshRate()));
         this.connections = connections;
         this.ledger = ledger;
         this.types = types;
@@ -264,14 +349,19 @@ public final class RecordLedgerTable extends JTable {
     private void configureRenderers() {
         try {
             final StripedCellRenderer striper = new StripedCellRenderer(null, types);
+            final List<ColumnFormat> formats = getTableFormat().getColumns();
             final TableColumnModel columns = getColumnModel();
             for (int i = 0, imax = columns.getColumnCount(); i < imax; ++i) {
-                final Class columnClass = getColumnClass(i);
-                if (Date.class.isAssignableFrom(columnClass)) {
-                    columns.getColumn(i).setCellRenderer(
-                            new StripedCellRenderer(new DateCellRenderer(), types));
+                final TableColumn column = columns.getColumn(i);
+                final ColumnFormat format = formats.get(column.getModelIndex());
+                if (!(format instanceof NumericColumnFormat)) {
+                    column.setCellRenderer(striper);
+                } else if (Date.class.isAssignableFrom(format.getClazz())) {
+                    column.setCellRenderer(new StripedCellRenderer(
+                            new DateCellRenderer((NumericColumnFormat) format), types));
                 } else {
-                    columns.getColumn(i).setCellRenderer(striper);
+                    column.setCellRenderer(new StripedCellRenderer(
+                            new NumberCellRenderer((NumericColumnFormat) format), types));
                 }
             }
         } catch (IndexOutOfBoundsException ignored) {
@@ -285,6 +375,20 @@ public final class RecordLedgerTable extends JTable {
         }
     }
 
+    /**
+     * Get the record shown in a row of this table.
+     * <p>
+     * The table may be updated less often than the ledger, so the row numbers
+     * in this table are not necessarily the same as the indices in the ledger.
+     *
+     * @param row The row number.
+     * @return The record.
+     */
+    @SuppressWarnings("unchecked")
+    public Record getRecordAt(int row) {
+        return ((EventTableModel<Record>) getModel()).getElementAt(row);
+    }
+
     /**
      * Get the record ledger that is viewed in this table.
      *
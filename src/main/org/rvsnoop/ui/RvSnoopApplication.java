@@ -35,19 +35,23 @@ import org.jdesktop.application.utils.PlatformType;
 import org.rvsnoop.Application;
 import org.rvsnoop.Connections;
 import org.rvsnoop.Logger;
+import org.rvsnoop.MessageCache;
 import org.rvsnoop.ProjectFileFilter;
 import org.rvsnoop.ProjectService;
+import org.rvsnoop.RecordIngester;
 import org.rvsnoop.UserPreferences;
 
 import rvsnoop.BrowserLauncher;
 import rvsnoop.RecordTypes;
 import rvsnoop.RvConnection;
+import rvsnoop.SubjectHierarchy;
 import rvsnoop.ui.MultiLineToolTipUI;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Scopes;
+import com.tibco.tibrv.TibrvException;
 
 /**
  * The application antry point.
@@ -212,12 +216,29 @@ public final class RvSnoopApplication extends SingleFrameApplication {
                 .withDescription(getString("CLI.projectDescription")).create();
         CommandLine line = parseCommandLine(args, helpOption, projectOption);
 
+        final UserPreferences preferences = UserPreferences.getInstance();
+        RvConnection.setQueueMode(preferences.getQueueMode(), preferences.getNumberOfPooledDispatchers());
+        configureOverloadPolicy(preferences);
+        MessageCache.getInstance().setLimits(preferences.getMessageCacheEntries(),
+                preferences.getMessageCacheMegabytes() * 1024L * 1024L);
+        SubjectHierarchy.INSTANCE.setUpdateRate(preferences.getSubjectTreeUpdateRate());
+        SubjectHierarchy.INSTANCE.setMaxChildren(preferences.getSubjectMaxChildren());
+
         injector = Guice.createInjector(new GuiModule());
         injector.injectMembers(this);
 
         initialProjectFile = loadProjectIfValid(projectOption, line);
     }
 
+    private void configureOverloadPolicy(UserPreferences preferences) {
+        RecordIngester.getInstance().setOverloadPolicy(preferences.getOverloadPolicy(), preferences.getSampleRate());
+        try {
+            RvConnection.setOverloadPolicy(preferences.getOverloadPolicy(), preferences.getQueueLimit());
+        } catch (TibrvException e) {
+            logger.error(e, "Could not apply the queue limit of %d.", preferences.getQueueLimit());
+        }
+    }
+
     private CommandLine parseCommandLine(String[] args, Option helpOption, Option projectOption) {
         Group group = new GroupBuilder().withOption(helpOption).withOption(projectOption).create();
         Parser parser = new Parser();
@@ -3,9 +3,9 @@
 package org.rvsnoop.ui;
 
 import org.rvsnoop.Connections;
-import org.rvsnoop.FilteredLedgerView;
+import org.rvsnoop.LedgerSearch;
 import org.rvsnoop.NLSUtils;
-import org.rvsnoop.RecordLedger;
+import org.rvsnoop.SearchResultsLedger;
 import rvsnoop.RecordTypes;
 import rvsnoop.ui.UIUtils;
 
@@ -15,23 +15,42 @@ import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JDialog;
+import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.Timer;
 import java.awt.BorderLayout;
 import java.awt.Frame;
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 
 /**
  * A dialog for displaying search results.
+ * <p>
+ * The dialog is shown while the search is still running, results are added
+ * to the table as they are found and a progress bar shows how much of the
+ * ledger has been searched so far.
  *
  * @author <a href="mailto:ianp@ianp.org">Ian Phillips</a>
  * @version $Revision$, $Date$
  */
 public final class SearchResultsDialog extends JDialog {
 
+    private final class CancelAction extends AbstractAction {
+        private static final long serialVersionUID = -3960433702437520117L;
+        CancelAction() {
+            super(BUTTON_CANCEL);
+        }
+        public void actionPerformed(ActionEvent e) {
+            results.cancel();
+            setEnabled(false);
+        }
+    }
+
     private final class FreezeAction extends AbstractAction {
         private static final long serialVersionUID = 2493033730732619900L;
         private boolean freeze = true;
@@ -57,26 +76,62 @@ public final class SearchResultsDialog extends JDialog {
         }
     }
 
+    private final class ProgressListener implements ActionListener {
+        ProgressListener() {
+            super();
+        }
+        public void actionPerformed(ActionEvent e) {
+            final LedgerSearch search = results.getSearch();
+            if (search == null) { return; }
+            progress.setMaximum(search.getNumRecords());
+            progress.setValue(search.getNumSearched());
+            progress.setString(String.format(PROGRESS, search.getNumSearched(), search.getNumRecords()));
+            if (search.isDone()) {
+                timer.stop();
+                if (search.isCancelled()) { progress.setString(PROGRESS_CANCELLED); }
+                cancel.setEnabled(false);
+                freeze.setEnabled(true);
+            }
+        }
+    }
+
     static { NLSUtils.internationalize(SearchResultsDialog.class); }
 
     private static final long serialVersionUID = 5216848181389646587L;
 
     private static final ImageIcon BANNER = new ImageIcon("/resources/banners/searchResults.png");
 
-    static String BUTTON_FREEZE, BUTTON_OK, BUTTON_UNFREEZE;
-    static String DIALOG_TITLE, TITLE, DESCRIPTION, TOOLTIP_VISIBLE_COLUMNS;
+    /** How often to update the progress bar, in milliseconds. */
+    private static final int PROGRESS_INTERVAL = 100;
+
+    static String BUTTON_CANCEL, BUTTON_FREEZE, BUTTON_OK, BUTTON_UNFREEZE;
+    static String DIALOG_TITLE, TITLE, DESCRIPTION, PROGRESS, PROGRESS_CANCELLED, TOOLTIP_VISIBLE_COLUMNS;
+
+    private final CancelAction cancel = new CancelAction();
 
     private final JPopupMenu columnsPopup = new JPopupMenu();
 
-    private final FilteredLedgerView results;
+    private final FreezeAction freeze = new FreezeAction();
+
+    private final JProgressBar progress = new JProgressBar();
+
+    private final SearchResultsLedger results;
 
-    public SearchResultsDialog(Frame parent, RecordLedger results, Connections connections, RecordTypes recordTypes) {
+    private final Timer timer = new Timer(PROGRESS_INTERVAL, new ProgressListener());
+
+    /**
+     * Create a dialog for a search, the search should already have been
+     * started.
+     *
+     * @param parent The parent frame.
+     * @param results The search results.
+     * @param connections The connections, used by the results table.
+     * @param recordTypes The record types, used by the results table.
+     */
+    public SearchResultsDialog(Frame parent, SearchResultsLedger results, Connections connections, RecordTypes recordTypes) {
         super(parent, DIALOG_TITLE, false); // false == non-modal
-        if (results instanceof FilteredLedgerView) {
-            this.results = (FilteredLedgerView) results;
-        } else {
-            this.results = FilteredLedgerView.newInstance(results, recordTypes, true);
-        }
+        this.results = results;
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
 
         final RecordLedgerTable table = new RecordLedgerTable(results, connections, recordTypes);
         columnsPopup.addPopupMenuListener(new VisibleColumnsMenuManager(table.getTableFormat()));
@@ -95,15 +150,29 @@ public final class SearchResultsDialog extends JDialog {
         colsButton.setBorderPainted(false);
         scrollpane.setCorner(ScrollPaneConstants.UPPER_RIGHT_CORNER, colsButton);
 
-        final FreezeAction freeze = new FreezeAction();
         final OKAction ok = new OKAction();
 
+        progress.setStringPainted(true);
+        progress.setBorder(BorderFactory.createEmptyBorder(4, 8, 4, 8));
+        final JPanel footer = new JPanel(new BorderLayout());
+        footer.add(progress, BorderLayout.NORTH);
+        footer.add(new FooterPanel(ok, null, new Action[] { cancel, freeze }), BorderLayout.SOUTH);
+
         getContentPane().setLayout(new BorderLayout());
         getContentPane().add(new HeaderPanel(TITLE, DESCRIPTION, BANNER), BorderLayout.NORTH);
         getContentPane().add(scrollpane, BorderLayout.CENTER);
-        getContentPane().add(new FooterPanel(ok, null, new Action[] { freeze }), BorderLayout.SOUTH);
+        getContentPane().add(footer, BorderLayout.SOUTH);
         pack();
         setLocationRelativeTo(parent);
+        timer.start();
+    }
+
+    /** Stops the search as well as disposing of the dialog. */
+    @Override
+    public void dispose() {
+        timer.stop();
+        results.dispose();
+        super.dispose();
     }
 
 }
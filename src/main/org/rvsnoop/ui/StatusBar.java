@@ -27,6 +27,9 @@ import javax.swing.border.MatteBorder;
 import org.jdesktop.application.utils.AppHelper;
 import org.jdesktop.application.utils.PlatformType;
 import org.rvsnoop.Application;
+import org.rvsnoop.RecordIngester;
+
+import rvsnoop.RvConnection;
 
 import ca.odell.glazedlists.event.ListEvent;
 import ca.odell.glazedlists.event.ListEventListener;
@@ -42,6 +45,16 @@ import ca.odell.glazedlists.event.ListEventListener;
  */
 public final class StatusBar extends JPanel {
 
+    private final class DropCountUpdater implements ActionListener {
+        DropCountUpdater() {
+            super();
+        }
+        public void actionPerformed(ActionEvent e) {
+            final RecordIngester ingester = RecordIngester.getInstance();
+            setDropCounts(RvConnection.getLimitAdvisoryCount(), ingester.getDroppedCount(), ingester.getSpilledCount());
+        }
+    }
+
     private final class FilterListener implements ListEventListener {
         public void listChanged(ListEvent listChanges) {
             setCountFiltered(listChanges.getSourceList().size());
@@ -70,6 +83,8 @@ public final class StatusBar extends JPanel {
     private static final Color bgEnd = new Color(0xE0, 0xE0, 0xE0);
     private static final Color bgStart = Color.WHITE;
 
+    private static final int DROP_COUNT_UPDATE_MILLIS = 1000;
+
     private static final int MESSAGE_DISPLAY_MILLIS = 5000;
 
     private static final long serialVersionUID = -8192322965748166492L;
@@ -82,6 +97,8 @@ public final class StatusBar extends JPanel {
 
     private final StringBuilder countBuilder = new StringBuilder("0/0");
 
+    private final JLabel dropped = new JLabel();
+
     private final JLabel encoding = new JLabel();
 
     /**
@@ -92,6 +109,8 @@ public final class StatusBar extends JPanel {
 
     private final JLabel message = new JLabel(" ");
 
+    private final JLabel spilled = new JLabel();
+
     /**
      * Create a new <code>StatusBar</code>.
      */
@@ -101,6 +120,11 @@ public final class StatusBar extends JPanel {
         count.setIcon(new ImageIcon("/resources/icons/statusBarCount.png"));
         count.setOpaque(false);
         count.setBorder(new MatteBorder(0, 1, 0, 1, Color.GRAY));
+        dropped.setOpaque(false);
+        dropped.setForeground(Color.RED.darker());
+        dropped.setVisible(false);
+        spilled.setOpaque(false);
+        spilled.setVisible(false);
         encoding.setIcon(new ImageIcon("/resources/icons/statusBarEncoding.png"));
         encoding.setText(Charset.defaultCharset().displayName());
         encoding.setToolTipText(Locale.getDefault().getDisplayName());
@@ -118,11 +142,15 @@ public final class StatusBar extends JPanel {
         GroupLayout.SequentialGroup hgp = layout.createSequentialGroup();
         layout.setHorizontalGroup(hgp);
         hgp.addComponent(message, 1, GroupLayout.PREFERRED_SIZE, Integer.MAX_VALUE)
+            .addComponent(dropped, 1, GroupLayout.PREFERRED_SIZE, GroupLayout.PREFERRED_SIZE)
+            .addComponent(spilled, 1, GroupLayout.PREFERRED_SIZE, GroupLayout.PREFERRED_SIZE)
             .addComponent(count, 1, GroupLayout.PREFERRED_SIZE, GroupLayout.PREFERRED_SIZE)
             .addComponent(encoding, 1, GroupLayout.PREFERRED_SIZE, GroupLayout.PREFERRED_SIZE);
         GroupLayout.ParallelGroup vgp = layout.createParallelGroup();
         layout.setVerticalGroup(vgp);
         vgp.addComponent(message, 1, 16, 16)
+            .addComponent(dropped, 1, 16, 16)
+            .addComponent(spilled, 1, 16, 16)
             .addComponent(count, 1, 16, 16)
             .addComponent(encoding, 1, 16, 16);
         final Dimension d = getPreferredSize();
@@ -131,6 +159,7 @@ public final class StatusBar extends JPanel {
 
         application.getLedger().addListEventListener(new LedgerListener());
         application.getFilteredLedger().addListEventListener(new FilterListener());
+        new Timer(DROP_COUNT_UPDATE_MILLIS, new DropCountUpdater()).start();
     }
 
     /**
@@ -164,8 +193,10 @@ public final class StatusBar extends JPanel {
         }
         setFont(font);
         count.setFont(font);
+        dropped.setFont(font);
         encoding.setFont(font);
         message.setFont(font);
+        spilled.setFont(font);
     }
 
     public synchronized void setCountAll(int all) {
@@ -180,6 +211,39 @@ public final class StatusBar extends JPanel {
         count.setText(countBuilder.toString());
     }
 
+    /**
+     * Show the number of messages that have been dropped because RvSnoop
+     * could not keep up with them.
+     * <p>
+     * Nothing is shown until at least one message has been dropped, and the
+     * messages which were spilled to disk are shown separately since they are
+     * not lost.
+     * <p>
+     * Each queue limit advisory means that at least one message was lost, so
+     * when there have been any the total is shown as a lower bound.
+     *
+     * @param limitAdvisories The number of Rendezvous queue limit advisories.
+     * @param byIngester The number dropped by the ingester.
+     * @param spilledToDisk The number spilled to disk.
+     */
+    public void setDropCounts(long limitAdvisories, long byIngester, long spilledToDisk) {
+        final long total = limitAdvisories + byIngester;
+        if (total > 0) {
+            dropped.setText(total + (limitAdvisories > 0 ? "+ dropped" : " dropped"));
+            dropped.setToolTipText(String.format(
+                    "Queue limits exceeded: %,d times, dropped by the ingester: %,d",
+                    limitAdvisories, byIngester));
+            dropped.setVisible(true);
+        }
+        if (spilledToDisk > 0) {
+            spilled.setText(spilledToDisk + " spilled");
+            spilled.setToolTipText(String.format(
+                    "%,d messages were spilled to disk because the ledger could not keep up, they are not lost",
+                    spilledToDisk));
+            spilled.setVisible(true);
+        }
+    }
+
     public void setMessage(String text) {
         if (text != null && text.length() > 0) {
             message.setText(text);
@@ -0,0 +1,101 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package org.rvsnoop.ui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.Timer;
+
+import ca.odell.glazedlists.EventList;
+import ca.odell.glazedlists.event.ListEvent;
+import ca.odell.glazedlists.impl.swing.SwingThreadProxyEventList;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A view of an event list which publishes the changes to its source on the
+ * event dispatch thread at most a fixed number of times per second.
+ * <p>
+ * The view keeps its own copy of the source, so it stays consistent between
+ * updates however the source is changed: records which are added and evicted
+ * between two updates are never seen, and a cleared ledger appears empty at
+ * the next update. All of the changes since the last update are delivered to
+ * listeners as a single event, so a table showing this list is only told to
+ * repaint once per update instead of once per batch of records.
+ * <p>
+ * This is a Swing thread proxy list, so an
+ * {@link ca.odell.glazedlists.swing.EventTableModel} uses it directly instead
+ * of keeping a second copy of the source. The copy is updated in place at each
+ * update, so appending to a large list only costs as much as the new elements.
+ *
+ * @param <E> The type of elements in the list.
+ */
+public final class ThrottledEventList<E> extends SwingThreadProxyEventList<E> {
+
+    private final class Publisher implements ActionListener {
+        Publisher() {
+            super();
+        }
+        public void actionPerformed(ActionEvent e) {
+            final Runnable runnable = pending.getAndSet(null);
+            if (runnable != null) { runnable.run(); }
+        }
+    }
+
+    /** The update waiting to be published, set by the thread changing the source. */
+    private final AtomicReference<Runnable> pending = new AtomicReference<Runnable>();
+
+    private final Timer timer;
+
+    /**
+     * Create a new throttled view.
+     *
+     * @param source The list to view.
+     * @param rate The maximum number of updates per second.
+     */
+    public ThrottledEventList(EventList<E> source, int rate) {
+        super(source);
+        checkArgument(rate > 0, "The refresh rate must be positive.");
+        timer = new Timer(1000 / rate, new Publisher());
+        timer.setRepeats(false);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected List applyChangeToCache(List<E> source, ListEvent<E> changes, List<E> cache) {
+        if (changes.isReordering()) { return new ArrayList<E>(source); }
+        while (changes.nextBlock()) {
+            final int start = changes.getBlockStartIndex();
+            final int end = changes.getBlockEndIndex() + 1;
+            switch (changes.getType()) {
+            case ListEvent.DELETE:
+                cache.subList(start, end).clear();
+                break;
+            case ListEvent.INSERT:
+                cache.addAll(start, source.subList(start, end));
+                break;
+            default:
+                for (int i = start; i < end; ++i) { cache.set(i, source.get(i)); }
+            }
+        }
+        return cache;
+    }
+
+    @Override
+    public void dispose() {
+        timer.stop();
+        super.dispose();
+    }
+
+    @Override
+    protected void schedule(Runnable runnable) {
+        pending.set(runnable);
+        timer.start();
+    }
+
+}
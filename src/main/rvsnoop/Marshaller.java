@@ -97,9 +97,9 @@ public final class Marshaller {
     static {
         // Allow custom marshallers via a system preference.
         String additional = System.getProperty("rvsnoop.marshaller");
-        String[] preferred = new String[additional == null ? 4 : 5];
+        String[] preferred = new String[PREFERRED.length + (additional == null ? 0 : 1)];
         if (additional != null) preferred[0] = additional;
-        System.arraycopy(PREFERRED, 0, preferred, additional == null ? 0 : 1, 4);
+        System.arraycopy(PREFERRED, 0, preferred, additional == null ? 0 : 1, PREFERRED.length);
         Implementation impl = null;
         for (String s : preferred)
             if ((impl = getImplementation(s)) != null)
@@ -0,0 +1,34 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package rvsnoop;
+
+/**
+ * A typesafe enumeration of the ways that connections may be mapped on to
+ * Rendezvous queues and dispatcher threads.
+ */
+public enum QueueMode {
+
+    /**
+     * All connections share a single queue which is served by a single
+     * dispatcher thread.
+     */
+    SHARED,
+
+    /**
+     * Each connection has its own queue and its own dispatcher thread, so a
+     * busy connection cannot starve the others.
+     */
+    PER_CONNECTION,
+
+    /**
+     * Each connection has its own queue, the queues are collected into a
+     * single queue group which is served by a fixed size pool of dispatcher
+     * threads.
+     * <p>
+     * Note that when more than one dispatcher is used the records from a
+     * single connection may be delivered out of order.
+     */
+    POOLED
+
+}
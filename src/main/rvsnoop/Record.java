@@ -2,47 +2,81 @@
 // License:   Apache Software License (Version 2.0)
 package rvsnoop;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.google.common.base.Objects;
 
 import com.tibco.tibrv.TibrvException;
 import com.tibco.tibrv.TibrvMsg;
 import com.tibco.tibrv.TibrvMsgField;
 import org.rvsnoop.Logger;
+import org.rvsnoop.MessageCache;
 
 /**
  * A record encapsulates the details of a single Rendezvous message.
  * <p>
+ * Records are created on the Rendezvous dispatcher threads so construction
+ * does as little work as possible: it captures the message, a timestamp and a
+ * sequence number. The message size and subject element are derived lazily,
+ * or ahead of time by calling {@link #resolve()} from an ingest thread.
+ * <p>
+ * Once a record has been {@linkplain #compact() compacted} it only holds the
+ * message in Rendezvous wire format, {@link #getMessage()} then decodes the
+ * message on demand using the shared {@link MessageCache}.
+ * <p>
  * Based on <a href="http://wiki.apache.org/logging-log4j/LogFactor5">Log Factor 5</a>.
  */
 public final class Record {
 
     private static final Logger logger = Logger.getLogger();
 
-    private static long nextSequenceNumber;
+    private static final AtomicLong nextSequenceNumber = new AtomicLong();
+
+    /** Marker value for a size which has not been calculated yet. */
+    private static final int SIZE_UNKNOWN = -1;
 
     /**
-     * Resets that sequence number to zero.
+     * Reserve a range of sequence numbers.
+     * <p>
+     * This is used by record stores which create records on demand, so that
+     * the same record always has the same sequence number.
+     *
+     * @param count The number of sequence numbers to reserve.
+     * @return The first sequence number in the range.
      */
-    public static void resetSequence() {
-        synchronized (Record.class) {
-            nextSequenceNumber = 0;
-        }
+    public static long reserveSequenceNumbers(int count) {
+        return nextSequenceNumber.getAndAdd(count);
     }
 
     private final RvConnection connection;
 
-    private final TibrvMsg message;
+    /** The live message, or <code>null</code> once the record is compacted. */
+    private volatile TibrvMsg message;
+
+    /** The message in wire format, set when the record is compacted. */
+    private volatile byte[] bytes;
+
+    // The subjects are not part of the wire format, so they are kept here
+    // once the record is compacted.
+    private volatile String sendSubject;
+
+    private volatile String replySubject;
 
     private final long sequenceNumber;
 
-    private final int sizeInBytes;
+    // Both of these are derived lazily, racing threads will compute the same
+    // values so no locking is needed.
+    private volatile int sizeInBytes = SIZE_UNKNOWN;
 
-    private final SubjectElement subject;
+    private volatile SubjectElement subject;
 
     private final long timestamp;
 
     private String trackingId;
 
+    /** The cached type classification, maintained by {@link RecordTypes}. */
+    private volatile int typeCode;
+
     /**
      * Constructor that allows setting a custom timestamp and subjects.
      *
@@ -53,6 +87,21 @@ public final class Record {
      * @param timestamp The time the message was received.
      */
     public Record(RvConnection connection, TibrvMsg message, String send, String reply, long timestamp) {
+        this(connection, message, send, reply, timestamp, nextSequenceNumber.getAndIncrement());
+    }
+
+    /**
+     * Constructor for records which are restored from a record store and so
+     * already have a sequence number.
+     *
+     * @param connection The connection the message was received on.
+     * @param message The message.
+     * @param send The send subject of the message.
+     * @param reply The reply subject of the message.
+     * @param timestamp The time the message was received.
+     * @param sequenceNumber The sequence number of the original record.
+     */
+    public Record(RvConnection connection, TibrvMsg message, String send, String reply, long timestamp, long sequenceNumber) {
         super();
         this.connection = connection;
         this.message = message;
@@ -62,18 +111,31 @@ public final class Record {
         } catch (TibrvException e) {
             logger.error(e, "Could not set subject on message.");
         }
-        int sizeInBytes = 0;
-        try {
-            sizeInBytes = message.getAsBytes().length;
-        } catch (TibrvException e) {
-            logger.warn(e, "Unable to extract bytes from message.");
-        }
-        this.sizeInBytes = sizeInBytes;
-        this.subject = SubjectHierarchy.INSTANCE.getSubjectElement(message.getSendSubject());
         this.timestamp = timestamp;
-        synchronized (Record.class) {
-            sequenceNumber = nextSequenceNumber++;
-        }
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    /**
+     * Constructor for compact records which are restored from a record store.
+     * <p>
+     * The message is not decoded until it is needed.
+     *
+     * @param connection The connection the message was received on.
+     * @param bytes The message in wire format, this array is not copied.
+     * @param send The send subject of the message.
+     * @param reply The reply subject of the message.
+     * @param timestamp The time the message was received.
+     * @param sequenceNumber The sequence number of the record.
+     */
+    public Record(RvConnection connection, byte[] bytes, String send, String reply, long timestamp, long sequenceNumber) {
+        super();
+        this.connection = connection;
+        this.bytes = bytes;
+        this.sizeInBytes = bytes.length;
+        this.sendSubject = send != null && send.length() > 0 ? send : null;
+        this.replySubject = reply != null && reply.length() > 0 ? reply : null;
+        this.timestamp = timestamp;
+        this.sequenceNumber = sequenceNumber;
     }
 
     /**
@@ -97,6 +159,42 @@ public final class Record {
         this(connection, message, System.currentTimeMillis());
     }
 
+    /**
+     * Replace the live message in this record with its wire format.
+     * <p>
+     * This is called by the ingest stage, the message is added to the
+     * {@link MessageCache} so that recent messages do not need to be decoded
+     * again. Compacting a record that is already compact does nothing.
+     */
+    public void compact() {
+        final TibrvMsg msg = message;
+        if (msg == null) { return; }
+        try {
+            final byte[] wire = msg.getAsBytes();
+            getTrackingId();
+            sendSubject = msg.getSendSubject();
+            replySubject = msg.getReplySubject();
+            sizeInBytes = wire.length;
+            // The bytes must be visible before the message is cleared.
+            bytes = wire;
+            message = null;
+            MessageCache.getInstance().put(sequenceNumber, msg, wire.length);
+        } catch (TibrvException e) {
+            logger.warn(e, "Unable to extract bytes from message, the record will not be compacted.");
+        }
+    }
+
+    private TibrvMsg decode() {
+        try {
+            final TibrvMsg msg = new TibrvMsg(bytes);
+            if (sendSubject != null) { msg.setSendSubject(sendSubject); }
+            if (replySubject != null) { msg.setReplySubject(replySubject); }
+            return msg;
+        } catch (TibrvException e) {
+            throw new IllegalStateException("Could not decode the message in record " + sequenceNumber, e);
+        }
+    }
+
     /* (non-Javadoc)
      * @see java.lang.Object#equals(java.lang.Object)
      */
@@ -116,11 +214,40 @@ public final class Record {
 
     /**
      * Get the message that this record represents.
+     * <p>
+     * If the record has been compacted the message is taken from the
+     * {@link MessageCache}, or decoded if it is not in the cache. Changes made
+     * to a decoded message may be lost once it leaves the cache.
      *
      * @return The rendezvous message.
      */
     public TibrvMsg getMessage() {
-        return message;
+        TibrvMsg msg = message;
+        if (msg != null) { return msg; }
+        final MessageCache cache = MessageCache.getInstance();
+        msg = cache.get(sequenceNumber);
+        if (msg == null) {
+            msg = decode();
+            cache.put(sequenceNumber, msg, bytes.length);
+        }
+        return msg;
+    }
+
+    /**
+     * Get the message in this record in Rendezvous wire format.
+     * <p>
+     * If the record has been compacted this returns the stored bytes without
+     * decoding the message. The array must not be modified.
+     *
+     * @return The message bytes.
+     * @throws TibrvException If the message could not be encoded.
+     */
+    public byte[] getMessageBytes() throws TibrvException {
+        final byte[] wire = bytes;
+        if (wire != null) { return wire; }
+        final TibrvMsg msg = message;
+        // The record may have been compacted since the bytes were read.
+        return msg != null ? msg.getAsBytes() : bytes;
     }
 
     /**
@@ -132,7 +259,8 @@ public final class Record {
      * @return The reply subject.
      */
     public String getReplySubject() {
-        final String rs = message.getReplySubject();
+        final TibrvMsg msg = message;
+        final String rs = msg != null ? msg.getReplySubject() : replySubject;
         return rs != null ? rs : "";
     }
 
@@ -147,8 +275,22 @@ public final class Record {
      * @return The send subject.
      */
     public String getSendSubject() {
-        final String ss =  message.getSendSubject();
-        return ss != null ? ss : subject.getElementName();
+        final String ss = getRawSendSubject();
+        return ss != null ? ss : getSubject().getElementName();
+    }
+
+    /**
+     * Get the send subject of the message in this record, as it was received.
+     * <p>
+     * Unlike {@link #getSendSubject()} this never returns the placeholder label,
+     * so it can be used by code which stores or exports records.
+     *
+     * @return The send subject, or <code>null</code> if the message does not
+     *     have one.
+     */
+    public String getRawSendSubject() {
+        final TibrvMsg msg = message;
+        return msg != null ? msg.getSendSubject() : sendSubject;
     }
 
     /**
@@ -168,15 +310,34 @@ public final class Record {
      * @return The size of the record, in bytes.
      */
     public int getSizeInBytes() {
-        return sizeInBytes;
+        int size = sizeInBytes;
+        if (size == SIZE_UNKNOWN) {
+            try {
+                size = getMessage().getAsBytes().length;
+            } catch (TibrvException e) {
+                size = 0;
+                logger.warn(e, "Unable to extract bytes from message.");
+            }
+            sizeInBytes = size;
+        }
+        return size;
     }
 
     /**
      * Gets the subject element representing the subject that this record was sent to.
+     * <p>
+     * The element will be created in the subject hierarchy the first time this
+     * is called.
+     *
      * @return The subject element holding this record.
      */
     public SubjectElement getSubject() {
-        return subject;
+        SubjectElement element = subject;
+        if (element == null) {
+            element = SubjectHierarchy.INSTANCE.getSubjectElement(getRawSendSubject());
+            subject = element;
+        }
+        return element;
     }
 
     /**
@@ -190,6 +351,15 @@ public final class Record {
         return timestamp;
     }
 
+    /**
+     * Get the cached type classification of this record.
+     *
+     * @return The code, which is only meaningful to {@link RecordTypes}.
+     */
+    int getTypeCode() {
+        return typeCode;
+    }
+
     /**
      * Extracts an Active Enterprise style tracking ID from a message.
      *
@@ -198,7 +368,7 @@ public final class Record {
     public String getTrackingId() {
         if (trackingId == null) {
             try {
-                final TibrvMsgField field = message.getField("^tracking^");
+                final TibrvMsgField field = getMessage().getField("^tracking^");
                 trackingId = (String) ((TibrvMsg) field.data).get("^id^");
             } catch (NullPointerException e) {
                 trackingId = "";
@@ -210,6 +380,26 @@ public final class Record {
         return trackingId;
     }
 
+    /**
+     * Derive the lazily calculated properties of this record.
+     * <p>
+     * This is called by the ingest stage so that the work is done away from
+     * both the Rendezvous dispatcher threads and the event dispatch thread.
+     */
+    public void resolve() {
+        getSubject();
+        getSizeInBytes();
+    }
+
+    /**
+     * Set the cached type classification of this record.
+     *
+     * @param typeCode The code, which is only meaningful to {@link RecordTypes}.
+     */
+    void setTypeCode(int typeCode) {
+        this.typeCode = typeCode;
+    }
+
     @Override
     public int hashCode() {
         return (int) (17 + sequenceNumber * 37);
@@ -221,7 +411,7 @@ public final class Record {
                 .add("sequenceNumber", sequenceNumber)
                 .add("timestamp", timestamp)
                 .add("connection", connection != null ? connection.getDescription() : "null")
-                .add("subject", subject.getUserObjectPath()).toString();
+                .add("subject", getSubject().getUserObjectPath()).toString();
     }
 
 }
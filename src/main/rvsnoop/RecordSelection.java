@@ -175,6 +175,39 @@ public final class RecordSelection implements ClipboardOwner, Transferable {
         }
     }
 
+    /**
+     * Read a single record entry which is known to have been written for the
+     * given connection.
+     * <p>
+     * This is for use by record stores which keep track of connections
+     * themselves, the connection details in the entry are skipped.
+     *
+     * @param input The input to read from.
+     * @param connection The connection to use for the record, may be <code>null</code>.
+     * @param sequenceNumber The sequence number to give the record.
+     * @return The record.
+     * @throws IOException If the input does not contain a valid record entry.
+     */
+    public static Record readRecord(DataInput input, RvConnection connection, long sequenceNumber) throws IOException {
+        final byte[] magic = new byte[BIND_RECORD_MAGIC.length];
+        input.readFully(magic);
+        if (!Arrays.equals(BIND_RECORD_MAGIC, magic))
+            throw new IOException("Input does not contain a valid record stream.");
+        if (input.readBoolean()) {
+            for (int i = 0; i < 4; ++i) { input.readUTF(); }
+        }
+        final String send = input.readUTF();
+        final String reply = input.readUTF();
+        final long timestamp = input.readLong();
+        final byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        try {
+            return new Record(connection, new TibrvMsg(bytes), send, reply, timestamp, sequenceNumber);
+        } catch (TibrvException e) {
+            throw new IOException("Could not convert bytes to record.", e);
+        }
+    }
+
     private static Record readRecord(DataInput input, Connections connections, boolean checkMagic) throws IOException {
         if (checkMagic) {
             final byte[] magic = new byte[BIND_RECORD_MAGIC.length];
@@ -187,12 +220,13 @@ public final class RecordSelection implements ClipboardOwner, Transferable {
         final String service = connFlag ? input.readUTF() : null;
         final String network = connFlag ? input.readUTF() : null;
         final String daemon = connFlag ? input.readUTF() : null;
-        RvConnection connection = connections != null ? connections.get(service, network, daemon) : null;
-        if (connection == null) {
+        final RvConnection connection;
+        if (connections != null) {
+            connection = connections.getOrCreate(description, service, network, daemon);
+        } else {
             connection = new RvConnection(service, network, daemon);
             connection.setDescription(description);
             connection.addSubject(">");
-            connections.add(connection);
         }
         final String send = input.readUTF();
         final String reply = input.readUTF();
@@ -240,10 +274,9 @@ public final class RecordSelection implements ClipboardOwner, Transferable {
         } else {
             output.writeBoolean(false);
         }
-        final String ss = record.getSendSubject();
-        output.writeUTF(SubjectHierarchy.NO_SUBJECT_LABEL.equals(ss) ? "" : ss);
-        final String rs = record.getReplySubject();
-        output.writeUTF(SubjectHierarchy.NO_SUBJECT_LABEL.equals(rs) ? "" : rs);
+        final String ss = record.getRawSendSubject();
+        output.writeUTF(ss != null ? ss : "");
+        output.writeUTF(record.getReplySubject());
         output.writeLong(record.getTimestamp());
         byte[] bytes;
         try {
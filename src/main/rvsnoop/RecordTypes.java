@@ -10,12 +10,15 @@ import java.util.concurrent.Future;
 
 import ca.odell.glazedlists.BasicEventList;
 import ca.odell.glazedlists.EventList;
+import ca.odell.glazedlists.event.ListEvent;
+import ca.odell.glazedlists.event.ListEventListener;
 import ca.odell.glazedlists.matchers.AbstractMatcherEditor;
 import ca.odell.glazedlists.matchers.Matcher;
 import com.google.inject.Inject;
 import org.bushe.swing.event.annotation.AnnotationProcessor;
 import org.bushe.swing.event.annotation.EventSubscriber;
 import org.jdesktop.application.ApplicationContext;
+import org.rvsnoop.RecordIndex;
 import org.rvsnoop.event.ProjectClosingEvent;
 import org.rvsnoop.event.ProjectOpenedEvent;
 import org.rvsnoop.ui.SwingRunnable;
@@ -31,14 +34,46 @@ import static com.google.common.base.Preconditions.checkArgument;
  * <p>
  * The mechanism used for this is the {@link RecordType} class, this object
  * holds a list of all the known types.
+ * <p>
+ * The type of each record is worked out once and cached on the record as a
+ * small integer code, the code includes a generation number which is changed
+ * whenever the list of types changes so that all of the cached codes are
+ * invalidated at once.
  */
 public final class RecordTypes {
 
     public static final RecordType DEFAULT = new RecordType("Normal", Color.BLACK, RecordMatcher.DEFAULT_MATCHER);
     public static final RecordType ERROR = new RecordType("Error", Color.RED, new RecordMatcher.SendSubjectContains("ERROR"));
 
+    /** An immutable copy of the types list for a single generation. */
+    private static final class Snapshot {
+        final int generation;
+        final RecordType[] types;
+        Snapshot(int generation, RecordType[] types) {
+            this.generation = generation;
+            this.types = types;
+        }
+    }
+
+    private final class TypesListener implements ListEventListener<RecordType> {
+        TypesListener() {
+            super();
+        }
+        public void listChanged(ListEvent<RecordType> changes) {
+            // Called with the write lock held.
+            snapshot = new Snapshot((snapshot.generation + 1) & GENERATION_MASK,
+                    types.toArray(new RecordType[types.size()]));
+        }
+    }
+
+    private static final int TYPE_BITS = 10;
+    private static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+    private static final int GENERATION_MASK = -1 >>> TYPE_BITS;
+
     private final ApplicationContext context;
 
+    private volatile Snapshot snapshot = new Snapshot(0, new RecordType[0]);
+
     final MessageTypeMatcherEditor matcherEditor = new MessageTypeMatcherEditor();
 
     final EventList<RecordType> types = new BasicEventList<RecordType>();
@@ -46,6 +81,7 @@ public final class RecordTypes {
     @Inject
     public RecordTypes(ApplicationContext context) {
         this.context = context;
+        types.addListEventListener(new TypesListener());
         reset();
         AnnotationProcessor.process(this);
     }
@@ -102,17 +138,41 @@ public final class RecordTypes {
         return types;
     }
 
-    public RecordType getFirstMatchingType(Record record) {
-        types.getReadWriteLock().readLock().lock();
-        try {
-            for (RecordType type : types) {
-                if (type.matches(record))
-                    return type;
-            }
-            return DEFAULT;
-        } finally {
-            types.getReadWriteLock().readLock().unlock();
+    /**
+     * Find the type of a record, using the type cached on the record if the
+     * types have not changed since it was classified.
+     *
+     * @param record The record to classify.
+     * @return The first matching type, or <code>null</code> if no type matches.
+     */
+    private RecordType classify(Record record) {
+        final Snapshot current = snapshot;
+        final int code = record.getTypeCode();
+        final int index = code & TYPE_MASK;
+        if (index != 0 && code >>> TYPE_BITS == current.generation) {
+            return index <= current.types.length ? current.types[index - 1] : null;
         }
+        final RecordType[] all = current.types;
+        int found = 0;
+        while (found < all.length && !all[found].matches(record)) { ++found; }
+        // No match is cached as the index past the end of the types array.
+        if (all.length < TYPE_MASK) { record.setTypeCode(current.generation << TYPE_BITS | (found + 1)); }
+        return found < all.length ? all[found] : null;
+    }
+
+    /**
+     * The generation number of the types list, this changes whenever types
+     * are added, removed or reordered.
+     *
+     * @return The generation number.
+     */
+    public int getGeneration() {
+        return snapshot.generation;
+    }
+
+    public RecordType getFirstMatchingType(Record record) {
+        final RecordType type = classify(record);
+        return type != null ? type : DEFAULT;
     }
 
     public MessageTypeMatcherEditor getMatcherEditor() {
@@ -198,6 +258,19 @@ public final class RecordTypes {
         });
     }
 
+    private final class SelectedTypeMatcher implements Matcher<Record>, RecordIndex.KeyedMatcher {
+        SelectedTypeMatcher() {
+            super();
+        }
+        public RecordIndex.Key getIndexKey() {
+            return RecordIndex.Key.TYPE;
+        }
+        public boolean matches(Record record) {
+            final RecordType type = classify(record);
+            return type == null || type.isSelected();
+        }
+    }
+
     // TODO make private again
     public class MessageTypeMatcherEditor extends AbstractMatcherEditor<Record> {
         MessageTypeMatcherEditor() {
@@ -208,20 +281,7 @@ public final class RecordTypes {
         }
         @Override
         public Matcher<Record> getMatcher() {
-            return new Matcher<Record>() {
-                public boolean matches(Record record) {
-                    types.getReadWriteLock().readLock().lock();
-                    try {
-                        for (RecordType type : types) {
-                            if (type.matches(record))
-                                return type.isSelected();
-                        }
-                        return true;
-                    } finally {
-                        types.getReadWriteLock().readLock().unlock();
-                    }
-                }
-            };
+            return new SelectedTypeMatcher();
         }
         public void relax() {
             fireRelaxed(getMatcher());
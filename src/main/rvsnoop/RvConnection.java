@@ -7,10 +7,14 @@ import java.awt.event.ActionEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -19,9 +23,10 @@ import com.google.common.base.Objects;
 import nu.xom.Element;
 import nu.xom.Elements;
 
-import org.bushe.swing.event.EventBus;
 import org.rvsnoop.Connections;
 import org.rvsnoop.Logger;
+import org.rvsnoop.OverloadPolicy;
+import org.rvsnoop.RecordIngester;
 import org.rvsnoop.XMLBuilder;
 import org.rvsnoop.actions.PauseConnection;
 import org.rvsnoop.actions.StartConnection;
@@ -37,8 +42,8 @@ import com.tibco.tibrv.TibrvMsg;
 import com.tibco.tibrv.TibrvMsgCallback;
 import com.tibco.tibrv.TibrvNetTransport;
 import com.tibco.tibrv.TibrvQueue;
+import com.tibco.tibrv.TibrvQueueGroup;
 import com.tibco.tibrv.TibrvRvdTransport;
-import org.rvsnoop.event.MessageReceivedEvent;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -67,12 +72,15 @@ public final class RvConnection implements TibrvMsgCallback {
         }
     }
 
-    private static class NullCallback implements TibrvMsgCallback {
-        NullCallback() {
+    private static class QueueLimitCallback implements TibrvMsgCallback {
+        QueueLimitCallback() {
             super();
         }
         public void onMsg(TibrvListener listener, TibrvMsg message) {
-            // Do nothing.
+            // The advisory does not say how many messages were discarded, so
+            // only the advisories are counted. Those raised while the queues
+            // are paused are expected and not counted.
+            if (!isPaused()) { limitAdvisoryCount.incrementAndGet(); }
         }
     }
 
@@ -135,8 +143,33 @@ public final class RvConnection implements TibrvMsgCallback {
 
     private static TibrvQueue queue;
 
+    private static volatile RecordIngester ingester;
+
     private static TibrvListener queueLimitListener;
 
+    private static QueueMode queueMode = QueueMode.SHARED;
+
+    private static int numPooledDispatchers = 1;
+
+    /** The group used by connections in {@link QueueMode#POOLED} mode. */
+    private static TibrvQueueGroup queueGroup;
+
+    /** The dispatchers serving the queue group. */
+    private static final List<TibrvDispatcher> pooledDispatchers = new ArrayList<TibrvDispatcher>();
+
+    /** Every queue currently in use, including the shared queue. */
+    private static final Set<TibrvQueue> queues = new LinkedHashSet<TibrvQueue>();
+
+    private static volatile boolean queuesPaused;
+
+    /** The maximum number of events in each queue, or 0 for no limit. */
+    private static int queueLimit;
+
+    private static OverloadPolicy overloadPolicy = OverloadPolicy.BLOCK;
+
+    /** The number of times a Rendezvous queue limit has discarded messages. */
+    private static final AtomicLong limitAdvisoryCount = new AtomicLong();
+
     private static synchronized void ensureInitialized() {
         if (queue != null) return;
         try {
@@ -144,6 +177,10 @@ public final class RvConnection implements TibrvMsgCallback {
             Tibrv.setErrorCallback(new ErrorCallback());
             queue = new TibrvQueue();
             queue.setName("RvSnoop");
+            queues.add(queue);
+            applyLimitPolicy(queue);
+            ingester = RecordIngester.getInstance();
+            queueLimitListener = new TibrvListener(queue, new QueueLimitCallback(), Tibrv.processTransport(), "_RV.WARN.SYSTEM.QUEUE.LIMIT_EXCEEDED", null);
             // No need to keep references to the dispatchers.
             new TibrvDispatcher(Tibrv.defaultQueue());
             new TibrvDispatcher(queue);
@@ -154,6 +191,7 @@ public final class RvConnection implements TibrvMsgCallback {
             logger.error(e, msg);
             try {
                 // try to clean up.
+                queues.clear();
                 queue.destroy();
                 queue = null;
                 Tibrv.close();
@@ -163,6 +201,117 @@ public final class RvConnection implements TibrvMsgCallback {
         }
     }
 
+    private static synchronized TibrvQueueGroup ensureQueueGroupInitialized() throws TibrvException {
+        if (queueGroup != null) return queueGroup;
+        queueGroup = new TibrvQueueGroup();
+        for (int i = 0; i < numPooledDispatchers; ++i) {
+            pooledDispatchers.add(new TibrvDispatcher("RvSnoop-Dispatcher-" + i, queueGroup));
+        }
+        logger.info("Started %d pooled dispatchers.", numPooledDispatchers);
+        return queueGroup;
+    }
+
+    /**
+     * Set the limit policy on a queue from the current overload settings.
+     */
+    private static synchronized void applyLimitPolicy(TibrvQueue q) throws TibrvException {
+        if (queuesPaused) {
+            q.setLimitPolicy(TibrvQueue.DISCARD_NEW, 1, 1);
+        } else if (queueLimit > 0 && overloadPolicy.getLimitPolicy() != TibrvQueue.DISCARD_NONE) {
+            q.setLimitPolicy(overloadPolicy.getLimitPolicy(), queueLimit, 1);
+        } else {
+            q.setLimitPolicy(TibrvQueue.DISCARD_NONE, 0, 0);
+        }
+    }
+
+    /**
+     * Get the number of queue limit advisories that have been received.
+     * <p>
+     * Rendezvous raises an advisory each time a queue exceeds its limit and
+     * discards messages, but it does not report how many were discarded, so
+     * this is a lower bound on the number of messages lost rather than an
+     * exact count. Advisories raised while the queues are paused are not
+     * counted.
+     *
+     * @return The number of queue limit advisories.
+     */
+    public static long getLimitAdvisoryCount() {
+        return limitAdvisoryCount.get();
+    }
+
+    /**
+     * Get the maximum number of events allowed in each queue.
+     *
+     * @return The queue limit, or 0 if the queues are unbounded.
+     */
+    public static synchronized int getQueueLimit() {
+        return queueLimit;
+    }
+
+    private static boolean isPaused() {
+        return queuesPaused;
+    }
+
+    /**
+     * Set the overload policy and the limit to apply to each Rendezvous queue.
+     * <p>
+     * Only the drop oldest and drop newest policies can be enforced by the
+     * Rendezvous queues, the other policies leave the queues unbounded and are
+     * applied by the {@link RecordIngester} instead. The new limits are
+     * applied to all queues immediately, unless they are paused.
+     *
+     * @param policy The overload policy.
+     * @param limit The maximum number of events in each queue, or 0 for no limit.
+     * @throws TibrvException If the limit could not be applied to a queue.
+     */
+    public static synchronized void setOverloadPolicy(OverloadPolicy policy, int limit) throws TibrvException {
+        checkNotNull(policy, "Overload policy cannot be null.");
+        checkArgument(limit >= 0, "Queue limit cannot be negative.");
+        overloadPolicy = policy;
+        queueLimit = limit;
+        for (TibrvQueue q : queues) {
+            applyLimitPolicy(q);
+        }
+    }
+
+    /**
+     * Get the queue mode that will be used by connections when they are next
+     * started.
+     *
+     * @return The queue mode.
+     */
+    public static synchronized QueueMode getQueueMode() {
+        return queueMode;
+    }
+
+    /**
+     * Set the queue mode that will be used by connections when they are next
+     * started.
+     * <p>
+     * Connections which are already started will continue to use their
+     * current queue until they are stopped.
+     *
+     * @param mode The queue mode.
+     * @param pooledDispatchers The number of dispatcher threads to use in
+     *     {@link QueueMode#POOLED} mode, ignored by the other modes. This can
+     *     only be changed before the pool has been started.
+     */
+    public static synchronized void setQueueMode(QueueMode mode, int pooledDispatchers) {
+        checkNotNull(mode, "Queue mode cannot be null.");
+        checkArgument(pooledDispatchers > 0, "There must be at least one pooled dispatcher.");
+        queueMode = mode;
+        if (queueGroup == null) { numPooledDispatchers = pooledDispatchers; }
+    }
+
+    private static synchronized void registerQueue(TibrvQueue q) throws TibrvException {
+        queues.add(q);
+        applyLimitPolicy(q);
+    }
+
+    private static synchronized void unregisterQueue(TibrvQueue q) {
+        queues.remove(q);
+    }
+
     /**
      * Constructs a new RvConnection from information contained in an XML fragment.
      *
@@ -196,10 +345,9 @@ public final class RvConnection implements TibrvMsgCallback {
     /**
      * Pause the Rendezvous message queue.
      * <p>
-     * All of the Rendezvous connections are backed by a single message queue,
-     * this method will pause the queue. This means that the queue is told to
-     * discard all new messages and a listener is installed which suppresses the
-     * advisory that is generated for discarded messages.
+     * This method will pause the shared queue and any per-connection queues.
+     * This means that the queues are told to discard all new messages, the
+     * advisories that are generated for these are not counted as drops.
      * <p>
      * Additionally, all connections are moved to the paused state.
      *
@@ -207,8 +355,10 @@ public final class RvConnection implements TibrvMsgCallback {
      */
     public static synchronized void pauseQueue() throws TibrvException {
         if (queue != null) {
-            queueLimitListener = new TibrvListener(queue, new NullCallback(), Tibrv.processTransport(), "_RV.WARN.SYSTEM.QUEUE.LIMIT_EXCEEDED", null);
-            queue.setLimitPolicy(TibrvQueue.DISCARD_NEW, 1, 1);
+            queuesPaused = true;
+            for (TibrvQueue q : queues) {
+                applyLimitPolicy(q);
+            }
         }
 //        final RvConnection[] conns = Connections.getInstance().toArray();
 //        for (int i = 0, imax = conns.length; i < imax; ++i) {
@@ -220,17 +370,16 @@ public final class RvConnection implements TibrvMsgCallback {
     /**
      * Resume the Rendezvous message queue.
      * <p>
-     *
+     * The queues go back to the limits set by the current overload policy.
      *
      * @throws TibrvException
      */
     public static synchronized void resumeQueue() throws TibrvException {
         ensureInitialized();
         if (queue != null) {
-            queue.setLimitPolicy(TibrvQueue.DISCARD_NONE, 0, 0);
-            if (queueLimitListener != null) {
-                queueLimitListener.destroy();
-                queueLimitListener = null;
+            queuesPaused = false;
+            for (TibrvQueue q : queues) {
+                applyLimitPolicy(q);
             }
         }
 //        final RvConnection[] conns = Connections.getInstance().toArray();
@@ -242,6 +391,19 @@ public final class RvConnection implements TibrvMsgCallback {
 
     public static synchronized void shutdown() {
         if (queue == null) return;
+        for (TibrvDispatcher dispatcher : pooledDispatchers) {
+            dispatcher.destroy();
+        }
+        pooledDispatchers.clear();
+        if (queueGroup != null) {
+            queueGroup.destroy();
+            queueGroup = null;
+        }
+        queues.clear();
+        if (queueLimitListener != null) {
+            queueLimitListener.destroy();
+            queueLimitListener = null;
+        }
         try {
             Tibrv.close();
         } catch (TibrvException e) {
@@ -291,6 +453,15 @@ public final class RvConnection implements TibrvMsgCallback {
 
     private TibrvNetTransport transport;
 
+    /**
+     * The queue used by this connection, or <code>null</code> if it is
+     * stopped or is using the shared queue.
+     */
+    private TibrvQueue connectionQueue;
+
+    /** The dispatcher for the connection queue in {@link QueueMode#PER_CONNECTION} mode. */
+    private TibrvDispatcher connectionDispatcher;
+
     /**
      * Create a new Rendezvous connection.
      *
@@ -344,13 +515,45 @@ public final class RvConnection implements TibrvMsgCallback {
         try {
             ensureInitialized();
             logger.debug("Creating listener for ‘%s’ on subject ‘%s’.", description, subject);
-            return new TibrvListener(queue, this, transport, subject, this);
+            return new TibrvListener(connectionQueue != null ? connectionQueue : queue, this, transport, subject, this);
         } catch (TibrvException e) {
             logger.error(e, "Could not create Rendezvous connection.");
             return null;
         }
     }
 
+    private synchronized void createQueue() throws TibrvException {
+        ensureInitialized();
+        final QueueMode mode = getQueueMode();
+        if (mode == QueueMode.SHARED) return;
+        connectionQueue = new TibrvQueue();
+        connectionQueue.setName(description);
+        if (mode == QueueMode.PER_CONNECTION) {
+            connectionDispatcher = new TibrvDispatcher("RvSnoop-" + description, connectionQueue);
+        } else {
+            ensureQueueGroupInitialized().add(connectionQueue);
+        }
+        registerQueue(connectionQueue);
+    }
+
+    private synchronized void destroyQueue() {
+        if (connectionQueue == null) return;
+        unregisterQueue(connectionQueue);
+        if (connectionDispatcher != null) {
+            connectionDispatcher.destroy();
+            connectionDispatcher = null;
+        }
+        try {
+            synchronized (RvConnection.class) {
+                if (queueGroup != null) { queueGroup.remove(connectionQueue); }
+            }
+        } catch (TibrvException e) {
+            logger.warn(e, "Could not remove the queue for %s from the queue group.", description);
+        }
+        connectionQueue.destroy();
+        connectionQueue = null;
+    }
+
     private synchronized void createTransport() throws TibrvException {
         ensureInitialized();
         transport = new TibrvRvdTransport(service, network, daemon);
@@ -385,6 +588,24 @@ public final class RvConnection implements TibrvMsgCallback {
         return network;
     }
 
+    /**
+     * Get the number of events waiting to be dispatched from the queue used by
+     * this connection.
+     * <p>
+     * When the shared queue is in use this is the depth of the shared queue.
+     *
+     * @return The queue depth, or -1 if the connection is stopped.
+     */
+    public synchronized int getQueueDepth() {
+        if (state == State.STOPPED) return -1;
+        try {
+            final TibrvQueue q = connectionQueue != null ? connectionQueue : queue;
+            return q != null ? q.getCount() : -1;
+        } catch (TibrvException e) {
+            return -1;
+        }
+    }
+
     public int getNumSubjects() {
         return subjects.size();
     }
@@ -467,7 +688,7 @@ public final class RvConnection implements TibrvMsgCallback {
         final RvConnection conn = (RvConnection) (closure instanceof RvConnection ? closure : null);
         if (conn != null && conn.getState() == State.PAUSED)
             return;
-        EventBus.publish(new MessageReceivedEvent(new Record(conn, message)));
+        ingester.offer(new Record(conn, message));
     }
 
     public synchronized void pause() {
@@ -558,12 +779,14 @@ public final class RvConnection implements TibrvMsgCallback {
             state = State.STARTED;
             try {
                 createTransport();
+                createQueue();
                 for (String subject : subjects.keySet()) {
                     subjects.put(subject, createListener(subject));
                 }
                 logger.info("Started connection: %s", description);
             } catch (TibrvException e) {
                 state = State.STOPPED;
+                destroyQueue();
                 logger.error(e, "The connection named %s could not be started.", description);
             }
         }
@@ -577,6 +800,7 @@ public final class RvConnection implements TibrvMsgCallback {
     		event.destroy();
     	}
         subjects.values().clear();
+        destroyQueue();
         transport.destroy();
         transport = null;
         final State oldState = state;
@@ -9,6 +9,13 @@ package rvsnoop;
 
 import com.google.common.base.Joiner;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.MutableTreeNode;
 import javax.swing.tree.TreeNode;
@@ -16,6 +23,12 @@ import javax.swing.tree.TreeNode;
 /**
  * An element in a Rendezvous subject hierarchy.
  * <p>
+ * An element knows its parent, and its parent knows it by name, as soon as it
+ * is created, but it is only inserted into the tree, where the tree view can
+ * see it, when the hierarchy flushes its changes on the event dispatch thread.
+ * Until then {@link #getParent()} returns <code>null</code>, the counters,
+ * flags and selection use {@link #getParentElement()} instead.
+ * <p>
  * Based on <a href="http://wiki.apache.org/logging-log4j/LogFactor5">Log Factor 5</a>.
  *
  * @author <a href="mailto:lundberg@home.se">Örjan Lundberg</a>
@@ -26,35 +39,62 @@ public final class SubjectElement extends DefaultMutableTreeNode {
 
     private static final String[] ROOT_PATH = { "root" };
 
+    /** The maximum number of folded names that a wildcard element keeps. */
+    static final int MAX_SAMPLED_NAMES = 10;
+
     private static final long serialVersionUID = -3670587626244234923L;
 
+    // The counters and flags may be updated from any thread, the tree view
+    // reads them when the hierarchy flushes its changes.
+    private static final AtomicIntegerFieldUpdater<SubjectElement> NUM_RECORDS_HERE =
+        AtomicIntegerFieldUpdater.newUpdater(SubjectElement.class, "numRecordsHere");
+
+    private static final AtomicIntegerFieldUpdater<SubjectElement> NUM_RECORDS_UNDER =
+        AtomicIntegerFieldUpdater.newUpdater(SubjectElement.class, "numRecordsUnder");
+
+    /**
+     * The children keyed by name, including those which have not been inserted
+     * into the tree yet. The tree itself keeps them sorted.
+     */
+    private Map<String, SubjectElement> childrenByName;
+
     private int hashCode;
 
-    private boolean isErrorHere = false;
+    private volatile boolean isErrorHere = false;
 
-    private boolean isErrorUnder = false;
+    private volatile boolean isErrorUnder = false;
 
     private boolean isParentSet = false;
 
+    /** Whether this element and all of its ancestors are selected. */
+    private volatile boolean isEffectivelySelected = true;
+
     private boolean isSelected = true;
 
-    private int numRecordsHere;
+    private final SubjectElement parentElement;
 
-    private int numRecordsUnder;
+    private volatile int numRecordsHere;
+
+    private volatile int numRecordsUnder;
 
     private TreeNode[] path;
 
+    /** Some of the names folded into this element, if it is a wildcard. */
+    private List<String> sampledNames;
+
     private final String[] userObjectPath;
 
     public SubjectElement() {
         super(ROOT_PATH[0]);
         this.userObjectPath = ROOT_PATH;
+        this.parentElement = null;
     }
 
     /**
      * Create a new subject tree node by appending a new subject element to an
      * existing node. This should be used like so:
      * <code>parent.add(new SubjectElement(parent, "foo"));</code>
+     * or by the hierarchy, which defers the insertion.
      *
      * @param parent Must be a <code>SubjectElement</code>.
      * @param element The subject element name.
@@ -67,6 +107,7 @@ public final class SubjectElement extends DefaultMutableTreeNode {
             // This is safe because the user objects for SubjectElements are always strings.
             System.arraycopy(pp, 0, userObjectPath, 0, pp.length);
             userObjectPath[pp.length] = element;
+            parentElement = (SubjectElement) parent;
         } else {
             throw new IllegalArgumentException("Invalid parent node.");
         }
@@ -86,6 +127,72 @@ public final class SubjectElement extends DefaultMutableTreeNode {
         return true;
     }
 
+    /**
+     * Find a child of this element by name.
+     * <p>
+     * Callers must synchronise on the hierarchy which owns this element.
+     *
+     * @param name The name of the child.
+     * @return The child, or <code>null</code> if there is no child with that name.
+     */
+    SubjectElement getChild(String name) {
+        return childrenByName != null ? childrenByName.get(name) : null;
+    }
+
+    /**
+     * Add a child to this element without inserting it into the tree, so that
+     * it can be found by name. The hierarchy inserts it when it next flushes.
+     * <p>
+     * Callers must synchronise on the hierarchy which owns this element.
+     *
+     * @param child The new child, created with this element as its parent.
+     */
+    void addChild(SubjectElement child) {
+        if (childrenByName == null) childrenByName = new HashMap<String, SubjectElement>();
+        childrenByName.put(child.getElementName(), child);
+        child.isEffectivelySelected = child.isSelected && isEffectivelySelected;
+    }
+
+    /**
+     * The number of children of this element, including those which have not
+     * been inserted into the tree yet.
+     * <p>
+     * Callers must synchronise on the hierarchy which owns this element.
+     *
+     * @return The number of children.
+     */
+    int getNumChildren() {
+        return childrenByName != null ? childrenByName.size() : 0;
+    }
+
+    /**
+     * The parent of this element, even if it has not been inserted into the
+     * tree yet.
+     *
+     * @return The parent, or <code>null</code> for the root element.
+     */
+    SubjectElement getParentElement() {
+        return parentElement;
+    }
+
+    /**
+     * This element and all of its descendants, including those which have not
+     * been inserted into the tree yet. Parents come before their children.
+     * <p>
+     * Callers must synchronise on the hierarchy which owns this element.
+     *
+     * @return The elements in the subtree.
+     */
+    List<SubjectElement> getSubtree() {
+        final List<SubjectElement> subtree = new ArrayList<SubjectElement>();
+        subtree.add(this);
+        for (int i = 0; i < subtree.size(); ++i) {
+            final Map<String, SubjectElement> children = subtree.get(i).childrenByName;
+            if (children != null) subtree.addAll(children.values());
+        }
+        return subtree;
+    }
+
     public String getElementName() {
         return (String) getUserObject();
     }
@@ -110,12 +217,22 @@ public final class SubjectElement extends DefaultMutableTreeNode {
 
     /**
      * Since this class does not support re-parenting this can cache the result.
+     * The path is built from the parent elements, so it is also known before
+     * this element has been inserted into the tree.
      *
      * @see DefaultMutableTreeNode#getPath()
      */
     @Override
     public TreeNode[] getPath() {
-        if (path == null) path = super.getPath();
+        if (path == null) {
+            final TreeNode[] nodes = new TreeNode[userObjectPath.length];
+            SubjectElement node = this;
+            for (int i = nodes.length - 1; i >= 0; --i) {
+                nodes[i] = node;
+                node = node.parentElement;
+            }
+            path = nodes;
+        }
         // Don't expose the internal array!
         return path.clone();
     }
@@ -142,18 +259,84 @@ public final class SubjectElement extends DefaultMutableTreeNode {
         return hashCode;
     }
 
+    /**
+     * Decrement the record counts for this element and its ancestors.
+     * <p>
+     * This is used when records are removed from a bounded ledger.
+     */
+    public void decNumRecordsHere() {
+        decrementIfPositive(NUM_RECORDS_HERE);
+        if (parentElement != null)
+            parentElement.decNumRecordsUnder();
+    }
+
+    private void decrementIfPositive(AtomicIntegerFieldUpdater<SubjectElement> counter) {
+        int value;
+        do {
+            value = counter.get(this);
+            if (value == 0) return;
+        } while (!counter.compareAndSet(this, value, value - 1));
+    }
+
+    private void decNumRecordsUnder() {
+        decrementIfPositive(NUM_RECORDS_UNDER);
+        if (parentElement != null)
+            parentElement.decNumRecordsUnder();
+    }
+
     public void incNumRecordsHere() {
-        ++numRecordsHere;
-        final TreeNode parent = getParent();
-        if (parent instanceof SubjectElement)
-            ((SubjectElement) parent).incNumRecordsUnder();
+        NUM_RECORDS_HERE.incrementAndGet(this);
+        if (parentElement != null)
+            parentElement.incNumRecordsUnder();
     }
 
     private void incNumRecordsUnder() {
-        ++numRecordsUnder;
-        final TreeNode parent = getParent();
-        if (parent instanceof SubjectElement)
-            ((SubjectElement) parent).incNumRecordsUnder();
+        NUM_RECORDS_UNDER.incrementAndGet(this);
+        if (parentElement != null)
+            parentElement.incNumRecordsUnder();
+    }
+
+    @Override
+    public void insert(MutableTreeNode child, int index) {
+        super.insert(child, index);
+        final SubjectElement element = (SubjectElement) child;
+        if (getChild(element.getElementName()) != element) {
+            addChild(element);
+            element.updateEffectiveSelection();
+        }
+    }
+
+    /**
+     * Whether records with this subject pass the subject filter, that is,
+     * whether this element and all of its ancestors are selected.
+     *
+     * @return <code>true</code> if this element is effectively selected.
+     */
+    public boolean isEffectivelySelected() {
+        return isEffectivelySelected;
+    }
+
+    /**
+     * Get some of the subject element names which have been folded into this
+     * element because its parent had too many children.
+     *
+     * @return The names, empty if this is not a wildcard element.
+     */
+    public synchronized List<String> getSampledNames() {
+        return sampledNames != null
+            ? new ArrayList<String>(sampledNames)
+            : Collections.<String>emptyList();
+    }
+
+    /**
+     * Record that a name has been folded into this element.
+     *
+     * @param name The name of the element which was not created.
+     */
+    synchronized void addSampledName(String name) {
+        if (sampledNames == null) sampledNames = new ArrayList<String>();
+        if (sampledNames.size() < MAX_SAMPLED_NAMES && !sampledNames.contains(name))
+            sampledNames.add(name);
     }
 
     public boolean isErrorHere() {
@@ -168,6 +351,13 @@ public final class SubjectElement extends DefaultMutableTreeNode {
         return isSelected;
     }
 
+    @Override
+    public void remove(int childIndex) {
+        final SubjectElement child = (SubjectElement) getChildAt(childIndex);
+        super.remove(childIndex);
+        childrenByName.remove(child.getElementName());
+    }
+
     public void reset() {
         numRecordsHere = 0;
         numRecordsUnder = 0;
@@ -177,16 +367,14 @@ public final class SubjectElement extends DefaultMutableTreeNode {
 
     public void setErrorHere() {
         isErrorHere = true;
-        final TreeNode parent = getParent();
-        if (parent instanceof SubjectElement)
-            ((SubjectElement) parent).setErrorUnder();
+        if (parentElement != null)
+            parentElement.setErrorUnder();
     }
 
     private void setErrorUnder() {
         isErrorUnder = true;
-        final TreeNode parent = getParent();
-        if (parent instanceof SubjectElement)
-            ((SubjectElement) parent).setErrorUnder();
+        if (parentElement != null)
+            parentElement.setErrorUnder();
     }
 
     /**
@@ -205,6 +393,13 @@ public final class SubjectElement extends DefaultMutableTreeNode {
         isParentSet = true;
     }
 
+    /**
+     * Set the selection flag on this element only, use
+     * {@link SubjectHierarchy#setSelected(SubjectElement, boolean)} to also
+     * update the effective selection.
+     *
+     * @param selected The new selection value.
+     */
     public void setSelected(boolean selected) {
         this.isSelected = selected;
     }
@@ -214,6 +409,21 @@ public final class SubjectElement extends DefaultMutableTreeNode {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Recompute the effective selection of this element and all of its
+     * descendants, this must be called after the selection of this element
+     * or any of its ancestors has changed.
+     * <p>
+     * Callers must synchronise on the hierarchy which owns this element.
+     */
+    void updateEffectiveSelection() {
+        // Parents are always visited before their children.
+        for (SubjectElement node : getSubtree()) {
+            final SubjectElement parent = node.parentElement;
+            node.isEffectivelySelected = node.isSelected && (parent == null || parent.isEffectivelySelected);
+        }
+    }
+
     /**
      * Return a string representation of this subject.
      *
@@ -3,24 +3,51 @@
 
 package rvsnoop;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.regex.Pattern;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.MutableTreeNode;
 import javax.swing.tree.TreeNode;
 
 import ca.odell.glazedlists.matchers.AbstractMatcherEditor;
 import ca.odell.glazedlists.matchers.Matcher;
 import ca.odell.glazedlists.matchers.MatcherEditor;
+import com.google.common.base.Joiner;
 import org.bushe.swing.event.annotation.AnnotationProcessor;
 import org.bushe.swing.event.annotation.EventSubscriber;
+import org.rvsnoop.RecordIndex;
 import org.rvsnoop.event.MessageReceivedEvent;
+import org.rvsnoop.event.MessagesReceivedEvent;
+import org.rvsnoop.event.RecordsEvictedEvent;
+
+import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * A hierarchy of rendezvous subjects.
  * <p>
+ * The hierarchy may be changed from any thread but the tree itself is only
+ * changed, and the tree model events are only fired, on the event dispatch
+ * thread. New elements can be found by name as soon as they are created, they
+ * are inserted into the tree along with the changed elements by a timer, at
+ * most {@linkplain #setUpdateRate(int) a few times per second}, so that a high
+ * message rate does not flood the tree view with repaints.
+ * <p>
  * Based on <a href="http://wiki.apache.org/logging-log4j/LogFactor5">Log Factor 5</a>.
  */
 // Class provides static instance instead of getInstance() method.
@@ -32,22 +59,34 @@ public final class SubjectHierarchy extends DefaultTreeModel {
      */
     public static final String NO_SUBJECT_LABEL = "[No Subject!]";
 
+    /**
+     * The name of the element which new children are folded into once an
+     * element has too many of them.
+     */
+    public static final String WILDCARD_LABEL = "*";
+
+    /** The default maximum number of children for each element. */
+    public static final int DEFAULT_MAX_CHILDREN = 5000;
+
+    private static final class SelectedSubjectMatcher implements Matcher<Record>, RecordIndex.KeyedMatcher {
+        SelectedSubjectMatcher() {
+            super();
+        }
+        public RecordIndex.Key getIndexKey() {
+            return RecordIndex.Key.SUBJECT;
+        }
+        public boolean matches(Record item) {
+            return item.getSubject().isEffectivelySelected();
+        }
+    }
+
     private static class SubjectHierarchyMatcherEditor extends AbstractMatcherEditor<Record> {
         SubjectHierarchyMatcherEditor() {
             super();
         }
         @Override
         public Matcher<Record> getMatcher() {
-            return new Matcher<Record>() {
-                public boolean matches(Record item) {
-                    SubjectElement elt = item.getSubject();
-                    if (!elt.isSelected()) return false;
-                    while ((elt = ((SubjectElement) elt.getParent())) != null) {
-                        if (!elt.isSelected()) return false;
-                    }
-                    return true;
-                }
-            };
+            return new SelectedSubjectMatcher();
         }
         void update(boolean selected) {
             if (selected) {
@@ -58,29 +97,116 @@ public final class SubjectHierarchy extends DefaultTreeModel {
         }
     }
 
+    private final class Flusher implements ActionListener {
+        Flusher() {
+            super();
+        }
+        public void actionPerformed(ActionEvent e) {
+            flush();
+        }
+    }
+
+    /** The default number of times per second to update the tree view. */
+    public static final int DEFAULT_UPDATE_RATE = 10;
+
     public static final SubjectHierarchy INSTANCE = new SubjectHierarchy();
 
     private static final long serialVersionUID = -3629858078509052804L;
 
-    private static final Pattern SPLITTER = Pattern.compile("\\.");
+    /**
+     * A cache of subject strings which have already been resolved, this may
+     * be read without holding the lock on the hierarchy.
+     */
+    private final ConcurrentMap<String, SubjectElement> elementsBySubject = new ConcurrentHashMap<String, SubjectElement>();
+
+    private final Set<TreeNode> changedNodes = Collections.newSetFromMap(new ConcurrentHashMap<TreeNode, Boolean>());
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final Timer flushTimer = new Timer(1000 / DEFAULT_UPDATE_RATE, new Flusher());
+
+    /** Elements which have been created since the last flush, guarded by this. */
+    private final List<SubjectElement> insertedElements = new ArrayList<SubjectElement>();
 
     private final SubjectHierarchyMatcherEditor matcherEditor = new SubjectHierarchyMatcherEditor();
 
+    private volatile int maxChildren = DEFAULT_MAX_CHILDREN;
+
     private SubjectElement noSubjectElement;
 
     public SubjectHierarchy() {
         super(new SubjectElement());
+        flushTimer.setRepeats(false);
         AnnotationProcessor.process(this);
     }
 
     public void addRecord(Record record) {
-        final SubjectElement element = record.getSubject();
-        element.incNumRecordsHere();
-        if (RecordTypes.ERROR.matches(record))
-            element.setErrorHere();
-        final TreeNode[] nodes = element.getPath();
-        for (int i = 0, imax = nodes.length; i < imax; ++i)
-            nodeChanged(nodes[i]);
+        addRecords(Collections.singletonList(record));
+    }
+
+    /**
+     * Add a batch of records to the hierarchy.
+     * <p>
+     * The counters are updated for every record but each node on the affected
+     * paths is only reported as changed once, at the next flush.
+     *
+     * @param records The records to add.
+     */
+    public void addRecords(List<Record> records) {
+        final Set<SubjectElement> seen = Collections.newSetFromMap(new IdentityHashMap<SubjectElement, Boolean>());
+        for (Record record : records) {
+            final SubjectElement element = record.getSubject();
+            element.incNumRecordsHere();
+            if (RecordTypes.ERROR.matches(record))
+                element.setErrorHere();
+            if (seen.add(element))
+                markPathChanged(element);
+        }
+    }
+
+    /**
+     * Insert the elements created since the last flush into the tree and fire
+     * the events for all of the changes made since then.
+     * <p>
+     * This must be called on the event dispatch thread.
+     */
+    void flush() {
+        // Clear the flag first so that any changes made during the flush
+        // will schedule another one.
+        flushScheduled.set(false);
+        synchronized (this) {
+            // Parents are always created, and so inserted, before their children.
+            final Map<TreeNode, List<SubjectElement>> inserted = new LinkedHashMap<TreeNode, List<SubjectElement>>();
+            for (SubjectElement element : insertedElements) {
+                final SubjectElement parent = element.getParentElement();
+                // Skip elements whose parent has already been pruned.
+                if (parent != getRoot() && parent.getParent() == null) continue;
+                parent.insert(element, insertionPoint(parent, element.getElementName()));
+                List<SubjectElement> children = inserted.get(parent);
+                if (children == null) {
+                    children = new ArrayList<SubjectElement>();
+                    inserted.put(parent, children);
+                }
+                children.add(element);
+            }
+            insertedElements.clear();
+            // The indices must be ascending, and are only known once all of
+            // the children of a parent have been inserted.
+            for (Map.Entry<TreeNode, List<SubjectElement>> entry : inserted.entrySet()) {
+                final TreeNode parent = entry.getKey();
+                final List<SubjectElement> children = entry.getValue();
+                final int[] childIndices = new int[children.size()];
+                for (int i = 0; i < childIndices.length; ++i)
+                    childIndices[i] = parent.getIndex(children.get(i));
+                Arrays.sort(childIndices);
+                nodesWereInserted(parent, childIndices);
+            }
+        }
+        for (Iterator<TreeNode> i = changedNodes.iterator(); i.hasNext();) {
+            final TreeNode node = i.next();
+            i.remove();
+            nodeChanged(node);
+        }
     }
 
     public MatcherEditor<Record> getMatcherEditor() {
@@ -89,14 +215,21 @@ public final class SubjectHierarchy extends DefaultTreeModel {
 
     private synchronized SubjectElement getNoSubjectElement() {
         if (noSubjectElement == null)
-            noSubjectElement = insertNewChild((SubjectElement) getRoot(), NO_SUBJECT_LABEL, 0, true);
+            noSubjectElement = insertNewChild((SubjectElement) getRoot(), NO_SUBJECT_LABEL, true);
         return noSubjectElement;
     }
 
     /**
      * Convert a subject string into a subject element object.
      * <p>
-     * The element will be created if it does not already exists.
+     * The element will be created if it does not already exists. This may be
+     * called from several dispatcher threads at once, subjects which have
+     * been seen before are found without locking the hierarchy.
+     * <p>
+     * If an element along the way already has the maximum number of children
+     * then the rest of the subject is resolved under its wildcard element
+     * instead, so <code>TRADE.1234.FILL</code> may become
+     * <code>TRADE.*.FILL</code>.
      *
      * @param subject The subject as a string.
      * @return The <code>SubjectElement</code> representing the subject.
@@ -104,24 +237,29 @@ public final class SubjectHierarchy extends DefaultTreeModel {
     public SubjectElement getSubjectElement(String subject) {
         if (subject == null || subject.length() == 0)
             return getNoSubjectElement();
+        final SubjectElement cached = elementsBySubject.get(subject);
+        return cached != null ? cached : resolveSubjectElement(subject);
+    }
+
+    private synchronized SubjectElement resolveSubjectElement(String subject) {
         SubjectElement current = (SubjectElement) getRoot();
-        final String[] subjectElts = SPLITTER.split(subject);
-        final String[] pathElts = new String[subjectElts.length + 1];
-        pathElts[0] = (String) current.getUserObject();
-        System.arraycopy(subjectElts, 0, pathElts, 1, subjectElts.length);
-        boolean isSelected = true;
-        // Skipping the root node...
-        for (int i = 1, imax = pathElts.length; i < imax; ++i) {
-            final String element = pathElts[i];
-            final int numChildren = current.getChildCount();
-            // If there are no children just add a child and continue.
-            if (numChildren == 0) {
-                current = insertNewChild(current, element, 0, isSelected);
-            } else {
-                current = getSubjectElement(current, element, isSelected);
-            }
-            isSelected = current.isSelected();
+        // Trailing empty elements are ignored, as they are by String.split.
+        int end = subject.length();
+        while (end > 0 && subject.charAt(end - 1) == '.') --end;
+        if (end == 0) return current;
+        boolean folded = false;
+        for (int start = 0; start <= end;) {
+            int dot = subject.indexOf('.', start);
+            if (dot < 0 || dot > end) dot = end;
+            final String name = subject.substring(start, dot);
+            current = getSubjectElement(current, name, true);
+            if (!name.equals(current.getElementName())) folded = true;
+            start = dot + 1;
         }
+        // Only cache canonical subjects so that pruned elements can be found,
+        // and do not cache folded subjects as there may be any number of them.
+        if (end == subject.length() && !folded)
+            elementsBySubject.put(subject, current);
         return current;
     }
 
@@ -129,51 +267,141 @@ public final class SubjectHierarchy extends DefaultTreeModel {
      * Get a subject element given a parent element.
      * <p>
      * This method will return an existing element if there is one, or will create
-     * a new element if one does not currently exist.
+     * a new element if one does not currently exist. If the parent already has
+     * the maximum number of children then its wildcard element is returned.
      *
      * @param parent The parent of the new element.
      * @param name The name of the new element.
      * @param selected Should the element be selected or not.
      * @return The subject element.
      */
-    public SubjectElement getSubjectElement(SubjectElement parent, String name, boolean selected) {
-        final int numChildren = parent.getChildCount();
-        for (int j = 0; j < numChildren; ++j) {
-            final SubjectElement child = (SubjectElement) parent.getChildAt(j);
-            final int compared = name.compareTo(child.getElementName());
-            // If this child already exists scan it.
-            if (compared == 0) {
-                return child;
-            } else if (compared < 0) {
-                // If we have found a child which should be sorted after this then
-                // we should insert the new child here and immediately scan it.
-                return insertNewChild(parent, name, j, selected && parent.isSelected());
+    public synchronized SubjectElement getSubjectElement(SubjectElement parent, String name, boolean selected) {
+        final SubjectElement child = parent.getChild(name);
+        if (child != null) return child;
+        final int max = maxChildren;
+        if (max > 0) {
+            final SubjectElement wildcard = parent.getChild(WILDCARD_LABEL);
+            if (wildcard != null || parent.getNumChildren() >= max) {
+                final SubjectElement bucket = wildcard != null ? wildcard
+                    : insertNewChild(parent, WILDCARD_LABEL, parent.isSelected());
+                bucket.addSampledName(name);
+                return bucket;
             }
         }
-        // If we have reached the end of the children with no match then
-        // append a new child and scan it.
-        return insertNewChild(parent, name, numChildren, selected && parent.isSelected());
+        return insertNewChild(parent, name, selected && parent.isSelected());
+    }
+
+    private static int insertionPoint(SubjectElement parent, String name) {
+        // The children are kept sorted for the tree view, so binary search
+        // for the insertion point.
+        int low = 0, high = parent.getChildCount();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (name.compareTo(((SubjectElement) parent.getChildAt(mid)).getElementName()) > 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void markPathChanged(SubjectElement element) {
+        for (SubjectElement node = element; node != null; node = node.getParentElement())
+            changedNodes.add(node);
+        scheduleFlush();
     }
 
     private SubjectElement insertNewChild(final SubjectElement current,
-                                          final String element, final int index, final boolean isSelected) {
+                                          final String element, final boolean isSelected) {
         final SubjectElement newChild = new SubjectElement(current, element);
         newChild.setSelected(isSelected);
-        insertNodeInto(newChild, current, index);
+        // It is inserted into the tree at the next flush, on the event dispatch thread.
+        current.addChild(newChild);
+        insertedElements.add(newChild);
+        scheduleFlush();
         return newChild;
     }
 
     /**
-     * Resets all counters and error flags in the hierarchy.
+     * Remove an element, and any descendants, from the hierarchy.
+     *
+     * @param node The element to remove.
      */
+    @Override
     @SuppressWarnings("unchecked")
-	public void reset() {
-        final Enumeration nodes = ((DefaultMutableTreeNode) getRoot()).depthFirstEnumeration();
-        while (nodes.hasMoreElements()) {
-            final SubjectElement current = (SubjectElement) nodes.nextElement();
+    public synchronized void removeNodeFromParent(MutableTreeNode node) {
+        // The view must know about any pending inserts for the removal
+        // indices to make sense.
+        flush();
+        final Enumeration removed = ((DefaultMutableTreeNode) node).depthFirstEnumeration();
+        while (removed.hasMoreElements()) {
+            final Object[] path = ((SubjectElement) removed.nextElement()).getUserObjectPath();
+            // Skip the root element.
+            elementsBySubject.remove(Joiner.on('.').join(Arrays.asList(path).subList(1, path.length)));
+        }
+        super.removeNodeFromParent(node);
+    }
+
+    /**
+     * Remove a batch of records from the hierarchy.
+     * <p>
+     * This decrements the counters, the error flags are left alone.
+     *
+     * @param records The records to remove.
+     */
+    public void removeRecords(List<Record> records) {
+        final Set<SubjectElement> seen = Collections.newSetFromMap(new IdentityHashMap<SubjectElement, Boolean>());
+        for (Record record : records) {
+            final SubjectElement element = record.getSubject();
+            element.decNumRecordsHere();
+            if (seen.add(element))
+                markPathChanged(element);
+        }
+    }
+
+    /**
+     * Resets all counters and error flags in the hierarchy.
+     */
+    public void reset() {
+        final List<SubjectElement> elements;
+        synchronized (this) {
+            elements = ((SubjectElement) getRoot()).getSubtree();
+        }
+        for (SubjectElement current : elements) {
             current.reset();
-            nodeChanged(current);
+            changedNodes.add(current);
         }
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true))
+            flushTimer.start();
+    }
+
+    /**
+     * Set the maximum number of children that each element may have before
+     * new children are folded into a wildcard element.
+     * <p>
+     * This only affects elements created after it is called.
+     *
+     * @param max The maximum number of children, or 0 for no limit.
+     */
+    public void setMaxChildren(int max) {
+        checkArgument(max >= 0, "The maximum number of children cannot be negative.");
+        maxChildren = max;
+    }
+
+    /**
+     * Set the maximum number of times per second that the tree view is told
+     * about changes to the hierarchy.
+     *
+     * @param rate The update rate, in Hertz.
+     */
+    public void setUpdateRate(int rate) {
+        checkArgument(rate > 0, "The update rate must be positive.");
+        flushTimer.setInitialDelay(1000 / rate);
     }
 
     /**
@@ -182,11 +410,12 @@ public final class SubjectHierarchy extends DefaultTreeModel {
      * @param node The root of the subtree to set.
      * @param selected The new selection value.
      */
-    @SuppressWarnings("unchecked")
-	public void setAllSelected(SubjectElement node, boolean selected) {
-        final Enumeration descendants = node.depthFirstEnumeration();
-        while (descendants.hasMoreElements())
-            updateElement((SubjectElement) descendants.nextElement(), selected);
+    public void setAllSelected(SubjectElement node, boolean selected) {
+        synchronized (this) {
+            for (SubjectElement element : node.getSubtree())
+                updateElement(element, selected);
+            node.updateEffectiveSelection();
+        }
         matcherEditor.update(selected);
     }
 
@@ -206,23 +435,26 @@ public final class SubjectHierarchy extends DefaultTreeModel {
         if (selected) {
             final TreeNode[] nodes = node.getPath();
             // Skip the 0-index root node.
+            SubjectElement highest = node;
             for (int i = nodes.length - 1; i != 0; --i)
-                updateElement((SubjectElement) nodes[i], selected);
+                if (updateElement((SubjectElement) nodes[i], selected))
+                    highest = (SubjectElement) nodes[i];
+            // Selecting an ancestor may also select its other descendants.
+            synchronized (this) {
+                highest.updateEffectiveSelection();
+            }
             matcherEditor.update(selected);
         } else {
             setAllSelected(node, false);
         }
     }
 
-    private void updateElement(final SubjectElement current, boolean selected) {
-        if (current.isSelected() != selected) {
-            current.setSelected(selected);
-            SwingUtilities.invokeLater(new Runnable() {
-                public void run() {
-                    nodeChanged(current);
-                }
-            });
-        }
+    private boolean updateElement(final SubjectElement current, boolean selected) {
+        if (current.isSelected() == selected) return false;
+        current.setSelected(selected);
+        changedNodes.add(current);
+        scheduleFlush();
+        return true;
     }
 
     @EventSubscriber
@@ -230,4 +462,14 @@ public final class SubjectHierarchy extends DefaultTreeModel {
         addRecord(event.getSource());
     }
 
+    @EventSubscriber
+    public void onMessagesReceived(MessagesReceivedEvent event) {
+        addRecords(event.getSource());
+    }
+
+    @EventSubscriber
+    public void onRecordsEvicted(RecordsEvictedEvent event) {
+        removeRecords(event.getSource());
+    }
+
 }
@@ -20,6 +20,7 @@ import org.rvsnoop.actions.Copy;
 import org.rvsnoop.actions.Cut;
 import org.rvsnoop.actions.Delete;
 import org.rvsnoop.actions.EditRecordTypes;
+import org.rvsnoop.actions.ExportToFile;
 import org.rvsnoop.actions.Filter;
 import org.rvsnoop.actions.Paste;
 import org.rvsnoop.actions.PruneEmptySubjects;
@@ -30,6 +31,7 @@ import org.rvsnoop.actions.SearchBySelection;
 import org.rvsnoop.actions.SelectAllRecords;
 import org.rvsnoop.actions.ShowAllColumns;
 import org.rvsnoop.event.RecordLedgerSelectionListener;
+import org.rvsnoop.io.ExportFormat;
 import org.rvsnoop.ui.RecordLedgerTable;
 
 /**
@@ -84,12 +86,16 @@ public final class Actions {
         addAction(new Cut(application));
         addAction(new Delete(application));
         addAction(new EditRecordTypes(application));
-        addAction(new ExportToHtml(application));
-        addAction(new ExportToRecordBundle(application));
+        for (ExportFormat format : ExportFormat.getExportFormats()) {
+            addAction(new ExportToFile(application, format));
+        }
         addAction(new Filter(application));
         addAction(new FilterBySelection(application));
+        addAction(new ImportFromCSV(application));
+        addAction(new ImportFromJSONLines(application));
         addAction(new ImportFromRecordBundle(application));
         addAction(new NewRvConnection(application));
+        addAction(new OpenRecordBundle(application));
         addAction(new Paste(application));
         add(new PauseAllConnections());
         addAction(new PruneEmptySubjects(application));
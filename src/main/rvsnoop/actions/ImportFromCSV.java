@@ -0,0 +1,41 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package rvsnoop.actions;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.swing.Action;
+
+import org.rvsnoop.Application;
+import org.rvsnoop.NLSUtils;
+import org.rvsnoop.io.CSV;
+import org.rvsnoop.io.CSVRecordReader;
+
+/**
+ * Import the records in a CSV file to the ledger.
+ *
+ * @see CSV
+ */
+public final class ImportFromCSV extends ImportFromFile {
+
+    static { NLSUtils.internationalize(ImportFromCSV.class); }
+
+    private static final long serialVersionUID = 7768812304560392257L;
+
+    public static final String COMMAND = "importFromCSV";
+    static String NAME, TOOLTIP;
+
+    public ImportFromCSV(Application application) {
+        super(application, COMMAND, new CSV.FileFilter());
+        putValue(Action.NAME, NAME);
+        putValue(Action.SHORT_DESCRIPTION, TOOLTIP);
+    }
+
+    @Override
+    protected void importRecords(InputStream stream) throws IOException, InterruptedException {
+        importRecords(new CSVRecordReader(stream));
+    }
+
+}
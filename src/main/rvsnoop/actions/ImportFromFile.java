@@ -4,31 +4,111 @@
 package rvsnoop.actions;
 
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.Action;
 import javax.swing.JFileChooser;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.filechooser.FileFilter;
 
+import com.google.common.io.CountingInputStream;
+
+import org.bushe.swing.event.EventBus;
 import org.rvsnoop.Application;
 import org.rvsnoop.Logger;
 import org.rvsnoop.actions.RvSnoopAction;
+import org.rvsnoop.event.MessagesReceivedEvent;
+import org.rvsnoop.io.RecordReader;
+import rvsnoop.Record;
 
 import static com.google.common.io.Closeables.closeQuietly;
 
 /**
  * An abstract class that handles the basics of importing messages to the ledger.
+ * <p>
+ * Files are imported on a background thread while a progress monitor is
+ * shown, the import stops if the monitor is cancelled.
  */
 public abstract class ImportFromFile extends RvSnoopAction {
 
+    private final class Importer extends SwingWorker<Void, Void> implements ActionListener {
+        private final File file;
+        private final ProgressMonitor monitor;
+        private volatile CountingInputStream stream;
+        private final Timer timer = new Timer(PROGRESS_UPDATE_MILLIS, this);
+        Importer(File file) {
+            this.file = file;
+            this.monitor = new ProgressMonitor(application.getFrame(),
+                    "Importing " + file.getName(), null, 0, PROGRESS_MAXIMUM);
+            monitor.setMillisToDecideToPopup(PROGRESS_UPDATE_MILLIS);
+        }
+        public void actionPerformed(ActionEvent e) {
+            if (monitor.isCanceled()) {
+                cancel(true);
+                return;
+            }
+            final CountingInputStream counter = stream;
+            final long length = file.length();
+            if (counter != null && length > 0) {
+                monitor.setProgress((int) Math.min(PROGRESS_MAXIMUM - 1, counter.getCount() * PROGRESS_MAXIMUM / length));
+            }
+        }
+        @Override
+        protected Void doInBackground() throws IOException, InterruptedException {
+            try {
+                stream = new CountingInputStream(new FileInputStream(file));
+                logger.info("Importing records from %s.", file.getPath());
+                importRecords(new BufferedInputStream(stream, BUFFER_SIZE));
+                return null;
+            } finally {
+                closeQuietly(stream);
+            }
+        }
+        @Override
+        protected void done() {
+            timer.stop();
+            monitor.close();
+            try {
+                get();
+                logger.info("Imported records from %s.", file.getPath());
+            } catch (CancellationException e) {
+                logger.info("Cancelled the import from %s.", file.getPath());
+            } catch (InterruptedException e) {
+                // Cannot happen, the import has finished.
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.error(e.getCause(), "There was a problem importing the file %s.", file.getPath());
+            }
+        }
+        void start() {
+            timer.start();
+            execute();
+        }
+    }
+
+    /** The number of records added to the ledger at a time by {@link #importRecords(RecordReader)}. */
+    private static final int BATCH_SIZE = 1024;
+
     private static final int BUFFER_SIZE = 64 * 1024;
 
     private static final Logger logger = Logger.getLogger();
 
+    private static final int PROGRESS_MAXIMUM = 1000;
+
+    private static final int PROGRESS_UPDATE_MILLIS = 250;
+
     private final FileFilter filter;
 
     protected ImportFromFile(Application application, String id, FileFilter filter) {
@@ -48,28 +128,81 @@ public abstract class ImportFromFile extends RvSnoopAction {
 
     /**
      * Import the records contained in the file.
+     * <p>
+     * This returns at once, the file is read on a background thread. This
+     * must be called on the event dispatch thread.
      *
      * @param file The file containing the records.
      */
     public void importRecords(final File file) {
-        InputStream stream = null;
-        try {
-            stream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
-            logger.info("Importing records from %s.", file.getPath());
-            importRecords(stream);
-            logger.info("Imported records from %s.", file.getPath());
-        } catch (IOException e) {
-            logger.error(e, "There was a problem importing the file %s.", file.getPath());
-        } finally {
-            closeQuietly(stream);
-        }
+        new Importer(file).start();
     }
 
     /**
      * Import the records contained in the stream.
+     * <p>
+     * This is called on a background thread, which is interrupted if the user
+     * cancels the import.
      *
      * @param stream The stream containing the file contents.
+     * @throws IOException If the stream could not be read.
+     * @throws InterruptedException If the import was cancelled.
+     */
+    protected abstract void importRecords(InputStream stream) throws IOException, InterruptedException;
+
+    /**
+     * Import all of the records from a reader, a batch at a time.
+     *
+     * @param reader The reader to import from, it is not closed.
+     * @throws IOException If the records could not be read.
+     * @throws InterruptedException If the import was cancelled.
+     */
+    protected final void importRecords(RecordReader reader) throws IOException, InterruptedException {
+        Record[] batch = new Record[BATCH_SIZE];
+        int count = 0;
+        Record record;
+        while ((record = reader.read()) != null) {
+            batch[count++] = record;
+            if (count == BATCH_SIZE) {
+                if (Thread.interrupted()) { throw new InterruptedException(); }
+                publishRecords(batch);
+                batch = new Record[BATCH_SIZE];
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            final Record[] last = new Record[count];
+            System.arraycopy(batch, 0, last, 0, count);
+            publishRecords(last);
+        }
+    }
+
+    /**
+     * Add a batch of imported records to the ledger.
+     * <p>
+     * The records are compacted and resolved on the calling thread, as the
+     * ingester does for live records, so that the event dispatch thread only
+     * has to add them. This waits until the records have been added, so that
+     * a fast import cannot get too far ahead of the ledger.
+     *
+     * @param records The records to add.
+     * @throws InterruptedException If the import was cancelled.
      */
-    protected abstract void importRecords(InputStream stream) throws IOException;
+    protected final void publishRecords(Record[] records) throws InterruptedException {
+        for (Record record : records) {
+            record.compact();
+            record.resolve();
+        }
+        final MessagesReceivedEvent event = new MessagesReceivedEvent(Arrays.asList(records));
+        try {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    EventBus.publish(event);
+                }
+            });
+        } catch (InvocationTargetException e) {
+            logger.error(e.getCause(), "Could not add %d imported records to the ledger.", records.length);
+        }
+    }
 
 }
@@ -0,0 +1,41 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package rvsnoop.actions;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.swing.Action;
+
+import org.rvsnoop.Application;
+import org.rvsnoop.NLSUtils;
+import org.rvsnoop.io.JSONLines;
+import org.rvsnoop.io.JSONLinesRecordReader;
+
+/**
+ * Import the records in a JSON Lines file to the ledger.
+ *
+ * @see JSONLines
+ */
+public final class ImportFromJSONLines extends ImportFromFile {
+
+    static { NLSUtils.internationalize(ImportFromJSONLines.class); }
+
+    private static final long serialVersionUID = -3204417858126045718L;
+
+    public static final String COMMAND = "importFromJSONLines";
+    static String NAME, TOOLTIP;
+
+    public ImportFromJSONLines(Application application) {
+        super(application, COMMAND, new JSONLines.FileFilter());
+        putValue(Action.NAME, NAME);
+        putValue(Action.SHORT_DESCRIPTION, TOOLTIP);
+    }
+
+    @Override
+    protected void importRecords(InputStream stream) throws IOException, InterruptedException {
+        importRecords(new JSONLinesRecordReader(stream));
+    }
+
+}
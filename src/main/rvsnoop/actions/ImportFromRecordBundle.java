@@ -3,51 +3,52 @@
 
 package rvsnoop.actions;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.ZipInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import org.bushe.swing.event.EventBus;
 import org.rvsnoop.Application;
-import org.rvsnoop.event.MessageReceivedEvent;
+import org.rvsnoop.NamedDaemonThreadFactory;
+import org.rvsnoop.io.RecordBundle;
+import org.rvsnoop.io.RecordBundleReader;
 import rvsnoop.Record;
-import rvsnoop.RecordSelection;
 
 /**
  * Import the contents of a ‘snoop record bundle’ to the ledger.
  * <p>
- * A record bundle is just a zip file containing one entry per record, the
- * records use the RvSnoop byte stream format (i.e. the native message format
- * and a bit of additional metadata).
+ * Both the original zip based bundles and the block based version 2 bundles
+ * can be imported, the records are added to the ledger a block at a time.
+ * The blocks are decoded on a pool of threads, one per processor, which is
+ * shared by all imports.
+ *
+ * @see org.rvsnoop.io.RecordBundle
  */
 public final class ImportFromRecordBundle extends ImportFromFile {
 
     public static final String COMMAND = "importFromRecordBundle";
 
+    private static final int DECODER_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Shared by all imports. The reader cancels its own blocks when it stops,
+     * so the pool never needs to be shut down.
+     */
+    private static final ExecutorService decoders = Executors.newFixedThreadPool(
+            DECODER_THREADS, new NamedDaemonThreadFactory("importDecoder"));
+
     public ImportFromRecordBundle(Application application) {
-        super(application, COMMAND, new ExportToRecordBundle.FileFilter());
+        super(application, COMMAND, new RecordBundle.FileFilter());
     }
 
     @Override
-    protected void importRecords(InputStream stream) throws IOException {
-        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        final byte[] bytes = new byte[1024];
-        ZipInputStream zip = new ZipInputStream(stream);
-        while (zip.getNextEntry() != null) {
-            int count;
-            buffer.reset();
-            while ((count = zip.read(bytes, 0, 1024)) != -1)
-                buffer.write(bytes, 0, count);
-            final DataInput in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
-            final Record[] records = RecordSelection.read(in, null); // FIXME
-            for (int i = 0, imax = records.length; i < imax; ++i) {
-                EventBus.publish(new MessageReceivedEvent(records[i]));
+    protected void importRecords(InputStream stream) throws IOException, InterruptedException {
+        final RecordBundleReader reader = new RecordBundleReader(stream, application.getConnections());
+        reader.readAll(decoders, DECODER_THREADS, new RecordBundleReader.Handler() {
+            public void blockRead(Record[] records) throws InterruptedException {
+                publishRecords(records);
             }
-        }
+        });
     }
 
 }
@@ -0,0 +1,73 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+
+package rvsnoop.actions;
+
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.IOException;
+
+import javax.swing.Action;
+import javax.swing.JFileChooser;
+
+import org.rvsnoop.Application;
+import org.rvsnoop.BundleLedger;
+import org.rvsnoop.Logger;
+import org.rvsnoop.NLSUtils;
+import org.rvsnoop.actions.RvSnoopAction;
+import org.rvsnoop.io.MappedRecordBundle;
+import org.rvsnoop.io.RecordBundle;
+import org.rvsnoop.ui.RecordBundleDialog;
+
+/**
+ * Open a ‘snoop record bundle’ in a window of its own.
+ * <p>
+ * The bundle is memory mapped and read as records are shown, so bundles which
+ * are too large to import to the ledger can still be browsed. Only version 2
+ * bundles can be opened this way, older bundles must be imported.
+ *
+ * @see MappedRecordBundle
+ */
+public final class OpenRecordBundle extends RvSnoopAction {
+
+    static { NLSUtils.internationalize(OpenRecordBundle.class); }
+
+    private static final long serialVersionUID = -6201742384459125311L;
+
+    private static final Logger logger = Logger.getLogger();
+
+    public static final String COMMAND = "openRecordBundle";
+    static String ERROR_OPEN, NAME, TOOLTIP;
+
+    public OpenRecordBundle(Application application) {
+        super(NAME, application);
+        putValue(Action.ACTION_COMMAND_KEY, COMMAND);
+        putValue(Action.SHORT_DESCRIPTION, TOOLTIP);
+    }
+
+    public void actionPerformed(ActionEvent event) {
+        final JFileChooser chooser = new JFileChooser();
+        chooser.setFileFilter(new RecordBundle.FileFilter());
+        if (JFileChooser.APPROVE_OPTION != chooser.showOpenDialog(application.getFrame())) { return; }
+        openRecordBundle(chooser.getSelectedFile());
+    }
+
+    /**
+     * Open a bundle and show it.
+     *
+     * @param file The bundle file.
+     */
+    public void openRecordBundle(File file) {
+        final MappedRecordBundle bundle;
+        try {
+            bundle = new MappedRecordBundle(file, application.getConnections());
+        } catch (IOException e) {
+            logger.error(e, ERROR_OPEN, file.getPath());
+            return;
+        }
+        final BundleLedger ledger = new BundleLedger(application.getLedger(), bundle);
+        new RecordBundleDialog(application.getFrame(), ledger,
+                application.getConnections(), ledger.getRecordTypes()).setVisible(true);
+    }
+
+}
@@ -7,6 +7,7 @@ import java.awt.Color;
 import java.awt.Font;
 import java.lang.reflect.Constructor;
 import java.text.NumberFormat;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.BorderFactory;
 import javax.swing.Icon;
@@ -16,6 +17,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.JTree;
+import javax.swing.SwingWorker;
 import javax.swing.ToolTipManager;
 import javax.swing.border.Border;
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -37,6 +39,11 @@ import com.tibco.tibrv.TibrvMsg;
 
 /**
  * A panel that can show details about a Rendezvous message.
+ * <p>
+ * The message is decoded, and the first level of the tree built, on a
+ * background thread so that selecting a large message does not block the
+ * user interface. If another message is selected before the decode has
+ * finished then the old decode is cancelled and its result is discarded.
  *
  * @author <a href="mailto:ianp@ianp.org">Ian Phillips</a>
  * @version $Revision$, $Date$
@@ -44,6 +51,51 @@ import com.tibco.tibrv.TibrvMsg;
  */
 public final class RvDetailsPanel extends JPanel {
 
+    /**
+     * Decodes a message and builds the root of its tree.
+     */
+    private final class Decoder extends SwingWorker<TreeNode, Void> {
+        private String cmSenderName;
+        private long cmSequenceNumber;
+        private final Record record;
+        Decoder(Record record) {
+            super();
+            this.record = record;
+        }
+        @Override
+        protected TreeNode doInBackground() {
+            final TibrvMsg message = record.getMessage();
+            try {
+                cmSenderName = TibrvCmMsg.getSender(message);
+                if (cmSenderName != null && cmSenderName.length() > 0)
+                    cmSequenceNumber = TibrvCmMsg.getSequence(message);
+            } catch (TibrvException e) {
+                cmSenderName = null;
+            }
+            final TreeNode root = createRoot(message);
+            // Build the first level of the tree while still in the background.
+            root.getChildCount();
+            return root;
+        }
+        @Override
+        protected void done() {
+            if (decoder != this || isCancelled()) return;
+            decoder = null;
+            try {
+                final TreeNode root = get();
+                if (setCertifiedFields(cmSenderName, cmSequenceNumber)) {
+                    setIconAndTooltip(MESSAGE_CM, "Certified messaging co-ordination message");
+                }
+                model.setRoot(root);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.error(e.getCause(), "Could not decode message %s.", record.getSequenceNumber());
+                model.setRoot(emptyRoot);
+            }
+        }
+    }
+
     /** Standard message banner for details panel. */
     private static final Icon MESSAGE = new ImageIcon("/resources/banners/message.png");
 
@@ -87,6 +139,11 @@ public final class RvDetailsPanel extends JPanel {
 
     private final TreeNode emptyRoot = new DefaultMutableTreeNode("[Nothing Selected]", false);
 
+    private final TreeNode decodingRoot = new DefaultMutableTreeNode("[Decoding\u2026]", false);
+
+    /** The decode in progress, only used on the event dispatch thread. */
+    private Decoder decoder;
+
     private final Font headerFont = getFont().deriveFont(getFont().getSize() - 2.0f);
 
     private final JLabel iconLabel = new JLabel();
@@ -126,7 +183,15 @@ public final class RvDetailsPanel extends JPanel {
         field.setBorder(textBorder);
     }
 
+    private void cancelDecoder() {
+        if (decoder != null) {
+            decoder.cancel(true);
+            decoder = null;
+        }
+    }
+
     private void clearPanel() {
+        cancelDecoder();
         final JTextField[] fields = new JTextField[] {
             cmSender, cmSequence, wireSize, replySubject, sendSubject, stringEncoding
         };
@@ -168,55 +233,61 @@ public final class RvDetailsPanel extends JPanel {
         return header;
     }
 
+    private static TreeNode createRoot(TibrvMsg message) {
+        if (aeMsgTreeNode != null) {
+            logger.debug("Trying to create AE details tree from message.");
+            try {
+                // We need to do this reflectively in case the SDK isn't available.
+                return (TreeNode) aeMsgTreeNode.newInstance(message);
+            } catch (Exception e) {
+                // Fall through and show it as a plain Rendezvous message.
+            }
+        }
+        return new RvMessageTreeNode(message);
+    }
+
+    /**
+     * Show the details of a record.
+     * <p>
+     * The header fields which do not need the message to be decoded are set
+     * immediately, the rest of the panel is filled in once the message has
+     * been decoded in the background.
+     *
+     * @param record The record to show, may be <code>null</code>.
+     */
     public void setMessage(Record record) {
         if (record == null) {
             clearPanel();
             return;
         }
-        final TibrvMsg message = record.getMessage();
+        cancelDecoder();
         wireSize.setText(INT_FORMAT.format(record.getSizeInBytes()) + " bytes");
         replySubject.setText(record.getReplySubject());
         final String ss = record.getSendSubject();
         sendSubject.setText(ss);
         stringEncoding.setText(""); // TODO: Replace this with something useful.
-        if (setCertifiedFields(message)) {
-            setIconAndTooltip(MESSAGE_CM, "Certified messaging co-ordination message");
-        } else if (ss.startsWith("_RVFT.")) {
+        setCertifiedFields(null, 0);
+        if (ss.startsWith("_RVFT.")) {
             setIconAndTooltip(MESSAGE_FT, "Fault tolerance co-ordination message");
         } else if (ss.startsWith("_RV.")) {
             setIconAndTooltip(MESSAGE_ADVISORY, "Rendezvous advisory message");
         } else {
             setIconAndTooltip(MESSAGE, "");
         }
-        if (aeMsgTreeNode == null) {
-            model.setRoot(new RvMessageTreeNode(message));
-        } else {
-            logger.debug("Trying to create AE details tree from message.");
-            try {
-                // We need to do this reflectively in case the SDK isn't available.
-                model.setRoot((TreeNode) aeMsgTreeNode.newInstance(message));
-            } catch (Exception e) {
-                model.setRoot(new RvMessageTreeNode(message));
-            }
-        }
+        model.setRoot(decodingRoot);
+        decoder = new Decoder(record);
+        decoder.execute();
     }
 
-    private boolean setCertifiedFields(TibrvMsg message) {
-        try {
-            final String sender = TibrvCmMsg.getSender(message);
-            if (sender != null && sender.length() > 0) {
-                cmSender.setText(sender);
-                cmSequence.setText(Long.toString(TibrvCmMsg.getSequence(message)));
-                cmSender.getParent().validate();
-                return true;
-            } else {
-                cmSender.setText("");
-                cmSequence.setText("");
-            }
-        } catch (TibrvException e) {
-            cmSender.setText("");
-            cmSequence.setText("");
+    private boolean setCertifiedFields(String sender, long sequence) {
+        if (sender != null && sender.length() > 0) {
+            cmSender.setText(sender);
+            cmSequence.setText(Long.toString(sequence));
+            cmSender.getParent().validate();
+            return true;
         }
+        cmSender.setText("");
+        cmSequence.setText("");
         return false;
     }
 
@@ -10,6 +10,7 @@ package rvsnoop.ui;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.FlowLayout;
+import java.util.List;
 
 import javax.swing.BorderFactory;
 import javax.swing.JCheckBox;
@@ -21,6 +22,8 @@ import javax.swing.tree.TreeCellRenderer;
 
 import rvsnoop.SubjectElement;
 
+import com.google.common.base.Joiner;
+
 /**
  * A custom renderer for nodes in the subject explorer tree.
  * <p>
@@ -63,6 +66,10 @@ public class SubjectExplorerRenderer extends JPanel implements TreeCellRenderer
         checkbox.setSelected(element.isSelected());
         buffer.append("Records at this node: ").append(element.getNumRecordsHere());
         buffer.append("\nRecords under this node: ").append(element.getNumRecordsUnder());
+        final List<String> sampled = element.getSampledNames();
+        if (!sampled.isEmpty()) {
+            buffer.append("\nIncludes: ").append(Joiner.on(", ").join(sampled)).append(", ...");
+        }
         if (element.isErrorHere()) {
             buffer.append("\nThere is an error at this node.");
             label.setForeground(Color.RED);
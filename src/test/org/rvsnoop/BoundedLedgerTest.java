@@ -0,0 +1,89 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jdesktop.application.ApplicationContext;
+import rvsnoop.Record;
+import rvsnoop.RecordTypes;
+
+import com.tibco.tibrv.TibrvException;
+import com.tibco.tibrv.TibrvMsg;
+
+/**
+ * Unit tests for the {@link BoundedLedger} class.
+ */
+public class BoundedLedgerTest extends RecordLedgerTest {
+
+    private final ApplicationContext context = new ApplicationContext() {};
+
+    private final RecordTypes recordTypes = new RecordTypes(context);
+
+    private static List<Record> createRecords(int count, int size, long firstTimestamp) throws TibrvException {
+        final List<Record> records = new ArrayList<Record>(count);
+        for (int i = 0; i < count; ++i) {
+            final TibrvMsg message = new TibrvMsg(new byte[size]);
+            records.add(new Record(null, message, "TEST." + i, null, firstTimestamp + i * 1000L));
+        }
+        return records;
+    }
+
+    @Override
+    protected RecordLedger createRecordLedger() {
+        return new BoundedLedger(context, recordTypes, 1000, 0, 0);
+    }
+
+    public void testEvictByAge() throws Exception {
+        final BoundedLedger ledger = new BoundedLedger(context, recordTypes, 0, 0, 5000);
+        final List<Record> records = createRecords(20, 10, 0);
+        ledger.addAll(records.subList(0, 10));
+        assertEquals(6, ledger.size());
+        assertSame(records.get(4), ledger.get(0));
+        ledger.add(records.get(10));
+        assertEquals(6, ledger.size());
+        assertSame(records.get(5), ledger.get(0));
+    }
+
+    public void testEvictByCount() throws Exception {
+        final BoundedLedger ledger = new BoundedLedger(context, recordTypes, 5, 0, 0);
+        final List<Record> records = createRecords(3000, 10, 0);
+        for (Record record : records.subList(0, 3)) { ledger.add(record); }
+        assertEquals(3, ledger.size());
+        ledger.addAll(records.subList(3, 3000));
+        assertEquals(5, ledger.size());
+        assertEquals(2995, ledger.getNumEvicted());
+        for (int i = 0; i < 5; ++i) {
+            assertSame(records.get(2995 + i), ledger.get(i));
+        }
+    }
+
+    public void testEvictBySize() throws Exception {
+        final BoundedLedger ledger = new BoundedLedger(context, recordTypes, 0, 100, 0);
+        final List<Record> records = createRecords(25, 10, 0);
+        ledger.addAll(records);
+        assertEquals(10, ledger.size());
+        assertEquals(100, ledger.getSizeInBytes());
+        assertSame(records.get(15), ledger.get(0));
+        ledger.remove(records.get(20));
+        assertEquals(90, ledger.getSizeInBytes());
+        ledger.clear();
+        assertEquals(0, ledger.getSizeInBytes());
+    }
+
+    public void testFilteredViewTracksEvictions() throws Exception {
+        final BoundedLedger ledger = new BoundedLedger(context, recordTypes, 10, 0, 0);
+        final FilteredLedgerView view = FilteredLedgerView.newInstance(ledger, recordTypes, false);
+        final List<Record> records = createRecords(100, 10, 0);
+        for (int i = 0; i < 100; i += 7) {
+            ledger.addAll(records.subList(i, Math.min(i + 7, 100)));
+            assertEquals(ledger.size(), view.size());
+            for (int j = 0, jmax = view.size(); j < jmax; ++j) {
+                assertSame(ledger.get(j), view.get(j));
+            }
+        }
+        assertSame(records.get(90), view.get(0));
+    }
+
+}
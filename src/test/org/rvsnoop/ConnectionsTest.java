@@ -0,0 +1,67 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.jdesktop.application.ApplicationContext;
+
+import rvsnoop.RvConnection;
+
+/**
+ * Unit tests for the {@link Connections} class.
+ */
+public class ConnectionsTest extends TestCase {
+
+    private Connections connections;
+
+    @Override
+    protected void setUp() throws Exception {
+        connections = new Connections(new ApplicationContext() {});
+    }
+
+    public void testGetOrCreateReusesConnections() {
+        final RvConnection first = connections.getOrCreate("Test", "7500", ";239.1.1.1", "tcp:7500");
+        assertEquals("Test", first.getDescription());
+        assertSame(first, connections.get("7500", ";239.1.1.1", "tcp:7500"));
+        assertSame(first, connections.getOrCreate("Other", "7500", ";239.1.1.1", "tcp:7500"));
+        assertNotSame(first, connections.getOrCreate("Test", "7501", ";239.1.1.1", "tcp:7500"));
+        assertEquals(2, connections.size());
+    }
+
+    public void testConcurrentGetOrCreate() throws Exception {
+        final int numThreads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final RvConnection[][] found = new RvConnection[numThreads][100];
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < numThreads; ++t) {
+            final RvConnection[] results = found[t];
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < results.length; ++i) {
+                        results[i] = connections.getOrCreate("Test", String.valueOf(7500 + i % 10), "", "");
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) { thread.join(); }
+        assertEquals(10, connections.size());
+        for (int t = 1; t < numThreads; ++t) {
+            for (int i = 0; i < 100; ++i) { assertSame(found[0][i], found[t][i]); }
+        }
+    }
+
+}
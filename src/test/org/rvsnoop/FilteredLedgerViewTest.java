@@ -2,14 +2,39 @@
 // License:   Apache Software License (Version 2.0)
 package org.rvsnoop;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.jdesktop.application.ApplicationContext;
+import rvsnoop.Record;
 import rvsnoop.RecordTypes;
+import ca.odell.glazedlists.matchers.AbstractMatcherEditor;
+import ca.odell.glazedlists.matchers.Matcher;
+
+import com.tibco.tibrv.TibrvMsg;
 
 /**
  * Unit tests for the {@link FilteredLedgerView} class.
  */
 public class FilteredLedgerViewTest extends RecordLedgerTest {
 
+    private static final class CountingSubjectMatcher implements Matcher<Record>, RecordIndex.KeyedMatcher {
+        int count;
+        public RecordIndex.Key getIndexKey() {
+            return RecordIndex.Key.SUBJECT;
+        }
+        public boolean matches(Record record) {
+            ++count;
+            return record.getSendSubject().startsWith("FILTER.A");
+        }
+    }
+
+    private static final class FixedMatcherEditor extends AbstractMatcherEditor<Record> {
+        FixedMatcherEditor(Matcher<Record> matcher) {
+            currentMatcher = matcher;
+        }
+    }
+
     @Override
     protected RecordLedger createRecordLedger() {
         ApplicationContext context = new ApplicationContext() {};
@@ -17,4 +42,29 @@ public class FilteredLedgerViewTest extends RecordLedgerTest {
         return FilteredLedgerView.newInstance(new InMemoryLedger(context, recordTypes), recordTypes, false);
     }
 
+    public void testKeyedFiltersTestOneRecordPerSubject() throws Exception {
+        final ApplicationContext context = new ApplicationContext() {};
+        final RecordTypes recordTypes = new RecordTypes(context);
+        final InMemoryLedger ledger = new InMemoryLedger(context, recordTypes);
+        final List<Record> records = new ArrayList<Record>();
+        for (int i = 0; i < 100; ++i) {
+            final String subject = "FILTER." + (i % 2 == 0 ? "A" : "B") + "." + (i % 5);
+            records.add(new Record(null, new TibrvMsg(), subject, null, i));
+        }
+        ledger.addAll(records.subList(0, 90));
+        final FilteredLedgerView view = FilteredLedgerView.newInstance(ledger, recordTypes, false);
+        final CountingSubjectMatcher matcher = new CountingSubjectMatcher();
+        view.addFilter(new FixedMatcherEditor(matcher));
+        assertEquals(45, view.size());
+        // There are 10 distinct subjects.
+        assertEquals(10, matcher.count);
+        // Records added later are filtered without testing the subject again.
+        ledger.addAll(records.subList(90, 100));
+        assertEquals(50, view.size());
+        assertEquals(10, matcher.count);
+        for (int i = 0, imax = view.size(); i < imax; ++i) {
+            assertTrue(view.get(i).getSendSubject().startsWith("FILTER.A"));
+        }
+    }
+
 }
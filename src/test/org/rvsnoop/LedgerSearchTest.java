@@ -0,0 +1,139 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.jdesktop.application.ApplicationContext;
+import org.rvsnoop.matchers.DataAccessorFactory;
+import org.rvsnoop.matchers.PredicateFactory;
+import org.rvsnoop.matchers.RvSnoopMatcherEditor;
+import rvsnoop.Record;
+import rvsnoop.RecordTypes;
+
+import ca.odell.glazedlists.matchers.Matcher;
+
+import com.tibco.tibrv.TibrvMsg;
+
+/**
+ * Unit tests for the {@link LedgerSearch} class.
+ */
+public class LedgerSearchTest extends TestCase {
+
+    private static final int NUM_RECORDS = 20000;
+
+    private RecordLedger ledger;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        final ApplicationContext context = new ApplicationContext() {};
+        ledger = new InMemoryLedger(context, new RecordTypes(context));
+        final List<Record> records = new ArrayList<Record>(NUM_RECORDS);
+        for (int i = 0; i < NUM_RECORDS; ++i) {
+            final TibrvMsg message = new TibrvMsg();
+            message.add("id", "ID" + i);
+            records.add(new Record(null, message, "SEARCH." + (i % 7), null, i));
+        }
+        ledger.addAll(records);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Matcher<Record> fieldContentsContaining(String value) {
+        return new RvSnoopMatcherEditor(
+                DataAccessorFactory.getInstance().createFieldContentsAccessor(),
+                PredicateFactory.getInstance().createFromIdentifier("contains", value, false)).getMatcher();
+    }
+
+    public void testMatchesSerialSearch() throws Exception {
+        final Matcher<Record> matcher = fieldContentsContaining("7");
+        final AtomicInteger reported = new AtomicInteger();
+        final LedgerSearch search = ledger.findAllIndicesInParallel(matcher, new LedgerSearch.Listener() {
+            public void chunkSearched(LedgerSearch s, int[] hits) {
+                reported.addAndGet(hits.length);
+            }
+        });
+        final int[] indices = search.get();
+        assertTrue(Arrays.equals(ledger.findAllIndices(matcher), indices));
+        assertEquals(indices.length, reported.get());
+        assertEquals(NUM_RECORDS, search.getNumSearched());
+        assertTrue(search.isDone());
+        assertSame(ledger.get(indices[0]), search.getRecord(indices[0]));
+    }
+
+    public void testSearchesEachSurvivingRecordOnce() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final LedgerSearch search = ledger.findAllIndicesInParallel(new Matcher<Record>() {
+            public boolean matches(Record item) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            }
+        }, 100, null);
+        final long last = search.getLastSequenceNumber();
+        // Shift the unread chunks so that they would include the new records,
+        // and so that records would move into chunks which have been read.
+        final int[] front = new int[NUM_RECORDS / 2];
+        for (int i = 0; i < front.length; ++i) { front[i] = i; }
+        ledger.removeAll(Arrays.asList(ledger.getAll(front)));
+        final List<Record> survivors = Arrays.asList(ledger.getAll(front));
+        final List<Record> added = new ArrayList<Record>(NUM_RECORDS / 2);
+        for (int i = 0; i < NUM_RECORDS / 2; ++i) {
+            added.add(new Record(null, new TibrvMsg(), "SEARCH.NEW", null, i));
+        }
+        ledger.addAll(added);
+        release.countDown();
+        final int[] indices = search.get();
+        final Set<Record> found = new HashSet<Record>();
+        for (int i = 0; i < indices.length; ++i) {
+            if (i > 0) { assertTrue(indices[i] > indices[i - 1]); }
+            final Record record = search.getRecord(indices[i]);
+            assertTrue(record.getSequenceNumber() <= last);
+            assertTrue("Found twice: " + record, found.add(record));
+        }
+        for (Record record : survivors) {
+            assertTrue("Not found: " + record, found.contains(record));
+        }
+    }
+
+    public void testCancel() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final LedgerSearch search = ledger.findAllIndicesInParallel(new Matcher<Record>() {
+            public boolean matches(Record item) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            }
+        }, null);
+        started.await();
+        assertFalse(search.isDone());
+        assertTrue(search.cancel(false));
+        release.countDown();
+        assertTrue(search.isCancelled());
+        assertTrue(search.isDone());
+        try {
+            search.get();
+            fail("Expected a CancellationException.");
+        } catch (CancellationException e) {
+            // Expected.
+        }
+    }
+
+}
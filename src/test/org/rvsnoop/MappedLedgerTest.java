@@ -0,0 +1,149 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+import ca.odell.glazedlists.swing.EventTableModel;
+import org.jdesktop.application.ApplicationContext;
+import rvsnoop.Record;
+import rvsnoop.RecordTypes;
+
+import com.tibco.tibrv.TibrvMsg;
+
+/**
+ * Unit tests for the {@link MappedLedger} class.
+ */
+public class MappedLedgerTest extends RecordLedgerTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private final ApplicationContext context = new ApplicationContext() {};
+
+    private final RecordTypes recordTypes = new RecordTypes(context);
+
+    private final List<File> directories = new ArrayList<File>();
+
+    @Override
+    protected RecordLedger createRecordLedger() {
+        final File directory;
+        try {
+            directory = File.createTempFile("rvsnoop-test", "");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        assertTrue(directory.delete() && directory.mkdir());
+        directories.add(directory);
+        return new MappedLedger(context, recordTypes, directory, SEGMENT_SIZE);
+    }
+
+    @Override
+    public void tearDown() {
+        for (File directory : directories) {
+            final File[] files = directory.listFiles();
+            for (int i = 0; files != null && i < files.length; ++i) {
+                files[i].delete();
+            }
+            directory.delete();
+        }
+    }
+
+    public void testTableModelReadsRowsFromTheList() throws Exception {
+        final MappedLedger ledger = (MappedLedger) createRecordLedger();
+        final EventTableModel<Record> model = ledger.createTableModel(50);
+        final List<Record> records = new ArrayList<Record>();
+        for (int i = 0; i < 100; ++i) {
+            records.add(new Record(null, new TibrvMsg(), "TEST." + i, null, i));
+        }
+        ledger.addAll(records);
+        // The row count is only published on the event dispatch thread.
+        assertEquals(0, model.getRowCount());
+        Thread.sleep(100);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                // Nothing to do, just wait for the update.
+            }
+        });
+        assertEquals(100, model.getRowCount());
+        assertEquals(records.get(42), model.getElementAt(42));
+        ledger.clear();
+        assertNull(model.getElementAt(42));
+        model.dispose();
+    }
+
+    public void testFilteredTableModelDoesNotDecodeOrKeepRecords() throws Exception {
+        final MappedLedger ledger = (MappedLedger) createRecordLedger();
+        final MappedRecordList list = (MappedRecordList) ledger.getEventList();
+        final FilteredLedgerView view = FilteredLedgerView.newInstance(ledger, recordTypes, false);
+        view.setFilteringOnSubject(false);
+        view.setFilteringOnType(false);
+        final List<Record> records = new ArrayList<Record>();
+        for (int i = 0; i < 3000; ++i) {
+            records.add(new Record(null, new TibrvMsg(), "TEST." + i, null, i));
+        }
+        final List<WeakReference<Record>> references = new ArrayList<WeakReference<Record>>();
+        for (Record record : records) {
+            references.add(new WeakReference<Record>(record));
+        }
+        ledger.addAll(records);
+        records.clear();
+        // The filter tests each new record, the table model should not read any.
+        final int decodeCount = list.getDecodeCount();
+        final EventTableModel<Record> model = view.createTableModel(50);
+        Thread.sleep(100);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                // Nothing to do, just wait for the update.
+            }
+        });
+        assertEquals(3000, model.getRowCount());
+        assertEquals(decodeCount, list.getDecodeCount());
+        // Only the most recently added records are still cached by the list.
+        for (int i = 0; i < 10 && references.get(0).get() != null; ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        for (int i = 0; i < 1000; ++i) {
+            assertNull("Record " + i + " is still on the heap.", references.get(i).get());
+        }
+        assertEquals("TEST.42", model.getElementAt(42).getSendSubject());
+        assertEquals(decodeCount + 1, list.getDecodeCount());
+        model.dispose();
+    }
+
+    public void testDecodesRecordsAcrossSegments() throws Exception {
+        final MappedLedger ledger = (MappedLedger) createRecordLedger();
+        final List<Record> records = new ArrayList<Record>();
+        for (int i = 0; i < 5000; ++i) {
+            final byte[] bytes = new byte[1 + i % 100];
+            bytes[0] = (byte) i;
+            records.add(new Record(null, new TibrvMsg(bytes), "TEST." + i, "REPLY", i));
+        }
+        ledger.addAll(records);
+        assertEquals(5000, ledger.size());
+        assertTrue(ledger.getStoreSize() > SEGMENT_SIZE);
+        for (int i = 0; i < 5000; i += 7) {
+            final Record record = ledger.get(i);
+            assertEquals(records.get(i), record);
+            assertEquals("TEST." + i, record.getSendSubject());
+            assertEquals("REPLY", record.getReplySubject());
+            assertEquals(i, record.getTimestamp());
+            assertEquals((byte) i, record.getMessage().getAsBytes()[0]);
+            assertEquals(1 + i % 100, record.getMessage().getAsBytes().length);
+        }
+        assertTrue(ledger.contains(records.get(10)));
+        ledger.removeAll(records.subList(0, 4000));
+        assertEquals(1000, ledger.size());
+        assertEquals(records.get(4000), ledger.get(0));
+        ledger.clear();
+        assertEquals(0, ledger.size());
+        assertEquals(0, ledger.getStoreSize());
+    }
+
+}
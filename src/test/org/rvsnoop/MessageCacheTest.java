@@ -0,0 +1,80 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop;
+
+import junit.framework.TestCase;
+
+import rvsnoop.Record;
+
+import com.tibco.tibrv.TibrvMsg;
+
+/**
+ * Unit tests for the {@link MessageCache} class and compacted records.
+ */
+public class MessageCacheTest extends TestCase {
+
+    @Override
+    public void tearDown() {
+        MessageCache.getInstance().setLimits(MessageCache.DEFAULT_MAX_ENTRIES, MessageCache.DEFAULT_MAX_BYTES);
+        MessageCache.getInstance().clear();
+    }
+
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        final MessageCache cache = new MessageCache(2, 1000);
+        final TibrvMsg one = new TibrvMsg(), two = new TibrvMsg(), three = new TibrvMsg();
+        cache.put(1, one, 10);
+        cache.put(2, two, 10);
+        assertSame(one, cache.get(1));
+        cache.put(3, three, 10);
+        assertEquals(2, cache.size());
+        assertSame(one, cache.get(1));
+        assertNull(cache.get(2));
+        assertSame(three, cache.get(3));
+    }
+
+    public void testEvictsBySize() throws Exception {
+        final MessageCache cache = new MessageCache(100, 25);
+        cache.put(1, new TibrvMsg(), 10);
+        cache.put(2, new TibrvMsg(), 10);
+        cache.put(3, new TibrvMsg(), 10);
+        assertEquals(2, cache.size());
+        assertNull(cache.get(1));
+        cache.setLimits(100, 10);
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get(3));
+    }
+
+    public void testResetDoesNotReuseSequenceNumbers() throws Exception {
+        final TibrvMsg message = new TibrvMsg();
+        message.add("name", "first");
+        final Record first = new Record(null, message, "A.B", null, 0L);
+        first.compact();
+        MessageCache.getInstance().clear();
+        assertEquals(0, MessageCache.getInstance().size());
+        final Record second = new Record(null, new TibrvMsg(), "A.B", null, 0L);
+        second.compact();
+        assertFalse(first.equals(second));
+        assertEquals("first", first.getMessage().get("name"));
+        assertNull(second.getMessage().get("name"));
+    }
+
+    public void testCompactedRecordDecodesMessage() throws Exception {
+        final TibrvMsg message = new TibrvMsg();
+        message.add("name", "value");
+        message.add("number", Integer.valueOf(42));
+        final Record record = new Record(null, message, "A.B", "C.D", 0L);
+        final int size = record.getSizeInBytes();
+        record.compact();
+        assertSame(message, record.getMessage());
+        MessageCache.getInstance().clear();
+        final TibrvMsg decoded = record.getMessage();
+        assertNotSame(message, decoded);
+        assertEquals("value", decoded.get("name"));
+        assertEquals("A.B", decoded.getSendSubject());
+        assertEquals("A.B", record.getSendSubject());
+        assertEquals("C.D", record.getReplySubject());
+        assertEquals(size, record.getSizeInBytes());
+        assertSame(decoded, record.getMessage());
+    }
+
+}
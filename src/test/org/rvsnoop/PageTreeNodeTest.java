@@ -0,0 +1,57 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop;
+
+import java.util.List;
+
+import javax.swing.tree.TreeNode;
+
+import junit.framework.TestCase;
+
+import com.tibco.tibrv.TibrvMsg;
+
+/**
+ * Unit tests for the {@link PageTreeNode} class and the paged message trees.
+ */
+public class PageTreeNodeTest extends TestCase {
+
+    private static final PageTreeNode.ChildFactory FACTORY = new PageTreeNode.ChildFactory() {
+        public TreeNode createChild(TreeNode parent, int index) {
+            return new RvMessageTreeNode(new TibrvMsg());
+        }
+    };
+
+    public void testSmallListsAreNotPaged() {
+        final List<TreeNode> children = PageTreeNode.createChildren(null, FACTORY, PageTreeNode.PAGE_SIZE);
+        assertEquals(PageTreeNode.PAGE_SIZE, children.size());
+        assertTrue(children.get(0) instanceof RvMessageTreeNode);
+    }
+
+    public void testLargeListsArePaged() {
+        final List<TreeNode> pages = PageTreeNode.createChildren(null, FACTORY, 2500);
+        assertEquals(3, pages.size());
+        assertEquals(1000, pages.get(0).getChildCount());
+        assertEquals(500, pages.get(2).getChildCount());
+        assertTrue(pages.get(2).getChildAt(0) instanceof RvMessageTreeNode);
+    }
+
+    public void testPagesAreNested() {
+        final List<TreeNode> pages = PageTreeNode.createChildren(null, FACTORY, 2500000);
+        assertEquals(3, pages.size());
+        final TreeNode last = pages.get(2);
+        assertEquals(500, last.getChildCount());
+        assertEquals(1000, last.getChildAt(0).getChildCount());
+    }
+
+    public void testArrayFieldsArePaged() throws Exception {
+        final TibrvMsg message = new TibrvMsg();
+        message.add("values", new int[1500], TibrvMsg.I32ARRAY);
+        final RvMessageTreeNode root = new RvMessageTreeNode(message);
+        assertEquals(1, root.getChildCount());
+        final TreeNode array = root.getChildAt(0);
+        assertEquals(2, array.getChildCount());
+        assertEquals(500, array.getChildAt(1).getChildCount());
+        assertTrue(array.getChildAt(1).getChildAt(0).isLeaf());
+    }
+
+}
@@ -0,0 +1,74 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop;
+
+import com.tibco.tibrv.TibrvException;
+import com.tibco.tibrv.TibrvMsg;
+import rvsnoop.Record;
+
+/**
+ * A simple benchmark that measures how quickly records can be created on the
+ * Rendezvous dispatcher threads.
+ * <p>
+ * Two figures are reported: the rate at which records can be constructed
+ * (the work done on the dispatcher threads) and the rate when each record is
+ * also resolved (the total work, including that done by the ingest thread).
+ * <p>
+ * This is not run as part of the unit tests, run it by hand with:
+ * <pre>java org.rvsnoop.RecordBenchmark [threads] [records] [subjects]</pre>
+ */
+public final class RecordBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        final int numRecords = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        final int numSubjects = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        final TibrvMsg[] messages = createMessages(numSubjects);
+        // Warm up, this also populates the subject hierarchy.
+        run(messages, 1, numSubjects * 2, true);
+        for (int i = 0; i < 3; ++i) {
+            final double constructed = run(messages, numThreads, numRecords, false);
+            final double resolved = run(messages, numThreads, numRecords, true);
+            System.out.printf("%d threads: %,.0f records/s constructed, %,.0f records/s resolved%n",
+                    numThreads, constructed, resolved);
+        }
+    }
+
+    private static TibrvMsg[] createMessages(int numSubjects) throws TibrvException {
+        final TibrvMsg[] messages = new TibrvMsg[numSubjects];
+        for (int i = 0; i < numSubjects; ++i) {
+            final TibrvMsg message = new TibrvMsg();
+            message.add("id", Integer.toString(i));
+            message.add("price", 100.0 + i);
+            message.add("quantity", i % 1000);
+            message.setSendSubject("ORDERS.EU." + i);
+            messages[i] = message;
+        }
+        return messages;
+    }
+
+    private static double run(final TibrvMsg[] messages, int numThreads, final int numRecords,
+            final boolean resolve) throws InterruptedException {
+        final long start = System.nanoTime();
+        final Thread[] threads = new Thread[numThreads];
+        final int perThread = numRecords / numThreads;
+        for (int t = 0; t < numThreads; ++t) {
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < perThread; ++i) {
+                        final Record record = new Record(null, messages[i % messages.length]);
+                        if (resolve) { record.resolve(); }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return perThread * numThreads / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private RecordBenchmark() { throw new UnsupportedOperationException(); }
+
+}
@@ -0,0 +1,100 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import rvsnoop.Record;
+
+import com.tibco.tibrv.TibrvException;
+import com.tibco.tibrv.TibrvMsg;
+
+/**
+ * Unit tests for the overload policies in the {@link RecordIngester} class.
+ */
+public class RecordIngesterTest extends TestCase {
+
+    private static final int CAPACITY = 4;
+
+    private RecordIngester ingester;
+
+    private static Record createRecord(String subject) throws TibrvException {
+        final TibrvMsg message = new TibrvMsg();
+        message.setSendSubject(subject);
+        return new Record(null, message);
+    }
+
+    private static List<String> subjectsOf(List<Record> records) {
+        final List<String> subjects = new ArrayList<String>(records.size());
+        for (Record record : records) {
+            subjects.add(record.getSendSubject());
+        }
+        return subjects;
+    }
+
+    private List<String> offerAll(String... subjects) throws TibrvException {
+        final List<String> offered = new ArrayList<String>(subjects.length);
+        for (String subject : subjects) {
+            ingester.offer(createRecord(subject));
+            offered.add(subject);
+        }
+        return offered;
+    }
+
+    @Override
+    public void setUp() {
+        ingester = new RecordIngester(CAPACITY, 100, 0);
+    }
+
+    @Override
+    public void tearDown() {
+        ingester.stop();
+    }
+
+    public void testDropNewest() throws Exception {
+        ingester.setOverloadPolicy(OverloadPolicy.DROP_NEWEST, 1);
+        final List<String> offered = offerAll("A.1", "A.2", "A.3", "A.4", "A.5", "A.6");
+        assertEquals(2, ingester.getDroppedCount());
+        assertEquals(offered.subList(0, 4), subjectsOf(ingester.nextBatch()));
+    }
+
+    public void testDropOldest() throws Exception {
+        ingester.setOverloadPolicy(OverloadPolicy.DROP_OLDEST, 1);
+        final List<String> offered = offerAll("A.1", "A.2", "A.3", "A.4", "A.5", "A.6");
+        assertEquals(2, ingester.getDroppedCount());
+        assertEquals(offered.subList(2, 6), subjectsOf(ingester.nextBatch()));
+    }
+
+    public void testSample() throws Exception {
+        ingester.setOverloadPolicy(OverloadPolicy.SAMPLE, 2);
+        // Sampling starts at 3 records, then keeps every other one per subject.
+        offerAll("A", "B", "C", "A", "B", "A", "B");
+        assertEquals(3, ingester.getDroppedCount());
+        assertEquals(4, ingester.size());
+        final List<String> batch = subjectsOf(ingester.nextBatch());
+        assertEquals(4, batch.size());
+        assertEquals("A", batch.get(3));
+    }
+
+    public void testSpillToDisk() throws Exception {
+        ingester.setOverloadPolicy(OverloadPolicy.SPILL_TO_DISK, 1);
+        final List<String> offered = offerAll("A.1", "A.2", "A.3", "A.4", "A.5", "A.6", "A.7");
+        assertEquals(0, ingester.getDroppedCount());
+        assertEquals(3, ingester.getSpilledCount());
+        assertTrue(ingester.isOverloaded());
+        final List<Record> records = new ArrayList<Record>();
+        records.addAll(ingester.nextBatch());
+        records.addAll(ingester.nextBatch());
+        assertEquals(offered, subjectsOf(records));
+        assertFalse(ingester.isOverloaded());
+        // Spilled records keep their sequence numbers and missing subjects.
+        for (int i = 1; i < records.size(); ++i) {
+            assertEquals(records.get(0).getSequenceNumber() + i, records.get(i).getSequenceNumber());
+        }
+        assertNull(records.get(6).getMessage().getReplySubject());
+    }
+
+}
@@ -3,25 +3,27 @@
 package org.rvsnoop;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.zip.ZipInputStream;
 
 import junit.framework.TestCase;
 
 import org.jdesktop.application.ApplicationContext;
+import org.rvsnoop.io.RecordBundleReader;
+import org.rvsnoop.matchers.DataAccessorFactory;
+import org.rvsnoop.matchers.PredicateFactory;
+import org.rvsnoop.matchers.RvSnoopMatcherEditor;
 import rvsnoop.Record;
-import rvsnoop.RecordSelection;
+import rvsnoop.SubjectHierarchy;
 import ca.odell.glazedlists.matchers.Matcher;
 import ca.odell.glazedlists.swing.EventTableModel;
 
+import com.tibco.tibrv.TibrvException;
+import com.tibco.tibrv.TibrvMsg;
+
 import static com.google.common.io.Closeables.closeQuietly;
 
 /**
@@ -40,8 +42,6 @@ public abstract class RecordLedgerTest extends TestCase {
         }
     }
 
-    private static final int BUFFER_SIZE = 1024;
-
     // A file containing 10 SAP invoices.
     private static final String TEST_DATA = "data/sap-invoices.rbz";
 
@@ -58,31 +58,21 @@ public abstract class RecordLedgerTest extends TestCase {
      */
     protected abstract RecordLedger createRecordLedger();
 
-    // FIXME: Create a RecordBundle class and put all of the logic to handle
-    // record bundles into  it. Use the logic there instead of this copy/paste
-    // hack. Do the same for RecordStream (or refactor RecordSelection).
     @Override
     public void setUp() throws IOException {
         connections = new Connections(new ApplicationContext() {});
         ledger = createRecordLedger();
         final InputStream stream =
             new BufferedInputStream(ClassLoader.getSystemResource(TEST_DATA).openStream());
-        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        final byte[] bytes = new byte[BUFFER_SIZE];
-        final ZipInputStream zip = new ZipInputStream(stream);
+        final RecordBundleReader reader = new RecordBundleReader(stream, connections);
         final List<Record> recordList = new ArrayList<Record>();
-        while (zip.getNextEntry() != null) {
-            int count;
-            buffer.reset();
-            while ((count = zip.read(bytes, 0, BUFFER_SIZE)) != -1) {
-                buffer.write(bytes, 0, count);
-            }
-            final DataInput in = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
-            recordList.addAll(Arrays.asList(RecordSelection.read(in, connections)));
+        Record[] block;
+        while ((block = reader.readBlock()) != null) {
+            recordList.addAll(Arrays.asList(block));
         }
         records = recordList.toArray(new Record[recordList.size()]);
         assertEquals(10, records.length);
-        closeQuietly(stream);
+        closeQuietly(reader);
     }
 
     public void testAdd() {
@@ -132,6 +122,59 @@ public abstract class RecordLedgerTest extends TestCase {
         assertEquals(4, indices[0]);
     }
 
+    public void testFindAllIndicesBetween() throws Exception {
+        final List<Record> timed = createRecords(20);
+        ledger.addAll(timed);
+        ledger.remove(timed.get(5));
+        final int[] indices = ledger.findAllIndicesBetween(3000, 7000);
+        assertEquals(4, indices.length);
+        assertEquals(timed.get(3), ledger.get(indices[0]));
+        assertEquals(timed.get(7), ledger.get(indices[3]));
+    }
+
+    public void testFindAllIndicesBySubject() throws Exception {
+        final Matcher matcher = new RvSnoopMatcherEditor(
+                DataAccessorFactory.getInstance().createSendSubjectAccessor(),
+                PredicateFactory.getInstance().createStringStartsWithPredicate("INDEX.A", false)).getMatcher();
+        final List<Record> indexed = createRecords(30);
+        ledger.addAll(indexed.subList(0, 20));
+        assertEquals(scan(matcher), Arrays.toString(ledger.findAllIndices(matcher)));
+        // Changes after the index has been built must be tracked.
+        ledger.removeAll(Arrays.asList(indexed.get(0), indexed.get(4), indexed.get(11)));
+        ledger.addAll(indexed.subList(20, 30));
+        ledger.remove(indexed.get(25));
+        final int[] indices = ledger.findAllIndices(matcher);
+        assertEquals(scan(matcher), Arrays.toString(indices));
+        assertEquals(indices[0], ledger.findIndex(matcher, 0));
+        assertEquals(indices[0], ledger.findIndex(matcher, indices[indices.length - 1] + 1));
+        assertEquals(indices[1], ledger.findIndex(matcher, indices[0] + 1));
+        ledger.clear();
+        assertEquals(0, ledger.findAllIndices(matcher).length);
+    }
+
+    public void testFindAllIndicesByFoldedSubject() throws Exception {
+        final Matcher matcher = new RvSnoopMatcherEditor(
+                DataAccessorFactory.getInstance().createSendSubjectAccessor(),
+                PredicateFactory.getInstance().createFromIdentifier("equals", "FOLDED.7", false)).getMatcher();
+        final List<Record> folded = new ArrayList<Record>();
+        SubjectHierarchy.INSTANCE.setMaxChildren(2);
+        try {
+            for (int i = 0; i < 30; ++i) {
+                final Record record = new Record(null, new TibrvMsg(), "FOLDED." + (i % 10), null, i);
+                // Subjects are only added to the hierarchy when they are first needed.
+                record.getSubject();
+                folded.add(record);
+            }
+        } finally {
+            SubjectHierarchy.INSTANCE.setMaxChildren(SubjectHierarchy.DEFAULT_MAX_CHILDREN);
+        }
+        assertEquals(SubjectHierarchy.WILDCARD_LABEL, folded.get(7).getSubject().getElementName());
+        ledger.addAll(folded);
+        final int[] indices = ledger.findAllIndices(matcher);
+        assertEquals(3, indices.length);
+        assertEquals(scan(matcher), Arrays.toString(indices));
+    }
+
     public void testFindIndex() {
         ledger.addAll(Arrays.asList(records));
         Matcher matcher = new TestMatcher(4);
@@ -140,6 +183,24 @@ public abstract class RecordLedgerTest extends TestCase {
         assertEquals(4, ledger.findIndex(matcher, 6));
     }
 
+    private static List<Record> createRecords(int count) throws TibrvException {
+        final List<Record> list = new ArrayList<Record>(count);
+        for (int i = 0; i < count; ++i) {
+            final String subject = "INDEX." + (i % 3 == 0 ? "B" : "A") + "." + (i % 5);
+            list.add(new Record(null, new TibrvMsg(), subject, null, i * 1000L));
+        }
+        return list;
+    }
+
+    /** Find the matching indices by hand, as a string for easier comparison. */
+    private String scan(Matcher matcher) {
+        final List<Integer> indices = new ArrayList<Integer>();
+        for (int i = 0, imax = ledger.size(); i < imax; ++i) {
+            if (matcher.matches(ledger.get(i))) { indices.add(i); }
+        }
+        return indices.toString();
+    }
+
     public void testGet() {
         ledger.addAll(Arrays.asList(records));
         assertEquals(records[3], ledger.get(3));
@@ -153,6 +214,17 @@ public abstract class RecordLedgerTest extends TestCase {
         assertEquals(records[5], r[2]);
     }
 
+    public void testGetRange() {
+        ledger.addAll(Arrays.asList(records));
+        final Record[] chunk = new Record[4];
+        assertEquals(4, ledger.getRange(0, chunk));
+        assertEquals(records[3], chunk[3]);
+        assertEquals(2, ledger.getRange(8, chunk));
+        assertEquals(records[8], chunk[0]);
+        assertEquals(records[9], chunk[1]);
+        assertEquals(0, ledger.getRange(10, chunk));
+    }
+
     public void testRemove() {
         ledger.addAll(Arrays.asList(records));
         assertTrue(ledger.contains(records[8]));
@@ -0,0 +1,89 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jdesktop.application.ApplicationContext;
+import org.rvsnoop.matchers.DataAccessorFactory;
+import org.rvsnoop.matchers.PredicateFactory;
+import org.rvsnoop.matchers.RvSnoopMatcherEditor;
+import rvsnoop.Record;
+import rvsnoop.RecordTypes;
+
+import ca.odell.glazedlists.matchers.Matcher;
+import ca.odell.glazedlists.matchers.MatcherEditor;
+
+import com.tibco.tibrv.TibrvMsg;
+
+/**
+ * Unit tests for the {@link SearchResultsLedger} class.
+ */
+public class SearchResultsLedgerTest extends TestCase {
+
+    private static final int NUM_RECORDS = 20000;
+
+    private RecordLedger ledger;
+
+    private static Record createRecord(int i) throws Exception {
+        final TibrvMsg message = new TibrvMsg();
+        message.add("id", "ID" + i);
+        return new Record(null, message, "SEARCH." + (i % 7), null, i);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<MatcherEditor<Record>> fieldContentsContaining(String value) {
+        final MatcherEditor editor = new RvSnoopMatcherEditor(
+                DataAccessorFactory.getInstance().createFieldContentsAccessor(),
+                PredicateFactory.getInstance().createFromIdentifier("contains", value, false));
+        return Collections.<MatcherEditor<Record>>singletonList(editor);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        final ApplicationContext context = new ApplicationContext() {};
+        ledger = new InMemoryLedger(context, new RecordTypes(context));
+        final List<Record> records = new ArrayList<Record>(NUM_RECORDS);
+        for (int i = 0; i < NUM_RECORDS; ++i) { records.add(createRecord(i)); }
+        ledger.addAll(records);
+    }
+
+    public void testResultsAreInLedgerOrder() throws Exception {
+        final List<MatcherEditor<Record>> editors = fieldContentsContaining("77");
+        final SearchResultsLedger results = new SearchResultsLedger(ledger, editors);
+        results.start();
+        results.getSearch().get();
+        final int[] expected = ledger.findAllIndices(editors.get(0).getMatcher());
+        assertEquals(expected.length, results.size());
+        for (int i = 0; i < expected.length; ++i) {
+            assertSame(ledger.get(expected[i]), results.get(i));
+        }
+        results.dispose();
+    }
+
+    public void testNewRecordsAreAddedUnlessFrozen() throws Exception {
+        final List<MatcherEditor<Record>> editors = fieldContentsContaining("ID" + NUM_RECORDS);
+        final Matcher<Record> matcher = editors.get(0).getMatcher();
+        final SearchResultsLedger results = new SearchResultsLedger(ledger, editors);
+        results.start();
+        results.getSearch().get();
+        assertEquals(0, results.size());
+        final Record record = createRecord(NUM_RECORDS);
+        assertTrue(matcher.matches(record));
+        ledger.add(record);
+        assertEquals(1, results.size());
+        results.setFrozen(true);
+        ledger.add(createRecord(NUM_RECORDS * 10));
+        assertEquals(1, results.size());
+        results.setFrozen(false);
+        assertEquals(2, results.size());
+        results.dispose();
+        ledger.add(createRecord(NUM_RECORDS * 100));
+        assertEquals(2, results.size());
+    }
+
+}
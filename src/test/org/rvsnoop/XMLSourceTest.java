@@ -0,0 +1,122 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.tibco.tibrv.TibrvMsg;
+import com.tibco.tibrv.TibrvMsgField;
+import com.tibco.tibrv.TibrvXml;
+
+/**
+ * Unit tests for the {@link XMLSource} and {@link XMLTreeNode} classes.
+ */
+public class XMLSourceTest extends TestCase {
+
+    private static final String XML = "<?xml version=\"1.0\"?>\n"
+        + "<!-- header -->\n"
+        + "<ns:root xmlns:ns=\"urn:x\" a=\"1\">\n"
+        + "  <ns:b x=\"y&amp;z\">text</ns:b>\n"
+        + "  <c/>\n"
+        + "  <d><e><f>deep</f></e><![CDATA[<raw>]]></d>\n"
+        + "</ns:root>";
+
+    private static XMLSource.Item find(List<XMLSource.Item> items, String text) {
+        for (XMLSource.Item item : items) {
+            if (item.text.equals(text)) { return item; }
+        }
+        fail("No item: " + text);
+        return null;
+    }
+
+    public void testDocumentChildren() throws Exception {
+        final XMLSource source = new XMLSource(XML);
+        final List<XMLSource.Item> items = source.getChildren(source.getDocument());
+        assertEquals(2, items.size());
+        assertEquals("<!--  header ", items.get(0).text);
+        assertEquals(XMLSource.Kind.ELEMENT, items.get(1).kind);
+        assertEquals("ns:root", items.get(1).text);
+        assertTrue(items.get(1).hasChildren);
+    }
+
+    public void testElementsAreExpandedFromTheirRange() throws Exception {
+        final XMLSource source = new XMLSource(XML);
+        final XMLSource.Item root = source.getChildren(source.getDocument()).get(1);
+        final List<XMLSource.Item> items = source.getChildren(root);
+        assertEquals(5, items.size());
+        assertEquals(XMLSource.Kind.ATTRIBUTE, items.get(0).kind);
+        assertEquals("xmlns:ns=\"urn:x\"", items.get(0).text);
+        assertEquals("a=\"1\"", items.get(1).text);
+
+        final XMLSource.Item b = find(items, "ns:b");
+        assertEquals("<ns:b x=\"y&amp;z\">text</ns:b>", XML.substring(b.start, b.end));
+        final List<XMLSource.Item> bItems = source.getChildren(b);
+        assertEquals("x=\"y&z\"", bItems.get(0).text);
+        assertEquals("text", bItems.get(1).text);
+
+        final XMLSource.Item c = find(items, "c");
+        assertEquals("<c/>", XML.substring(c.start, c.end));
+        assertFalse(c.hasChildren);
+        assertTrue(source.getChildren(c).isEmpty());
+
+        final XMLSource.Item d = find(items, "d");
+        final List<XMLSource.Item> dItems = source.getChildren(d);
+        assertEquals(2, dItems.size());
+        assertEquals("<raw>", dItems.get(1).text);
+        final XMLSource.Item e = dItems.get(0);
+        final XMLSource.Item f = source.getChildren(e).get(0);
+        assertEquals("deep", source.getChildren(f).get(0).text);
+    }
+
+    public void testExpandedChildrenAreCached() throws Exception {
+        final XMLSource source = new XMLSource(XML);
+        final XMLSource.Item root = source.getChildren(source.getDocument()).get(1);
+        assertSame(source.getChildren(root), source.getChildren(root));
+    }
+
+    public void testRangesSkipCommentsAndCData() throws Exception {
+        final String xml = "<?xml version=\"1.0\"?>\n"
+            + "<!DOCTYPE root [ <!ELEMENT root ANY> ]>\n"
+            + "<root>\n"
+            + "  <!-- a <comment> -->  <a>t<![CDATA[<q>]]><b/></a>\n"
+            + " <!--z--><c/><![CDATA[ <w> ]]>\t<?pi <x>?>\n"
+            + "  <d x=\"a>b\"  ><!-- <e> --><e><![CDATA[</d>]]><!--</e>--></e>\n"
+            + "    <f/></d>\n"
+            + "</root>";
+        final XMLSource source = new XMLSource(xml);
+        final XMLSource.Item root = find(source.getChildren(source.getDocument()), "root");
+        assertEquals(xml.substring(xml.indexOf("<root>")), xml.substring(root.start, root.end));
+        final List<XMLSource.Item> items = source.getChildren(root);
+
+        final XMLSource.Item a = find(items, "a");
+        assertEquals("<a>t<![CDATA[<q>]]><b/></a>", xml.substring(a.start, a.end));
+        final XMLSource.Item b = find(source.getChildren(a), "b");
+        assertEquals("<b/>", xml.substring(b.start, b.end));
+
+        final XMLSource.Item c = find(items, "c");
+        assertEquals("<c/>", xml.substring(c.start, c.end));
+
+        final XMLSource.Item d = find(items, "d");
+        assertEquals("<d x=\"a>b\"  ><!-- <e> --><e><![CDATA[</d>]]><!--</e>--></e>\n    <f/></d>",
+                xml.substring(d.start, d.end));
+        final List<XMLSource.Item> dItems = source.getChildren(d);
+        final XMLSource.Item e = find(dItems, "e");
+        assertEquals("<e><![CDATA[</d>]]><!--</e>--></e>", xml.substring(e.start, e.end));
+        assertEquals("</d>", source.getChildren(e).get(0).text);
+        final XMLSource.Item f = find(dItems, "f");
+        assertEquals("<f/>", xml.substring(f.start, f.end));
+    }
+
+    public void testFieldTree() throws Exception {
+        final TibrvXml xml = new TibrvXml(XML.getBytes("UTF-8"));
+        final RvFieldTreeNode node = new RvFieldTreeNode(null, new TibrvMsgField("xml", xml, TibrvMsg.XML, 0));
+        assertEquals(2, node.getChildCount());
+        final XMLTreeNode root = (XMLTreeNode) node.getChildAt(1);
+        assertEquals("ns:root", root.getText());
+        assertEquals(5, root.getChildCount());
+        assertSame(XMLSource.forField(xml), XMLSource.forField(xml));
+    }
+
+}
@@ -0,0 +1,67 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the {@link DoubleBufferedOutputStream} class.
+ */
+public class DoubleBufferedOutputStreamTest extends TestCase {
+
+    public void testDataIsWrittenInOrder() throws Exception {
+        final byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final OutputStream stream = new DoubleBufferedOutputStream(bytes, 1000, "test");
+        final Random sizes = new Random(7);
+        int position = 0;
+        while (position < data.length) {
+            if (sizes.nextInt(4) == 0) {
+                stream.write(data[position++]);
+            } else {
+                final int length = Math.min(data.length - position, sizes.nextInt(2500));
+                stream.write(data, position, length);
+                position += length;
+            }
+            if (sizes.nextInt(50) == 0) { stream.flush(); }
+        }
+        stream.close();
+        assertTrue(Arrays.equals(data, bytes.toByteArray()));
+    }
+
+    public void testFailuresAreReported() throws Exception {
+        final OutputStream stream = new DoubleBufferedOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Disk full.");
+            }
+        }, 16, "test");
+        try {
+            for (int i = 0; i < 1000; ++i) { stream.write(new byte[10]); }
+            stream.close();
+            fail("The write failure was not reported.");
+        } catch (IOException expected) {
+            assertEquals("Disk full.", expected.getMessage());
+        }
+    }
+
+    public void testWriteAfterCloseFails() throws Exception {
+        final OutputStream stream = new DoubleBufferedOutputStream(new ByteArrayOutputStream(), 16, "test");
+        stream.close();
+        stream.close();
+        try {
+            stream.write(1);
+            fail("Wrote to a closed stream.");
+        } catch (IOException expected) {
+            // Expected.
+        }
+    }
+
+}
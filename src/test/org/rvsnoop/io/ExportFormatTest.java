@@ -0,0 +1,124 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jdesktop.application.ApplicationContext;
+import org.rvsnoop.BoundedLedger;
+import org.rvsnoop.RecordLedger;
+import rvsnoop.Record;
+import rvsnoop.RecordTypes;
+
+/**
+ * Unit tests for the {@link ExportFormat} and {@link RecordExporter} classes.
+ */
+public class ExportFormatTest extends TestCase {
+
+    private static Record[] createRecords(int count) throws Exception {
+        return new TestRecords().create(count);
+    }
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("ExportFormatTest", ".rbz");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private void assertRoundTrip(String formatName) throws Exception {
+        final Record[] expected = createRecords(2500);
+        final RecordExporter exporter = new RecordExporter(
+                ExportFormat.getExportFormat(formatName), file, expected);
+        exporter.run();
+        assertEquals(expected.length, exporter.getNumExported());
+        assertEquals(file.length(), exporter.getBytesWritten());
+
+        final RecordBundleReader reader = new RecordBundleReader(new FileInputStream(file), null);
+        final List<Record> actual = new ArrayList<Record>();
+        Record[] block;
+        while ((block = reader.readBlock()) != null) { actual.addAll(Arrays.asList(block)); }
+        reader.close();
+        assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals(expected[i].getSendSubject(), actual.get(i).getSendSubject());
+            assertEquals(expected[i].getTimestamp(), actual.get(i).getTimestamp());
+            assertTrue(Arrays.equals(expected[i].getMessageBytes(), actual.get(i).getMessageBytes()));
+        }
+    }
+
+    public void testFormatsAreDiscovered() throws Exception {
+        final List<String> names = new ArrayList<String>();
+        for (ExportFormat format : ExportFormat.getExportFormats()) {
+            names.add(format.getDisplayName());
+        }
+        assertTrue(names.contains("HTML Report"));
+        assertTrue(names.contains("Record Bundle"));
+        assertTrue(names.contains("Record Bundle (Version 1)"));
+        assertNull(ExportFormat.getExportFormat("No Such Format"));
+        // Each call returns a new instance, as formats hold export state.
+        assertNotSame(ExportFormat.getExportFormat("Record Bundle"),
+                ExportFormat.getExportFormat("Record Bundle"));
+    }
+
+    public void testExportToRecordBundle() throws Exception {
+        assertRoundTrip("Record Bundle");
+    }
+
+    public void testExportToVersion1RecordBundle() throws Exception {
+        assertRoundTrip("Record Bundle (Version 1)");
+    }
+
+    public void testExportWhileRecordsAreEvicted() throws Exception {
+        final ApplicationContext context = new ApplicationContext() {};
+        final RecordLedger ledger = new BoundedLedger(context, new RecordTypes(context), 5000, 0, 0);
+        final Record[] original = createRecords(5000);
+        ledger.addAll(Arrays.asList(original));
+        final List<Record> later = Arrays.asList(createRecords(2000));
+        final List<Record> exported = new ArrayList<Record>();
+        final ExportFormat format = new ExportFormat() {
+            @Override
+            public void exportRecord(Record record, int index) {
+                exported.add(record);
+            }
+            @Override
+            public void exportRecords(Record[] records, int count, int firstIndex) throws IOException {
+                super.exportRecords(records, count, firstIndex);
+                // Evict 2000 records, including some that have not been exported yet.
+                if (firstIndex == 0) { ledger.addAll(later); }
+            }
+            @Override
+            public String getDisplayName() {
+                return "Test";
+            }
+        };
+        final RecordExporter exporter = new RecordExporter(format, file, ledger);
+        exporter.run();
+        final int firstChunk = exported.size() - 3000;
+        assertTrue(firstChunk > 0 && firstChunk < 2000);
+        assertEquals(Arrays.asList(original).subList(0, firstChunk), exported.subList(0, firstChunk));
+        assertEquals(Arrays.asList(original).subList(2000, 5000), exported.subList(firstChunk, exported.size()));
+        assertEquals(exported.size(), exporter.getNumExported());
+    }
+
+    public void testCancelledExportDeletesFile() throws Exception {
+        final RecordExporter exporter = new RecordExporter(
+                ExportFormat.getExportFormat("Record Bundle"), file, createRecords(10));
+        exporter.cancel();
+        exporter.run();
+        assertFalse(file.exists());
+    }
+
+}
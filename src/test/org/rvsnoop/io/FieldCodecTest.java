@@ -0,0 +1,165 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.tibco.tibrv.TibrvMsg;
+import com.tibco.tibrv.TibrvMsgField;
+import com.tibco.tibrv.TibrvXml;
+
+import rvsnoop.Record;
+import rvsnoop.SubjectHierarchy;
+
+/**
+ * Unit tests for the {@link FieldCodec} class, through the JSON Lines and CSV
+ * formats which use it.
+ */
+public class FieldCodecTest extends TestCase {
+
+    private static void assertMessagesEqual(String path, TibrvMsg expected, TibrvMsg actual) throws Exception {
+        assertEquals(path, expected.getNumFields(), actual.getNumFields());
+        for (int i = 0, imax = expected.getNumFields(); i < imax; ++i) {
+            final TibrvMsgField e = expected.getField(i), a = actual.getField(i);
+            final String fieldPath = path + "." + e.name;
+            assertEquals(fieldPath, e.name, a.name);
+            assertEquals(fieldPath, e.id, a.id);
+            assertEquals(fieldPath, e.type, a.type);
+            if (e.data instanceof TibrvMsg) {
+                assertMessagesEqual(fieldPath, (TibrvMsg) e.data, (TibrvMsg) a.data);
+            } else if (e.data instanceof TibrvMsg[]) {
+                final TibrvMsg[] ea = (TibrvMsg[]) e.data, aa = (TibrvMsg[]) a.data;
+                assertEquals(fieldPath, ea.length, aa.length);
+                for (int j = 0; j < ea.length; ++j) { assertMessagesEqual(fieldPath + j, ea[j], aa[j]); }
+            } else if (e.data instanceof TibrvXml) {
+                assertTrue(fieldPath, Arrays.equals(((TibrvXml) e.data).getBytes(), ((TibrvXml) a.data).getBytes()));
+            } else {
+                assertTrue(fieldPath, Arrays.deepEquals(new Object[] { e.data }, new Object[] { a.data }));
+            }
+        }
+    }
+
+    private static TibrvMsg createMessage(int i) throws Exception {
+        final TibrvMsg message = new TibrvMsg();
+        message.add("text", "Line \"" + i + "\",\r\n\ttab é\u0001", TibrvMsg.STRING);
+        message.add("flag", Boolean.valueOf(i % 2 == 0), TibrvMsg.BOOL);
+        message.add("i8", Byte.valueOf((byte) -i), TibrvMsg.I8);
+        message.add("u16", Integer.valueOf(65535), TibrvMsg.U16);
+        message.add("i64", Long.valueOf(Long.MIN_VALUE + i), TibrvMsg.I64);
+        message.add("f32", Float.valueOf(0.1f * i), TibrvMsg.F32);
+        message.add("nan", Double.valueOf(Double.NaN), TibrvMsg.F64);
+        message.add("opaque", new byte[] { 0, (byte) 0xFF, (byte) i }, TibrvMsg.OPAQUE);
+        message.add("xml", new TibrvXml(new byte[] { 1, 2, 3 }), TibrvMsg.XML);
+        message.add(new TibrvMsgField("withId", Integer.valueOf(i), TibrvMsg.I32, 7));
+        message.add("ints", new int[] { 1, -2, 3 }, TibrvMsg.I32ARRAY);
+        message.add("doubles", new double[] { 1.5, Double.POSITIVE_INFINITY }, TibrvMsg.F64ARRAY);
+        message.add("strings", new String[] { "a", "b,\"c\"" }, TibrvMsg.STRINGARRAY);
+        final TibrvMsg element = new TibrvMsg();
+        element.add("e", "element", TibrvMsg.STRING);
+        message.add("messages", new TibrvMsg[] { element, new TibrvMsg() }, TibrvMsg.MSGARRAY);
+        message.add("empty", new TibrvMsg(), TibrvMsg.MSG);
+        // Nested messages which all end on the same field.
+        final TibrvMsg inner = new TibrvMsg();
+        inner.add("leaf", "deep", TibrvMsg.STRING);
+        final TibrvMsg middle = new TibrvMsg();
+        middle.add("before", "x", TibrvMsg.STRING);
+        middle.add("inner", inner, TibrvMsg.MSG);
+        message.add("middle", middle, TibrvMsg.MSG);
+        return message;
+    }
+
+    private static Record[] createRecords(int count) throws Exception {
+        return new TestRecords() {
+            @Override
+            TibrvMsg getMessage(int i) throws Exception {
+                return i == 3 ? new TibrvMsg() : createMessage(i);
+            }
+            @Override
+            String getReplySubject(int i) {
+                return i % 2 == 0 ? null : "REPLY";
+            }
+            @Override
+            String getSendSubject(int i) {
+                // A real subject which looks like the placeholder must be kept.
+                if (i == 7) { return SubjectHierarchy.NO_SUBJECT_LABEL; }
+                return i == 5 ? null : "A.B." + i;
+            }
+        }.create(count);
+    }
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("FieldCodecTest", ".txt");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private void assertRoundTrip(String formatName, boolean csv) throws Exception {
+        final Record[] expected = createRecords(10);
+        new RecordExporter(ExportFormat.getExportFormat(formatName), file, expected).run();
+        final FileInputStream stream = new FileInputStream(file);
+        final RecordReader reader = csv ? new CSVRecordReader(stream) : new JSONLinesRecordReader(stream);
+        final List<Record> actual = new ArrayList<Record>();
+        Record record;
+        while ((record = reader.read()) != null) { actual.add(record); }
+        reader.close();
+        assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; ++i) {
+            final Record e = expected[i], a = actual.get(i);
+            assertEquals(e.getSendSubject(), a.getSendSubject());
+            // Records without a subject must not get the placeholder as their subject.
+            assertEquals(e.getMessage().getSendSubject(), a.getMessage().getSendSubject());
+            assertEquals(e.getReplySubject(), a.getReplySubject());
+            assertEquals(e.getTimestamp(), a.getTimestamp());
+            assertMessagesEqual("record" + i, e.getMessage(), a.getMessage());
+        }
+    }
+
+    public void testCSVRoundTrip() throws Exception {
+        assertRoundTrip("CSV", true);
+    }
+
+    public void testJSONLinesRoundTrip() throws Exception {
+        assertRoundTrip("JSON Lines", false);
+    }
+
+    public void testNestedFieldsAreWrittenAsNestedArrays() throws Exception {
+        final TibrvMsg inner = new TibrvMsg();
+        inner.add("c", "3", TibrvMsg.STRING);
+        final TibrvMsg outer = new TibrvMsg();
+        outer.add("b", inner, TibrvMsg.MSG);
+        final TibrvMsg message = new TibrvMsg();
+        message.add("a", outer, TibrvMsg.MSG);
+        message.add("d", Integer.valueOf(4), TibrvMsg.I32);
+        final StringWriter out = new StringWriter();
+        FieldCodec.writeJSONFields(out, message);
+        assertEquals("[{\"name\":\"a\",\"type\":\"msg\",\"value\":"
+                + "[{\"name\":\"b\",\"type\":\"msg\",\"value\":"
+                + "[{\"name\":\"c\",\"type\":\"string\",\"value\":\"3\"}]}]},"
+                + "{\"name\":\"d\",\"type\":\"i32\",\"value\":4}]", out.toString());
+    }
+
+    public void testBadInputIsReported() throws Exception {
+        final byte[] bytes = "{\"timestamp\":1,\"fields\":[{\"name\":\"x\",\"type\":\"nope\",\"value\":1}]}\n".getBytes("UTF-8");
+        try {
+            new JSONLinesRecordReader(new ByteArrayInputStream(bytes)).read();
+            fail("Expected an IOException.");
+        } catch (java.io.IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().indexOf("line 1") > 0);
+        }
+    }
+
+}
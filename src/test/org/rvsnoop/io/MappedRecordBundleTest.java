@@ -0,0 +1,137 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import rvsnoop.Record;
+import rvsnoop.RvConnection;
+
+/**
+ * Unit tests for the {@link MappedRecordBundle} class.
+ */
+public class MappedRecordBundleTest extends TestCase {
+
+    private static final int COUNT = 500;
+
+    private File file;
+
+    private Record[] records;
+
+    @Override
+    protected void setUp() throws Exception {
+        records = new TestRecords() {
+            @Override
+            RvConnection getConnection(int i) {
+                return i % 2 == 0 ? connection : null;
+            }
+            @Override
+            String getSendSubject(int i) {
+                return "A.B." + (i % 7);
+            }
+            @Override
+            long getTimestamp(int i) {
+                // Two records per millisecond, so some times span blocks.
+                return 1000L + i / 2;
+            }
+        }.create(COUNT);
+        file = File.createTempFile("mapped", ".srb");
+        final RecordBundleWriter writer = new RecordBundleWriter(new FileOutputStream(file), 1024);
+        for (Record record : records) { writer.write(record); }
+        writer.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testGet() throws Exception {
+        final MappedRecordBundle bundle = new MappedRecordBundle(file, null);
+        assertEquals(COUNT, bundle.size());
+        // Read backwards so that blocks are evicted from the cache and read again.
+        for (int i = COUNT - 1; i >= 0; --i) {
+            final Record expected = records[i], actual = bundle.get(i);
+            assertEquals(expected.getSendSubject(), actual.getSendSubject());
+            assertEquals(expected.getTimestamp(), actual.getTimestamp());
+            assertTrue(Arrays.equals(expected.getMessageBytes(), actual.getMessageBytes()));
+            assertEquals(expected.getConnection() == null, actual.getConnection() == null);
+        }
+        bundle.close();
+    }
+
+    public void testConcurrentGetAndGetAfterClose() throws Exception {
+        final MappedRecordBundle bundle = new MappedRecordBundle(file, null);
+        final Throwable[] failure = new Throwable[1];
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            final int first = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = first; i < COUNT; i += threads.length) {
+                            assertEquals(records[i].getTimestamp(), bundle.get(i).getTimestamp());
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failure) { failure[0] = e; }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) { thread.join(); }
+        synchronized (failure) { if (failure[0] != null) { throw new AssertionError(failure[0]); } }
+        bundle.close();
+        // Closing only drops the cache, the records can still be decoded.
+        assertEquals(records[COUNT - 1].getTimestamp(), bundle.get(COUNT - 1).getTimestamp());
+    }
+
+    public void testRecordsAreStable() throws Exception {
+        final MappedRecordBundle bundle = new MappedRecordBundle(file, null);
+        final Record first = bundle.get(0);
+        for (int i = COUNT - 1; i > 0; --i) { bundle.get(i); }
+        assertEquals(first, bundle.get(0));
+        assertEquals(0, bundle.indexOf(first));
+        assertEquals(COUNT - 1, bundle.indexOf(bundle.get(COUNT - 1)));
+        assertEquals(-1, bundle.indexOf(records[0]));
+        bundle.close();
+    }
+
+    public void testFindFirstAtOrAfter() throws Exception {
+        final MappedRecordBundle bundle = new MappedRecordBundle(file, null);
+        assertEquals(0, bundle.findFirstAtOrAfter(0));
+        assertEquals(0, bundle.findFirstAtOrAfter(1000));
+        for (int t = 1000; t < 1000 + COUNT / 2; t += 17) {
+            assertEquals(2 * (t - 1000), bundle.findFirstAtOrAfter(t));
+        }
+        assertEquals(COUNT, bundle.findFirstAtOrAfter(1000 + COUNT));
+        bundle.close();
+    }
+
+    public void testVersion1BundlesAreRejected() throws Exception {
+        final File v1 = File.createTempFile("mapped", ".rbz");
+        final InputStream in = ClassLoader.getSystemResource("data/sap-invoices.rbz").openStream();
+        final OutputStream out = new FileOutputStream(v1);
+        final byte[] buffer = new byte[4096];
+        for (int n; (n = in.read(buffer)) > 0;) { out.write(buffer, 0, n); }
+        in.close();
+        out.close();
+        try {
+            new MappedRecordBundle(v1, null);
+            fail("Version 1 bundles cannot be mapped.");
+        } catch (IOException expected) {
+            // Expected.
+        } finally {
+            v1.delete();
+        }
+    }
+
+}
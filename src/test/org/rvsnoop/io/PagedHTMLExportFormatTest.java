@@ -0,0 +1,167 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.TestCase;
+
+import nu.xom.Builder;
+import nu.xom.Document;
+import nu.xom.Nodes;
+import nu.xom.XPathContext;
+
+import com.tibco.tibrv.TibrvDate;
+import com.tibco.tibrv.TibrvMsg;
+import com.tibco.tibrv.TibrvXml;
+
+import rvsnoop.Record;
+
+/**
+ * Unit tests for the {@link PagedHTMLExportFormat} and
+ * {@link HTMLExportFormat} classes.
+ */
+public class PagedHTMLExportFormatTest extends TestCase {
+
+    private static final XPathContext XHTML = new XPathContext("h", "http://www.w3.org/1999/xhtml");
+
+    private static Record[] createRecords(int count) throws Exception {
+        return new TestRecords() {
+            @Override
+            TibrvMsg getMessage(int i) throws Exception {
+                return getNestedMessage(i);
+            }
+            @Override
+            String getReplySubject(int i) {
+                return null;
+            }
+        }.create(count);
+    }
+
+    private static Document build(File file) throws Exception {
+        final SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        // The single file report refers to the XHTML DTD, don't fetch it.
+        factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        return new Builder(factory.newSAXParser().getXMLReader()).build(file);
+    }
+
+    private static void delete(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) { delete(child); }
+        }
+        file.delete();
+    }
+
+    private File directory;
+
+    private Document parse(String name) throws Exception {
+        return build(new File(directory, name));
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("PagedHTMLExportFormatTest", "");
+        directory.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(directory);
+    }
+
+    public void testPages() throws Exception {
+        final PagedHTMLExportFormat format = (PagedHTMLExportFormat) ExportFormat.getExportFormat("HTML Report (Paged)");
+        format.setRecordsPerPage(1000);
+        new RecordExporter(format, directory, createRecords(2500)).run();
+
+        assertEquals(4, directory.list().length);
+        final Document index = parse(PagedHTMLExportFormat.INDEX_FILE);
+        // A header row and one row per page.
+        assertEquals(4, index.query("//h:tr", XHTML).size());
+        assertEquals("1–1000", index.query("//h:tr[2]/h:td[2]", XHTML).get(0).getValue());
+        assertEquals("2001–2500", index.query("//h:tr[4]/h:td[2]", XHTML).get(0).getValue());
+
+        final int[] expectedRows = { 1000, 1000, 500 };
+        for (int i = 0; i < expectedRows.length; ++i) {
+            final Document page = parse(PagedHTMLExportFormat.getPageFileName(i + 1));
+            assertEquals(expectedRows[i] + 1, page.query("//h:table/h:tr", XHTML).size());
+            // Only the bottom links know whether there is a next page.
+            assertEquals(i == 0 ? 1 : 2, page.query("//h:p[@class='nav'][1]/h:a", XHTML).size());
+            assertEquals(i == 0 || i == 2 ? 2 : 3, page.query("//h:p[@class='nav'][2]/h:a", XHTML).size());
+        }
+        assertEquals("2500 records on 3 pages of up to 1000 records.", index.query("//h:p", XHTML).get(0).getValue());
+        final Document first = parse(PagedHTMLExportFormat.getPageFileName(1));
+        final String field = first.query("//h:tr[2]//h:li//h:li", XHTML).get(0).getValue();
+        assertTrue(field, field.endsWith("<b>0</b> & more"));
+    }
+
+    public void testLinksAndTotalsFollowTheRecordsWritten() throws Exception {
+        final PagedHTMLExportFormat format = (PagedHTMLExportFormat) ExportFormat.getExportFormat("HTML Report (Paged)");
+        format.setRecordsPerPage(10);
+        directory.mkdirs();
+        format.setExportLocation(directory);
+        // The ledger lost records after the export started.
+        format.startExport(null, 30);
+        final Record[] records = createRecords(15);
+        for (int i = 0; i < records.length; ++i) { format.exportRecord(records[i], i); }
+        format.endExport();
+
+        assertEquals(3, directory.list().length);
+        final Document last = parse(PagedHTMLExportFormat.getPageFileName(2));
+        final Nodes links = last.query("//h:p[@class='nav']/h:a", XHTML);
+        for (int i = 0; i < links.size(); ++i) { assertFalse("Next".equals(links.get(i).getValue())); }
+        final Document index = parse(PagedHTMLExportFormat.INDEX_FILE);
+        assertEquals("15 records on 2 pages of up to 10 records.", index.query("//h:p", XHTML).get(0).getValue());
+    }
+
+    public void testFieldsAreFormattedForReading() throws Exception {
+        final TibrvMsg innermost = new TibrvMsg();
+        innermost.add("xml", new TibrvXml("<invoice id=\"1\"/>".getBytes("UTF-8")), TibrvMsg.XML);
+        final TibrvMsg inner = new TibrvMsg();
+        inner.add("innermost", innermost, TibrvMsg.MSG);
+        final TibrvMsg message = new TibrvMsg();
+        message.add("inner", inner, TibrvMsg.MSG);
+        message.add("date", new TibrvDate(new Date(1000L)), TibrvMsg.DATETIME);
+        final Record record = new Record(null, message, "A.B", null, 1000L);
+        new RecordExporter(ExportFormat.getExportFormat("HTML Report (Paged)"), directory, new Record[] { record }).run();
+
+        final Document page = parse(PagedHTMLExportFormat.getPageFileName(1));
+        assertEquals("<invoice id=\"1\"/>", page.query("//h:li//h:li//h:li//h:pre", XHTML).get(0).getValue());
+        // Both nested messages end at the XML field, the date is back at the top level.
+        final Nodes fields = page.query("//h:td/h:details/h:ul/h:li", XHTML);
+        assertEquals(2, fields.size());
+        final String expected = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(1000L));
+        assertTrue(fields.get(1).getValue(), fields.get(1).getValue().endsWith(expected));
+    }
+
+    public void testEmptyExportHasAnIndex() throws Exception {
+        new RecordExporter(ExportFormat.getExportFormat("HTML Report (Paged)"), directory, new Record[0]).run();
+        assertEquals(1, parse(PagedHTMLExportFormat.INDEX_FILE).query("//h:tr", XHTML).size());
+    }
+
+    public void testCancelledExportDeletesDirectory() throws Exception {
+        final RecordExporter exporter = new RecordExporter(
+                ExportFormat.getExportFormat("HTML Report (Paged)"), directory, createRecords(10));
+        exporter.cancel();
+        exporter.run();
+        assertFalse(directory.exists());
+    }
+
+    public void testSingleFileReport() throws Exception {
+        directory.mkdirs();
+        final File file = new File(directory, "report.html");
+        new RecordExporter(ExportFormat.getExportFormat("HTML Report"), file, createRecords(20)).run();
+        final Document report = build(file);
+        assertEquals("-//W3C//DTD XHTML 1.0 Strict//EN", report.getDocType().getPublicID());
+        assertEquals(21, report.query("//h:table/h:tr", XHTML).size());
+        assertEquals("Type", report.query("//h:tr[1]/h:th[3]", XHTML).get(0).getValue());
+        assertEquals(20, report.query("//h:td/h:pre", XHTML).size());
+    }
+
+}
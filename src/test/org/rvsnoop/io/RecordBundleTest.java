@@ -0,0 +1,174 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import rvsnoop.Record;
+import rvsnoop.RvConnection;
+
+/**
+ * Unit tests for the {@link RecordBundleWriter} and {@link RecordBundleReader}
+ * classes.
+ */
+public class RecordBundleTest extends TestCase {
+
+    private static List<Record> createRecords(int count) throws Exception {
+        return Arrays.asList(new TestRecords() {
+            @Override
+            RvConnection getConnection(int i) {
+                return i % 3 == 0 ? null : connection;
+            }
+            @Override
+            String getReplySubject(int i) {
+                return i % 2 == 0 ? "" : "REPLY";
+            }
+        }.create(count));
+    }
+
+    private static byte[] write(List<Record> records, int blockSize) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final RecordBundleWriter writer = new RecordBundleWriter(bytes, blockSize);
+        for (Record record : records) { writer.write(record); }
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    private static List<Record> read(InputStream stream, List<Integer> blockSizes) throws Exception {
+        final RecordBundleReader reader = new RecordBundleReader(stream, null);
+        final List<Record> records = new ArrayList<Record>();
+        Record[] block;
+        while ((block = reader.readBlock()) != null) {
+            if (blockSizes != null) { blockSizes.add(block.length); }
+            records.addAll(Arrays.asList(block));
+        }
+        reader.close();
+        return records;
+    }
+
+    public void testRoundTrip() throws Exception {
+        final List<Record> expected = createRecords(500);
+        final List<Integer> blockSizes = new ArrayList<Integer>();
+        final List<Record> actual = read(new ByteArrayInputStream(write(expected, 1024)), blockSizes);
+        assertTrue(blockSizes.size() > 1);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0, imax = expected.size(); i < imax; ++i) {
+            final Record e = expected.get(i), a = actual.get(i);
+            assertEquals(e.getSendSubject(), a.getSendSubject());
+            assertEquals(e.getReplySubject(), a.getReplySubject());
+            assertEquals(e.getTimestamp(), a.getTimestamp());
+            assertTrue(Arrays.equals(e.getMessageBytes(), a.getMessageBytes()));
+            if (e.getConnection() == null) {
+                assertNull(a.getConnection());
+            } else {
+                assertEquals("Test", a.getConnection().getDescription());
+                assertEquals("tcp:7500", a.getConnection().getDaemon());
+            }
+        }
+        // Records with the same connection share a connection instance.
+        assertSame(actual.get(1).getConnection(), actual.get(499).getConnection());
+    }
+
+    private static List<Record> readAll(InputStream stream, final List<Integer> blockSizes) throws Exception {
+        final RecordBundleReader reader = new RecordBundleReader(stream, null);
+        final List<Record> records = new ArrayList<Record>();
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            reader.readAll(executor, 3, new RecordBundleReader.Handler() {
+                public void blockRead(Record[] block) {
+                    blockSizes.add(block.length);
+                    records.addAll(Arrays.asList(block));
+                }
+            });
+        } finally {
+            executor.shutdown();
+            reader.close();
+        }
+        return records;
+    }
+
+    public void testParallelRead() throws Exception {
+        final byte[] bytes = write(createRecords(5000), 1024);
+        final List<Integer> expectedSizes = new ArrayList<Integer>();
+        final List<Record> expected = read(new ByteArrayInputStream(bytes), expectedSizes);
+        final List<Integer> actualSizes = new ArrayList<Integer>();
+        final List<Record> actual = readAll(new ByteArrayInputStream(bytes), actualSizes);
+        assertEquals(expectedSizes, actualSizes);
+        assertEquals(expected.size(), actual.size());
+        long previous = -1;
+        for (int i = 0, imax = expected.size(); i < imax; ++i) {
+            final Record e = expected.get(i), a = actual.get(i);
+            assertEquals(e.getSendSubject(), a.getSendSubject());
+            assertEquals(e.getTimestamp(), a.getTimestamp());
+            assertTrue(Arrays.equals(e.getMessageBytes(), a.getMessageBytes()));
+            // Sequence numbers follow the order of the bundle.
+            assertTrue(a.getSequenceNumber() > previous);
+            previous = a.getSequenceNumber();
+        }
+    }
+
+    public void testParallelReadOfVersion1Bundle() throws Exception {
+        final List<Record> records = readAll(ClassLoader.getSystemResource("data/sap-invoices.rbz").openStream(),
+                new ArrayList<Integer>());
+        final List<Record> expected = read(ClassLoader.getSystemResource("data/sap-invoices.rbz").openStream(), null);
+        assertEquals(expected.size(), records.size());
+        for (int i = 0, imax = expected.size(); i < imax; ++i) {
+            assertEquals(expected.get(i).getTimestamp(), records.get(i).getTimestamp());
+        }
+    }
+
+    public void testIndex() throws Exception {
+        final byte[] bytes = write(createRecords(500), 1024);
+        final DataInputStream trailer = new DataInputStream(new ByteArrayInputStream(
+                bytes, bytes.length - RecordBundle.TRAILER_SIZE, RecordBundle.TRAILER_SIZE));
+        final int indexOffset = (int) trailer.readLong();
+        final DataInputStream index = new DataInputStream(new ByteArrayInputStream(bytes, indexOffset, bytes.length));
+        assertEquals(RecordBundle.END_OF_BLOCKS, index.readInt());
+        final List<String> subjects = new ArrayList<String>();
+        final List<RvConnection> connections = new ArrayList<RvConnection>();
+        RecordBundleReader.readDictionary(index, subjects, connections, null);
+        assertEquals(12, subjects.size());
+        assertEquals(1, connections.size());
+        final int numBlocks = index.readInt();
+        int total = 0;
+        long previousMax = Long.MIN_VALUE;
+        for (int i = 0; i < numBlocks; ++i) {
+            final long offset = index.readLong();
+            final long min = index.readLong();
+            final long max = index.readLong();
+            final int count = index.readInt();
+            final DataInputStream frame = new DataInputStream(
+                    new ByteArrayInputStream(bytes, (int) offset, bytes.length));
+            assertTrue(frame.readInt() > 0);
+            frame.readInt();
+            assertEquals(count, frame.readInt());
+            assertEquals(min, frame.readLong());
+            total += count;
+            assertTrue(min > previousMax);
+            previousMax = max;
+        }
+        assertEquals(500, total);
+        assertEquals(1499, previousMax);
+    }
+
+    public void testEmptyBundle() throws Exception {
+        assertTrue(read(new ByteArrayInputStream(write(new ArrayList<Record>(), 1024)), null).isEmpty());
+    }
+
+    public void testVersion1BundlesCanBeRead() throws Exception {
+        final InputStream stream = ClassLoader.getSystemResource("data/sap-invoices.rbz").openStream();
+        final List<Record> records = read(stream, null);
+        assertEquals(10, records.size());
+    }
+
+}
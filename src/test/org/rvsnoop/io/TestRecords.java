@@ -0,0 +1,79 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.io;
+
+import com.tibco.tibrv.TibrvMsg;
+
+import rvsnoop.Record;
+import rvsnoop.RvConnection;
+
+/**
+ * Creates the records used by the import and export tests.
+ * <p>
+ * By default record <code>i</code> has no connection, a send subject of
+ * <code>A.B.</code> followed by <code>i % 10</code>, an empty reply subject,
+ * a timestamp of <code>1000 + i</code> and a message with a single
+ * <code>index</code> field. Tests which need something else override the
+ * method for that part of the record.
+ */
+class TestRecords {
+
+    /** A connection which tests may give to some of the records. */
+    final RvConnection connection = new RvConnection("7500", ";239.1.1.1", "tcp:7500");
+
+    TestRecords() {
+        connection.setDescription("Test");
+    }
+
+    /**
+     * Create some records.
+     *
+     * @param count The number of records to create.
+     * @return The records.
+     * @throws Exception If a message could not be created.
+     */
+    final Record[] create(int count) throws Exception {
+        final Record[] records = new Record[count];
+        for (int i = 0; i < count; ++i) {
+            records[i] = new Record(getConnection(i), getMessage(i),
+                    getSendSubject(i), getReplySubject(i), getTimestamp(i));
+        }
+        return records;
+    }
+
+    RvConnection getConnection(int i) {
+        return null;
+    }
+
+    TibrvMsg getMessage(int i) throws Exception {
+        final TibrvMsg message = new TibrvMsg();
+        message.add("index", String.valueOf(i));
+        return message;
+    }
+
+    /**
+     * A message with an <code>index</code> field and a nested message, whose
+     * text field needs escaping in most formats.
+     */
+    static TibrvMsg getNestedMessage(int i) throws Exception {
+        final TibrvMsg inner = new TibrvMsg();
+        inner.add("text", "<b>" + i + "</b> & more", TibrvMsg.STRING);
+        final TibrvMsg message = new TibrvMsg();
+        message.add("index", Integer.valueOf(i), TibrvMsg.I32);
+        message.add("inner", inner, TibrvMsg.MSG);
+        return message;
+    }
+
+    String getReplySubject(int i) {
+        return "";
+    }
+
+    String getSendSubject(int i) {
+        return "A.B." + (i % 10);
+    }
+
+    long getTimestamp(int i) {
+        return 1000L + i;
+    }
+
+}
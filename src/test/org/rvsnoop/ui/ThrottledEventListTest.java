@@ -0,0 +1,133 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package org.rvsnoop.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+import junit.framework.TestCase;
+
+import ca.odell.glazedlists.BasicEventList;
+import ca.odell.glazedlists.EventList;
+import ca.odell.glazedlists.event.ListEvent;
+import ca.odell.glazedlists.event.ListEventListener;
+import ca.odell.glazedlists.swing.GlazedListsSwing;
+
+/**
+ * Unit tests for the {@link ThrottledEventList} class.
+ */
+public class ThrottledEventListTest extends TestCase {
+
+    private final EventList<String> source = new BasicEventList<String>();
+
+    private ThrottledEventList<String> throttled;
+
+    /** A copy of the throttled list built from its events. */
+    private final List<String> mirror = new ArrayList<String>();
+
+    private int numEvents;
+
+    @Override
+    public void setUp() throws Exception {
+        onEventThread(new Runnable() {
+            public void run() {
+                throttled = new ThrottledEventList<String>(source, 20);
+                throttled.addListEventListener(new ListEventListener<String>() {
+                    public void listChanged(ListEvent<String> changes) {
+                        ++numEvents;
+                        while (changes.next()) {
+                            final int index = changes.getIndex();
+                            switch (changes.getType()) {
+                            case ListEvent.INSERT: mirror.add(index, throttled.get(index)); break;
+                            case ListEvent.DELETE: mirror.remove(index); break;
+                            default: mirror.set(index, throttled.get(index)); break;
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        onEventThread(new Runnable() {
+            public void run() {
+                throttled.dispose();
+            }
+        });
+    }
+
+    private static void onEventThread(Runnable runnable) throws Exception {
+        SwingUtilities.invokeAndWait(runnable);
+    }
+
+    private void waitForUpdate() throws Exception {
+        Thread.sleep(200);
+        // Make sure that the timer event has been handled.
+        onEventThread(new Runnable() {
+            public void run() {
+                // Nothing to do.
+            }
+        });
+    }
+
+    public void testChangesAreBatched() throws Exception {
+        onEventThread(new Runnable() {
+            public void run() {
+                for (int i = 0; i < 100; ++i) { source.add(String.valueOf(i)); }
+                source.remove(0);
+                assertEquals(0, throttled.size());
+            }
+        });
+        waitForUpdate();
+        assertEquals(1, numEvents);
+        assertEquals(source, throttled);
+        assertEquals(source, mirror);
+    }
+
+    public void testClearBetweenUpdates() throws Exception {
+        onEventThread(new Runnable() {
+            public void run() {
+                source.addAll(Arrays.asList("a", "b", "c"));
+            }
+        });
+        waitForUpdate();
+        onEventThread(new Runnable() {
+            public void run() {
+                source.clear();
+                source.addAll(Arrays.asList("d", "e"));
+                // Still showing the old contents.
+                assertEquals(Arrays.asList("a", "b", "c"), throttled);
+            }
+        });
+        waitForUpdate();
+        assertEquals(2, numEvents);
+        assertEquals(Arrays.asList("d", "e"), throttled);
+        assertEquals(Arrays.asList("d", "e"), mirror);
+    }
+
+    public void testTableModelDoesNotCopyTheList() throws Exception {
+        assertTrue(GlazedListsSwing.isSwingThreadProxyList(throttled));
+    }
+
+    public void testEvictionOfUnpublishedElements() throws Exception {
+        onEventThread(new Runnable() {
+            public void run() {
+                source.add("a");
+                source.add("b");
+                // Evict both before they are published.
+                source.remove(0);
+                source.remove(0);
+                source.add("c");
+            }
+        });
+        waitForUpdate();
+        assertEquals(Arrays.asList("c"), throttled);
+        assertEquals(Arrays.asList("c"), mirror);
+    }
+
+}
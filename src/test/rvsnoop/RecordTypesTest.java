@@ -0,0 +1,77 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package rvsnoop;
+
+import java.awt.Color;
+
+import junit.framework.TestCase;
+
+import org.jdesktop.application.ApplicationContext;
+
+import ca.odell.glazedlists.matchers.Matcher;
+
+import com.tibco.tibrv.TibrvMsg;
+
+/**
+ * Unit tests for the type classification cache in the {@link RecordTypes} class.
+ */
+public class RecordTypesTest extends TestCase {
+
+    private static final class CountingMatcher extends RecordMatcher {
+        int calls;
+        CountingMatcher(String value) {
+            super(SendSubjectContains.ID, SendSubjectContains.NAME, value);
+        }
+        public boolean matches(Record item) {
+            ++calls;
+            return item.getSendSubject().indexOf(getValue()) >= 0;
+        }
+    }
+
+    private RecordTypes types;
+
+    private static Record createRecord(String subject) {
+        return new Record(null, new TibrvMsg(), subject, null, 0L);
+    }
+
+    @Override
+    public void setUp() {
+        types = new RecordTypes(new ApplicationContext() {});
+    }
+
+    public void testClassificationIsCached() {
+        final CountingMatcher matcher = new CountingMatcher("AUDIT");
+        types.getEventList().remove(RecordTypes.DEFAULT);
+        types.createType("Audit", Color.BLUE, matcher);
+        final Record record = createRecord("AUDIT.LOG");
+        assertEquals("Audit", types.getFirstMatchingType(record).getName());
+        assertEquals(1, matcher.calls);
+        assertEquals("Audit", types.getFirstMatchingType(record).getName());
+        final Matcher<Record> filter = types.getMatcherEditor().getMatcher();
+        assertTrue(filter.matches(record));
+        assertEquals(1, matcher.calls);
+    }
+
+    public void testChangingTypesInvalidatesCache() {
+        final Record record = createRecord("APP.WARN.DISK");
+        final RecordType warning = types.getFirstMatchingType(record);
+        assertEquals("Warning", warning.getName());
+        final int generation = types.getGeneration();
+        types.removeType(warning);
+        assertTrue(generation != types.getGeneration());
+        assertSame(RecordTypes.DEFAULT, types.getFirstMatchingType(record));
+        types.getEventList().remove(RecordTypes.DEFAULT);
+        final RecordType disk = types.createType("Disk", Color.GREEN, new RecordMatcher.SendSubjectContains("DISK"));
+        assertSame(disk, types.getFirstMatchingType(record));
+        types.clear();
+        assertSame(RecordTypes.DEFAULT, types.getFirstMatchingType(record));
+    }
+
+    public void testUnmatchedRecordsPassTheFilter() {
+        types.getEventList().clear();
+        final Record record = createRecord("NOTHING.MATCHES");
+        assertSame(RecordTypes.DEFAULT, types.getFirstMatchingType(record));
+        assertTrue(types.getMatcherEditor().getMatcher().matches(record));
+    }
+
+}
@@ -0,0 +1,181 @@
+// Copyright: Copyright © 2006-2010 Ian Phillips and Örjan Lundberg.
+// License:   Apache Software License (Version 2.0)
+package rvsnoop;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the subject lookups in the {@link SubjectHierarchy} class.
+ */
+public class SubjectHierarchyTest extends TestCase {
+
+    private SubjectHierarchy hierarchy;
+
+    @Override
+    public void setUp() {
+        hierarchy = new SubjectHierarchy();
+        // Keep the timer out of the way, the tests flush explicitly.
+        hierarchy.setUpdateRate(1);
+    }
+
+    public void testChildrenAreSorted() {
+        hierarchy.getSubjectElement("A.C");
+        hierarchy.getSubjectElement("A.A");
+        hierarchy.getSubjectElement("A.D");
+        hierarchy.getSubjectElement("A.B");
+        hierarchy.flush();
+        hierarchy.getSubjectElement("A.AB");
+        hierarchy.flush();
+        final SubjectElement a = hierarchy.getSubjectElement("A");
+        final String[] names = { "A", "AB", "B", "C", "D" };
+        assertEquals(names.length, a.getChildCount());
+        for (int i = 0; i < names.length; ++i) {
+            assertEquals(names[i], ((SubjectElement) a.getChildAt(i)).getElementName());
+        }
+    }
+
+    public void testConcurrentLookups() throws Exception {
+        final int numThreads = 4;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < numThreads; ++t) {
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 2000; ++i) { hierarchy.getSubjectElement("ORDERS.EU." + i); }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) { thread.join(); }
+        hierarchy.flush();
+        final SubjectElement eu = hierarchy.getSubjectElement("ORDERS.EU");
+        assertEquals(2000, eu.getChildCount());
+        assertSame(eu, hierarchy.getSubjectElement("ORDERS.EU.7").getParent());
+    }
+
+    public void testEffectiveSelection() {
+        final SubjectElement abc = hierarchy.getSubjectElement("A.B.C");
+        final SubjectElement ad = hierarchy.getSubjectElement("A.D");
+        final SubjectElement a = hierarchy.getSubjectElement("A");
+        hierarchy.flush();
+        assertTrue(abc.isEffectivelySelected());
+        hierarchy.setSelected(a, false);
+        assertFalse(abc.isEffectivelySelected());
+        assertFalse(ad.isEffectivelySelected());
+        // New children of an unselected element are unselected.
+        assertFalse(hierarchy.getSubjectElement("A.E").isEffectivelySelected());
+        // Selecting a leaf selects the path to it but not its siblings.
+        hierarchy.setSelected(abc, true);
+        assertTrue(abc.isEffectivelySelected());
+        assertTrue(a.isEffectivelySelected());
+        assertFalse(ad.isEffectivelySelected());
+        hierarchy.setAllSelected(a, true);
+        assertTrue(ad.isEffectivelySelected());
+        hierarchy.setSelected((SubjectElement) abc.getParent(), false);
+        assertFalse(abc.isEffectivelySelected());
+        assertTrue(ad.isEffectivelySelected());
+    }
+
+    public void testHighCardinalitySubjectsAreFolded() {
+        hierarchy.setMaxChildren(3);
+        for (int i = 0; i < 10; ++i) { hierarchy.getSubjectElement("TRADE." + i + ".FILL"); }
+        hierarchy.flush();
+        final SubjectElement trade = hierarchy.getSubjectElement("TRADE");
+        assertEquals(4, trade.getChildCount());
+        final SubjectElement wildcard = hierarchy.getSubjectElement("TRADE.*");
+        assertSame(trade, wildcard.getParent());
+        assertEquals(1, wildcard.getChildCount());
+        assertSame(wildcard.getChildAt(0), hierarchy.getSubjectElement("TRADE.7.FILL"));
+        assertEquals(7, wildcard.getSampledNames().size());
+        assertEquals("3", wildcard.getSampledNames().get(0));
+        // Existing children are still found.
+        assertEquals("1", hierarchy.getSubjectElement("TRADE.1").getElementName());
+        // The filter applies to the wildcard element.
+        hierarchy.setSelected(wildcard, false);
+        assertFalse(hierarchy.getSubjectElement("TRADE.42.FILL").isEffectivelySelected());
+        assertTrue(hierarchy.getSubjectElement("TRADE.0.FILL").isEffectivelySelected());
+    }
+
+    public void testLookupIsCached() {
+        final SubjectElement element = hierarchy.getSubjectElement("A.B.C");
+        assertSame(element, hierarchy.getSubjectElement("A.B.C"));
+        assertSame(element, hierarchy.getSubjectElement("A.B.C."));
+        hierarchy.flush();
+        assertSame(element.getParent(), hierarchy.getSubjectElement("A.B"));
+        assertEquals("C", element.getElementName());
+    }
+
+    public void testPrunedElementsAreRecreated() {
+        final SubjectElement element = hierarchy.getSubjectElement("A.B.C");
+        hierarchy.flush();
+        hierarchy.removeNodeFromParent((SubjectElement) element.getParent());
+        final SubjectElement recreated = hierarchy.getSubjectElement("A.B.C");
+        assertNotSame(element, recreated);
+        hierarchy.flush();
+        assertSame(hierarchy.getSubjectElement("A"), recreated.getParent().getParent());
+        assertEquals(1, hierarchy.getSubjectElement("A").getChildCount());
+    }
+
+    public void testNewElementsAreOnlyInsertedByFlush() {
+        final SubjectElement a = hierarchy.getSubjectElement("A");
+        hierarchy.flush();
+        final SubjectElement ab = hierarchy.getSubjectElement("A.B");
+        final SubjectElement abc = hierarchy.getSubjectElement("A.B.C");
+        // The elements can be found, and counted, but the tree is unchanged.
+        assertSame(ab, hierarchy.getSubjectElement("A.B"));
+        assertSame(ab, abc.getParentElement());
+        assertEquals(0, a.getChildCount());
+        assertNull(ab.getParent());
+        ab.incNumRecordsHere();
+        assertEquals(1, a.getNumRecordsUnder());
+        assertEquals(4, abc.getPath().length);
+        hierarchy.flush();
+        assertEquals(1, a.getChildCount());
+        assertSame(ab, a.getChildAt(0));
+        assertSame(abc, ab.getChildAt(0));
+        assertSame(a, abc.getPath()[1]);
+    }
+
+    public void testUpdatesAreCoalesced() {
+        final int[] counts = new int[2];
+        final List<int[]> inserted = new ArrayList<int[]>();
+        hierarchy.addTreeModelListener(new TreeModelListener() {
+            public void treeNodesChanged(TreeModelEvent e) { ++counts[0]; }
+            public void treeNodesInserted(TreeModelEvent e) { ++counts[1]; inserted.add(e.getChildIndices()); }
+            public void treeNodesRemoved(TreeModelEvent e) { fail(); }
+            public void treeStructureChanged(TreeModelEvent e) { fail(); }
+        });
+        for (int i = 4; i >= 0; --i) { hierarchy.getSubjectElement("A." + i); }
+        assertEquals(0, counts[1]);
+        hierarchy.flush();
+        assertEquals(2, counts[1]);
+        assertEquals(1, inserted.get(0).length);
+        assertEquals(5, inserted.get(1).length);
+        for (int i = 0; i < 5; ++i) { assertEquals(i, inserted.get(1)[i]); }
+        counts[0] = 0;
+        hierarchy.reset();
+        hierarchy.reset();
+        assertEquals(0, counts[0]);
+        hierarchy.flush();
+        // The root, A, and its five children.
+        assertEquals(7, counts[0]);
+        hierarchy.flush();
+        assertEquals(7, counts[0]);
+    }
+
+}